@@ -23,4 +23,21 @@ LOCAL_PREBUILT_STATIC_JAVA_LIBRARIES :=
 
 include $(BUILD_MULTI_PREBUILT)
 
+##################################################
+# The Android independent core, built for the host JVM
+include $(CLEAR_VARS)
+
+LOCAL_SRC_FILES := \
+    src/android/media/videoeditor/IdIndexedList.java \
+    src/android/media/videoeditor/LockStatistics.java \
+    src/android/media/videoeditor/ProjectSnapshot.java \
+    src/android/media/videoeditor/WaveformData.java \
+    src/dogtim/android/videoeditor/service/TimelineIndex.java \
+    src/dogtim/android/videoeditor/util/ThumbnailCache.java \
+    src/dogtim/android/videoeditor/util/WaveformUtils.java
+
+LOCAL_MODULE := videoeditor-core
+
+include $(BUILD_HOST_JAVA_LIBRARY)
+
 include $(call all-makefiles-under, $(LOCAL_PATH))
@@ -143,7 +143,7 @@ public class AudioTrack {
             throw new IllegalArgumentException("editor is not of type VideoEditorImpl");
         }
         try {
-          properties = mMANativeHelper.getMediaProperties(filename);
+          properties = mMANativeHelper.readMediaProperties(filename);
         } catch (Exception e) {
             throw new IllegalArgumentException(e.getMessage() + " : " + filename);
         }
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media.videoeditor;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An ordered list of storyboard elements which also indexes the elements by
+ * their unique id. Lookups by id take O(1). The position of each element is
+ * kept in a second index; an insertion or removal only marks the positions
+ * after it as stale, and they are refreshed by the next position lookup.
+ * The elements of the list must compare equal when their ids are equal.
+ * {@hide}
+ */
+abstract class IdIndexedList<E> extends AbstractList<E> {
+    /**
+     *  Instance variables
+     */
+    private final List<E> mElements = new ArrayList<E>();
+    private final Map<String, E> mElementsById = new HashMap<String, E>();
+    private final Map<String, Integer> mPositions = new HashMap<String, Integer>();
+    private int mFirstStalePosition;
+
+    /**
+     * @param element The element
+     *
+     * @return The unique id of the element
+     */
+    protected abstract String getId(E element);
+
+    /**
+     * Called after each modification of the list
+     */
+    protected void onModified() {
+    }
+
+    /*
+     * {@inheritDoc}
+     */
+    @Override
+    public E get(int index) {
+        return mElements.get(index);
+    }
+
+    /*
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return mElements.size();
+    }
+
+    /*
+     * {@inheritDoc}
+     */
+    @Override
+    public E set(int index, E element) {
+        final E oldElement = mElements.set(index, element);
+        unindex(oldElement);
+        mElementsById.put(getId(element), element);
+        mPositions.put(getId(element), index);
+        onModified();
+        return oldElement;
+    }
+
+    /*
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(int index, E element) {
+        mElements.add(index, element);
+        mElementsById.put(getId(element), element);
+        invalidatePositions(index);
+        modCount++;
+        onModified();
+    }
+
+    /*
+     * {@inheritDoc}
+     */
+    @Override
+    public E remove(int index) {
+        final E element = mElements.remove(index);
+        unindex(element);
+        invalidatePositions(index);
+        modCount++;
+        onModified();
+        return element;
+    }
+
+    /*
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        mElements.clear();
+        mElementsById.clear();
+        mPositions.clear();
+        mFirstStalePosition = 0;
+        modCount++;
+        onModified();
+    }
+
+    /*
+     * {@inheritDoc}
+     */
+    @Override
+    public int indexOf(Object object) {
+        if (object == null) {
+            return -1;
+        }
+
+        final String id;
+        try {
+            id = getId(cast(object));
+        } catch (ClassCastException ex) {
+            return -1;
+        }
+
+        final int index = indexOfId(id);
+        return (index >= 0 && mElements.get(index).equals(object)) ? index : -1;
+    }
+
+    /*
+     * {@inheritDoc}
+     */
+    @Override
+    public int lastIndexOf(Object object) {
+        return indexOf(object);
+    }
+
+    /*
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(Object object) {
+        return indexOf(object) >= 0;
+    }
+
+    /*
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(Object object) {
+        final int index = indexOf(object);
+        if (index < 0) {
+            return false;
+        }
+
+        remove(index);
+        return true;
+    }
+
+    /**
+     * @param id The element id
+     *
+     * @return The element with the specified id, null if not found
+     */
+    E getById(String id) {
+        return mElementsById.get(id);
+    }
+
+    /**
+     * @param id The element id
+     *
+     * @return The position of the element with the specified id, -1 if not
+     *      found
+     */
+    int indexOfId(String id) {
+        if (!mElementsById.containsKey(id)) {
+            return -1;
+        }
+
+        final int count = mElements.size();
+        for (int i = mFirstStalePosition; i < count; i++) {
+            mPositions.put(getId(mElements.get(i)), i);
+        }
+        mFirstStalePosition = count;
+
+        final Integer position = mPositions.get(id);
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Remove an element from the id indexes
+     *
+     * @param element The element
+     */
+    private void unindex(E element) {
+        final String id = getId(element);
+        if (mElementsById.get(id) == element) {
+            mElementsById.remove(id);
+            mPositions.remove(id);
+        }
+    }
+
+    /**
+     * Mark the positions starting at the specified index as stale
+     *
+     * @param index The first position which changed
+     */
+    private void invalidatePositions(int index) {
+        if (index < mFirstStalePosition) {
+            mFirstStalePosition = index;
+        }
+    }
+
+    /**
+     * Unchecked cast of an object to the element type. getId() fails with a
+     * ClassCastException if the object is of another type.
+     */
+    @SuppressWarnings("unchecked")
+    private E cast(Object object) {
+        return (E)object;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media.videoeditor;
+
+/**
+ * Contention statistics of a lock: how often it was acquired, how often the
+ * caller had to wait for another holder and how long it waited.
+ * {@hide}
+ */
+final class LockStatistics {
+    /**
+     *  Instance variables
+     */
+    private final String mName;
+    private long mAcquisitions;
+    private long mContentions;
+    private long mTimeouts;
+    private long mTotalWaitNs;
+    private long mMaxWaitNs;
+
+    /**
+     * Constructor
+     *
+     * @param name The lock name
+     */
+    LockStatistics(String name) {
+        mName = name;
+    }
+
+    /**
+     * Record an acquisition of the lock
+     *
+     * @param contended true if the lock was held by another thread
+     * @param waitNs The time spent waiting for the lock
+     */
+    synchronized void recordAcquired(boolean contended, long waitNs) {
+        mAcquisitions++;
+        if (contended) {
+            mContentions++;
+            recordWait(waitNs);
+        }
+    }
+
+    /**
+     * Record a failed timed acquisition of the lock
+     *
+     * @param waitNs The time spent waiting for the lock
+     */
+    synchronized void recordTimeout(long waitNs) {
+        mTimeouts++;
+        mContentions++;
+        recordWait(waitNs);
+    }
+
+    /**
+     * @return The number of acquisitions
+     */
+    synchronized long getAcquisitions() {
+        return mAcquisitions;
+    }
+
+    /**
+     * @return The number of acquisitions and timeouts which had to wait
+     */
+    synchronized long getContentions() {
+        return mContentions;
+    }
+
+    /**
+     * @return The total time spent waiting for the lock in nanoseconds
+     */
+    synchronized long getTotalWaitNs() {
+        return mTotalWaitNs;
+    }
+
+    /*
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return mName + ": acquired " + mAcquisitions + ", contended " + mContentions
+                + ", timeouts " + mTimeouts + ", wait " + (mTotalWaitNs / 1000000) + " ms"
+                + ", max wait " + (mMaxWaitNs / 1000000) + " ms";
+    }
+
+    /**
+     * Add a wait to the totals
+     */
+    private void recordWait(long waitNs) {
+        mTotalWaitNs += waitNs;
+        if (waitNs > mMaxWaitNs) {
+            mMaxWaitNs = waitNs;
+        }
+    }
+}
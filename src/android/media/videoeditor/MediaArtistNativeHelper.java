@@ -22,7 +22,7 @@ import java.math.BigDecimal;
 import java.nio.IntBuffer;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -33,6 +33,7 @@ import android.graphics.Matrix;
 import android.media.videoeditor.VideoEditor.ExportProgressListener;
 import android.media.videoeditor.VideoEditor.PreviewProgressListener;
 import android.media.videoeditor.VideoEditor.MediaProcessingProgressListener;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.Pair;
 import android.view.Surface;
@@ -43,10 +44,6 @@ import android.view.Surface;
 class MediaArtistNativeHelper {
     private static final String TAG = "MediaArtistNativeHelper";
 
-    static {
-        System.loadLibrary("videoeditor_jni");
-    }
-
     private static final int MAX_THUMBNAIL_PERMITTED = 8;
 
     public static final int TASK_LOADING_SETTINGS = 1;
@@ -57,11 +54,7 @@ class MediaArtistNativeHelper {
      */
     private static final Paint sResizePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
-    private final VideoEditor mVideoEditor;
-    /*
-     *  Semaphore to control preview calls
-     */
-    private final Semaphore mLock;
+    private final VideoEditorImpl mVideoEditor;
 
     private EditSettings mStoryBoardSettings;
 
@@ -75,10 +68,24 @@ class MediaArtistNativeHelper {
 
     private AudioTrack mAudioTrack = null;
 
-    private boolean mInvalidatePreviewArray = true;
+    /*
+     *  Storyboard changes are counted without holding the editor semaphore so
+     *  that editing does not wait for a preview generation; edits still wait
+     *  for the exports in progress. The preview settings are stale when they
+     *  were generated for an older storyboard generation.
+     */
+    private final AtomicInteger mStoryBoardGeneration = new AtomicInteger(1);
+    private volatile int mPreviewArrayGeneration = 0;
 
     private boolean mRegenerateAudio = true;
 
+    /*
+     *  Video media items with a proxy are previewed from the proxy. An
+     *  export populates the settings from the original files.
+     */
+    private boolean mExportInProgress;
+    private boolean mPreviewHasProxies;
+
     private String mExportFilename = null;
     private int mExportVideoCodec = 0;
     private int mExportAudioCodec = 0;
@@ -87,6 +94,26 @@ class MediaArtistNativeHelper {
     private String mRenderPreviewOverlayFile;
     private int mRenderPreviewRenderingMode;
 
+    /*
+     *  The frame currently shown on the preview surface. Scrubbing requests
+     *  many frames at nearly the same time; a request which falls in the
+     *  same frame interval as the frame on the surface, shortly after it was
+     *  rendered, is answered without decoding again. The native settings
+     *  are populated once per preview generation instead of once per frame.
+     */
+    private static final long PREVIEW_FRAME_BUCKET_MS = 33;
+    private static final long PREVIEW_FRAME_REUSE_MS = 250;
+    private int mPopulatedGeneration = 0;
+    private Surface mPreviewFrameSurface;
+    private int mPreviewFrameGeneration;
+    private long mPreviewFrameBucket = -1;
+    private int mPreviewFrameWidth;
+    private int mPreviewFrameHeight;
+    private long mPreviewFrameRenderedMs;
+    private long mPreviewFrameTimeMs;
+    private volatile long mPreviewFrameHits;
+    private volatile long mPreviewFrameMisses;
+
     private boolean mIsFirstProgress;
 
     private static final String AUDIO_TRACK_PCM_FILE = "AudioPcm.pcm";
@@ -96,6 +123,7 @@ class MediaArtistNativeHelper {
     public static final int PROCESSING_AUDIO_PCM     = 1;
     public static final int PROCESSING_TRANSITION    = 2;
     public static final int PROCESSING_KENBURNS      = 3;
+    public static final int PROCESSING_PROXY         = 4;
     public static final int PROCESSING_INTERMEDIATE1 = 11;
     public static final int PROCESSING_INTERMEDIATE2 = 12;
     public static final int PROCESSING_INTERMEDIATE3 = 13;
@@ -120,6 +148,10 @@ class MediaArtistNativeHelper {
     @SuppressWarnings("unused")
     private int mManualEditContext;
 
+    private final MediaEngine mEngine;
+
+    private final TraceLog mTraceLog;
+
     /* Listeners */
 
     /**
@@ -1718,10 +1750,9 @@ class MediaArtistNativeHelper {
      *
      * @param projectPath The path where the VideoEditor stores all files
      *        related to the project
-     * @param lock The semaphore
      * @param veObj The video editor reference
      */
-    public MediaArtistNativeHelper(String projectPath, Semaphore lock, VideoEditor veObj) {
+    public MediaArtistNativeHelper(String projectPath, VideoEditorImpl veObj) {
         mProjectPath = projectPath;
         if (veObj != null) {
             mVideoEditor = veObj;
@@ -1733,12 +1764,29 @@ class MediaArtistNativeHelper {
             mStoryBoardSettings = new EditSettings();
         }
 
-        mLock = lock;
-
-        _init(mProjectPath, "null");
+        mTraceLog = new TraceLog(mProjectPath);
+        mEngine = createEngine();
+        mEngine.init(mProjectPath, "null");
         mAudioTrackPCMFilePath = null;
     }
 
+    /**
+     * @return The native media engine, traced if tracing is enabled
+     */
+    private MediaEngine createEngine() {
+        final MediaEngine engine = new NativeMediaEngine(this);
+        return mTraceLog.isEnabled() ? new TracingMediaEngine(engine, mTraceLog) : engine;
+    }
+
+    /**
+     * @param filename The media file name
+     *
+     * @return The properties of the media file
+     */
+    Properties readMediaProperties(String filename) throws Exception {
+        return mEngine.getMediaProperties(filename);
+    }
+
     /**
      * @return The project path
      */
@@ -1763,8 +1811,7 @@ class MediaArtistNativeHelper {
         }
     }
 
-    @SuppressWarnings("unused")
-    private void onProgressUpdate(int taskId, int progress) {
+    void onProgressUpdate(int taskId, int progress) {
         if (mProcessingState == PROCESSING_EXPORT) {
             if (mExportProgressListener != null) {
                 if (mProgressToApp < progress) {
@@ -1795,6 +1842,9 @@ class MediaArtistNativeHelper {
                 case PROCESSING_KENBURNS:
                     actualProgress = progress;
                     break;
+                case PROCESSING_PROXY:
+                    actualProgress = progress;
+                    break;
                 case PROCESSING_INTERMEDIATE1:
                     if ((progress == 0) && (mProgressToApp != 0)) {
                         mProgressToApp = 0;
@@ -1843,8 +1893,7 @@ class MediaArtistNativeHelper {
         }
     }
 
-    @SuppressWarnings("unused")
-    private void onPreviewProgressUpdate(int progress, boolean isFinished,
+    void onPreviewProgressUpdate(int progress, boolean isFinished,
                   boolean updateOverlay, String filename, int renderingMode, int error) {
         if (mPreviewProgressListener != null) {
             if (mIsFirstProgress) {
@@ -1882,14 +1931,17 @@ class MediaArtistNativeHelper {
      * Release the native helper object
      */
     void releaseNativeHelper() throws InterruptedException {
-        release();
+        try {
+            mEngine.release();
+        } finally {
+            mTraceLog.stop();
+        }
     }
 
     /**
      * Release the native helper to end the Audio Graph process
      */
-    @SuppressWarnings("unused")
-    private void onAudioGraphExtractProgressUpdate(int progress, boolean isVideo) {
+    void onAudioGraphExtractProgressUpdate(int progress, boolean isVideo) {
         if ((mExtractAudioWaveformProgressListener != null) && (progress > 0)) {
             mExtractAudioWaveformProgressListener.onProgress(progress);
         }
@@ -2229,7 +2281,7 @@ class MediaArtistNativeHelper {
         int err = 0;
 
         try {
-            err = nativeGenerateClip(editSettings);
+            err = mEngine.generateClip(editSettings);
         } catch (IllegalArgumentException ex) {
             Log.e(TAG, "Illegal Argument exception in load settings");
             return -1;
@@ -2239,6 +2291,9 @@ class MediaArtistNativeHelper {
         } catch (RuntimeException ex) {
             Log.e(TAG, "Runtime exception in load settings");
             return -1;
+        } finally {
+            // The engine settings were replaced by the clip settings
+            invalidatePreviewFrame();
         }
         return err;
     }
@@ -2283,7 +2338,7 @@ class MediaArtistNativeHelper {
      *
      * @return The name and path of generated clip
      */
-    String generateEffectClip(MediaItem lMediaItem, ClipSettings lclipSettings,
+    private String generateEffectClipUntraced(MediaItem lMediaItem, ClipSettings lclipSettings,
             EditSettings e,String uniqueId,int clipNo) {
         int err = 0;
         EditSettings editSettings = null;
@@ -2359,6 +2414,19 @@ class MediaArtistNativeHelper {
         }
     }
 
+    /**
+     * Trace {@link #generateEffectClipUntraced}
+     */
+    String generateEffectClip(MediaItem lMediaItem, ClipSettings lclipSettings,
+            EditSettings e,String uniqueId,int clipNo) {
+        mTraceLog.begin("generateEffectClip");
+        try {
+            return generateEffectClipUntraced(lMediaItem, lclipSettings, e, uniqueId, clipNo);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
 
     /**
      * Populates the settings for generating a Ken Burn effect clip
@@ -2369,7 +2437,7 @@ class MediaArtistNativeHelper {
      *
      * @return The name and path of generated clip
      */
-    String generateKenBurnsClip(EditSettings e, MediaImageItem m) {
+    private String generateKenBurnsClipUntraced(EditSettings e, MediaImageItem m) {
         String output = null;
         int err = 0;
         int outVideoProfile = 0;
@@ -2413,6 +2481,88 @@ class MediaArtistNativeHelper {
         return output;
     }
 
+    /**
+     * Trace {@link #generateKenBurnsClipUntraced}
+     */
+    String generateKenBurnsClip(EditSettings e, MediaImageItem m) {
+        mTraceLog.begin("generateKenBurnsClip");
+        try {
+            return generateKenBurnsClipUntraced(e, m);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    /**
+     * Generates a low resolution copy of a video media item which replaces
+     * the original file in previews. The whole file is encoded, regardless
+     * of the trim boundaries, so the proxy remains valid after trimming.
+     *
+     * @param m The media video item
+     * @param listener The progress listener
+     *
+     * @return The name and path of the generated proxy
+     */
+    private String generateProxyClipUntraced(MediaVideoItem m,
+            MediaProcessingProgressListener listener) {
+        final EditSettings e = new EditSettings();
+        final ClipSettings clipSettings = m.getVideoClipProperties();
+        clipSettings.beginCutTime = 0;
+        clipSettings.endCutTime = (int)m.getDuration();
+        clipSettings.mediaRendering = MediaRendering.RESIZING;
+        // The proxy keeps the orientation of the original frames
+        clipSettings.rotationDegree = 0;
+        e.clipSettingsArray = new ClipSettings[] {clipSettings};
+        e.backgroundMusicSettings = null;
+        e.transitionSettingsArray = null;
+        e.effectSettingsArray = null;
+
+        final String output = String.format(mProjectPath + "/" + "Proxy-" + m.getId() + ".3gp");
+        File tmpFile = new File(output);
+        if (tmpFile.exists()) {
+            tmpFile.delete();
+        }
+
+        e.videoProfile = VideoEditorProfile.getExportProfile(VideoFormat.H264);
+        e.videoLevel = VideoEditorProfile.getExportLevel(VideoFormat.H264);
+        e.outputFile = output;
+        e.audioBitrate = Bitrate.BR_64_KBPS;
+        e.audioChannels = 2;
+        e.audioFormat = AudioFormat.AAC;
+        e.audioSamplingFreq = AudioSamplingFrequency.FREQ_32000;
+
+        e.videoFormat = VideoFormat.H264;
+        e.videoFrameRate = VideoFrameRate.FR_30_FPS;
+        e.videoFrameSize = findVideoResolution(m.getAspectRatio(), MediaProperties.HEIGHT_480);
+        e.videoBitrate = findVideoBitrate(e.videoFrameSize);
+
+        mMediaProcessingProgressListener = listener;
+        mProgressToApp = 0;
+        mProcessingState  = PROCESSING_PROXY;
+        mProcessingObject = m;
+        final int err = generateClip(e);
+        // Reset the processing state and check for errors
+        mProcessingState  = PROCESSING_NONE;
+        mMediaProcessingProgressListener = null;
+        if (err != 0) {
+            new File(output).delete();
+            throw new RuntimeException("proxy generation cannot be completed");
+        }
+        return output;
+    }
+
+    /**
+     * Trace {@link #generateProxyClipUntraced}
+     */
+    String generateProxyClip(MediaVideoItem m, MediaProcessingProgressListener listener) {
+        mTraceLog.begin("generateProxyClip");
+        try {
+            return generateProxyClipUntraced(m, listener);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
 
     /**
      * Calculates the output resolution for transition clip
@@ -2473,7 +2623,7 @@ class MediaArtistNativeHelper {
      *
      * @return The name and path of generated clip
      */
-    String generateTransitionClip(EditSettings e, String uniqueId,
+    private String generateTransitionClipUntraced(EditSettings e, String uniqueId,
             MediaItem m1, MediaItem m2,Transition t) {
         String outputFilename = null;
         int err = 0;
@@ -2511,6 +2661,19 @@ class MediaArtistNativeHelper {
         return outputFilename;
     }
 
+    /**
+     * Trace {@link #generateTransitionClipUntraced}
+     */
+    String generateTransitionClip(EditSettings e, String uniqueId,
+            MediaItem m1, MediaItem m2,Transition t) {
+        mTraceLog.begin("generateTransitionClip");
+        try {
+            return generateTransitionClipUntraced(e, uniqueId, m1, m2, t);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
     /**
      * Populates effects and overlays in EffectSettings structure
      * and also adjust the start time and duration of effects and overlays
@@ -2603,7 +2766,7 @@ class MediaArtistNativeHelper {
      * @param clipPropertiesArray The clip Properties array
      * @param i The index in clip Properties array for current clip
      */
-    private void generateTransition(Transition transition, EditSettings editSettings,
+    private void generateTransitionUntraced(Transition transition, EditSettings editSettings,
             PreviewClipProperties clipPropertiesArray, int index) {
         if (!(transition.isGenerated())) {
             transition.generate();
@@ -2617,7 +2780,7 @@ class MediaArtistNativeHelper {
 
         try {
             clipPropertiesArray.clipProperties[index] =
-                getMediaProperties(transition.getFilename());
+                mEngine.getMediaProperties(transition.getFilename());
         } catch (Exception e) {
             throw new IllegalArgumentException("Unsupported file or file not found");
         }
@@ -2634,6 +2797,19 @@ class MediaArtistNativeHelper {
         }
     }
 
+    /**
+     * Trace {@link #generateTransitionUntraced}
+     */
+    private void generateTransition(Transition transition, EditSettings editSettings,
+            PreviewClipProperties clipPropertiesArray, int index) {
+        mTraceLog.begin("generateTransition");
+        try {
+            generateTransitionUntraced(transition, editSettings, clipPropertiesArray, index);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
     /**
      * Sets the volume for current media item in clip properties array
      *
@@ -2695,6 +2871,11 @@ class MediaArtistNativeHelper {
         if (m instanceof MediaVideoItem) {
             mPreviewEditSettings.clipSettingsArray[index] =
                 ((MediaVideoItem)m).getVideoClipProperties();
+            final String proxyFilename = getProxyFilename(m);
+            if (proxyFilename != null) {
+                mPreviewEditSettings.clipSettingsArray[index].clipPath = proxyFilename;
+                mPreviewEditSettings.clipSettingsArray[index].fileType = FileType.THREE_GPP;
+            }
             if (((MediaVideoItem)m).getHeight() > maxHeight) {
                 maxHeight = ((MediaVideoItem)m).getHeight();
             }
@@ -2716,13 +2897,33 @@ class MediaArtistNativeHelper {
         return maxHeight;
     }
 
+    /**
+     * @param m The media item
+     *
+     * @return The proxy which replaces the media item file in the preview,
+     *      null if the original file is used
+     */
+    private String getProxyFilename(MediaItem m) {
+        if (!(m instanceof MediaVideoItem)) {
+            return null;
+        }
+
+        final String proxyFilename = ((MediaVideoItem)m).getProxyFilename();
+        if (proxyFilename == null || !new File(proxyFilename).exists()) {
+            return null;
+        }
+
+        mPreviewHasProxies = true;
+        return mExportInProgress ? null : proxyFilename;
+    }
+
     /**
      * Populates the background music track properties
      *
      * @param mediaBGMList The background music list
      *
      */
-    private void populateBackgroundMusicProperties(List<AudioTrack> mediaBGMList) {
+    private void populateBackgroundMusicPropertiesUntraced(List<AudioTrack> mediaBGMList) {
 
         if (mediaBGMList.size() == 1) {
             mAudioTrack = mediaBGMList.get(0);
@@ -2736,7 +2937,7 @@ class MediaArtistNativeHelper {
             mAudioSettings.pFile = null;
             mAudioSettings.Id = mAudioTrack.getId();
             try {
-                mAudioProperties = getMediaProperties(mAudioTrack.getFilename());
+                mAudioProperties = mEngine.getMediaProperties(mAudioTrack.getFilename());
             } catch (Exception e) {
                throw new IllegalArgumentException("Unsupported file or file not found");
             }
@@ -2788,6 +2989,18 @@ class MediaArtistNativeHelper {
         }
     }
 
+    /**
+     * Trace {@link #populateBackgroundMusicPropertiesUntraced}
+     */
+    private void populateBackgroundMusicProperties(List<AudioTrack> mediaBGMList) {
+        mTraceLog.begin("populateBackgroundMusicProperties");
+        try {
+            populateBackgroundMusicPropertiesUntraced(mediaBGMList);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
     /**
      * Calculates all the effects in all the media items
      * in media items list
@@ -2824,13 +3037,14 @@ class MediaArtistNativeHelper {
      * @param mediaItemsList The media item list
      * @param mediaTransitionList The transitions list
      * @param mediaBGMList The background music list
+     * @param storyBoardGeneration The storyboard generation of the lists
      * @param listener The MediaProcessingProgressListener
      *
      */
-    void previewStoryBoard(List<MediaItem> mediaItemsList,
+    private void previewStoryBoardUntraced(List<MediaItem> mediaItemsList,
             List<Transition> mediaTransitionList, List<AudioTrack> mediaBGMList,
-            MediaProcessingProgressListener listener) {
-        if (mInvalidatePreviewArray) {
+            int storyBoardGeneration, MediaProcessingProgressListener listener) {
+        if (storyBoardGeneration != mPreviewArrayGeneration) {
             int previewIndex = 0;
             int totalEffects = 0;
             int storyBoardTime = 0;
@@ -2843,6 +3057,7 @@ class MediaArtistNativeHelper {
             mPreviewEditSettings = new EditSettings();
             mClipProperties = new PreviewClipProperties();
             mTotalClips = 0;
+            mPreviewHasProxies = false;
 
             mTotalClips = mediaItemsList.size();
             for (Transition transition : mediaTransitionList) {
@@ -2903,12 +3118,12 @@ class MediaArtistNativeHelper {
                             try {
                                   if(((MediaImageItem)lMediaItem).getGeneratedImageClip() != null) {
                                      mClipProperties.clipProperties[previewIndex]
-                                        = getMediaProperties(((MediaImageItem)lMediaItem).
+                                        = mEngine.getMediaProperties(((MediaImageItem)lMediaItem).
                                                              getGeneratedImageClip());
                                   }
                                   else {
                                    mClipProperties.clipProperties[previewIndex]
-                                      = getMediaProperties(((MediaImageItem)lMediaItem).
+                                      = mEngine.getMediaProperties(((MediaImageItem)lMediaItem).
                                                              getScaledImageFileName());
                                    mClipProperties.clipProperties[previewIndex].width =
                                              ((MediaImageItem)lMediaItem).getScaledWidth();
@@ -2921,7 +3136,7 @@ class MediaArtistNativeHelper {
                          } else {
                               try {
                                   mClipProperties.clipProperties[previewIndex]
-                                      = getMediaProperties(((MediaImageItem)lMediaItem).
+                                      = mEngine.getMediaProperties(((MediaImageItem)lMediaItem).
                                                                getScaledImageFileName());
                               } catch (Exception e) {
                                 throw new IllegalArgumentException("Unsupported file or file not found");
@@ -2932,9 +3147,11 @@ class MediaArtistNativeHelper {
                                         ((MediaImageItem)lMediaItem).getScaledHeight();
                         }
                     } else {
+                        final String proxyFilename = getProxyFilename(lMediaItem);
                         try {
                             mClipProperties.clipProperties[previewIndex]
-                                 = getMediaProperties(lMediaItem.getFilename());
+                                 = mEngine.getMediaProperties(proxyFilename != null ? proxyFilename
+                                         : lMediaItem.getFilename());
                             } catch (Exception e) {
                               throw new IllegalArgumentException("Unsupported file or file not found");
                           }
@@ -2980,8 +3197,9 @@ class MediaArtistNativeHelper {
                     populateBackgroundMusicProperties(mediaBGMList);
 
                     /** call to native populate settings */
+                    invalidatePreviewFrame();
                     try {
-                        nativePopulateSettings(mPreviewEditSettings, mClipProperties, mAudioSettings);
+                        mEngine.populateSettings(mPreviewEditSettings, mClipProperties, mAudioSettings);
                     } catch (IllegalArgumentException ex) {
                         Log.e(TAG, "Illegal argument exception in nativePopulateSettings");
                         throw ex;
@@ -2992,7 +3210,7 @@ class MediaArtistNativeHelper {
                         Log.e(TAG, "Runtime exception in nativePopulateSettings");
                         throw ex;
                     }
-                    mInvalidatePreviewArray = false;
+                    mPreviewArrayGeneration = storyBoardGeneration;
                     mProcessingState  = PROCESSING_NONE;
                 }
             }
@@ -3003,6 +3221,21 @@ class MediaArtistNativeHelper {
         }
     } /* END of previewStoryBoard */
 
+    /**
+     * Trace {@link #previewStoryBoardUntraced}
+     */
+    void previewStoryBoard(List<MediaItem> mediaItemsList,
+            List<Transition> mediaTransitionList, List<AudioTrack> mediaBGMList,
+            int storyBoardGeneration, MediaProcessingProgressListener listener) {
+        mTraceLog.begin("previewStoryBoard");
+        try {
+            previewStoryBoardUntraced(mediaItemsList, mediaTransitionList, mediaBGMList,
+                    storyBoardGeneration, listener);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
     /**
      * This function is responsible for starting the preview
      *
@@ -3021,7 +3254,8 @@ class MediaArtistNativeHelper {
         mIsFirstProgress = true;
         mPreviewProgressListener = listener;
 
-        if (!mInvalidatePreviewArray) {
+        if (!getGeneratePreview()) {
+            invalidatePreviewFrame();
             try {
                 /** Modify the image files names to rgb image files. */
                 for (int clipCnt = 0; clipCnt < mPreviewEditSettings.clipSettingsArray.length;
@@ -3031,8 +3265,8 @@ class MediaArtistNativeHelper {
                             mPreviewEditSettings.clipSettingsArray[clipCnt].clipDecodedPath;
                     }
                 }
-                nativePopulateSettings(mPreviewEditSettings, mClipProperties, mAudioSettings);
-                nativeStartPreview(surface, fromMs, toMs, callbackAfterFrameCount, loop);
+                mEngine.populateSettings(mPreviewEditSettings, mClipProperties, mAudioSettings);
+                mEngine.startPreview(surface, fromMs, toMs, callbackAfterFrameCount, loop);
             } catch (IllegalArgumentException ex) {
                 Log.e(TAG, "Illegal argument exception in nativeStartPreview");
                 throw ex;
@@ -3052,7 +3286,8 @@ class MediaArtistNativeHelper {
      * This function is responsible for stopping the preview
      */
     long stopPreview() {
-        return nativeStopPreview();
+        invalidatePreviewFrame();
+        return mEngine.stopPreview();
     }
 
     /**
@@ -3070,30 +3305,63 @@ class MediaArtistNativeHelper {
      */
     long renderPreviewFrame(Surface surface, long time, int surfaceWidth,
             int surfaceHeight, VideoEditor.OverlayData overlayData) {
-        if (mInvalidatePreviewArray) {
+        if (getGeneratePreview()) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "Call generate preview first");
             }
             throw new IllegalStateException("Call generate preview first");
         }
 
+        final int previewGeneration = mPreviewArrayGeneration;
+        final long bucket = time / PREVIEW_FRAME_BUCKET_MS;
+        final long nowMs = SystemClock.uptimeMillis();
+        if (surface == mPreviewFrameSurface && previewGeneration == mPreviewFrameGeneration
+                && bucket == mPreviewFrameBucket && surfaceWidth == mPreviewFrameWidth
+                && surfaceHeight == mPreviewFrameHeight
+                && nowMs - mPreviewFrameRenderedMs < PREVIEW_FRAME_REUSE_MS) {
+            // The requested frame is already on the surface
+            mPreviewFrameHits++;
+            if (mRenderPreviewOverlayFile != null) {
+                overlayData.set(BitmapFactory.decodeFile(mRenderPreviewOverlayFile),
+                        mRenderPreviewRenderingMode);
+            } else {
+                overlayData.setClear();
+            }
+            return mPreviewFrameTimeMs;
+        }
+
+        mPreviewFrameMisses++;
+        invalidatePreviewFrame();
         long timeMs = 0;
         try {
-            for (int clipCnt = 0; clipCnt < mPreviewEditSettings.clipSettingsArray.length;
-                  clipCnt++) {
-                if (mPreviewEditSettings.clipSettingsArray[clipCnt].fileType == FileType.JPG) {
-                    mPreviewEditSettings.clipSettingsArray[clipCnt].clipPath =
-                        mPreviewEditSettings.clipSettingsArray[clipCnt].clipDecodedPath;
+            if (mPopulatedGeneration != previewGeneration) {
+                for (int clipCnt = 0; clipCnt < mPreviewEditSettings.clipSettingsArray.length;
+                      clipCnt++) {
+                    if (mPreviewEditSettings.clipSettingsArray[clipCnt].fileType
+                            == FileType.JPG) {
+                        mPreviewEditSettings.clipSettingsArray[clipCnt].clipPath =
+                            mPreviewEditSettings.clipSettingsArray[clipCnt].clipDecodedPath;
+                    }
                 }
+
+                mEngine.populateSettings(mPreviewEditSettings, mClipProperties, mAudioSettings);
+                mPopulatedGeneration = previewGeneration;
             }
 
             // Reset the render preview frame params that shall be set by native.
             mRenderPreviewOverlayFile = null;
             mRenderPreviewRenderingMode = MediaRendering.RESIZING;
 
-            nativePopulateSettings(mPreviewEditSettings, mClipProperties, mAudioSettings);
-
-            timeMs = (long)nativeRenderPreviewFrame(surface, time, surfaceWidth, surfaceHeight);
+            timeMs = (long)mEngine.renderPreviewFrame(surface, time, surfaceWidth, surfaceHeight);
+            if (timeMs >= 0) {
+                mPreviewFrameSurface = surface;
+                mPreviewFrameGeneration = previewGeneration;
+                mPreviewFrameBucket = bucket;
+                mPreviewFrameWidth = surfaceWidth;
+                mPreviewFrameHeight = surfaceHeight;
+                mPreviewFrameRenderedMs = SystemClock.uptimeMillis();
+                mPreviewFrameTimeMs = timeMs;
+            }
 
             if (mRenderPreviewOverlayFile != null) {
                 overlayData.set(BitmapFactory.decodeFile(mRenderPreviewOverlayFile),
@@ -3120,6 +3388,32 @@ class MediaArtistNativeHelper {
         mRenderPreviewRenderingMode = renderingMode;
     }
 
+    /**
+     * Forget the frame shown on the preview surface and the populated native
+     * settings. Call this method when anything other than
+     * renderPreviewFrame() draws on the surface or populates the settings.
+     */
+    private void invalidatePreviewFrame() {
+        mPreviewFrameSurface = null;
+        mPreviewFrameBucket = -1;
+        mPopulatedGeneration = 0;
+    }
+
+    /**
+     * @return The number of preview frame requests answered with the frame
+     *      already on the surface
+     */
+    long getPreviewFrameHits() {
+        return mPreviewFrameHits;
+    }
+
+    /**
+     * @return The number of preview frame requests which were rendered
+     */
+    long getPreviewFrameMisses() {
+        return mPreviewFrameMisses;
+    }
+
 
     /**
      * This function is responsible for rendering a single frame
@@ -3136,9 +3430,10 @@ class MediaArtistNativeHelper {
      */
     long renderMediaItemPreviewFrame(Surface surface, String filepath,
                                             long time, int framewidth, int frameheight) {
+        invalidatePreviewFrame();
         long timeMs = 0;
         try {
-            timeMs = (long)nativeRenderMediaItemPreviewFrame(surface, filepath, framewidth,
+            timeMs = (long)mEngine.renderMediaItemPreviewFrame(surface, filepath, framewidth,
                     frameheight, 0, 0, time);
         } catch (IllegalArgumentException ex) {
             Log.e(TAG, "Illegal Argument exception in renderMediaItemPreviewFrame");
@@ -3159,17 +3454,11 @@ class MediaArtistNativeHelper {
      * and for generating the preview again
      */
     void setGeneratePreview(boolean isRequired) {
-        boolean semAcquiredDone = false;
-        try {
-            lock();
-            semAcquiredDone = true;
-            mInvalidatePreviewArray = isRequired;
-        } catch (InterruptedException ex) {
-            Log.e(TAG, "Runtime exception in renderMediaItemPreviewFrame");
-        } finally {
-            if (semAcquiredDone) {
-                unlock();
-            }
+        if (isRequired) {
+            mVideoEditor.awaitExports();
+            mStoryBoardGeneration.incrementAndGet();
+        } else {
+            mPreviewArrayGeneration = mStoryBoardGeneration.get();
         }
     }
 
@@ -3178,7 +3467,15 @@ class MediaArtistNativeHelper {
      * flag
      */
     boolean getGeneratePreview() {
-        return mInvalidatePreviewArray;
+        return mPreviewArrayGeneration != mStoryBoardGeneration.get();
+    }
+
+    /**
+     * @return The storyboard generation. It is read with the storyboard
+     *      snapshot it describes.
+     */
+    int getStoryBoardGeneration() {
+        return mStoryBoardGeneration.get();
     }
 
     /**
@@ -3610,16 +3907,32 @@ class MediaArtistNativeHelper {
      * @param mediaItemsList The media items list
      * @param mediaTransitionList The transitions list
      * @param mediaBGMList The background track list
+     * @param storyBoardGeneration The storyboard generation of the lists
      * @param listener The ExportProgressListener
      *
      */
-    void export(String filePath, String projectDir, int height, int bitrate,
+    private void exportUntraced(String filePath, String projectDir, int height, int bitrate,
             List<MediaItem> mediaItemsList, List<Transition> mediaTransitionList,
-            List<AudioTrack> mediaBGMList, ExportProgressListener listener) {
+            List<AudioTrack> mediaBGMList, int storyBoardGeneration,
+            ExportProgressListener listener) {
 
         int outBitrate = 0;
         mExportFilename = filePath;
-        previewStoryBoard(mediaItemsList, mediaTransitionList, mediaBGMList,null);
+        // The movie is exported from the original files, never from the proxies
+        if (mPreviewHasProxies) {
+            mPreviewArrayGeneration = 0;
+        }
+        mExportInProgress = true;
+        try {
+            previewStoryBoard(mediaItemsList, mediaTransitionList, mediaBGMList,
+                    storyBoardGeneration, null);
+        } finally {
+            mExportInProgress = false;
+        }
+        if (mPreviewHasProxies) {
+            // The next preview returns to the proxies
+            mPreviewArrayGeneration = 0;
+        }
         mExportProgressListener = listener;
         int outVideoProfile = 0;
         int outVideoLevel = 0;
@@ -3716,7 +4029,8 @@ class MediaArtistNativeHelper {
                 mPreviewEditSettings.clipSettingsArray[clipCnt].clipOriginalPath;
             }
         }
-        nativePopulateSettings(mPreviewEditSettings, mClipProperties, mAudioSettings);
+        invalidatePreviewFrame();
+        mEngine.populateSettings(mPreviewEditSettings, mClipProperties, mAudioSettings);
 
         int err = 0;
         try {
@@ -3743,6 +4057,34 @@ class MediaArtistNativeHelper {
         mExportProgressListener = null;
     }
 
+    /**
+     * Trace {@link #exportUntraced}
+     */
+    void export(String filePath, String projectDir, int height, int bitrate,
+            List<MediaItem> mediaItemsList, List<Transition> mediaTransitionList,
+            List<AudioTrack> mediaBGMList, int storyBoardGeneration,
+            ExportProgressListener listener) {
+        mTraceLog.begin("export");
+        try {
+            exportUntraced(filePath, projectDir, height, bitrate, mediaItemsList,
+                    mediaTransitionList, mediaBGMList, storyBoardGeneration, listener);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    /**
+     * Stop the proxy encode in progress. generateProxyClip() then fails and
+     * deletes its output file.
+     */
+    void stopProxyClip() {
+        try {
+            mEngine.stopEncoding();
+        } catch (IllegalStateException ex) {
+            Log.w(TAG, "Cannot stop the proxy encode", ex);
+        }
+    }
+
     /**
      * This methods takes care of stopping the Export process
      *
@@ -3750,7 +4092,7 @@ class MediaArtistNativeHelper {
      */
     void stop(String filename) {
         try {
-            stopEncoding();
+            mEngine.stopEncoding();
             new File(mExportFilename).delete();
         } catch (IllegalStateException ex) {
             Log.e(TAG, "Illegal state exception in unload settings");
@@ -3822,7 +4164,7 @@ class MediaArtistNativeHelper {
         final int outWidth = needToSwapWH ? height : width;
         final int outHeight = needToSwapWH ? width : height;
 
-        nativeGetPixelsList(filename, decArray, decWidth, decHeight,
+        mEngine.getPixelsList(filename, decArray, decWidth, decHeight,
                 thumbnailCount, startMs, endMs, indices,
                 new NativeGetPixelsListCallback() {
             public void onThumbnail(int index) {
@@ -3901,10 +4243,10 @@ class MediaArtistNativeHelper {
          * For Video item, generate the PCM
          */
         if (isVideo) {
-            nativeGenerateRawAudio(inFileName, tempPCMFileName);
+            mEngine.generateRawAudio(inFileName, tempPCMFileName);
         }
 
-        nativeGenerateAudioGraph(tempPCMFileName, OutAudiGraphFileName, frameDuration,
+        mEngine.generateAudioGraph(tempPCMFileName, OutAudiGraphFileName, frameDuration,
                 audioChannels, samplesCount);
 
         /**
@@ -3916,36 +4258,12 @@ class MediaArtistNativeHelper {
     }
 
     void clearPreviewSurface(Surface surface) {
-        nativeClearSurface(surface);
-    }
-
-    /**
-     * Grab the semaphore which arbitrates access to the editor
-     *
-     * @throws InterruptedException
-     */
-    private void lock() throws InterruptedException {
-        if (Log.isLoggable(TAG, Log.DEBUG)) {
-            Log.d(TAG, "lock: grabbing semaphore", new Throwable());
-        }
-        mLock.acquire();
-        if (Log.isLoggable(TAG, Log.DEBUG)) {
-            Log.d(TAG, "lock: grabbed semaphore");
-        }
-    }
-
-    /**
-     * Release the semaphore which arbitrates access to the editor
-     */
-    private void unlock() {
-        if (Log.isLoggable(TAG, Log.DEBUG)) {
-            Log.d(TAG, "unlock: releasing semaphore");
-        }
-        mLock.release();
+        invalidatePreviewFrame();
+        mEngine.clearSurface(surface);
     }
 
     /**     Native Methods        */
-    native Properties getMediaProperties(String file) throws IllegalArgumentException,
+    private native Properties getMediaProperties(String file) throws IllegalArgumentException,
             IllegalStateException, RuntimeException, Exception;
 
     /**
@@ -4031,4 +4349,98 @@ class MediaArtistNativeHelper {
     private native int nativeGenerateClip(EditSettings editSettings)
     throws IllegalArgumentException, IllegalStateException, RuntimeException;
 
+    /**
+     * The media engine implemented by the videoeditor JNI library. The native
+     * methods stay declared on the helper because the library binds them and
+     * its callbacks to this class.
+     */
+    private static final class NativeMediaEngine implements MediaEngine {
+        static {
+            System.loadLibrary("videoeditor_jni");
+        }
+
+        private final MediaArtistNativeHelper mHelper;
+
+        /**
+         * Constructor
+         *
+         * @param helper The helper which receives the callbacks
+         */
+        NativeMediaEngine(MediaArtistNativeHelper helper) {
+            mHelper = helper;
+        }
+
+        public void init(String tempPath, String libraryPath) {
+            mHelper._init(tempPath, libraryPath);
+        }
+
+        public void release() {
+            mHelper.release();
+        }
+
+        public Properties getMediaProperties(String file) throws Exception {
+            return mHelper.getMediaProperties(file);
+        }
+
+        public int getPixels(String fileName, int[] pixelArray, int width, int height,
+                long timeMs) {
+            return mHelper.nativeGetPixels(fileName, pixelArray, width, height, timeMs);
+        }
+
+        public int getPixelsList(String fileName, int[] pixelArray, int width, int height,
+                int thumbnailCount, long startTimeMs, long endTimeMs, int[] indices,
+                NativeGetPixelsListCallback callback) {
+            return mHelper.nativeGetPixelsList(fileName, pixelArray, width, height,
+                    thumbnailCount, startTimeMs, endTimeMs, indices, callback);
+        }
+
+        public void populateSettings(EditSettings editSettings,
+                PreviewClipProperties clipProperties, AudioSettings audioSettings) {
+            mHelper.nativePopulateSettings(editSettings, clipProperties, audioSettings);
+        }
+
+        public void startPreview(Surface surface, long fromMs, long toMs,
+                int callbackAfterFrameCount, boolean loop) {
+            mHelper.nativeStartPreview(surface, fromMs, toMs, callbackAfterFrameCount, loop);
+        }
+
+        public int stopPreview() {
+            return mHelper.nativeStopPreview();
+        }
+
+        public int renderPreviewFrame(Surface surface, long timeMs, int surfaceWidth,
+                int surfaceHeight) {
+            return mHelper.nativeRenderPreviewFrame(surface, timeMs, surfaceWidth,
+                    surfaceHeight);
+        }
+
+        public int renderMediaItemPreviewFrame(Surface surface, String filepath,
+                int frameWidth, int frameHeight, int surfaceWidth, int surfaceHeight,
+                long timeMs) {
+            return mHelper.nativeRenderMediaItemPreviewFrame(surface, filepath, frameWidth,
+                    frameHeight, surfaceWidth, surfaceHeight, timeMs);
+        }
+
+        public void clearSurface(Surface surface) {
+            mHelper.nativeClearSurface(surface);
+        }
+
+        public int generateClip(EditSettings editSettings) {
+            return mHelper.nativeGenerateClip(editSettings);
+        }
+
+        public void stopEncoding() {
+            mHelper.stopEncoding();
+        }
+
+        public int generateRawAudio(String inFileName, String pcmFileName) {
+            return mHelper.nativeGenerateRawAudio(inFileName, pcmFileName);
+        }
+
+        public int generateAudioGraph(String pcmFilePath, String outGraphPath,
+                int frameDuration, int channels, int sampleCount) {
+            return mHelper.nativeGenerateAudioGraph(pcmFilePath, outGraphPath, frameDuration,
+                    channels, sampleCount);
+        }
+    }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media.videoeditor;
+
+import android.media.videoeditor.MediaArtistNativeHelper.AudioSettings;
+import android.media.videoeditor.MediaArtistNativeHelper.EditSettings;
+import android.media.videoeditor.MediaArtistNativeHelper.NativeGetPixelsListCallback;
+import android.media.videoeditor.MediaArtistNativeHelper.PreviewClipProperties;
+import android.media.videoeditor.MediaArtistNativeHelper.Properties;
+import android.view.Surface;
+
+/**
+ * The media engine which reads, decodes, renders and encodes the media of a
+ * project on behalf of {@link MediaArtistNativeHelper}. The engine reports
+ * the progress of its tasks through the callbacks of the helper which created
+ * it: onProgressUpdate(), onPreviewProgressUpdate() and
+ * onAudioGraphExtractProgressUpdate().
+ * {@hide}
+ */
+interface MediaEngine {
+    /**
+     * Initialize the engine
+     *
+     * @param tempPath The path where the engine stores its temporary files
+     * @param libraryPath The path of the engine libraries
+     */
+    public void init(String tempPath, String libraryPath)
+            throws IllegalArgumentException, IllegalStateException, RuntimeException;
+
+    /**
+     * Release the engine. The engine cannot be used after this call.
+     */
+    public void release() throws IllegalStateException, RuntimeException;
+
+    /**
+     * @param file The media file name
+     *
+     * @return The properties of the media file
+     */
+    public Properties getMediaProperties(String file) throws IllegalArgumentException,
+            IllegalStateException, RuntimeException, Exception;
+
+    /**
+     * Decode a frame of a video file in ARGB8888
+     *
+     * @param fileName The video file name
+     * @param pixelArray The array that receives the pixels
+     * @param width The width of the frame
+     * @param height The height of the frame
+     * @param timeMs The time of the frame
+     *
+     * @return The actual time of the decoded frame
+     */
+    public int getPixels(String fileName, int[] pixelArray, int width, int height,
+            long timeMs);
+
+    /**
+     * Decode frames of a video file in ARGB8888. The frames are evenly spaced
+     * between the start and the end time.
+     *
+     * @param fileName The video file name
+     * @param pixelArray The array that receives the pixels of each frame
+     * @param width The width of the frames
+     * @param height The height of the frames
+     * @param thumbnailCount The number of evenly spaced frames
+     * @param startTimeMs The start time
+     * @param endTimeMs The end time
+     * @param indices The indices of the frames to decode
+     * @param callback The callback invoked after each frame is decoded
+     *
+     * @return 0 on success
+     */
+    public int getPixelsList(String fileName, int[] pixelArray, int width, int height,
+            int thumbnailCount, long startTimeMs, long endTimeMs, int[] indices,
+            NativeGetPixelsListCallback callback);
+
+    /**
+     * Set the storyboard used by the preview and the export
+     *
+     * @param editSettings The edit settings
+     * @param clipProperties The properties of the clips
+     * @param audioSettings The background music settings
+     */
+    public void populateSettings(EditSettings editSettings,
+            PreviewClipProperties clipProperties, AudioSettings audioSettings)
+            throws IllegalArgumentException, IllegalStateException, RuntimeException;
+
+    /**
+     * Start the preview of the storyboard
+     *
+     * @param surface The surface on which the preview is rendered
+     * @param fromMs The start time
+     * @param toMs The end time
+     * @param callbackAfterFrameCount The number of frames between progress
+     *      callbacks
+     * @param loop true to restart the preview when it ends
+     */
+    public void startPreview(Surface surface, long fromMs, long toMs,
+            int callbackAfterFrameCount, boolean loop) throws IllegalArgumentException,
+            IllegalStateException, RuntimeException;
+
+    /**
+     * Stop the preview
+     *
+     * @return The time of the last rendered frame
+     */
+    public int stopPreview();
+
+    /**
+     * Render a frame of the storyboard
+     *
+     * @param surface The surface on which the frame is rendered
+     * @param timeMs The time of the frame
+     * @param surfaceWidth The surface width
+     * @param surfaceHeight The surface height
+     *
+     * @return The actual time of the rendered frame
+     */
+    public int renderPreviewFrame(Surface surface, long timeMs, int surfaceWidth,
+            int surfaceHeight) throws IllegalArgumentException, IllegalStateException,
+            RuntimeException;
+
+    /**
+     * Render a frame of a single media file
+     *
+     * @param surface The surface on which the frame is rendered
+     * @param filepath The media file name
+     * @param frameWidth The frame width
+     * @param frameHeight The frame height
+     * @param surfaceWidth The surface width
+     * @param surfaceHeight The surface height
+     * @param timeMs The time of the frame
+     *
+     * @return The actual time of the rendered frame
+     */
+    public int renderMediaItemPreviewFrame(Surface surface, String filepath,
+            int frameWidth, int frameHeight, int surfaceWidth, int surfaceHeight, long timeMs)
+            throws IllegalArgumentException, IllegalStateException, RuntimeException;
+
+    /**
+     * Clear the surface
+     *
+     * @param surface The surface
+     */
+    public void clearSurface(Surface surface);
+
+    /**
+     * Generate a clip. The call blocks until the clip is generated or the
+     * encoding is stopped.
+     *
+     * @param editSettings The edit settings of the clip
+     *
+     * @return 0 on success, an error from
+     *      {@link MediaArtistNativeHelper.Result} otherwise
+     */
+    public int generateClip(EditSettings editSettings)
+            throws IllegalArgumentException, IllegalStateException, RuntimeException;
+
+    /**
+     * Stop the clip being generated
+     */
+    public void stopEncoding() throws IllegalStateException, RuntimeException;
+
+    /**
+     * Decode the audio of a media file into 16 bit PCM
+     *
+     * @param inFileName The media file name
+     * @param pcmFileName The PCM file name
+     *
+     * @return 0 on success
+     */
+    public int generateRawAudio(String inFileName, String pcmFileName);
+
+    /**
+     * Generate the audio waveform of a PCM file in the format read by
+     * {@link WaveformData}
+     *
+     * @param pcmFilePath The PCM file name
+     * @param outGraphPath The waveform file name
+     * @param frameDuration The duration of each waveform frame
+     * @param channels The number of audio channels
+     * @param sampleCount The number of samples per frame
+     *
+     * @return 0 on success
+     */
+    public int generateAudioGraph(String pcmFilePath, String outGraphPath,
+            int frameDuration, int channels, int sampleCount);
+}
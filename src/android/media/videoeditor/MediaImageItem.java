@@ -102,7 +102,7 @@ public class MediaImageItem extends MediaItem {
         mMANativeHelper = ((VideoEditorImpl)editor).getNativeContext();
         mVideoEditor = ((VideoEditorImpl)editor);
         try {
-            final Properties properties = mMANativeHelper.getMediaProperties(filename);
+            final Properties properties = mMANativeHelper.readMediaProperties(filename);
 
             switch (mMANativeHelper.getFileType(properties.fileType)) {
                 case MediaProperties.FILE_JPEG:
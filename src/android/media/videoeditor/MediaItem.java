@@ -21,7 +21,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
 import java.io.DataOutputStream;
@@ -83,12 +82,12 @@ public abstract class MediaItem {
     /**
      *  List of effects
      */
-    private final List<Effect> mEffects;
+    private final IdIndexedList<Effect> mEffects;
 
     /**
      *  List of overlays
      */
-    private final List<Overlay> mOverlays;
+    private final IdIndexedList<Overlay> mOverlays;
 
     /**
      *  The rendering mode
@@ -143,8 +142,18 @@ public abstract class MediaItem {
         mUniqueId = mediaItemId;
         mFilename = filename;
         mRenderingMode = renderingMode;
-        mEffects = new ArrayList<Effect>();
-        mOverlays = new ArrayList<Overlay>();
+        mEffects = new IdIndexedList<Effect>() {
+            @Override
+            protected String getId(Effect effect) {
+                return effect.getId();
+            }
+        };
+        mOverlays = new IdIndexedList<Overlay>() {
+            @Override
+            protected String getId(Overlay overlay) {
+                return overlay.getId();
+            }
+        };
         mBeginTransition = null;
         mEndTransition = null;
         mMANativeHelper = ((VideoEditorImpl)editor).getNativeContext();
@@ -331,30 +340,30 @@ public abstract class MediaItem {
      * @throws IllegalStateException if a preview or an export is in progress
      */
     public Effect removeEffect(String effectId) {
-        for (Effect effect : mEffects) {
-            if (effect.getId().equals(effectId)) {
-                mMANativeHelper.setGeneratePreview(true);
-
-                mEffects.remove(effect);
-
-                invalidateTransitions(effect.getStartTime(), effect.getDuration());
-                if (effect instanceof EffectKenBurns) {
-                    if (mGeneratedImageClip != null) {
-                        /**
-                         *  Delete the file
-                         */
-                        new File(mGeneratedImageClip).delete();
-                        /**
-                         *  Invalidate the filename
-                         */
-                        mGeneratedImageClip = null;
-                    }
-                    mRegenerateClip = false;
-                }
-                return effect;
+        final Effect effect = mEffects.getById(effectId);
+        if (effect == null) {
+            return null;
+        }
+
+        mMANativeHelper.setGeneratePreview(true);
+
+        mEffects.remove(effect);
+
+        invalidateTransitions(effect.getStartTime(), effect.getDuration());
+        if (effect instanceof EffectKenBurns) {
+            if (mGeneratedImageClip != null) {
+                /**
+                 *  Delete the file
+                 */
+                new File(mGeneratedImageClip).delete();
+                /**
+                 *  Invalidate the filename
+                 */
+                mGeneratedImageClip = null;
             }
+            mRegenerateClip = false;
         }
-        return null;
+        return effect;
     }
 
     /**
@@ -383,12 +392,7 @@ public abstract class MediaItem {
      * @return The effect with the specified id (null if it does not exist)
      */
     public Effect getEffect(String effectId) {
-        for (Effect effect : mEffects) {
-            if (effect.getId().equals(effectId)) {
-                return effect;
-            }
-        }
-        return null;
+        return mEffects.getById(effectId);
     }
 
     /**
@@ -495,19 +499,19 @@ public abstract class MediaItem {
      * @throws IllegalStateException if a preview or an export is in progress
      */
     public Overlay removeOverlay(String overlayId) {
-        for (Overlay overlay : mOverlays) {
-            if (overlay.getId().equals(overlayId)) {
-                mMANativeHelper.setGeneratePreview(true);
+        final Overlay overlay = mOverlays.getById(overlayId);
+        if (overlay == null) {
+            return null;
+        }
 
-                mOverlays.remove(overlay);
-                if (overlay instanceof OverlayFrame) {
-                    ((OverlayFrame)overlay).invalidate();
-                }
-                invalidateTransitions(overlay.getStartTime(), overlay.getDuration());
-                return overlay;
-            }
+        mMANativeHelper.setGeneratePreview(true);
+
+        mOverlays.remove(overlay);
+        if (overlay instanceof OverlayFrame) {
+            ((OverlayFrame)overlay).invalidate();
         }
-        return null;
+        invalidateTransitions(overlay.getStartTime(), overlay.getDuration());
+        return overlay;
     }
 
     /**
@@ -518,13 +522,7 @@ public abstract class MediaItem {
      * @return The overlay with the specified id (null if it does not exist)
      */
     public Overlay getOverlay(String overlayId) {
-        for (Overlay overlay : mOverlays) {
-            if (overlay.getId().equals(overlayId)) {
-                return overlay;
-            }
-        }
-
-        return null;
+        return mOverlays.getById(overlayId);
     }
 
     /**
@@ -23,6 +23,7 @@ import java.lang.ref.SoftReference;
 import android.graphics.Bitmap;
 import android.media.videoeditor.MediaArtistNativeHelper.ClipSettings;
 import android.media.videoeditor.MediaArtistNativeHelper.Properties;
+import android.media.videoeditor.VideoEditor.MediaProcessingProgressListener;
 import android.media.videoeditor.VideoEditorProfile;
 import android.view.Surface;
 import android.view.SurfaceHolder;
@@ -55,6 +56,7 @@ public class MediaVideoItem extends MediaItem {
     private int mVolumePercentage;
     private boolean mMuted;
     private String mAudioWaveformFilename;
+    private volatile String mProxyFilename;
     private MediaArtistNativeHelper mMANativeHelper;
     private VideoEditorImpl mVideoEditor;
     private final int mVideoRotationDegree;
@@ -116,7 +118,7 @@ public class MediaVideoItem extends MediaItem {
 
         final Properties properties;
         try {
-             properties = mMANativeHelper.getMediaProperties(filename);
+             properties = mMANativeHelper.readMediaProperties(filename);
         } catch ( Exception e) {
             throw new IllegalArgumentException(e.getMessage() + " : " + filename);
         }
@@ -300,7 +302,7 @@ public class MediaVideoItem extends MediaItem {
         }
 
         return mMANativeHelper.getPixels(
-                getFilename(), width, height, timeMs, mVideoRotationDegree);
+                getPreviewFilename(), width, height, timeMs, mVideoRotationDegree);
     }
 
     /*
@@ -331,7 +333,7 @@ public class MediaVideoItem extends MediaItem {
             height = temp;
         }
 
-        mMANativeHelper.getPixelsList(getFilename(), width, height,
+        mMANativeHelper.getPixelsList(getPreviewFilename(), width, height,
                 startMs, endMs, thumbnailCount, indices, callback,
                 mVideoRotationDegree);
     }
@@ -605,6 +607,74 @@ public class MediaVideoItem extends MediaItem {
             new File(mAudioWaveformFilename).delete();
             mAudioWaveformFilename = null;
         }
+
+        if (mProxyFilename != null) {
+            new File(mProxyFilename).delete();
+            mProxyFilename = null;
+        }
+    }
+
+    /**
+     * @return true if the file has a higher resolution than a proxy and an
+     *      aspect ratio a proxy can be encoded with
+     */
+    public boolean isProxySupported() {
+        return mAspectRatio != MediaProperties.ASPECT_RATIO_UNDEFINED
+                && mHeight > MediaProperties.HEIGHT_480;
+    }
+
+    /**
+     * Encode a low resolution proxy of the file. This method blocks until the
+     * proxy is encoded. The proxy is not used until it is set with
+     * {@link #setProxyFilename(String)}.
+     *
+     * @param listener The progress listener
+     *
+     * @return The name of the proxy file
+     *
+     * @throws IllegalStateException if the proxy is not supported for this
+     *      media item
+     */
+    public String generateProxy(MediaProcessingProgressListener listener) {
+        if (!isProxySupported()) {
+            throw new IllegalStateException("Proxy not supported for: " + getId());
+        }
+
+        return mVideoEditor.generateProxy(this, listener);
+    }
+
+    /**
+     * Set the proxy which replaces the file in previews and thumbnails. The
+     * movie is always exported from the original file.
+     *
+     * @param proxyFilename The name of the proxy file, null to use the
+     *      original file and delete the current proxy
+     */
+    public void setProxyFilename(String proxyFilename) {
+        if (mProxyFilename != null && !mProxyFilename.equals(proxyFilename)) {
+            new File(mProxyFilename).delete();
+        }
+
+        mMANativeHelper.setGeneratePreview(true);
+        mProxyFilename = proxyFilename;
+    }
+
+    /**
+     * @return The name of the proxy file, null if there is no proxy
+     */
+    public String getProxyFilename() {
+        return mProxyFilename;
+    }
+
+    /**
+     * @return The proxy if one exists, otherwise the original file
+     */
+    private String getPreviewFilename() {
+        if (mProxyFilename != null && new File(mProxyFilename).exists()) {
+            return mProxyFilename;
+        }
+
+        return getFilename();
     }
 
     /**
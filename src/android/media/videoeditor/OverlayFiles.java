@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.media.videoeditor;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+
+/**
+ * The PNG and RGB files of the overlay frames. The files are named after
+ * the overlay bitmap contents, so overlays with identical bitmaps share them;
+ * the RGB file name also holds the rendering mode and the size it was
+ * generated for. The overlays hold references on the files they use and a
+ * file is deleted when its last reference is released. {@hide}
+ */
+final class OverlayFiles {
+    /**
+     *  The overlay files held by the overlays and their number of references
+     */
+    private static final Map<String, Integer> sReferences = new HashMap<String, Integer>();
+
+    /**
+     * This class cannot be instantiated
+     */
+    private OverlayFiles() {
+    }
+
+    /**
+     * Compute the digest of the bitmap contents
+     *
+     * @param bitmap The bitmap
+     *
+     * @return The digest as a hexadecimal string
+     */
+    static String getDigest(Bitmap bitmap) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 not supported", ex);
+        }
+
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final ByteBuffer byteBuffer = ByteBuffer.allocate(Math.max(width * 4, 8));
+        byteBuffer.putInt(width);
+        byteBuffer.putInt(height);
+        digest.update(byteBuffer.array(), 0, 8);
+
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            byteBuffer.clear();
+            byteBuffer.asIntBuffer().put(row);
+            digest.update(byteBuffer.array());
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * @param path The project path
+     * @param digest The digest of the bitmap contents
+     *
+     * @return The name of the PNG file
+     */
+    static String getBitmapFilename(String path, String digest) {
+        return path + "/" + "Overlay_" + digest + ".png";
+    }
+
+    /**
+     * @param path The project path
+     * @param digest The digest of the bitmap contents
+     * @param renderingMode The rendering mode of the media item
+     * @param width The width of the RGB image
+     * @param height The height of the RGB image
+     *
+     * @return The name of the RGB file
+     */
+    static String getRgbFilename(String path, String digest, int renderingMode, int width,
+            int height) {
+        return path + "/" + "Overlay_" + digest + "_" + renderingMode + "_" + width + "x"
+                + height + ".rgb";
+    }
+
+    /**
+     * Add a reference on a file
+     *
+     * @param filename The file name
+     */
+    static synchronized void acquire(String filename) {
+        final Integer references = sReferences.get(filename);
+        sReferences.put(filename, references == null ? 1 : references + 1);
+    }
+
+    /**
+     * Release a reference on a file, the file is deleted when the last
+     * reference is released
+     *
+     * @param filename The file name
+     */
+    static synchronized void release(String filename) {
+        final Integer references = sReferences.get(filename);
+        if (references != null && references > 1) {
+            sReferences.put(filename, references - 1);
+        } else {
+            sReferences.remove(filename);
+            new File(filename).delete();
+        }
+    }
+}
@@ -45,6 +45,7 @@ public class OverlayFrame extends Overlay {
     private Bitmap mBitmap;
     private String mFilename;
     private String mBitmapFileName;
+    private String mDigest;
 
     private int mOFWidth;
     private int mOFHeight;
@@ -110,6 +111,9 @@ public class OverlayFrame extends Overlay {
                  long startTimeMs,long durationMs) {
         super(mediaItem, overlayId, startTimeMs, durationMs);
         mBitmapFileName = filename;
+        if (mBitmapFileName != null) {
+            OverlayFiles.acquire(mBitmapFileName);
+        }
         mBitmap = BitmapFactory.decodeFile(mBitmapFileName);
         mFilename = null;
         mResizedRGBWidth = 0;
@@ -144,16 +148,6 @@ public class OverlayFrame extends Overlay {
         invalidate();
 
         mBitmap = bitmap;
-        if (mFilename != null) {
-            /**
-             *  Delete the file
-             */
-            new File(mFilename).delete();
-            /**
-             *  Invalidate the filename
-             */
-            mFilename = null;
-        }
 
         /**
          *  Invalidate the transitions if necessary
@@ -172,10 +166,18 @@ public class OverlayFrame extends Overlay {
      * Set the file name of this overlay
      */
     void setFilename(String filename) {
+        if (filename != null) {
+            OverlayFiles.acquire(filename);
+        }
+
+        if (mFilename != null) {
+            OverlayFiles.release(mFilename);
+        }
         mFilename = filename;
     }
     /**
-     * Save the overlay to the project folder
+     * Save the overlay to the project folder. The files are shared with the
+     * overlays which have the same bitmap contents.
      *
      * @param path The path where the overlay will be saved
      *
@@ -188,20 +190,33 @@ public class OverlayFrame extends Overlay {
             return mFilename;
         }
 
+        if (mDigest == null) {
+            mDigest = OverlayFiles.getDigest(mBitmap);
+        }
+
         // Create the compressed PNG file
-        mBitmapFileName = path + "/" + "Overlay" + getId() + ".png";
+        final String bitmapFileName = OverlayFiles.getBitmapFilename(path, mDigest);
+        if (!bitmapFileName.equals(mBitmapFileName)) {
+            OverlayFiles.acquire(bitmapFileName);
+            if (mBitmapFileName != null) {
+                OverlayFiles.release(mBitmapFileName);
+            }
+            mBitmapFileName = bitmapFileName;
+        }
+
         if (!(new File(mBitmapFileName).exists())) {
-            final FileOutputStream out = new FileOutputStream (mBitmapFileName);
+            // Write a temporary file first, a shared file must be complete
+            final File tmpFile = new File(mBitmapFileName + ".tmp");
+            final FileOutputStream out = new FileOutputStream (tmpFile);
             mBitmap.compress(CompressFormat.PNG, 100, out);
             out.flush();
             out.close();
+            tmpFile.renameTo(new File(mBitmapFileName));
         }
 
         mOFWidth = mBitmap.getWidth();
         mOFHeight = mBitmap.getHeight();
 
-        mFilename = path + "/" + "Overlay" + getId() + ".rgb";
-
         /* resize and save rgb as per project aspect ratio */
         MediaArtistNativeHelper nativeHelper = (super.getMediaItem()).getNativeContext();
 
@@ -213,6 +228,13 @@ public class OverlayFrame extends Overlay {
         // Get the highest resolution
         maxResolution = resolutions[resolutions.length - 1];
 
+        setFilename(OverlayFiles.getRgbFilename(path, mDigest,
+                getMediaItem().getRenderingMode(), maxResolution.first, maxResolution.second));
+        if (new File(mFilename).exists()) {
+            /* Generated for an overlay with the same contents */
+            setResizedRGBSize(maxResolution.first, maxResolution.second);
+        }
+
         /* Generate the rgb file with rendering mode */
         generateOverlayWithRenderingMode (super.getMediaItem(), this,
                 maxResolution.second /* max Height */ ,
@@ -280,16 +302,9 @@ public class OverlayFrame extends Overlay {
             mBitmap.recycle();
             mBitmap = null;
         }
+        mDigest = null;
 
-        if (mFilename != null) {
-            new File(mFilename).delete();
-            mFilename = null;
-        }
-
-        if (mBitmapFileName != null) {
-            new File(mBitmapFileName).delete();
-            mBitmapFileName = null;
-        }
+        invalidateGeneratedFiles();
     }
 
      /**
@@ -297,12 +312,12 @@ public class OverlayFrame extends Overlay {
      */
     void invalidateGeneratedFiles() {
         if (mFilename != null) {
-            new File(mFilename).delete();
+            OverlayFiles.release(mFilename);
             mFilename = null;
         }
 
         if (mBitmapFileName != null) {
-            new File(mBitmapFileName).delete();
+            OverlayFiles.release(mBitmapFileName);
             mBitmapFileName = null;
         }
     }
@@ -428,13 +443,11 @@ public class OverlayFrame extends Overlay {
             String outFileName = ((OverlayFrame)overlay).getFilename();
 
             /*
-             * Save the image to same rgb file
+             * Save the image to a temporary file, renamed to the rgb file
+             * once complete since the rgb file may be shared
              */
-            if (outFileName != null) {
-                new File(outFileName).delete();
-            }
-
-            final FileOutputStream fl = new FileOutputStream(outFileName);
+            final File tmpFile = new File(outFileName + ".tmp");
+            final FileOutputStream fl = new FileOutputStream(tmpFile);
             final DataOutputStream dos = new DataOutputStream(fl);
 
             /*
@@ -455,6 +468,8 @@ public class OverlayFrame extends Overlay {
             }
             fl.flush();
             fl.close();
+            new File(outFileName).delete();
+            tmpFile.renameTo(new File(outFileName));
 
             /*
              * Set the resized RGB width and height
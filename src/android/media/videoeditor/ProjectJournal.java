@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media.videoeditor;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import android.util.Log;
+
+/**
+ * An append-only journal of {@link ProjectRecords} written on top of a
+ * project snapshot. Each save appends one batch holding only the records of
+ * the elements which changed since the previous save. The journal header
+ * holds the generation of the snapshot it applies to, so a journal left
+ * behind by an older snapshot is never replayed. The checksum of a batch
+ * covers all its records, so a save torn by a crash is discarded as a whole
+ * and replay never applies part of a save. The journal of the previous
+ * snapshot is kept with it to recover a project whose snapshot is corrupt.
+ * {@hide}
+ */
+final class ProjectJournal {
+    /**
+     *  Logging
+     */
+    private static final String TAG = "ProjectJournal";
+
+    /**
+     *  The journal file name
+     */
+    static final String JOURNAL_FILENAME = "videoeditor.journal";
+    static final String PREVIOUS_JOURNAL_FILENAME = "videoeditor.journal.1";
+
+    /**
+     *  The journal file header
+     */
+    private static final int JOURNAL_MAGIC = 0x56454a32;
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     *  The journal is compacted into a new snapshot when it is larger than
+     *  both this size and twice the size of the project records
+     */
+    private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+    private static final int COMPACTION_RATIO = 2;
+
+    /**
+     *  Instance variables
+     */
+    private final File mFile;
+    private final Map<String, byte[]> mRecords = new HashMap<String, byte[]>();
+    private long mGeneration;
+    private long mLength;
+
+    /**
+     * Constructor
+     *
+     * @param projectPath The project path
+     */
+    ProjectJournal(String projectPath) {
+        mFile = new File(projectPath, JOURNAL_FILENAME);
+    }
+
+    /**
+     * Read the records appended after the snapshot of the specified
+     * generation. A journal which belongs to another snapshot is deleted.
+     * A torn or corrupt tail is truncated so that new records are appended
+     * after the last valid one.
+     *
+     * @param generation The generation of the loaded snapshot
+     *
+     * @return The records in the order they were appended
+     */
+    List<byte[]> read(long generation) throws IOException {
+        mGeneration = generation;
+        mLength = 0;
+        final List<byte[]> records = new ArrayList<byte[]>();
+        if (!mFile.exists()) {
+            return records;
+        }
+
+        final long fileLength = mFile.length();
+        final long validLength = scan(mFile, generation, records);
+        if (validLength < 0) {
+            Log.w(TAG, "Discarding journal of another snapshot");
+            mFile.delete();
+            return records;
+        }
+
+        if (validLength < fileLength) {
+            Log.w(TAG, "Discarding " + (fileLength - validLength) + " bytes of torn journal");
+            final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+            try {
+                file.setLength(validLength);
+            } finally {
+                file.close();
+            }
+        }
+
+        mLength = validLength;
+        return records;
+    }
+
+    /**
+     * Read the records appended after the snapshot of the specified
+     * generation without modifying the journal, which may be in use by an
+     * open project
+     *
+     * @param projectPath The project path
+     * @param generation The generation of the snapshot
+     *
+     * @return The valid records in the order they were appended
+     */
+    static List<byte[]> peek(String projectPath, long generation) throws IOException {
+        return peek(new File(projectPath, JOURNAL_FILENAME), generation);
+    }
+
+    /**
+     * Read the records appended after the previous snapshot, kept when the
+     * current snapshot replaced it
+     *
+     * @param projectPath The project path
+     * @param generation The generation of the previous snapshot
+     *
+     * @return The valid records in the order they were appended
+     */
+    static List<byte[]> peekPrevious(String projectPath, long generation) throws IOException {
+        return peek(new File(projectPath, PREVIOUS_JOURNAL_FILENAME), generation);
+    }
+
+    /**
+     * @param file The journal file
+     * @param generation The generation of the snapshot
+     *
+     * @return The valid records in the order they were appended
+     */
+    private static List<byte[]> peek(File file, long generation) throws IOException {
+        final List<byte[]> records = new ArrayList<byte[]>();
+        if (file.exists()) {
+            scan(file, generation, records);
+        }
+        return records;
+    }
+
+    /**
+     * Read the valid records of a journal file
+     *
+     * @param file The journal file
+     * @param generation The generation of the snapshot
+     * @param records The list to which the records are added
+     *
+     * @return The length of the valid part of the file, -1 if the journal
+     *      belongs to another snapshot
+     */
+    private static long scan(File file, long generation, List<byte[]> records)
+            throws IOException {
+        final long fileLength = file.length();
+        long validLength = 0;
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (fileLength < HEADER_SIZE || in.readInt() != JOURNAL_MAGIC
+                    || in.readLong() != generation) {
+                return -1;
+            }
+
+            validLength = HEADER_SIZE;
+            final CRC32 crc = new CRC32();
+            while (validLength < fileLength) {
+                final int length = in.readInt();
+                final int checksum = in.readInt();
+                if (length <= 0 || length > fileLength - validLength - 8) {
+                    break;
+                }
+
+                final byte[] batch = new byte[length];
+                in.readFully(batch);
+                crc.reset();
+                crc.update(batch);
+                if ((int)crc.getValue() != checksum || !readBatch(batch, records)) {
+                    break;
+                }
+
+                validLength += 8 + length;
+            }
+        } catch (EOFException ex) {
+            // The last record is incomplete
+        } finally {
+            in.close();
+        }
+
+        return validLength;
+    }
+
+    /**
+     * Read the records of a batch
+     *
+     * @param batch The batch of one save
+     * @param records The list to which the records are added
+     *
+     * @return false if the batch is malformed, in which case no record is
+     *      added
+     */
+    private static boolean readBatch(byte[] batch, List<byte[]> records) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(batch));
+        final int count = in.readInt();
+        final List<byte[]> batchRecords = new ArrayList<byte[]>(Math.max(count, 0));
+        int remaining = batch.length - 4;
+        for (int i = 0; i < count; i++) {
+            final int length = remaining >= 4 ? in.readInt() : -1;
+            if (length <= 0 || length > remaining - 4) {
+                return false;
+            }
+
+            final byte[] record = new byte[length];
+            in.readFully(record);
+            batchRecords.add(record);
+            remaining -= 4 + length;
+        }
+
+        if (count <= 0 || remaining != 0) {
+            return false;
+        }
+
+        records.addAll(batchRecords);
+        return true;
+    }
+
+    /**
+     * Remember the records as the state currently described on disk
+     *
+     * @param records The records of all the project elements. Removal
+     *      records are ignored.
+     */
+    void setBaseline(Collection<byte[]> records) {
+        mRecords.clear();
+        for (byte[] record : records) {
+            if (ProjectRecords.getType(record) != ProjectRecords.TYPE_REMOVED) {
+                mRecords.put(ProjectRecords.getKey(record), record);
+            }
+        }
+    }
+
+    /**
+     * @param records The records of all the project elements
+     *
+     * @return true if the journal should be compacted into a new snapshot
+     */
+    boolean needsCompaction(List<byte[]> records) {
+        long stateBytes = 0;
+        for (byte[] record : records) {
+            stateBytes += record.length;
+        }
+
+        return mLength > Math.max(MIN_COMPACTION_BYTES, COMPACTION_RATIO * stateBytes);
+    }
+
+    /**
+     * Append the records of the elements which changed since the previous
+     * save, preceded by removal records for the elements which no longer
+     * exist, as a single batch. The journal is synced to the storage before
+     * returning.
+     *
+     * @param records The records of all the project elements
+     *
+     * @return The number of records appended
+     */
+    int append(List<byte[]> records) throws IOException {
+        final List<byte[]> changed = new ArrayList<byte[]>();
+        final Map<String, byte[]> current = new HashMap<String, byte[]>();
+        for (byte[] record : records) {
+            final String key = ProjectRecords.getKey(record);
+            current.put(key, record);
+            if (!Arrays.equals(mRecords.get(key), record)) {
+                changed.add(record);
+            }
+        }
+
+        final Set<String> removedKeys = new HashSet<String>(mRecords.keySet());
+        removedKeys.removeAll(current.keySet());
+        // Removals are replayed first, before the elements which replace them
+        for (String key : removedKeys) {
+            changed.add(0, ProjectRecords.removed(key));
+        }
+
+        if (changed.size() == 0) {
+            return 0;
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        if (mLength == 0) {
+            writeHeader(out);
+        }
+
+        final ByteArrayOutputStream batchBytes = new ByteArrayOutputStream();
+        final DataOutputStream batchOut = new DataOutputStream(batchBytes);
+        batchOut.writeInt(changed.size());
+        for (byte[] record : changed) {
+            batchOut.writeInt(record.length);
+            batchOut.write(record);
+        }
+
+        final byte[] batch = batchBytes.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(batch);
+        out.writeInt(batch.length);
+        out.writeInt((int)crc.getValue());
+        out.write(batch);
+
+        write(bytes.toByteArray(), mLength > 0);
+
+        mRecords.clear();
+        mRecords.putAll(current);
+        return changed.size();
+    }
+
+    /**
+     * Start an empty journal after a new snapshot was written
+     *
+     * @param generation The generation of the new snapshot
+     * @param records The records of all the project elements
+     * @param keepPrevious true to keep the journal being replaced with the
+     *      snapshot it applies to
+     */
+    void reset(long generation, List<byte[]> records, boolean keepPrevious) throws IOException {
+        if (keepPrevious && mFile.exists()) {
+            mFile.renameTo(new File(mFile.getParentFile(), PREVIOUS_JOURNAL_FILENAME));
+        }
+
+        mGeneration = generation;
+        mLength = 0;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeHeader(new DataOutputStream(bytes));
+        write(bytes.toByteArray(), false);
+        setBaseline(records);
+    }
+
+    /**
+     * Write the journal header
+     */
+    private void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(JOURNAL_MAGIC);
+        out.writeLong(mGeneration);
+    }
+
+    /**
+     * Write to the journal file and sync it to the storage
+     *
+     * @param data The data
+     * @param append true to append, false to replace the journal
+     */
+    private void write(byte[] data, boolean append) throws IOException {
+        final FileOutputStream out = new FileOutputStream(mFile, append);
+        try {
+            out.write(data);
+            out.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        mLength = (append ? mLength : 0) + data.length;
+    }
+}
@@ -0,0 +1,687 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media.videoeditor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.graphics.Rect;
+
+/**
+ * Compact binary records describing the elements of a project. A record
+ * fully describes one element (a media item with its overlays and effects,
+ * a transition, an audio track, the project attributes or the order of the
+ * media items and audio tracks), so the latest record of an element
+ * supersedes all the previous ones. {@hide}
+ */
+final class ProjectRecords {
+    /**
+     *  Record types
+     */
+    static final int TYPE_PROJECT = 1;
+    static final int TYPE_MEDIA_ITEM = 2;
+    static final int TYPE_TRANSITION = 3;
+    static final int TYPE_AUDIO_TRACK = 4;
+    static final int TYPE_MEDIA_ITEM_ORDER = 5;
+    static final int TYPE_AUDIO_TRACK_ORDER = 6;
+    static final int TYPE_REMOVED = 7;
+
+    /**
+     *  Element kinds
+     */
+    private static final int MEDIA_ITEM_IMAGE = 1;
+    private static final int MEDIA_ITEM_VIDEO = 2;
+    private static final int OVERLAY_FRAME = 1;
+    private static final int EFFECT_COLOR = 1;
+    private static final int EFFECT_KEN_BURNS = 2;
+    private static final int TRANSITION_ALPHA = 1;
+    private static final int TRANSITION_CROSSFADE = 2;
+    private static final int TRANSITION_SLIDING = 3;
+    private static final int TRANSITION_FADE_BLACK = 4;
+
+    /**
+     * It is not possible to instantiate this class
+     */
+    private ProjectRecords() {
+    }
+
+    /**
+     * @param type The record type
+     * @param id The element id, or null for the project wide records
+     *
+     * @return The key of the element described by records of this type
+     */
+    static String getKey(int type, String id) {
+        return id != null ? type + ":" + id : Integer.toString(type);
+    }
+
+    /**
+     * @param key The element key
+     *
+     * @return The type of the records describing the element
+     */
+    static int getKeyType(String key) {
+        final int separator = key.indexOf(':');
+        return Integer.parseInt(separator >= 0 ? key.substring(0, separator) : key);
+    }
+
+    /**
+     * @param key The element key
+     *
+     * @return The element id, or null for the project wide records
+     */
+    static String getKeyId(String key) {
+        final int separator = key.indexOf(':');
+        return separator >= 0 ? key.substring(separator + 1) : null;
+    }
+
+    /**
+     * @param record The record
+     *
+     * @return The record type
+     */
+    static int getType(byte[] record) {
+        return record[0];
+    }
+
+    /**
+     * @param record The record
+     *
+     * @return The {@link ProjectSnapshot} section holding the record
+     */
+    static int getSection(byte[] record) {
+        switch (getType(record)) {
+            case TYPE_MEDIA_ITEM:
+            case TYPE_MEDIA_ITEM_ORDER: {
+                return ProjectSnapshot.SECTION_MEDIA_ITEMS;
+            }
+
+            case TYPE_TRANSITION: {
+                return ProjectSnapshot.SECTION_TRANSITIONS;
+            }
+
+            case TYPE_AUDIO_TRACK:
+            case TYPE_AUDIO_TRACK_ORDER: {
+                return ProjectSnapshot.SECTION_AUDIO_TRACKS;
+            }
+
+            default: {
+                return ProjectSnapshot.SECTION_PROJECT;
+            }
+        }
+    }
+
+    /**
+     * @param records The records
+     *
+     * @return The records grouped by {@link ProjectSnapshot} section
+     */
+    static List<List<byte[]>> groupBySection(List<byte[]> records) {
+        final List<List<byte[]>> sections = new ArrayList<List<byte[]>>();
+        for (int section = 0; section < ProjectSnapshot.SECTION_COUNT; section++) {
+            sections.add(new ArrayList<byte[]>());
+        }
+
+        for (byte[] record : records) {
+            sections.get(getSection(record)).add(record);
+        }
+        return sections;
+    }
+
+    /**
+     * @param record The record
+     *
+     * @return The key of the element described by the record. The key of a
+     *      removal record is the key of the removed element.
+     */
+    static String getKey(byte[] record) throws IOException {
+        final DataInputStream in = open(record);
+        final int type = getType(record);
+        switch (type) {
+            case TYPE_MEDIA_ITEM:
+            case TYPE_TRANSITION:
+            case TYPE_AUDIO_TRACK: {
+                in.readByte();
+                return getKey(type, in.readUTF());
+            }
+
+            case TYPE_REMOVED: {
+                return in.readUTF();
+            }
+
+            default: {
+                return getKey(type, null);
+            }
+        }
+    }
+
+    /**
+     * @param aspectRatio The project aspect ratio
+     * @param regeneratePCM true if the audio PCM file must be regenerated
+     *
+     * @return The project attributes record
+     */
+    static byte[] project(int aspectRatio, boolean regeneratePCM) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_PROJECT);
+        out.writeInt(aspectRatio);
+        out.writeBoolean(regeneratePCM);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param record The project attributes record
+     *
+     * @return The project aspect ratio
+     */
+    static int readAspectRatio(byte[] record) throws IOException {
+        return open(record).readInt();
+    }
+
+    /**
+     * @param record The project attributes record
+     *
+     * @return true if the audio PCM file must be regenerated
+     */
+    static boolean readRegeneratePCM(byte[] record) throws IOException {
+        final DataInputStream in = open(record);
+        in.readInt();
+        return in.readBoolean();
+    }
+
+    /**
+     * @param key The key of the removed element
+     *
+     * @return The removal record
+     */
+    static byte[] removed(String key) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_REMOVED);
+        out.writeUTF(key);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param mediaItems The media items
+     *
+     * @return The record holding the order of the media items
+     */
+    static byte[] mediaItemOrder(List<MediaItem> mediaItems) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_MEDIA_ITEM_ORDER);
+        out.writeInt(mediaItems.size());
+        for (MediaItem mediaItem : mediaItems) {
+            out.writeUTF(mediaItem.getId());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param audioTracks The audio tracks
+     *
+     * @return The record holding the order of the audio tracks
+     */
+    static byte[] audioTrackOrder(List<AudioTrack> audioTracks) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_AUDIO_TRACK_ORDER);
+        out.writeInt(audioTracks.size());
+        for (AudioTrack audioTrack : audioTracks) {
+            out.writeUTF(audioTrack.getId());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param record A media item or audio track order record
+     *
+     * @return The ids in order
+     */
+    static List<String> readOrder(byte[] record) throws IOException {
+        final DataInputStream in = open(record);
+        final int count = in.readInt();
+        final List<String> ids = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(in.readUTF());
+        }
+        return ids;
+    }
+
+    /**
+     * @param mediaItem The media item
+     *
+     * @return The record describing the media item, its overlays and effects
+     */
+    static byte[] mediaItem(MediaItem mediaItem) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_MEDIA_ITEM);
+        if (mediaItem instanceof MediaVideoItem) {
+            final MediaVideoItem mvi = (MediaVideoItem)mediaItem;
+            out.writeByte(MEDIA_ITEM_VIDEO);
+            out.writeUTF(mediaItem.getId());
+            out.writeUTF(mediaItem.getFilename());
+            out.writeInt(mediaItem.getRenderingMode());
+            out.writeLong(mvi.getBoundaryBeginTime());
+            out.writeLong(mvi.getBoundaryEndTime());
+            out.writeInt(mvi.getVolume());
+            out.writeBoolean(mvi.isMuted());
+            writeString(out, mvi.getAudioWaveformFilename());
+        } else if (mediaItem instanceof MediaImageItem) {
+            out.writeByte(MEDIA_ITEM_IMAGE);
+            out.writeUTF(mediaItem.getId());
+            out.writeUTF(mediaItem.getFilename());
+            out.writeInt(mediaItem.getRenderingMode());
+            out.writeLong(mediaItem.getTimelineDuration());
+        } else {
+            throw new IllegalArgumentException("Unknown media item type: "
+                    + mediaItem.getClass().getSimpleName());
+        }
+
+        final List<Overlay> overlays = mediaItem.getAllOverlays();
+        out.writeInt(overlays.size());
+        for (Overlay overlay : overlays) {
+            final OverlayFrame overlayFrame = (OverlayFrame)overlay;
+            out.writeByte(OVERLAY_FRAME);
+            out.writeUTF(overlay.getId());
+            out.writeLong(overlay.getStartTime());
+            out.writeLong(overlay.getDuration());
+            writeString(out, overlayFrame.getBitmapImageFileName());
+            writeString(out, overlayFrame.getFilename());
+            if (overlayFrame.getFilename() != null) {
+                out.writeInt(overlayFrame.getOverlayFrameWidth());
+                out.writeInt(overlayFrame.getOverlayFrameHeight());
+                out.writeInt(overlayFrame.getResizedRGBSizeWidth());
+                out.writeInt(overlayFrame.getResizedRGBSizeHeight());
+            }
+
+            // Sorted by name so an unchanged overlay always gives the same record
+            final Map<String, String> userAttributes =
+                    new TreeMap<String, String>(overlay.getUserAttributes());
+            int count = 0;
+            for (String value : userAttributes.values()) {
+                if (value != null) {
+                    count++;
+                }
+            }
+            out.writeInt(count);
+            for (Map.Entry<String, String> attribute : userAttributes.entrySet()) {
+                if (attribute.getValue() != null) {
+                    out.writeUTF(attribute.getKey());
+                    out.writeUTF(attribute.getValue());
+                }
+            }
+        }
+
+        final List<Effect> effects = mediaItem.getAllEffects();
+        out.writeInt(effects.size());
+        for (Effect effect : effects) {
+            if (effect instanceof EffectColor) {
+                final EffectColor colorEffect = (EffectColor)effect;
+                out.writeByte(EFFECT_COLOR);
+                out.writeUTF(effect.getId());
+                out.writeLong(effect.getStartTime());
+                out.writeLong(effect.getDuration());
+                out.writeInt(colorEffect.getType());
+                if (colorEffect.getType() == EffectColor.TYPE_COLOR
+                        || colorEffect.getType() == EffectColor.TYPE_GRADIENT) {
+                    out.writeInt(colorEffect.getColor());
+                } else {
+                    out.writeInt(0);
+                }
+            } else if (effect instanceof EffectKenBurns) {
+                final EffectKenBurns kenBurns = (EffectKenBurns)effect;
+                out.writeByte(EFFECT_KEN_BURNS);
+                out.writeUTF(effect.getId());
+                out.writeLong(effect.getStartTime());
+                out.writeLong(effect.getDuration());
+                writeRect(out, kenBurns.getStartRect());
+                writeRect(out, kenBurns.getEndRect());
+                writeString(out, ((MediaImageItem)mediaItem).getGeneratedImageClip());
+            } else {
+                throw new IllegalArgumentException("Invalid effect type: "
+                        + effect.getClass().getSimpleName());
+            }
+        }
+
+        // Attributes added after the first version of the format are
+        // appended, records without them remain readable
+        if (mediaItem instanceof MediaVideoItem) {
+            writeString(out, ((MediaVideoItem)mediaItem).getProxyFilename());
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param record The media item record
+     * @param editor The video editor
+     *
+     * @return A new media item with its overlays and effects
+     */
+    static MediaItem readMediaItem(byte[] record, VideoEditorImpl editor) throws IOException {
+        final DataInputStream in = open(record);
+        final int kind = in.readByte();
+        final String mediaItemId = in.readUTF();
+        final String filename = in.readUTF();
+        final int renderingMode = in.readInt();
+        final MediaItem mediaItem;
+        if (kind == MEDIA_ITEM_VIDEO) {
+            final long beginMs = in.readLong();
+            final long endMs = in.readLong();
+            final int volume = in.readInt();
+            final boolean muted = in.readBoolean();
+            final String audioWaveformFilename = readString(in);
+            mediaItem = new MediaVideoItem(editor, mediaItemId, filename, renderingMode,
+                    beginMs, endMs, volume, muted, audioWaveformFilename);
+            ((MediaVideoItem)mediaItem).setExtractBoundaries(beginMs, endMs);
+            ((MediaVideoItem)mediaItem).setVolume(volume);
+        } else if (kind == MEDIA_ITEM_IMAGE) {
+            final long durationMs = in.readLong();
+            mediaItem = new MediaImageItem(editor, mediaItemId, filename, durationMs,
+                    renderingMode);
+        } else {
+            throw new IllegalArgumentException("Unknown media item type: " + kind);
+        }
+
+        final int overlaysCount = in.readInt();
+        for (int i = 0; i < overlaysCount; i++) {
+            if (in.readByte() != OVERLAY_FRAME) {
+                throw new IllegalArgumentException("Invalid overlay type");
+            }
+
+            final String overlayId = in.readUTF();
+            final long startTimeMs = in.readLong();
+            final long durationMs = in.readLong();
+            final OverlayFrame overlay = new OverlayFrame(mediaItem, overlayId, readString(in),
+                    startTimeMs, durationMs);
+            final String overlayRgbFileName = readString(in);
+            if (overlayRgbFileName != null) {
+                overlay.setFilename(overlayRgbFileName);
+                overlay.setOverlayFrameWidth(in.readInt());
+                overlay.setOverlayFrameHeight(in.readInt());
+                final int resizedRGBFrameWidth = in.readInt();
+                final int resizedRGBFrameHeight = in.readInt();
+                overlay.setResizedRGBSize(resizedRGBFrameWidth, resizedRGBFrameHeight);
+            }
+
+            final int attributesCount = in.readInt();
+            for (int j = 0; j < attributesCount; j++) {
+                final String name = in.readUTF();
+                overlay.setUserAttribute(name, in.readUTF());
+            }
+            mediaItem.addOverlay(overlay);
+        }
+
+        final int effectsCount = in.readInt();
+        for (int i = 0; i < effectsCount; i++) {
+            final int effectKind = in.readByte();
+            final String effectId = in.readUTF();
+            final long startTimeMs = in.readLong();
+            final long durationMs = in.readLong();
+            if (effectKind == EFFECT_COLOR) {
+                final int colorEffectType = in.readInt();
+                final int color = in.readInt();
+                mediaItem.addEffect(new EffectColor(mediaItem, effectId, startTimeMs,
+                        durationMs, colorEffectType, color));
+            } else if (effectKind == EFFECT_KEN_BURNS) {
+                final Rect startRect = readRect(in);
+                final Rect endRect = readRect(in);
+                mediaItem.addEffect(new EffectKenBurns(mediaItem, effectId, startRect, endRect,
+                        startTimeMs, durationMs));
+
+                final String generatedImageClip = readString(in);
+                final MediaImageItem imageItem = (MediaImageItem)mediaItem;
+                if (generatedImageClip != null && new File(generatedImageClip).exists()) {
+                    imageItem.setGeneratedImageClip(generatedImageClip);
+                    imageItem.setRegenerateClip(false);
+                } else {
+                    imageItem.setGeneratedImageClip(null);
+                    imageItem.setRegenerateClip(true);
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid effect type: " + effectKind);
+            }
+        }
+
+        if (kind == MEDIA_ITEM_VIDEO && in.available() > 0) {
+            final String proxyFilename = readString(in);
+            if (proxyFilename != null && new File(proxyFilename).exists()) {
+                ((MediaVideoItem)mediaItem).setProxyFilename(proxyFilename);
+            }
+        }
+
+        return mediaItem;
+    }
+
+    /**
+     * @param transition The transition
+     *
+     * @return The record describing the transition
+     */
+    static byte[] transition(Transition transition) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_TRANSITION);
+        if (transition instanceof TransitionAlpha) {
+            out.writeByte(TRANSITION_ALPHA);
+        } else if (transition instanceof TransitionCrossfade) {
+            out.writeByte(TRANSITION_CROSSFADE);
+        } else if (transition instanceof TransitionSliding) {
+            out.writeByte(TRANSITION_SLIDING);
+        } else if (transition instanceof TransitionFadeBlack) {
+            out.writeByte(TRANSITION_FADE_BLACK);
+        } else {
+            throw new IllegalArgumentException("Invalid transition type: "
+                    + transition.getClass().getSimpleName());
+        }
+        out.writeUTF(transition.getId());
+        out.writeLong(transition.getDuration());
+        out.writeInt(transition.getBehavior());
+        writeString(out, transition.isGenerated() ? transition.getFilename() : null);
+
+        final MediaItem afterMediaItem = transition.getAfterMediaItem();
+        writeString(out, afterMediaItem != null ? afterMediaItem.getId() : null);
+        final MediaItem beforeMediaItem = transition.getBeforeMediaItem();
+        writeString(out, beforeMediaItem != null ? beforeMediaItem.getId() : null);
+
+        if (transition instanceof TransitionSliding) {
+            out.writeInt(((TransitionSliding)transition).getDirection());
+        } else if (transition instanceof TransitionAlpha) {
+            final TransitionAlpha ta = (TransitionAlpha)transition;
+            out.writeInt(ta.getBlendingPercent());
+            out.writeBoolean(ta.isInvert());
+            writeString(out, ta.getMaskFilename());
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param record The transition record
+     * @param editor The video editor holding the bounding media items
+     *
+     * @return A new transition, or null if a bounding media item no longer
+     *      exists. The media items are not linked to the transition.
+     */
+    static Transition readTransition(byte[] record, VideoEditorImpl editor) throws IOException {
+        final DataInputStream in = open(record);
+        final int kind = in.readByte();
+        final String transitionId = in.readUTF();
+        final long durationMs = in.readLong();
+        final int behavior = in.readInt();
+        final String transitionFile = readString(in);
+
+        final String afterMediaItemId = readString(in);
+        final MediaItem afterMediaItem;
+        if (afterMediaItemId != null) {
+            afterMediaItem = editor.findMediaItem(afterMediaItemId);
+            if (afterMediaItem == null) {
+                return null;
+            }
+        } else {
+            afterMediaItem = null;
+        }
+
+        final String beforeMediaItemId = readString(in);
+        final MediaItem beforeMediaItem;
+        if (beforeMediaItemId != null) {
+            beforeMediaItem = editor.findMediaItem(beforeMediaItemId);
+            if (beforeMediaItem == null) {
+                return null;
+            }
+        } else {
+            beforeMediaItem = null;
+        }
+
+        final Transition transition;
+        switch (kind) {
+            case TRANSITION_ALPHA: {
+                final int blending = in.readInt();
+                final boolean invert = in.readBoolean();
+                final String maskFilename = readString(in);
+                transition = new TransitionAlpha(transitionId, afterMediaItem, beforeMediaItem,
+                        durationMs, behavior, maskFilename, blending, invert);
+                break;
+            }
+
+            case TRANSITION_CROSSFADE: {
+                transition = new TransitionCrossfade(transitionId, afterMediaItem,
+                        beforeMediaItem, durationMs, behavior);
+                break;
+            }
+
+            case TRANSITION_SLIDING: {
+                final int direction = in.readInt();
+                transition = new TransitionSliding(transitionId, afterMediaItem, beforeMediaItem,
+                        durationMs, behavior, direction);
+                break;
+            }
+
+            case TRANSITION_FADE_BLACK: {
+                transition = new TransitionFadeBlack(transitionId, afterMediaItem,
+                        beforeMediaItem, durationMs, behavior);
+                break;
+            }
+
+            default: {
+                throw new IllegalArgumentException("Invalid transition type: " + kind);
+            }
+        }
+
+        if (transitionFile != null && new File(transitionFile).exists()) {
+            transition.setFilename(transitionFile);
+        }
+
+        return transition;
+    }
+
+    /**
+     * @param audioTrack The audio track
+     *
+     * @return The record describing the audio track
+     */
+    static byte[] audioTrack(AudioTrack audioTrack) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_AUDIO_TRACK);
+        // Audio tracks have a single kind
+        out.writeByte(0);
+        out.writeUTF(audioTrack.getId());
+        out.writeUTF(audioTrack.getFilename());
+        out.writeLong(audioTrack.getStartTime());
+        out.writeLong(audioTrack.getBoundaryBeginTime());
+        out.writeLong(audioTrack.getBoundaryEndTime());
+        out.writeInt(audioTrack.getVolume());
+        out.writeBoolean(audioTrack.isMuted());
+        out.writeBoolean(audioTrack.isLooping());
+        out.writeBoolean(audioTrack.isDuckingEnabled());
+        out.writeInt(audioTrack.getDuckingThreshhold());
+        out.writeInt(audioTrack.getDuckedTrackVolume());
+        writeString(out, audioTrack.getAudioWaveformFilename());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param record The audio track record
+     * @param editor The video editor
+     *
+     * @return A new audio track
+     */
+    static AudioTrack readAudioTrack(byte[] record, VideoEditorImpl editor) throws IOException {
+        final DataInputStream in = open(record);
+        in.readByte();
+        final String audioTrackId = in.readUTF();
+        final String filename = in.readUTF();
+        final long startTimeMs = in.readLong();
+        final long beginMs = in.readLong();
+        final long endMs = in.readLong();
+        final int volume = in.readInt();
+        final boolean muted = in.readBoolean();
+        final boolean loop = in.readBoolean();
+        final boolean duckingEnabled = in.readBoolean();
+        final int duckThreshold = in.readInt();
+        final int duckedTrackVolume = in.readInt();
+        final String waveformFilename = readString(in);
+        return new AudioTrack(editor, audioTrackId, filename, startTimeMs, beginMs, endMs, loop,
+                volume, muted, duckingEnabled, duckThreshold, duckedTrackVolume,
+                waveformFilename);
+    }
+
+    /**
+     * @return A stream positioned after the record type
+     */
+    private static DataInputStream open(byte[] record) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        in.readByte();
+        return in;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeRect(DataOutputStream out, Rect rect) throws IOException {
+        out.writeInt(rect.left);
+        out.writeInt(rect.top);
+        out.writeInt(rect.right);
+        out.writeInt(rect.bottom);
+    }
+
+    private static Rect readRect(DataInputStream in) throws IOException {
+        return new Rect(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+}
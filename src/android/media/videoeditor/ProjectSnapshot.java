@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media.videoeditor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A versioned binary snapshot of a project. The snapshot holds the
+ * {@link ProjectRecords} of all the project elements grouped in sections.
+ * Opening a snapshot only reads the header and the section table; each
+ * section is read and verified when it is requested. Opening a project reads
+ * the project section alone, the other sections are read when the storyboard
+ * is first used. When a new snapshot is written the previous one is kept so
+ * a project whose snapshot is corrupt can be recovered. {@hide}
+ */
+final class ProjectSnapshot {
+    /**
+     *  The snapshot file name
+     */
+    static final String SNAPSHOT_FILENAME = "videoeditor.snapshot";
+    static final String PREVIOUS_SNAPSHOT_FILENAME = "videoeditor.snapshot.1";
+
+    /**
+     *  Sections, in the order they must be applied
+     */
+    static final int SECTION_PROJECT = 0;
+    static final int SECTION_MEDIA_ITEMS = 1;
+    static final int SECTION_TRANSITIONS = 2;
+    static final int SECTION_AUDIO_TRACKS = 3;
+    static final int SECTION_COUNT = 4;
+
+    /**
+     *  The snapshot file header
+     */
+    private static final int SNAPSHOT_MAGIC = 0x56455331;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int SECTION_ENTRY_SIZE = 16;
+
+    /**
+     *  Instance variables
+     */
+    private final RandomAccessFile mFile;
+    private final long mGeneration;
+    private final long[] mSectionOffsets;
+    private final int[] mSectionLengths;
+    private final int[] mSectionChecksums;
+
+    /**
+     * Constructor
+     */
+    private ProjectSnapshot(RandomAccessFile file) throws IOException {
+        mFile = file;
+        if (file.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Invalid project snapshot");
+        }
+
+        final int version = file.readInt();
+        if (version > SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported project snapshot version: " + version);
+        }
+
+        mGeneration = file.readLong();
+        final int sectionCount = file.readInt();
+        mSectionOffsets = new long[sectionCount];
+        mSectionLengths = new int[sectionCount];
+        mSectionChecksums = new int[sectionCount];
+        for (int i = 0; i < sectionCount; i++) {
+            mSectionOffsets[i] = file.readLong();
+            mSectionLengths[i] = file.readInt();
+            mSectionChecksums[i] = file.readInt();
+        }
+    }
+
+    /**
+     * @param projectPath The project path
+     *
+     * @return true if the project has a binary snapshot, or only the previous
+     *      one if a crash interrupted the replacement of the snapshot
+     */
+    static boolean exists(String projectPath) {
+        return new File(projectPath, SNAPSHOT_FILENAME).exists()
+                || new File(projectPath, PREVIOUS_SNAPSHOT_FILENAME).exists();
+    }
+
+    /**
+     * Open the snapshot of a project. Only the header and the section table
+     * are read.
+     *
+     * @param projectPath The project path
+     *
+     * @return The snapshot, or null if the project has no binary snapshot
+     */
+    static ProjectSnapshot open(String projectPath) throws IOException {
+        return open(new File(projectPath, SNAPSHOT_FILENAME));
+    }
+
+    /**
+     * Open the snapshot the current snapshot of a project replaced
+     *
+     * @param projectPath The project path
+     *
+     * @return The snapshot, or null if the project has no previous snapshot
+     */
+    static ProjectSnapshot openPrevious(String projectPath) throws IOException {
+        return open(new File(projectPath, PREVIOUS_SNAPSHOT_FILENAME));
+    }
+
+    /**
+     * @param file The snapshot file
+     *
+     * @return The snapshot, or null if the file does not exist
+     */
+    private static ProjectSnapshot open(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            return new ProjectSnapshot(randomAccessFile);
+        } catch (IOException ex) {
+            randomAccessFile.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return The generation of the snapshot
+     */
+    long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Read one section of the snapshot
+     *
+     * @param section The section
+     *
+     * @return The records of the section, empty if the snapshot was written
+     *      by a version without this section
+     */
+    List<byte[]> readSection(int section) throws IOException {
+        final List<byte[]> records = new ArrayList<byte[]>();
+        if (section >= mSectionOffsets.length) {
+            return records;
+        }
+
+        final byte[] data = new byte[mSectionLengths[section]];
+        mFile.seek(mSectionOffsets[section]);
+        mFile.readFully(data);
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int)crc.getValue() != mSectionChecksums[section]) {
+            throw new IOException("Corrupt project snapshot section: " + section);
+        }
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            final byte[] record = new byte[in.readInt()];
+            in.readFully(record);
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Read all the sections of the snapshot
+     *
+     * @return The records of all the sections, in the order they must be
+     *      applied
+     */
+    List<byte[]> readAllSections() throws IOException {
+        final List<byte[]> records = new ArrayList<byte[]>();
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            records.addAll(readSection(section));
+        }
+        return records;
+    }
+
+    /**
+     * Close the snapshot file
+     */
+    void close() throws IOException {
+        mFile.close();
+    }
+
+    /**
+     * Write the snapshot of a project. The snapshot replaces the previous one
+     * only once it is complete.
+     *
+     * @param projectPath The project path
+     * @param generation The generation of the snapshot
+     * @param sectionRecords The records describing all the project elements,
+     *      by section
+     * @param keepPrevious true to keep the snapshot being replaced, false if
+     *      it is not valid
+     */
+    static void write(String projectPath, long generation, List<List<byte[]>> sectionRecords,
+            boolean keepPrevious) throws IOException {
+        final byte[][] sections = new byte[SECTION_COUNT][];
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            final List<byte[]> records = sectionRecords.get(section);
+            out.writeInt(records.size());
+            for (byte[] record : records) {
+                out.writeInt(record.length);
+                out.write(record);
+            }
+            sections[section] = bytes.toByteArray();
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeLong(generation);
+        out.writeInt(SECTION_COUNT);
+        long offset = HEADER_SIZE + SECTION_COUNT * SECTION_ENTRY_SIZE;
+        final CRC32 crc = new CRC32();
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            crc.reset();
+            crc.update(sections[section]);
+            out.writeLong(offset);
+            out.writeInt(sections[section].length);
+            out.writeInt((int)crc.getValue());
+            offset += sections[section].length;
+        }
+
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            out.write(sections[section]);
+        }
+
+        final File tmpFile = new File(projectPath, SNAPSHOT_FILENAME + ".tmp");
+        final FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            fos.write(bytes.toByteArray());
+            fos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+
+        final File file = new File(projectPath, SNAPSHOT_FILENAME);
+        if (keepPrevious && file.exists()) {
+            file.renameTo(new File(projectPath, PREVIOUS_SNAPSHOT_FILENAME));
+        }
+
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Cannot write project snapshot");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media.videoeditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable copy of the storyboard structure: the ordered media items,
+ * transitions and audio tracks of a project. Readers and the rendering
+ * engine use a snapshot when they walk the whole storyboard so they never
+ * observe a storyboard in the middle of an edit. The elements themselves
+ * are shared with the storyboard.
+ * {@hide}
+ */
+final class StoryboardSnapshot {
+    /**
+     *  Instance variables
+     */
+    private final List<MediaItem> mMediaItems;
+    private final List<Transition> mTransitions;
+    private final List<AudioTrack> mAudioTracks;
+
+    /**
+     * Constructor. The caller must prevent concurrent modifications of the
+     * lists while the snapshot is taken.
+     *
+     * @param mediaItems The media items
+     * @param transitions The transitions
+     * @param audioTracks The audio tracks
+     */
+    StoryboardSnapshot(List<MediaItem> mediaItems, List<Transition> transitions,
+            List<AudioTrack> audioTracks) {
+        mMediaItems = Collections.unmodifiableList(new ArrayList<MediaItem>(mediaItems));
+        mTransitions = Collections.unmodifiableList(new ArrayList<Transition>(transitions));
+        mAudioTracks = Collections.unmodifiableList(new ArrayList<AudioTrack>(audioTracks));
+    }
+
+    /**
+     * @return The media items
+     */
+    List<MediaItem> getMediaItems() {
+        return mMediaItems;
+    }
+
+    /**
+     * @return The transitions
+     */
+    List<Transition> getTransitions() {
+        return mTransitions;
+    }
+
+    /**
+     * @return The audio tracks
+     */
+    List<AudioTrack> getAudioTracks() {
+        return mAudioTracks;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media.videoeditor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Nested trace spans written in the Chrome trace event JSON format, which
+ * opens in chrome://tracing and Perfetto. Each project has its own trace.
+ * Tracing is enabled when a project is opened with the VideoEditorTrace tag
+ * loggable at the VERBOSE level (adb shell setprop log.tag.VideoEditorTrace
+ * VERBOSE). The trace is written to trace.json in the project directory;
+ * when the file grows beyond MAX_FILE_SIZE it is renamed to trace.1.json and
+ * a new file is started. When tracing is disabled a span costs one volatile
+ * read.
+ * {@hide}
+ */
+final class TraceLog {
+    /**
+     *  Logging
+     */
+    static final String TAG = "VideoEditorTrace";
+
+    /**
+     *  The trace file names
+     */
+    private static final String TRACE_FILENAME = "trace.json";
+    private static final String ROTATED_TRACE_FILENAME = "trace.1.json";
+    private static final long MAX_FILE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     *  Instance variables
+     */
+    private final File mFile;
+    private final File mRotatedFile;
+    private final int mPid;
+    private final StringBuilder mEvent = new StringBuilder();
+    private final ThreadLocal<int[]> mDepth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+    private volatile boolean mEnabled;
+    private Writer mWriter;
+    private long mSize;
+
+    /**
+     * Constructor. Tracing starts if it is enabled.
+     *
+     * @param directory The directory of the trace files
+     */
+    TraceLog(String directory) {
+        mFile = new File(directory, TRACE_FILENAME);
+        mRotatedFile = new File(directory, ROTATED_TRACE_FILENAME);
+        mPid = Process.myPid();
+        if (Log.isLoggable(TAG, Log.VERBOSE)) {
+            try {
+                open();
+                mEnabled = true;
+                Log.i(TAG, "Tracing to " + mFile);
+            } catch (IOException ex) {
+                Log.w(TAG, "Cannot start tracing", ex);
+            }
+        }
+    }
+
+    /**
+     * @return true if tracing is enabled
+     */
+    boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Begin a span on the current thread. Every span must be ended by
+     * {@link #end()} on the same thread, preferably in a finally block.
+     *
+     * @param name The span name
+     */
+    void begin(String name) {
+        if (mEnabled) {
+            write(name, 'B');
+        }
+    }
+
+    /**
+     * End the innermost span of the current thread
+     */
+    void end() {
+        if (mEnabled) {
+            write(null, 'E');
+        }
+    }
+
+    /**
+     * Stop tracing and close the trace file
+     */
+    void stop() {
+        if (mEnabled) {
+            close();
+        }
+    }
+
+    /**
+     * Write an event
+     *
+     * @param name The span name, null for an end event
+     * @param phase The event phase
+     */
+    private synchronized void write(String name, char phase) {
+        if (mWriter == null) {
+            return;
+        }
+
+        final int[] depth = mDepth.get();
+        depth[0] += phase == 'B' ? 1 : -1;
+
+        mEvent.setLength(0);
+        mEvent.append("{\"ph\":\"").append(phase).append('"');
+        if (name != null) {
+            mEvent.append(",\"name\":\"");
+            for (int i = 0; i < name.length(); i++) {
+                final char c = name.charAt(i);
+                if (c == '"' || c == '\\') {
+                    mEvent.append('\\');
+                }
+                mEvent.append(c < ' ' ? ' ' : c);
+            }
+            mEvent.append('"');
+        }
+        mEvent.append(",\"ts\":").append(System.nanoTime() / 1000);
+        mEvent.append(",\"pid\":").append(mPid);
+        mEvent.append(",\"tid\":").append(Thread.currentThread().getId());
+        mEvent.append("},\n");
+
+        try {
+            mWriter.append(mEvent);
+            mSize += mEvent.length();
+            if (mSize > MAX_FILE_SIZE) {
+                mWriter.close();
+                mRotatedFile.delete();
+                mFile.renameTo(mRotatedFile);
+                open();
+            } else if (depth[0] <= 0) {
+                // Flush when the outermost span of a thread ends
+                mWriter.flush();
+            }
+        } catch (IOException ex) {
+            Log.w(TAG, "Cannot write trace, stopping", ex);
+            close();
+        }
+    }
+
+    /**
+     * Start a new trace file. The trace viewers accept an array without the
+     * closing bracket, so the file is valid at any time.
+     */
+    private void open() throws IOException {
+        mWriter = new BufferedWriter(new FileWriter(mFile));
+        mWriter.write("[\n");
+        mSize = 2;
+    }
+
+    /**
+     * Close the trace file
+     */
+    private synchronized void close() {
+        mEnabled = false;
+        if (mWriter != null) {
+            try {
+                mWriter.close();
+            } catch (IOException ex) {
+                Log.w(TAG, "Cannot close trace", ex);
+            }
+            mWriter = null;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media.videoeditor;
+
+import android.media.videoeditor.MediaArtistNativeHelper.AudioSettings;
+import android.media.videoeditor.MediaArtistNativeHelper.EditSettings;
+import android.media.videoeditor.MediaArtistNativeHelper.NativeGetPixelsListCallback;
+import android.media.videoeditor.MediaArtistNativeHelper.PreviewClipProperties;
+import android.media.videoeditor.MediaArtistNativeHelper.Properties;
+import android.view.Surface;
+
+/**
+ * A media engine which records a {@link TraceLog} span around every call of
+ * the engine it wraps. It is only installed while tracing is enabled.
+ * {@hide}
+ */
+class TracingMediaEngine implements MediaEngine {
+    // Instance variables
+    private final MediaEngine mEngine;
+    private final TraceLog mTraceLog;
+
+    /**
+     * Constructor
+     *
+     * @param engine The traced engine
+     * @param traceLog The trace of the project
+     */
+    TracingMediaEngine(MediaEngine engine, TraceLog traceLog) {
+        mEngine = engine;
+        mTraceLog = traceLog;
+    }
+
+    @Override
+    public void init(String tempPath, String libraryPath) {
+        mTraceLog.begin("engine.init");
+        try {
+            mEngine.init(tempPath, libraryPath);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public void release() {
+        mTraceLog.begin("engine.release");
+        try {
+            mEngine.release();
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public Properties getMediaProperties(String file) throws Exception {
+        mTraceLog.begin("engine.getMediaProperties");
+        try {
+            return mEngine.getMediaProperties(file);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public int getPixels(String fileName, int[] pixelArray, int width, int height,
+            long timeMs) {
+        mTraceLog.begin("engine.getPixels");
+        try {
+            return mEngine.getPixels(fileName, pixelArray, width, height, timeMs);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public int getPixelsList(String fileName, int[] pixelArray, int width, int height,
+            int thumbnailCount, long startTimeMs, long endTimeMs, int[] indices,
+            NativeGetPixelsListCallback callback) {
+        mTraceLog.begin("engine.getPixelsList");
+        try {
+            return mEngine.getPixelsList(fileName, pixelArray, width, height, thumbnailCount,
+                    startTimeMs, endTimeMs, indices, callback);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public void populateSettings(EditSettings editSettings,
+            PreviewClipProperties clipProperties, AudioSettings audioSettings) {
+        mTraceLog.begin("engine.populateSettings");
+        try {
+            mEngine.populateSettings(editSettings, clipProperties, audioSettings);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public void startPreview(Surface surface, long fromMs, long toMs,
+            int callbackAfterFrameCount, boolean loop) {
+        mTraceLog.begin("engine.startPreview");
+        try {
+            mEngine.startPreview(surface, fromMs, toMs, callbackAfterFrameCount, loop);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public int stopPreview() {
+        mTraceLog.begin("engine.stopPreview");
+        try {
+            return mEngine.stopPreview();
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public int renderPreviewFrame(Surface surface, long timeMs, int surfaceWidth,
+            int surfaceHeight) {
+        mTraceLog.begin("engine.renderPreviewFrame");
+        try {
+            return mEngine.renderPreviewFrame(surface, timeMs, surfaceWidth, surfaceHeight);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public int renderMediaItemPreviewFrame(Surface surface, String filepath,
+            int frameWidth, int frameHeight, int surfaceWidth, int surfaceHeight, long timeMs) {
+        mTraceLog.begin("engine.renderMediaItemPreviewFrame");
+        try {
+            return mEngine.renderMediaItemPreviewFrame(surface, filepath, frameWidth,
+                    frameHeight, surfaceWidth, surfaceHeight, timeMs);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public void clearSurface(Surface surface) {
+        mTraceLog.begin("engine.clearSurface");
+        try {
+            mEngine.clearSurface(surface);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public int generateClip(EditSettings editSettings) {
+        mTraceLog.begin("engine.generateClip");
+        try {
+            return mEngine.generateClip(editSettings);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public void stopEncoding() {
+        mTraceLog.begin("engine.stopEncoding");
+        try {
+            mEngine.stopEncoding();
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public int generateRawAudio(String inFileName, String pcmFileName) {
+        mTraceLog.begin("engine.generateRawAudio");
+        try {
+            return mEngine.generateRawAudio(inFileName, pcmFileName);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+
+    @Override
+    public int generateAudioGraph(String pcmFilePath, String outGraphPath,
+            int frameDuration, int channels, int sampleCount) {
+        mTraceLog.begin("engine.generateAudioGraph");
+        try {
+            return mEngine.generateAudioGraph(pcmFilePath, outGraphPath, frameDuration,
+                    channels, sampleCount);
+        } finally {
+            mTraceLog.end();
+        }
+    }
+}
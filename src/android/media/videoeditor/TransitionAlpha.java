@@ -16,14 +16,7 @@
 
 package android.media.videoeditor;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
 
 /**
  * This class allows to render an "alpha blending" transition according to a
@@ -54,9 +47,9 @@ public class TransitionAlpha extends Transition {
     private final boolean mIsInvert;
 
 
-    private int mWidth;
-    private int mHeight;
-    private String mRGBMaskFile;
+    private final int mWidth;
+    private final int mHeight;
+    private final String mRGBMaskFile;
 
     /**
      * An object of this type cannot be instantiated by using the default
@@ -92,61 +85,22 @@ public class TransitionAlpha extends Transition {
             String maskFilename, int blendingPercent, boolean invert) {
         super(transitionId, afterMediaItem, beforeMediaItem, durationMs, behavior);
 
-        /**
-         * Generate a RGB file for the supplied mask file
-         */
-        final BitmapFactory.Options dbo = new BitmapFactory.Options();
-        dbo.inJustDecodeBounds = true;
         if (!new File(maskFilename).exists())
             throw new IllegalArgumentException("File not Found " + maskFilename);
-        BitmapFactory.decodeFile(maskFilename, dbo);
-
-        mWidth = dbo.outWidth;
-        mHeight = dbo.outHeight;
-
-        mRGBMaskFile = String.format(mNativeHelper.getProjectPath() +
-                "/" + "mask" + transitionId+ ".rgb");
-
-
-        FileOutputStream fl = null;
-
-        try{
-             fl = new FileOutputStream(mRGBMaskFile);
-        } catch (IOException e) {
-            /* catch IO exception */
-        }
-        final DataOutputStream dos = new DataOutputStream(fl);
-
-        if (fl != null) {
-            /**
-             * Write to rgb file
-             */
-            Bitmap imageBitmap = BitmapFactory.decodeFile(maskFilename);
-            final int [] framingBuffer = new int[mWidth];
-            ByteBuffer byteBuffer = ByteBuffer.allocate(framingBuffer.length * 4);
-            IntBuffer intBuffer;
-
-            byte[] array = byteBuffer.array();
-            int tmp = 0;
-            while (tmp < mHeight) {
-                imageBitmap.getPixels(framingBuffer, 0, mWidth, 0, tmp,mWidth, 1);
-                intBuffer = byteBuffer.asIntBuffer();
-                intBuffer.put(framingBuffer,0,mWidth);
-                try {
-                    dos.write(array);
-                } catch (IOException e) {
-                    /* catch file write error */
-                }
-                tmp += 1;
-            }
-
-            imageBitmap.recycle();
-            try{
-                fl.close();
-            }catch (IOException e) {
-                /* file close error */
-            }
-        }
+
+        /**
+         * Use the RGB file of the mask shared by the transitions
+         */
+        final TransitionMasks.Mask mask =
+                TransitionMasks.get(mNativeHelper.getProjectPath(), maskFilename);
+        mWidth = mask.width;
+        mHeight = mask.height;
+        mRGBMaskFile = mask.rgbFilename;
+
+        /**
+         * Delete the mask file written by the previous versions
+         */
+        new File(mNativeHelper.getProjectPath(), "mask" + transitionId + ".rgb").delete();
 
         /**
          * Capture the details
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.media.videoeditor;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+/**
+ * The RGB files of the alpha transition masks. A mask is decoded once per
+ * project and mask file; the RGB file is named after the mask file and its
+ * size and is shared, read-only, by all the transitions which use the mask.
+ * A file left by a previous session is reused without decoding the mask
+ * again. {@hide}
+ */
+final class TransitionMasks {
+    /**
+     *  Logging
+     */
+    private static final String TAG = "TransitionMasks";
+
+    /**
+     *  The masks by project path, mask file and mask modification time
+     */
+    private static final Map<String, Mask> sMasks = new HashMap<String, Mask>();
+
+    /**
+     * The RGB file of a mask
+     */
+    static final class Mask {
+        final String rgbFilename;
+        final int width;
+        final int height;
+
+        private Mask(String rgbFilename, int width, int height) {
+            this.rgbFilename = rgbFilename;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * This class cannot be instantiated
+     */
+    private TransitionMasks() {
+    }
+
+    /**
+     * Get the RGB file of a mask, generating it if it does not exist
+     *
+     * @param projectPath The project path
+     * @param maskFilename The JPEG file of the mask
+     *
+     * @return The RGB file of the mask
+     */
+    static synchronized Mask get(String projectPath, String maskFilename) {
+        final File maskFile = new File(maskFilename);
+        final long lastModified = maskFile.lastModified();
+        final String key = projectPath + "/" + maskFile.getAbsolutePath() + "@" + lastModified;
+        Mask mask = sMasks.get(key);
+        if (mask != null && new File(mask.rgbFilename).exists()) {
+            return mask;
+        }
+
+        final BitmapFactory.Options dbo = new BitmapFactory.Options();
+        dbo.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(maskFilename, dbo);
+        final int width = dbo.outWidth;
+        final int height = dbo.outHeight;
+
+        String name = maskFile.getName();
+        final int extension = name.lastIndexOf('.');
+        if (extension > 0) {
+            name = name.substring(0, extension);
+        }
+        mask = new Mask(projectPath + "/" + "mask_" + name + "_"
+                + Integer.toHexString(maskFile.getAbsolutePath().hashCode()) + "_"
+                + Long.toHexString(lastModified) + "_" + width + "x" + height + ".rgb",
+                width, height);
+
+        final File rgbFile = new File(mask.rgbFilename);
+        if (rgbFile.length() != (long)width * height * 4) {
+            try {
+                writeMask(maskFilename, rgbFile, width, height);
+            } catch (IOException ex) {
+                Log.e(TAG, "Cannot write the mask: " + mask.rgbFilename, ex);
+            }
+        }
+
+        sMasks.put(key, mask);
+        return mask;
+    }
+
+    /**
+     * Decode the mask and write its RGB file
+     *
+     * @param maskFilename The JPEG file of the mask
+     * @param rgbFile The RGB file
+     * @param width The mask width
+     * @param height The mask height
+     */
+    private static void writeMask(String maskFilename, File rgbFile, int width, int height)
+            throws IOException {
+        final Bitmap imageBitmap = BitmapFactory.decodeFile(maskFilename);
+        if (imageBitmap == null) {
+            throw new IOException("Cannot decode the mask: " + maskFilename);
+        }
+
+        // Write a temporary file first, the shared file must be complete
+        final File tmpFile = new File(rgbFile.getPath() + ".tmp");
+        final DataOutputStream dos = new DataOutputStream(new FileOutputStream(tmpFile));
+        try {
+            final int[] framingBuffer = new int[width];
+            final ByteBuffer byteBuffer = ByteBuffer.allocate(framingBuffer.length * 4);
+            final byte[] array = byteBuffer.array();
+            for (int y = 0; y < height; y++) {
+                imageBitmap.getPixels(framingBuffer, 0, width, 0, y, width, 1);
+                byteBuffer.clear();
+                byteBuffer.asIntBuffer().put(framingBuffer, 0, width);
+                dos.write(array);
+            }
+        } finally {
+            dos.close();
+            imageBitmap.recycle();
+        }
+
+        rgbFile.delete();
+        if (!tmpFile.renameTo(rgbFile)) {
+            throw new IOException("Cannot rename the mask: " + tmpFile);
+        }
+        rgbFile.setReadOnly();
+    }
+}
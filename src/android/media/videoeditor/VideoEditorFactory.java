@@ -92,4 +92,19 @@ public class VideoEditorFactory {
         }
         return videoEditor;
     }
+
+    /**
+     * Read the aspect ratio of a project previously saved with the
+     * {@link VideoEditor#save(String)} method without loading the project.
+     *
+     * @param projectPath The path where all VideoEditor internal files
+     *            are stored
+     *
+     * @return The aspect ratio of the project
+     *
+     * @throws IOException if the project files cannot be read
+     */
+    public static int getAspectRatio(String projectPath) throws IOException {
+        return VideoEditorImpl.readAspectRatio(projectPath);
+    }
 }
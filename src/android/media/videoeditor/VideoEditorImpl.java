@@ -22,17 +22,19 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlSerializer;
 
 import android.graphics.Bitmap;
 import android.graphics.Rect;
@@ -46,6 +48,7 @@ import android.view.SurfaceHolder;
 import android.os.Debug;
 //import android.os.SystemProperties;
 import android.os.Environment;
+import android.os.SystemClock;
 
 /**
  * The VideoEditor implementation {@hide}
@@ -65,16 +68,11 @@ public class VideoEditorImpl implements VideoEditor {
      *  XML tags
      */
     private static final String TAG_PROJECT = "project";
-    private static final String TAG_MEDIA_ITEMS = "media_items";
     private static final String TAG_MEDIA_ITEM = "media_item";
-    private static final String TAG_TRANSITIONS = "transitions";
     private static final String TAG_TRANSITION = "transition";
-    private static final String TAG_OVERLAYS = "overlays";
     private static final String TAG_OVERLAY = "overlay";
     private static final String TAG_OVERLAY_USER_ATTRIBUTES = "overlay_user_attributes";
-    private static final String TAG_EFFECTS = "effects";
     private static final String TAG_EFFECT = "effect";
-    private static final String TAG_AUDIO_TRACKS = "audio_tracks";
     private static final String TAG_AUDIO_TRACK = "audio_track";
 
     private static final String ATTR_ID = "id";
@@ -83,6 +81,7 @@ public class VideoEditorImpl implements VideoEditor {
     private static final String ATTR_RENDERING_MODE = "rendering_mode";
     private static final String ATTR_ASPECT_RATIO = "aspect_ratio";
     private static final String ATTR_REGENERATE_PCM = "regeneratePCMFlag";
+    private static final String ATTR_JOURNAL_GENERATION = "journal_generation";
     private static final String ATTR_TYPE = "type";
     private static final String ATTR_DURATION = "duration";
     private static final String ATTR_START_TIME = "start_time";
@@ -125,10 +124,68 @@ public class VideoEditorImpl implements VideoEditor {
      *  Instance variables
      */
     private final Semaphore mLock;
+    /*
+     *  The storyboard lock serializes the modifications of the storyboard
+     *  and the lookups by id. The engine uses an immutable snapshot of the
+     *  storyboard, so it never waits for an edit. An export reads the media
+     *  items and their generated files until it completes, so edits wait
+     *  for the exports in progress.
+     */
+    private final ReentrantLock mStoryboardLock = new ReentrantLock();
+    private final Condition mExportsDone = mStoryboardLock.newCondition();
+    private int mExportsInProgress;
+    private volatile StoryboardSnapshot mSnapshot;
+    /*
+     *  A proxy encode holds the engine for a long time. It is stopped when
+     *  another caller waits for the engine and started again afterwards.
+     */
+    private volatile boolean mProxyEncodeInProgress;
+    private volatile boolean mProxyEncodePreempted;
+    private final LockStatistics mEngineLockStatistics = new LockStatistics("engine");
+    private final LockStatistics mStoryboardLockStatistics = new LockStatistics("storyboard");
     private final String mProjectPath;
-    private final List<MediaItem> mMediaItems = new ArrayList<MediaItem>();
-    private final List<AudioTrack> mAudioTracks = new ArrayList<AudioTrack>();
-    private final List<Transition> mTransitions = new ArrayList<Transition>();
+    private final IdIndexedList<MediaItem> mMediaItems = new IdIndexedList<MediaItem>() {
+        @Override
+        protected String getId(MediaItem mediaItem) {
+            return mediaItem.getId();
+        }
+
+        @Override
+        protected void onModified() {
+            mSnapshot = null;
+        }
+    };
+    private final IdIndexedList<AudioTrack> mAudioTracks = new IdIndexedList<AudioTrack>() {
+        @Override
+        protected String getId(AudioTrack audioTrack) {
+            return audioTrack.getId();
+        }
+
+        @Override
+        protected void onModified() {
+            mSnapshot = null;
+        }
+    };
+    private final IdIndexedList<Transition> mTransitions = new IdIndexedList<Transition>() {
+        @Override
+        protected String getId(Transition transition) {
+            return transition.getId();
+        }
+
+        @Override
+        protected void onModified() {
+            mSnapshot = null;
+        }
+    };
+    private final ProjectJournal mJournal;
+    private long mSnapshotGeneration;
+    /**
+     *  The storyboard sections of the snapshot are read when the storyboard
+     *  is first used, and applied with the journal records read on open
+     */
+    private volatile boolean mStoryboardPending;
+    private boolean mLoadingStoryboard;
+    private List<byte[]> mPendingRecords;
     private long mDurationMs;
     private int mAspectRatio;
 
@@ -160,10 +217,11 @@ public class VideoEditorImpl implements VideoEditor {
             mMallocDebug = false;
         }*/
         mLock = new Semaphore(1, true);
-        mMANativeHelper = new MediaArtistNativeHelper(projectPath, mLock, this);
+        mMANativeHelper = new MediaArtistNativeHelper(projectPath, this);
         mProjectPath = projectPath;
+        mJournal = new ProjectJournal(projectPath);
         final File projectXml = new File(projectPath, PROJECT_FILENAME);
-        if (projectXml.exists()) {
+        if (ProjectSnapshot.exists(projectPath) || projectXml.exists()) {
             try {
                 load();
             } catch (Exception ex) {
@@ -186,76 +244,87 @@ public class VideoEditorImpl implements VideoEditor {
     /*
      * {@inheritDoc}
      */
-    public synchronized void addAudioTrack(AudioTrack audioTrack) {
-        if (audioTrack == null) {
-            throw new IllegalArgumentException("Audio Track is null");
-        }
+    public void addAudioTrack(AudioTrack audioTrack) {
+        lockStoryboardForEdit();
+        try {
+            if (audioTrack == null) {
+                throw new IllegalArgumentException("Audio Track is null");
+            }
 
-        if (mAudioTracks.size() == 1) {
-            throw new IllegalArgumentException("No more tracks can be added");
-        }
+            if (mAudioTracks.size() == 1) {
+                throw new IllegalArgumentException("No more tracks can be added");
+            }
 
-        mMANativeHelper.setGeneratePreview(true);
+            mMANativeHelper.setGeneratePreview(true);
 
-        /*
-         * Add the audio track to AudioTrack list
-         */
-        mAudioTracks.add(audioTrack);
+            /*
+             * Add the audio track to AudioTrack list
+             */
+            mAudioTracks.add(audioTrack);
 
-        /*
-         * Form the audio PCM file path
-         */
-        final String audioTrackPCMFilePath = String.format(mProjectPath + "/"
-                    + "AudioPcm" + audioTrack.getId() + ".pcm");
+            /*
+             * Form the audio PCM file path
+             */
+            final String audioTrackPCMFilePath = String.format(mProjectPath + "/"
+                        + "AudioPcm" + audioTrack.getId() + ".pcm");
 
-        /*
-         * Create PCM only if not generated in previous session
-         */
-        if (new File(audioTrackPCMFilePath).exists()) {
-            mMANativeHelper.setAudioflag(false);
-        }
+            /*
+             * Create PCM only if not generated in previous session
+             */
+            if (new File(audioTrackPCMFilePath).exists()) {
+                mMANativeHelper.setAudioflag(false);
+            }
 
+        } finally {
+            unlockStoryboard();
+        }
     }
 
     /*
      * {@inheritDoc}
      */
-    public synchronized void addMediaItem(MediaItem mediaItem) {
-        /*
-         * Validate Media Item
-         */
-        if (mediaItem == null) {
-            throw new IllegalArgumentException("Media item is null");
-        }
-        /*
-         * Add the Media item to MediaItem list
-         */
-        if (mMediaItems.contains(mediaItem)) {
-            throw new IllegalArgumentException("Media item already exists: " + mediaItem.getId());
-        }
+    public void addMediaItem(MediaItem mediaItem) {
+        lockStoryboardForEdit();
+        try {
+            /*
+             * Validate Media Item
+             */
+            if (mediaItem == null) {
+                throw new IllegalArgumentException("Media item is null");
+            }
+            /*
+             * Add the Media item to MediaItem list
+             */
+            if (mMediaItems.contains(mediaItem)) {
+                throw new IllegalArgumentException("Media item already exists: "
+                        + mediaItem.getId());
+            }
 
-        mMANativeHelper.setGeneratePreview(true);
+            mMANativeHelper.setGeneratePreview(true);
 
-        /*
-         *  Invalidate the end transition if necessary
-         */
-        final int mediaItemsCount = mMediaItems.size();
-        if (mediaItemsCount > 0) {
-            removeTransitionAfter(mediaItemsCount - 1);
-        }
+            /*
+             *  Invalidate the end transition if necessary
+             */
+            final int mediaItemsCount = mMediaItems.size();
+            if (mediaItemsCount > 0) {
+                removeTransitionAfter(mediaItemsCount - 1);
+            }
 
-        /*
-         *  Add the new media item
-         */
-        mMediaItems.add(mediaItem);
+            /*
+             *  Add the new media item
+             */
+            mMediaItems.add(mediaItem);
 
-        computeTimelineDuration();
+            computeTimelineDuration();
 
-        /*
-         *  Generate project thumbnail only from first media Item on storyboard
-         */
-        if (mMediaItems.size() == 1) {
-            generateProjectThumbnail();
+            /*
+             *  Generate project thumbnail only from first media Item on storyboard
+             */
+            if (mMediaItems.size() == 1) {
+                generateProjectThumbnail();
+            }
+        } finally {
+            unlockStoryboard();
         }
     }
 
@@ -263,65 +332,70 @@ public class VideoEditorImpl implements VideoEditor {
     /*
      * {@inheritDoc}
      */
-    public synchronized void addTransition(Transition transition) {
-        if (transition == null) {
-            throw new IllegalArgumentException("Null Transition");
-        }
+    public void addTransition(Transition transition) {
+        lockStoryboardForEdit();
+        try {
+            if (transition == null) {
+                throw new IllegalArgumentException("Null Transition");
+            }
 
-        final MediaItem beforeMediaItem = transition.getBeforeMediaItem();
-        final MediaItem afterMediaItem = transition.getAfterMediaItem();
-        /*
-         * Check if the MediaItems are in sequence
-         */
-        if (mMediaItems == null) {
-            throw new IllegalArgumentException("No media items are added");
-        }
+            final MediaItem beforeMediaItem = transition.getBeforeMediaItem();
+            final MediaItem afterMediaItem = transition.getAfterMediaItem();
+            /*
+             * Check if the MediaItems are in sequence
+             */
+            if (mMediaItems == null) {
+                throw new IllegalArgumentException("No media items are added");
+            }
 
-        if ((afterMediaItem != null) &&  (beforeMediaItem != null)) {
-            final int afterMediaItemIndex = mMediaItems.indexOf(afterMediaItem);
-            final int beforeMediaItemIndex = mMediaItems.indexOf(beforeMediaItem);
+            if ((afterMediaItem != null) &&  (beforeMediaItem != null)) {
+                final int afterMediaItemIndex = mMediaItems.indexOf(afterMediaItem);
+                final int beforeMediaItemIndex = mMediaItems.indexOf(beforeMediaItem);
 
-            if ((afterMediaItemIndex == -1) || (beforeMediaItemIndex == -1)) {
-                throw new IllegalArgumentException
-                    ("Either of the mediaItem is not found in the list");
-            }
+                if ((afterMediaItemIndex == -1) || (beforeMediaItemIndex == -1)) {
+                    throw new IllegalArgumentException
+                        ("Either of the mediaItem is not found in the list");
+                }
 
-            if (afterMediaItemIndex != (beforeMediaItemIndex - 1) ) {
-                throw new IllegalArgumentException("MediaItems are not in sequence");
+                if (afterMediaItemIndex != (beforeMediaItemIndex - 1) ) {
+                    throw new IllegalArgumentException("MediaItems are not in sequence");
+                }
             }
-        }
 
-        mMANativeHelper.setGeneratePreview(true);
+            mMANativeHelper.setGeneratePreview(true);
 
-        mTransitions.add(transition);
-        /*
-         *  Cross reference the transitions
-         */
-        if (afterMediaItem != null) {
+            mTransitions.add(transition);
             /*
-             *  If a transition already exists at the specified position then
-             *  invalidate it.
+             *  Cross reference the transitions
              */
-            if (afterMediaItem.getEndTransition() != null) {
-                afterMediaItem.getEndTransition().invalidate();
-                mTransitions.remove(afterMediaItem.getEndTransition());
+            if (afterMediaItem != null) {
+                /*
+                 *  If a transition already exists at the specified position then
+                 *  invalidate it.
+                 */
+                if (afterMediaItem.getEndTransition() != null) {
+                    afterMediaItem.getEndTransition().invalidate();
+                    mTransitions.remove(afterMediaItem.getEndTransition());
+                }
+                afterMediaItem.setEndTransition(transition);
             }
-            afterMediaItem.setEndTransition(transition);
-        }
 
-        if (beforeMediaItem != null) {
-            /*
-             *  If a transition already exists at the specified position then
-             *  invalidate it.
-             */
-            if (beforeMediaItem.getBeginTransition() != null) {
-                beforeMediaItem.getBeginTransition().invalidate();
-                mTransitions.remove(beforeMediaItem.getBeginTransition());
+            if (beforeMediaItem != null) {
+                /*
+                 *  If a transition already exists at the specified position then
+                 *  invalidate it.
+                 */
+                if (beforeMediaItem.getBeginTransition() != null) {
+                    beforeMediaItem.getBeginTransition().invalidate();
+                    mTransitions.remove(beforeMediaItem.getBeginTransition());
+                }
+                beforeMediaItem.setBeginTransition(transition);
             }
-            beforeMediaItem.setBeginTransition(transition);
-        }
 
-        computeTimelineDuration();
+            computeTimelineDuration();
+        } finally {
+            unlockStoryboard();
+        }
     }
 
     /*
@@ -453,10 +527,35 @@ public class VideoEditorImpl implements VideoEditor {
             if (mMANativeHelper == null) {
                 throw new IllegalStateException("The video editor is not initialized");
             }
-            mMANativeHelper.setAudioCodec(audcodec);
-            mMANativeHelper.setVideoCodec(vidcodec);
-            mMANativeHelper.export(filename, mProjectPath, height,bitrate,
-                               mMediaItems, mTransitions, mAudioTracks, listener);
+            /**
+             *  The storyboard edits wait until the export completes
+             */
+            final StoryboardSnapshot snapshot;
+            final int storyBoardGeneration;
+            lockStoryboard();
+            try {
+                snapshot = getSnapshot();
+                storyBoardGeneration = mMANativeHelper.getStoryBoardGeneration();
+                mExportsInProgress++;
+            } finally {
+                unlockStoryboard();
+            }
+
+            try {
+                mMANativeHelper.setAudioCodec(audcodec);
+                mMANativeHelper.setVideoCodec(vidcodec);
+                mMANativeHelper.export(filename, mProjectPath, height,bitrate,
+                                   snapshot.getMediaItems(), snapshot.getTransitions(),
+                                   snapshot.getAudioTracks(), storyBoardGeneration, listener);
+            } finally {
+                lockStoryboard();
+                try {
+                    mExportsInProgress--;
+                    mExportsDone.signalAll();
+                } finally {
+                    unlockStoryboard();
+                }
+            }
         } catch (InterruptedException  ex) {
             Log.e(TAG, "Sem acquire NOT successful in export");
         } finally {
@@ -492,9 +591,20 @@ public class VideoEditorImpl implements VideoEditor {
                 throw new IllegalStateException("The video editor is not initialized");
             }
 
-            if ((mMediaItems.size() > 0) || (mAudioTracks.size() > 0)) {
-                mMANativeHelper.previewStoryBoard(mMediaItems, mTransitions, mAudioTracks,
-                        listener);
+            final StoryboardSnapshot snapshot;
+            final int storyBoardGeneration;
+            lockStoryboard();
+            try {
+                snapshot = getSnapshot();
+                storyBoardGeneration = mMANativeHelper.getStoryBoardGeneration();
+            } finally {
+                unlockStoryboard();
+            }
+
+            if ((snapshot.getMediaItems().size() > 0) || (snapshot.getAudioTracks().size() > 0)) {
+                mMANativeHelper.previewStoryBoard(snapshot.getMediaItems(),
+                        snapshot.getTransitions(), snapshot.getAudioTracks(),
+                        storyBoardGeneration, listener);
             }
         } catch (InterruptedException  ex) {
             Log.e(TAG, "Sem acquire NOT successful in previewStoryBoard");
@@ -505,10 +615,62 @@ public class VideoEditorImpl implements VideoEditor {
         }
     }
 
+    /**
+     * Encode the proxy of a video media item. The encode gives way to the
+     * previews and exports which wait for the engine: it is stopped and
+     * started again once they released the engine.
+     *
+     * @param mediaItem The media item
+     * @param listener The progress listener
+     *
+     * @return The name of the proxy file
+     */
+    String generateProxy(MediaVideoItem mediaItem, MediaProcessingProgressListener listener) {
+        while (true) {
+            boolean semAcquireDone = false;
+            try {
+                lockEngine(false);
+                semAcquireDone = true;
+
+                if (mMANativeHelper == null) {
+                    throw new IllegalStateException("The video editor is not initialized");
+                }
+
+                mProxyEncodePreempted = false;
+                mProxyEncodeInProgress = true;
+                try {
+                    return mMANativeHelper.generateProxyClip(mediaItem, listener);
+                } catch (RuntimeException ex) {
+                    if (!mProxyEncodePreempted) {
+                        throw ex;
+                    }
+                } finally {
+                    mProxyEncodeInProgress = false;
+                }
+            } catch (InterruptedException  ex) {
+                Log.e(TAG, "Sem acquire NOT successful in generateProxy");
+                throw new IllegalStateException("The thread was interrupted");
+            } finally {
+                if (semAcquireDone) {
+                    unlock();
+                }
+            }
+
+            /**
+             *  The encode was stopped for a preview or an export which waited
+             *  for the engine. The fair semaphore lets it go first.
+             */
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "generateProxy: restarting the preempted proxy encode");
+            }
+        }
+    }
+
     /*
      * {@inheritDoc}
      */
     public List<AudioTrack> getAllAudioTracks() {
+        loadStoryboardIfPending();
         return mAudioTracks;
     }
 
@@ -516,6 +678,7 @@ public class VideoEditorImpl implements VideoEditor {
      * {@inheritDoc}
      */
     public List<MediaItem> getAllMediaItems() {
+        loadStoryboardIfPending();
         return mMediaItems;
     }
 
@@ -523,6 +686,7 @@ public class VideoEditorImpl implements VideoEditor {
      * {@inheritDoc}
      */
     public List<Transition> getAllTransitions() {
+        loadStoryboardIfPending();
         return mTransitions;
     }
 
@@ -537,18 +701,19 @@ public class VideoEditorImpl implements VideoEditor {
      * {@inheritDoc}
      */
     public AudioTrack getAudioTrack(String audioTrackId) {
-        for (AudioTrack at : mAudioTracks) {
-            if (at.getId().equals(audioTrackId)) {
-                return at;
-            }
+        lockStoryboard();
+        try {
+            return mAudioTracks.getById(audioTrackId);
+        } finally {
+            unlockStoryboard();
         }
-        return null;
     }
 
     /*
      * {@inheritDoc}
      */
     public long getDuration() {
+        loadStoryboardIfPending();
         /**
          *  Since MediaImageItem can change duration we need to compute the
          *  duration here
@@ -567,13 +732,47 @@ public class VideoEditorImpl implements VideoEditor {
     /*
      * {@inheritDoc}
      */
-    public synchronized MediaItem getMediaItem(String mediaItemId) {
-        for (MediaItem mediaItem : mMediaItems) {
-            if (mediaItem.getId().equals(mediaItemId)) {
-                return mediaItem;
+    public MediaItem getMediaItem(String mediaItemId) {
+        lockStoryboard();
+        try {
+            return mMediaItems.getById(mediaItemId);
+        } finally {
+            unlockStoryboard();
+        }
+    }
+
+    /**
+     * Find a media item in the storyboard being modified. The caller must
+     * hold the storyboard lock or be loading the project.
+     *
+     * @param mediaItemId The media item id
+     *
+     * @return The media item, null if not found
+     */
+    MediaItem findMediaItem(String mediaItemId) {
+        return mMediaItems.getById(mediaItemId);
+    }
+
+    /**
+     * @return An immutable snapshot of the storyboard. The snapshot is taken
+     *      again only after the storyboard was modified.
+     */
+    StoryboardSnapshot getSnapshot() {
+        StoryboardSnapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            lockStoryboard();
+            try {
+                snapshot = mSnapshot;
+                if (snapshot == null) {
+                    snapshot = new StoryboardSnapshot(mMediaItems, mTransitions, mAudioTracks);
+                    mSnapshot = snapshot;
+                }
+            } finally {
+                unlockStoryboard();
             }
         }
-        return null;
+
+        return snapshot;
     }
 
     /*
@@ -587,139 +786,144 @@ public class VideoEditorImpl implements VideoEditor {
      * {@inheritDoc}
      */
     public Transition getTransition(String transitionId) {
-        for (Transition transition : mTransitions) {
-            if (transition.getId().equals(transitionId)) {
-                return transition;
-            }
+        lockStoryboard();
+        try {
+            return mTransitions.getById(transitionId);
+        } finally {
+            unlockStoryboard();
         }
-        return null;
     }
 
     /*
      * {@inheritDoc}
      */
-    public synchronized void insertAudioTrack(AudioTrack audioTrack,
+    public void insertAudioTrack(AudioTrack audioTrack,
                                               String afterAudioTrackId) {
-        if (mAudioTracks.size() == 1) {
-            throw new IllegalArgumentException("No more tracks can be added");
-        }
+        lockStoryboardForEdit();
+        try {
+            if (mAudioTracks.size() == 1) {
+                throw new IllegalArgumentException("No more tracks can be added");
+            }
 
-        if (afterAudioTrackId == null) {
-            mMANativeHelper.setGeneratePreview(true);
-            mAudioTracks.add(0, audioTrack);
-        } else {
-            final int audioTrackCount = mAudioTracks.size();
-            for (int i = 0; i < audioTrackCount; i++) {
-                AudioTrack at = mAudioTracks.get(i);
-                if (at.getId().equals(afterAudioTrackId)) {
-                    mMANativeHelper.setGeneratePreview(true);
-                    mAudioTracks.add(i + 1, audioTrack);
-                    return;
+            if (afterAudioTrackId == null) {
+                mMANativeHelper.setGeneratePreview(true);
+                mAudioTracks.add(0, audioTrack);
+            } else {
+                final int index = mAudioTracks.indexOfId(afterAudioTrackId);
+                if (index < 0) {
+                    throw new IllegalArgumentException("AudioTrack not found: "
+                            + afterAudioTrackId);
                 }
-            }
 
-            throw new IllegalArgumentException("AudioTrack not found: " + afterAudioTrackId);
+                mMANativeHelper.setGeneratePreview(true);
+                mAudioTracks.add(index + 1, audioTrack);
+            }
+        } finally {
+            unlockStoryboard();
         }
     }
 
     /*
      * {@inheritDoc}
      */
-    public synchronized void insertMediaItem(MediaItem mediaItem, String afterMediaItemId) {
-        if (mMediaItems.contains(mediaItem)) {
-            throw new IllegalArgumentException("Media item already exists: " + mediaItem.getId());
-        }
-
-        if (afterMediaItemId == null) {
-            mMANativeHelper.setGeneratePreview(true);
-            if (mMediaItems.size() > 0) {
-                /**
-                 *  Invalidate the transition at the beginning of the timeline
-                 */
-                removeTransitionBefore(0);
+    public void insertMediaItem(MediaItem mediaItem, String afterMediaItemId) {
+        lockStoryboardForEdit();
+        try {
+            if (mMediaItems.contains(mediaItem)) {
+                throw new IllegalArgumentException("Media item already exists: "
+                        + mediaItem.getId());
             }
 
-            mMediaItems.add(0, mediaItem);
-            computeTimelineDuration();
-            generateProjectThumbnail();
-        } else {
-            final int mediaItemCount = mMediaItems.size();
-            for (int i = 0; i < mediaItemCount; i++) {
-                final MediaItem mi = mMediaItems.get(i);
-                if (mi.getId().equals(afterMediaItemId)) {
-                    mMANativeHelper.setGeneratePreview(true);
-                    /**
-                     *  Invalidate the transition at this position
-                     */
-                    removeTransitionAfter(i);
+            if (afterMediaItemId == null) {
+                mMANativeHelper.setGeneratePreview(true);
+                if (mMediaItems.size() > 0) {
                     /**
-                     *  Insert the new media item
+                     *  Invalidate the transition at the beginning of the timeline
                      */
-                    mMediaItems.add(i + 1, mediaItem);
-                    computeTimelineDuration();
-                    return;
+                    removeTransitionBefore(0);
+                }
+
+                mMediaItems.add(0, mediaItem);
+                computeTimelineDuration();
+                generateProjectThumbnail();
+            } else {
+                final int index = mMediaItems.indexOfId(afterMediaItemId);
+                if (index < 0) {
+                    throw new IllegalArgumentException("MediaItem not found: " + afterMediaItemId);
                 }
-            }
 
-            throw new IllegalArgumentException("MediaItem not found: " + afterMediaItemId);
+                mMANativeHelper.setGeneratePreview(true);
+                /**
+                 *  Invalidate the transition at this position
+                 */
+                removeTransitionAfter(index);
+                /**
+                 *  Insert the new media item
+                 */
+                mMediaItems.add(index + 1, mediaItem);
+                computeTimelineDuration();
+            }
+        } finally {
+            unlockStoryboard();
         }
     }
 
     /*
      * {@inheritDoc}
      */
-    public synchronized void moveAudioTrack(String audioTrackId, String afterAudioTrackId) {
+    public void moveAudioTrack(String audioTrackId, String afterAudioTrackId) {
         throw new IllegalStateException("Not supported");
     }
 
     /*
      * {@inheritDoc}
      */
-    public synchronized void moveMediaItem(String mediaItemId, String afterMediaItemId) {
-        final MediaItem moveMediaItem = removeMediaItem(mediaItemId,true);
-        if (moveMediaItem == null) {
-            throw new IllegalArgumentException("Target MediaItem not found: " + mediaItemId);
-        }
-
-        if (afterMediaItemId == null) {
-            if (mMediaItems.size() > 0) {
-                mMANativeHelper.setGeneratePreview(true);
-
-                /**
-                 *  Invalidate adjacent transitions at the insertion point
-                 */
-                removeTransitionBefore(0);
-
-                /**
-                 *  Insert the media item at the new position
-                 */
-                mMediaItems.add(0, moveMediaItem);
-                computeTimelineDuration();
-
-                generateProjectThumbnail();
-            } else {
-                throw new IllegalStateException("Cannot move media item (it is the only item)");
+    public void moveMediaItem(String mediaItemId, String afterMediaItemId) {
+        lockStoryboardForEdit();
+        try {
+            final MediaItem moveMediaItem = removeMediaItem(mediaItemId,true);
+            if (moveMediaItem == null) {
+                throw new IllegalArgumentException("Target MediaItem not found: " + mediaItemId);
             }
-        } else {
-            final int mediaItemCount = mMediaItems.size();
-            for (int i = 0; i < mediaItemCount; i++) {
-                final MediaItem mi = mMediaItems.get(i);
-                if (mi.getId().equals(afterMediaItemId)) {
+
+            if (afterMediaItemId == null) {
+                if (mMediaItems.size() > 0) {
                     mMANativeHelper.setGeneratePreview(true);
+
                     /**
                      *  Invalidate adjacent transitions at the insertion point
                      */
-                    removeTransitionAfter(i);
+                    removeTransitionBefore(0);
+
                     /**
                      *  Insert the media item at the new position
                      */
-                    mMediaItems.add(i + 1, moveMediaItem);
+                    mMediaItems.add(0, moveMediaItem);
                     computeTimelineDuration();
-                    return;
+
+                    generateProjectThumbnail();
+                } else {
+                    throw new IllegalStateException("Cannot move media item (it is the only item)");
+                }
+            } else {
+                final int index = mMediaItems.indexOfId(afterMediaItemId);
+                if (index < 0) {
+                    throw new IllegalArgumentException("MediaItem not found: " + afterMediaItemId);
                 }
-            }
 
-            throw new IllegalArgumentException("MediaItem not found: " + afterMediaItemId);
+                mMANativeHelper.setGeneratePreview(true);
+                /**
+                 *  Invalidate adjacent transitions at the insertion point
+                 */
+                removeTransitionAfter(index);
+                /**
+                 *  Insert the media item at the new position
+                 */
+                mMediaItems.add(index + 1, moveMediaItem);
+                computeTimelineDuration();
+            }
+        } finally {
+            unlockStoryboard();
         }
     }
 
@@ -729,15 +933,31 @@ public class VideoEditorImpl implements VideoEditor {
     public void release() {
         stopPreview();
 
+        /**
+         *  A storyboard which was never used is not loaded to be released
+         */
+        mStoryboardPending = false;
+        mPendingRecords = null;
+
         boolean semAcquireDone = false;
         try {
             lock();
             semAcquireDone = true;
 
             if (mMANativeHelper != null) {
-                mMediaItems.clear();
-                mAudioTracks.clear();
-                mTransitions.clear();
+                lockStoryboard();
+                try {
+                    mMediaItems.clear();
+                    mAudioTracks.clear();
+                    mTransitions.clear();
+                } finally {
+                    unlockStoryboard();
+                }
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "release: preview frames reused "
+                            + mMANativeHelper.getPreviewFrameHits() + ", rendered "
+                            + mMANativeHelper.getPreviewFrameMisses());
+                }
                 mMANativeHelper.releaseNativeHelper();
                 mMANativeHelper = null;
             }
@@ -748,6 +968,10 @@ public class VideoEditorImpl implements VideoEditor {
                 unlock();
             }
         }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "release: " + mEngineLockStatistics + "; " + mStoryboardLockStatistics);
+        }
+
         if (mMallocDebug) {
             try {
                 dumpHeap("HeapAtEnd");
@@ -760,210 +984,481 @@ public class VideoEditorImpl implements VideoEditor {
     /*
      * {@inheritDoc}
      */
-    public synchronized void removeAllMediaItems() {
-        mMANativeHelper.setGeneratePreview(true);
+    public void removeAllMediaItems() {
+        lockStoryboardForEdit();
+        try {
+            mMANativeHelper.setGeneratePreview(true);
 
-        mMediaItems.clear();
+            mMediaItems.clear();
 
-        /**
-         *  Invalidate all transitions
-         */
-        for (Transition transition : mTransitions) {
-            transition.invalidate();
-        }
-        mTransitions.clear();
+            /**
+             *  Invalidate all transitions
+             */
+            for (Transition transition : mTransitions) {
+                transition.invalidate();
+            }
+            mTransitions.clear();
 
-        mDurationMs = 0;
-        /**
-         * If a thumbnail already exists, then delete it
-         */
-        if ((new File(mProjectPath + "/" + THUMBNAIL_FILENAME)).exists()) {
-            (new File(mProjectPath + "/" + THUMBNAIL_FILENAME)).delete();
-        }
+            mDurationMs = 0;
+            /**
+             * If a thumbnail already exists, then delete it
+             */
+            if ((new File(mProjectPath + "/" + THUMBNAIL_FILENAME)).exists()) {
+                (new File(mProjectPath + "/" + THUMBNAIL_FILENAME)).delete();
+            }
 
+        } finally {
+            unlockStoryboard();
+        }
     }
 
     /*
      * {@inheritDoc}
      */
-    public synchronized AudioTrack removeAudioTrack(String audioTrackId) {
-        final AudioTrack audioTrack = getAudioTrack(audioTrackId);
-        if (audioTrack != null) {
-            mMANativeHelper.setGeneratePreview(true);
-            mAudioTracks.remove(audioTrack);
-            audioTrack.invalidate();
-            mMANativeHelper.invalidatePcmFile();
-            mMANativeHelper.setAudioflag(true);
-        } else {
-            throw new IllegalArgumentException(" No more audio tracks");
+    public AudioTrack removeAudioTrack(String audioTrackId) {
+        lockStoryboardForEdit();
+        try {
+            final AudioTrack audioTrack = mAudioTracks.getById(audioTrackId);
+            if (audioTrack != null) {
+                mMANativeHelper.setGeneratePreview(true);
+                mAudioTracks.remove(audioTrack);
+                audioTrack.invalidate();
+                mMANativeHelper.invalidatePcmFile();
+                mMANativeHelper.setAudioflag(true);
+            } else {
+                throw new IllegalArgumentException(" No more audio tracks");
+            }
+            return audioTrack;
+        } finally {
+            unlockStoryboard();
         }
-        return audioTrack;
     }
 
     /*
      * {@inheritDoc}
      */
-    public synchronized MediaItem removeMediaItem(String mediaItemId) {
-        final String firstItemString = mMediaItems.get(0).getId();
-        final MediaItem mediaItem = getMediaItem(mediaItemId);
-        if (mediaItem != null) {
-            mMANativeHelper.setGeneratePreview(true);
-            /**
-             *  Remove the media item
-             */
-            mMediaItems.remove(mediaItem);
-            if (mediaItem instanceof MediaImageItem) {
-                ((MediaImageItem)mediaItem).invalidate();
-            }
-            final List<Overlay> overlays = mediaItem.getAllOverlays();
-            if (overlays.size() > 0) {
-                for (Overlay overlay : overlays) {
-                    if (overlay instanceof OverlayFrame) {
-                        final OverlayFrame overlayFrame = (OverlayFrame)overlay;
-                        overlayFrame.invalidate();
+    public MediaItem removeMediaItem(String mediaItemId) {
+        lockStoryboardForEdit();
+        try {
+            final String firstItemString = mMediaItems.get(0).getId();
+            final MediaItem mediaItem = mMediaItems.getById(mediaItemId);
+            if (mediaItem != null) {
+                mMANativeHelper.setGeneratePreview(true);
+                /**
+                 *  Remove the media item
+                 */
+                mMediaItems.remove(mediaItem);
+                if (mediaItem instanceof MediaImageItem) {
+                    ((MediaImageItem)mediaItem).invalidate();
+                }
+                final List<Overlay> overlays = mediaItem.getAllOverlays();
+                if (overlays.size() > 0) {
+                    for (Overlay overlay : overlays) {
+                        if (overlay instanceof OverlayFrame) {
+                            final OverlayFrame overlayFrame = (OverlayFrame)overlay;
+                            overlayFrame.invalidate();
+                        }
                     }
                 }
+
+                /**
+                 *  Remove the adjacent transitions
+                 */
+                removeAdjacentTransitions(mediaItem);
+                computeTimelineDuration();
             }
 
             /**
-             *  Remove the adjacent transitions
+             * If string equals first mediaItem, then
+             * generate Project thumbnail
              */
-            removeAdjacentTransitions(mediaItem);
-            computeTimelineDuration();
-        }
+            if (firstItemString.equals(mediaItemId)) {
+                generateProjectThumbnail();
+            }
 
-        /**
-         * If string equals first mediaItem, then
-         * generate Project thumbnail
-         */
-        if (firstItemString.equals(mediaItemId)) {
-            generateProjectThumbnail();
+            if (mediaItem instanceof MediaVideoItem) {
+                /**
+                 * Delete the graph file
+                 */
+                ((MediaVideoItem)mediaItem).invalidate();
+            }
+            return mediaItem;
+        } finally {
+            unlockStoryboard();
         }
+    }
+
+    private MediaItem removeMediaItem(String mediaItemId, boolean flag) {
+        lockStoryboardForEdit();
+        try {
+            final String firstItemString = mMediaItems.get(0).getId();
+
+            final MediaItem mediaItem = mMediaItems.getById(mediaItemId);
+            if (mediaItem != null) {
+                mMANativeHelper.setGeneratePreview(true);
+                /**
+                 *  Remove the media item
+                 */
+                mMediaItems.remove(mediaItem);
+                /**
+                 *  Remove the adjacent transitions
+                 */
+                removeAdjacentTransitions(mediaItem);
+                computeTimelineDuration();
+            }
 
-        if (mediaItem instanceof MediaVideoItem) {
             /**
-             * Delete the graph file
+             * If string equals first mediaItem, then
+             * generate Project thumbail
              */
-            ((MediaVideoItem)mediaItem).invalidate();
+            if (firstItemString.equals(mediaItemId)) {
+                generateProjectThumbnail();
+            }
+            return mediaItem;
+        } finally {
+            unlockStoryboard();
         }
-        return mediaItem;
     }
 
-    private synchronized MediaItem removeMediaItem(String mediaItemId, boolean flag) {
-        final String firstItemString = mMediaItems.get(0).getId();
+    /*
+     * {@inheritDoc}
+     */
+    public Transition removeTransition(String transitionId) {
+        lockStoryboardForEdit();
+        try {
+            final Transition transition = mTransitions.getById(transitionId);
+            if (transition == null) {
+                throw new IllegalStateException("Transition not found: " + transitionId);
+            }
 
-        final MediaItem mediaItem = getMediaItem(mediaItemId);
-        if (mediaItem != null) {
             mMANativeHelper.setGeneratePreview(true);
+
             /**
-             *  Remove the media item
-             */
-            mMediaItems.remove(mediaItem);
-            /**
-             *  Remove the adjacent transitions
+             *  Remove the transition references
              */
-            removeAdjacentTransitions(mediaItem);
-            computeTimelineDuration();
-        }
+            final MediaItem afterMediaItem = transition.getAfterMediaItem();
+            if (afterMediaItem != null) {
+                afterMediaItem.setEndTransition(null);
+            }
 
-        /**
-         * If string equals first mediaItem, then
-         * generate Project thumbail
-         */
-        if (firstItemString.equals(mediaItemId)) {
-            generateProjectThumbnail();
+            final MediaItem beforeMediaItem = transition.getBeforeMediaItem();
+            if (beforeMediaItem != null) {
+                beforeMediaItem.setBeginTransition(null);
+            }
+
+            mTransitions.remove(transition);
+            transition.invalidate();
+            computeTimelineDuration();
+            return transition;
+        } finally {
+            unlockStoryboard();
         }
-        return mediaItem;
     }
 
     /*
      * {@inheritDoc}
      */
-    public synchronized Transition removeTransition(String transitionId) {
-        final Transition transition = getTransition(transitionId);
-        if (transition == null) {
-            throw new IllegalStateException("Transition not found: " + transitionId);
+    public long renderPreviewFrame(SurfaceHolder surfaceHolder, long timeMs,
+                                    OverlayData overlayData) {
+        if (surfaceHolder == null) {
+            throw new IllegalArgumentException("Surface Holder is null");
         }
 
-        mMANativeHelper.setGeneratePreview(true);
+        final Surface surface = surfaceHolder.getSurface();
+        if (surface == null) {
+            throw new IllegalArgumentException("Surface could not be retrieved from Surface holder");
+        }
 
-        /**
-         *  Remove the transition references
-         */
-        final MediaItem afterMediaItem = transition.getAfterMediaItem();
-        if (afterMediaItem != null) {
-            afterMediaItem.setEndTransition(null);
+        if (surface.isValid() == false) {
+            throw new IllegalStateException("Surface is not valid");
         }
 
-        final MediaItem beforeMediaItem = transition.getBeforeMediaItem();
-        if (beforeMediaItem != null) {
-            beforeMediaItem.setBeginTransition(null);
+        if (timeMs < 0) {
+            throw new IllegalArgumentException("requested time not correct");
+        } else if (timeMs > mDurationMs) {
+            throw new IllegalArgumentException("requested time more than duration");
         }
+        long result = 0;
 
-        mTransitions.remove(transition);
-        transition.invalidate();
-        computeTimelineDuration();
-        return transition;
+        boolean semAcquireDone = false;
+        try {
+            semAcquireDone = lock(ENGINE_ACCESS_MAX_TIMEOUT_MS);
+            if (semAcquireDone == false) {
+                throw new IllegalStateException("Timeout waiting for semaphore");
+            }
+
+            if (mMANativeHelper == null) {
+                throw new IllegalStateException("The video editor is not initialized");
+            }
+
+            if (getSnapshot().getMediaItems().size() > 0) {
+                final Rect frame = surfaceHolder.getSurfaceFrame();
+                result = mMANativeHelper.renderPreviewFrame(surface,
+                        timeMs, frame.width(), frame.height(), overlayData);
+            } else {
+                result = 0;
+            }
+        } catch (InterruptedException ex) {
+            Log.w(TAG, "The thread was interrupted", new Throwable());
+            throw new IllegalStateException("The thread was interrupted");
+        } finally {
+            if (semAcquireDone) {
+                unlock();
+            }
+        }
+        return result;
     }
 
-    /*
-     * {@inheritDoc}
+    /**
+     *  Load the project from the binary snapshot, or from XML if the project
+     *  was saved before binary snapshots were introduced. Only the project
+     *  section of the snapshot is read here. The media items, transitions and
+     *  audio tracks, whose creation reads the media properties, are loaded
+     *  from the other sections when the storyboard is first used.
      */
-    public long renderPreviewFrame(SurfaceHolder surfaceHolder, long timeMs,
-                                    OverlayData overlayData) {
-        if (surfaceHolder == null) {
-            throw new IllegalArgumentException("Surface Holder is null");
+    private void load() throws FileNotFoundException, XmlPullParserException, IOException {
+        final long startTimeMs = SystemClock.uptimeMillis();
+        if (ProjectSnapshot.exists(mProjectPath)) {
+            List<byte[]> records = null;
+            ProjectSnapshot snapshot = null;
+            try {
+                snapshot = ProjectSnapshot.open(mProjectPath);
+                if (snapshot != null) {
+                    mSnapshotGeneration = snapshot.getGeneration();
+                    records = snapshot.readSection(ProjectSnapshot.SECTION_PROJECT);
+                }
+            } catch (IOException ex) {
+                Log.w(TAG, "Cannot read the project snapshot", ex);
+            } finally {
+                if (snapshot != null) {
+                    snapshot.close();
+                }
+            }
+
+            if (records != null) {
+                /**
+                 *  The project attributes may have changed after the snapshot
+                 */
+                mPendingRecords = mJournal.read(mSnapshotGeneration);
+                for (byte[] record : mPendingRecords) {
+                    if (ProjectRecords.getType(record) == ProjectRecords.TYPE_PROJECT) {
+                        records.add(record);
+                    }
+                }
+
+                applyRecords(records);
+                mStoryboardPending = true;
+            } else {
+                recover(null);
+            }
+        } else {
+            loadXml();
+        }
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Opened project in " + (SystemClock.uptimeMillis() - startTimeMs) + " ms");
+        }
+    }
+
+    /**
+     *  Load the media items, transitions and audio tracks from the storyboard
+     *  sections of the snapshot and the journal records read on open. The
+     *  caller must hold the storyboard lock.
+     */
+    private void loadStoryboard() {
+        final long startTimeMs = SystemClock.uptimeMillis();
+        mLoadingStoryboard = true;
+        try {
+            List<byte[]> records = null;
+            ProjectSnapshot snapshot = null;
+            try {
+                snapshot = ProjectSnapshot.open(mProjectPath);
+                if (snapshot != null) {
+                    records = snapshot.readAllSections();
+                }
+            } catch (IOException ex) {
+                Log.w(TAG, "Cannot read the project snapshot", ex);
+            } finally {
+                if (snapshot != null) {
+                    snapshot.close();
+                }
+            }
+
+            if (records != null) {
+                records.addAll(mPendingRecords);
+
+                /**
+                 *  The records just read describe the state on disk, so the
+                 *  elements do not need to be encoded again
+                 */
+                mJournal.setBaseline(applyRecords(records).values());
+                computeTimelineDuration();
+            } else {
+                recover(mPendingRecords);
+            }
+
+            mPendingRecords = null;
+            mStoryboardPending = false;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot load the project: " + ex);
+        } finally {
+            mLoadingStoryboard = false;
+        }
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Loaded " + mMediaItems.size() + " media items in "
+                    + (SystemClock.uptimeMillis() - startTimeMs) + " ms");
+        }
+    }
+
+    /**
+     *  Load the storyboard if the project was opened without it
+     */
+    private void loadStoryboardIfPending() {
+        if (mStoryboardPending) {
+            lockStoryboard();
+            unlockStoryboard();
+        }
+    }
+
+    /**
+     *  Recover a project whose snapshot cannot be read from the previous
+     *  snapshot, the journal kept with it and the current journal. The edits
+     *  of the save which replaced the previous snapshot are lost unless they
+     *  were changed again since. A new snapshot replaces the corrupt one
+     *  right away.
+     *
+     *  @param journalRecords The records of the current journal, null if it
+     *      was not read yet
+     */
+    private void recover(List<byte[]> journalRecords) throws IOException {
+        final ProjectSnapshot snapshot = ProjectSnapshot.openPrevious(mProjectPath);
+        if (snapshot == null) {
+            throw new IOException("Cannot recover the project snapshot");
         }
 
-        final Surface surface = surfaceHolder.getSurface();
-        if (surface == null) {
-            throw new IllegalArgumentException("Surface could not be retrieved from Surface holder");
+        final long generation;
+        final List<byte[]> records;
+        try {
+            generation = snapshot.getGeneration();
+            records = snapshot.readAllSections();
+        } finally {
+            snapshot.close();
         }
 
-        if (surface.isValid() == false) {
-            throw new IllegalStateException("Surface is not valid");
-        }
+        Log.w(TAG, "Recovering the project from the snapshot of generation " + generation);
+        records.addAll(ProjectJournal.peekPrevious(mProjectPath, generation));
 
-        if (timeMs < 0) {
-            throw new IllegalArgumentException("requested time not correct");
-        } else if (timeMs > mDurationMs) {
-            throw new IllegalArgumentException("requested time more than duration");
+        /**
+         *  The current journal applies to the corrupt snapshot, or to the
+         *  previous one if a crash interrupted the replacement of the snapshot
+         */
+        if (journalRecords == null) {
+            journalRecords = mJournal.read(mSnapshotGeneration != 0
+                    ? mSnapshotGeneration : generation);
         }
-        long result = 0;
+        records.addAll(journalRecords);
 
-        boolean semAcquireDone = false;
-        try {
-            semAcquireDone = lock(ENGINE_ACCESS_MAX_TIMEOUT_MS);
-            if (semAcquireDone == false) {
-                throw new IllegalStateException("Timeout waiting for semaphore");
+        applyRecords(records);
+        computeTimelineDuration();
+        mSnapshotGeneration = Math.max(mSnapshotGeneration, generation);
+        writeSnapshot(getRecords(), false);
+    }
+
+    /**
+     * Read the aspect ratio of a saved project without loading it. Only the
+     * project section of the snapshot, or the project tag of the XML file,
+     * and the journal are read.
+     *
+     * @param projectPath The project path
+     *
+     * @return The aspect ratio
+     */
+    static int readAspectRatio(String projectPath) throws IOException {
+        int aspectRatio = MediaProperties.ASPECT_RATIO_16_9;
+        long generation = 0;
+        if (ProjectSnapshot.exists(projectPath)) {
+            List<byte[]> records = null;
+            ProjectSnapshot snapshot = null;
+            try {
+                snapshot = ProjectSnapshot.open(projectPath);
+                if (snapshot != null) {
+                    generation = snapshot.getGeneration();
+                    records = snapshot.readSection(ProjectSnapshot.SECTION_PROJECT);
+                }
+            } catch (IOException ex) {
+                Log.w(TAG, "Cannot read the project snapshot of: " + projectPath, ex);
+            } finally {
+                if (snapshot != null) {
+                    snapshot.close();
+                }
             }
 
-            if (mMANativeHelper == null) {
-                throw new IllegalStateException("The video editor is not initialized");
+            /**
+             *  The project is recovered from the previous snapshot when opened
+             */
+            if (records == null) {
+                snapshot = ProjectSnapshot.openPrevious(projectPath);
+                if (snapshot == null) {
+                    throw new IOException("Cannot read the project snapshot of: " + projectPath);
+                }
+
+                try {
+                    generation = snapshot.getGeneration();
+                    records = snapshot.readSection(ProjectSnapshot.SECTION_PROJECT);
+                } finally {
+                    snapshot.close();
+                }
             }
 
-            if (mMediaItems.size() > 0) {
-                final Rect frame = surfaceHolder.getSurfaceFrame();
-                result = mMANativeHelper.renderPreviewFrame(surface,
-                        timeMs, frame.width(), frame.height(), overlayData);
-            } else {
-                result = 0;
+            for (byte[] record : records) {
+                if (ProjectRecords.getType(record) == ProjectRecords.TYPE_PROJECT) {
+                    aspectRatio = ProjectRecords.readAspectRatio(record);
+                }
             }
-        } catch (InterruptedException ex) {
-            Log.w(TAG, "The thread was interrupted", new Throwable());
-            throw new IllegalStateException("The thread was interrupted");
-        } finally {
-            if (semAcquireDone) {
-                unlock();
+        } else {
+            final FileInputStream fis = new FileInputStream(new File(projectPath,
+                    PROJECT_FILENAME));
+            try {
+                final XmlPullParser parser = Xml.newPullParser();
+                parser.setInput(fis, "UTF-8");
+                int eventType = parser.getEventType();
+                while (eventType != XmlPullParser.END_DOCUMENT) {
+                    if (eventType == XmlPullParser.START_TAG
+                            && TAG_PROJECT.equals(parser.getName())) {
+                        aspectRatio = Integer.parseInt(parser.getAttributeValue("",
+                                ATTR_ASPECT_RATIO));
+                        final String journalGeneration = parser.getAttributeValue("",
+                                ATTR_JOURNAL_GENERATION);
+                        generation = journalGeneration != null
+                                ? Long.parseLong(journalGeneration) : 0;
+                        break;
+                    }
+                    eventType = parser.next();
+                }
+            } catch (XmlPullParserException ex) {
+                throw new IOException(ex.toString());
+            } finally {
+                fis.close();
             }
         }
-        return result;
+
+        /**
+         *  The aspect ratio may have changed after the snapshot
+         */
+        for (byte[] record : ProjectJournal.peek(projectPath, generation)) {
+            if (ProjectRecords.getType(record) == ProjectRecords.TYPE_PROJECT) {
+                aspectRatio = ProjectRecords.readAspectRatio(record);
+            }
+        }
+
+        return aspectRatio;
     }
 
     /**
      *  the project form XML
      */
-    private void load() throws FileNotFoundException, XmlPullParserException, IOException {
+    private void loadXml() throws FileNotFoundException, XmlPullParserException, IOException {
         final File file = new File(mProjectPath, PROJECT_FILENAME);
         /**
          *  Load the metadata
@@ -991,6 +1486,11 @@ public class VideoEditorImpl implements VideoEditor {
                                 Boolean.parseBoolean(parser.getAttributeValue("",
                                     ATTR_REGENERATE_PCM));
                             mMANativeHelper.setAudioflag(mRegenPCM);
+
+                            final String generation = parser.getAttributeValue("",
+                                    ATTR_JOURNAL_GENERATION);
+                            mSnapshotGeneration = generation != null ? Long.parseLong(generation)
+                                    : 0;
                         } else if (TAG_MEDIA_ITEM.equals(name)) {
                             final String mediaItemId = parser.getAttributeValue("", ATTR_ID);
                             try {
@@ -1098,6 +1598,13 @@ public class VideoEditorImpl implements VideoEditor {
                 }
                 eventType = parser.next();
             }
+
+            /**
+             *  Apply the edits saved after the snapshot
+             */
+            applyRecords(mJournal.read(mSnapshotGeneration));
+            mJournal.setBaseline(getRecords());
+
             computeTimelineDuration();
             // Regenerate project thumbnail
             if (regenerateProjectThumbnail) {
@@ -1174,7 +1681,7 @@ public class VideoEditorImpl implements VideoEditor {
                 return null;
             }
 
-            beforeMediaItem = getMediaItem(beforeMediaItemId);
+            beforeMediaItem = mMediaItems.getById(beforeMediaItemId);
         } else {
             beforeMediaItem = null;
         }
@@ -1187,7 +1694,7 @@ public class VideoEditorImpl implements VideoEditor {
                 return null;
             }
 
-            afterMediaItem = getMediaItem(afterMediaItemId);
+            afterMediaItem = mMediaItems.getById(afterMediaItemId);
         } else {
             afterMediaItem = null;
         }
@@ -1366,268 +1873,306 @@ public class VideoEditorImpl implements VideoEditor {
         return audioTrack;
     }
 
-    /*
-     * {@inheritDoc}
+    /**
+     * Apply project records to the loaded elements. Only the latest record
+     * of each element is applied.
+     *
+     * @param records The records, oldest first
+     *
+     * @return The latest record of each element, by element key
      */
-    public void save() throws IOException {
-        final XmlSerializer serializer = Xml.newSerializer();
-        final StringWriter writer = new StringWriter();
-        serializer.setOutput(writer);
-        serializer.startDocument("UTF-8", true);
-        serializer.startTag("", TAG_PROJECT);
-        serializer.attribute("",
-                             ATTR_ASPECT_RATIO, Integer.toString(mAspectRatio));
-
-        serializer.attribute("", ATTR_REGENERATE_PCM,
-                        Boolean.toString(mMANativeHelper.getAudioflag()));
-
-        serializer.startTag("", TAG_MEDIA_ITEMS);
-        for (MediaItem mediaItem : mMediaItems) {
-            serializer.startTag("", TAG_MEDIA_ITEM);
-            serializer.attribute("", ATTR_ID, mediaItem.getId());
-            serializer.attribute("", ATTR_TYPE,
-                                          mediaItem.getClass().getSimpleName());
-            serializer.attribute("", ATTR_FILENAME, mediaItem.getFilename());
-            serializer.attribute("", ATTR_RENDERING_MODE, Integer.toString(
-                    mediaItem.getRenderingMode()));
-            if (mediaItem instanceof MediaVideoItem) {
-                final MediaVideoItem mvi = (MediaVideoItem)mediaItem;
-                serializer
-                .attribute("", ATTR_BEGIN_TIME,
-                                     Long.toString(mvi.getBoundaryBeginTime()));
-                serializer.attribute("", ATTR_END_TIME,
-                                       Long.toString(mvi.getBoundaryEndTime()));
-                serializer.attribute("", ATTR_VOLUME,
-                                             Integer.toString(mvi.getVolume()));
-                serializer.attribute("", ATTR_MUTED,
-                                               Boolean.toString(mvi.isMuted()));
-                if (mvi.getAudioWaveformFilename() != null) {
-                    serializer.attribute("", ATTR_AUDIO_WAVEFORM_FILENAME,
-                            mvi.getAudioWaveformFilename());
-                }
-            } else if (mediaItem instanceof MediaImageItem) {
-                serializer.attribute("", ATTR_DURATION,
-                        Long.toString(mediaItem.getTimelineDuration()));
-            }
-
-            final List<Overlay> overlays = mediaItem.getAllOverlays();
-            if (overlays.size() > 0) {
-                serializer.startTag("", TAG_OVERLAYS);
-                for (Overlay overlay : overlays) {
-                    serializer.startTag("", TAG_OVERLAY);
-                    serializer.attribute("", ATTR_ID, overlay.getId());
-                    serializer.attribute("",
-                                 ATTR_TYPE, overlay.getClass().getSimpleName());
-                    serializer.attribute("", ATTR_BEGIN_TIME,
-                                         Long.toString(overlay.getStartTime()));
-                    serializer.attribute("", ATTR_DURATION,
-                                          Long.toString(overlay.getDuration()));
-                    if (overlay instanceof OverlayFrame) {
-                        final OverlayFrame overlayFrame = (OverlayFrame)overlay;
-                        overlayFrame.save(getPath());
-                        if (overlayFrame.getBitmapImageFileName() != null) {
-                            serializer.attribute("", ATTR_FILENAME,
-                                         overlayFrame.getBitmapImageFileName());
-                        }
+    private Map<String, byte[]> applyRecords(List<byte[]> records) throws IOException {
+        final Map<String, byte[]> latest = new LinkedHashMap<String, byte[]>();
+        if (records.size() == 0) {
+            return latest;
+        }
 
-                        if (overlayFrame.getFilename() != null) {
-                            serializer.attribute("",
-                                                 ATTR_OVERLAY_RGB_FILENAME,
-                                                 overlayFrame.getFilename());
-                            serializer.attribute("", ATTR_OVERLAY_FRAME_WIDTH,
-                                                 Integer.toString(overlayFrame.getOverlayFrameWidth()));
-                            serializer.attribute("", ATTR_OVERLAY_FRAME_HEIGHT,
-                                                 Integer.toString(overlayFrame.getOverlayFrameHeight()));
-                            serializer.attribute("", ATTR_OVERLAY_RESIZED_RGB_FRAME_WIDTH,
-                                                 Integer.toString(overlayFrame.getResizedRGBSizeWidth()));
-                            serializer.attribute("", ATTR_OVERLAY_RESIZED_RGB_FRAME_HEIGHT,
-                                                 Integer.toString(overlayFrame.getResizedRGBSizeHeight()));
+        for (byte[] record : records) {
+            final String key = ProjectRecords.getKey(record);
+            latest.remove(key);
+            latest.put(key, record);
+        }
 
-                        }
+        /**
+         *  Transitions are rebuilt once the media items are known
+         */
+        final Map<String, byte[]> transitions = new LinkedHashMap<String, byte[]>();
+        for (Transition transition : mTransitions) {
+            transitions.put(ProjectRecords.getKey(ProjectRecords.TYPE_TRANSITION,
+                    transition.getId()), ProjectRecords.transition(transition));
+        }
+        mTransitions.clear();
 
-                    }
+        byte[] mediaItemOrder = null;
+        byte[] audioTrackOrder = null;
+        for (Map.Entry<String, byte[]> entry : latest.entrySet()) {
+            final byte[] record = entry.getValue();
+            switch (ProjectRecords.getType(record)) {
+                case ProjectRecords.TYPE_PROJECT: {
+                    mAspectRatio = ProjectRecords.readAspectRatio(record);
+                    mMANativeHelper.setAudioflag(ProjectRecords.readRegeneratePCM(record));
+                    break;
+                }
 
-                    /**
-                     *  Save the user attributes
-                     */
-                    serializer.startTag("", TAG_OVERLAY_USER_ATTRIBUTES);
-                    final Map<String, String> userAttributes = overlay.getUserAttributes();
-                    for (String name : userAttributes.keySet()) {
-                        final String value = userAttributes.get(name);
-                        if (value != null) {
-                            serializer.attribute("", name, value);
+                case ProjectRecords.TYPE_MEDIA_ITEM: {
+                    final int index = indexOfMediaItem(ProjectRecords.getKeyId(entry.getKey()));
+                    try {
+                        final MediaItem mediaItem = ProjectRecords.readMediaItem(record, this);
+                        if (index >= 0) {
+                            mMediaItems.set(index, mediaItem);
+                        } else {
+                            mMediaItems.add(mediaItem);
+                        }
+                    } catch (Exception ex) {
+                        Log.w(TAG, "Cannot replay media item: " + entry.getKey(), ex);
+                        if (index >= 0) {
+                            mMediaItems.remove(index);
                         }
                     }
-                    serializer.endTag("", TAG_OVERLAY_USER_ATTRIBUTES);
+                    break;
+                }
 
-                    serializer.endTag("", TAG_OVERLAY);
+                case ProjectRecords.TYPE_TRANSITION: {
+                    transitions.put(entry.getKey(), record);
+                    break;
                 }
-                serializer.endTag("", TAG_OVERLAYS);
-            }
-
-            final List<Effect> effects = mediaItem.getAllEffects();
-            if (effects.size() > 0) {
-                serializer.startTag("", TAG_EFFECTS);
-                for (Effect effect : effects) {
-                    serializer.startTag("", TAG_EFFECT);
-                    serializer.attribute("", ATTR_ID, effect.getId());
-                    serializer.attribute("",
-                                  ATTR_TYPE, effect.getClass().getSimpleName());
-                    serializer.attribute("", ATTR_BEGIN_TIME,
-                            Long.toString(effect.getStartTime()));
-                    serializer.attribute("", ATTR_DURATION,
-                                           Long.toString(effect.getDuration()));
-                    if (effect instanceof EffectColor) {
-                        final EffectColor colorEffect = (EffectColor)effect;
-                        serializer.attribute("", ATTR_COLOR_EFFECT_TYPE,
-                                Integer.toString(colorEffect.getType()));
-                        if (colorEffect.getType() == EffectColor.TYPE_COLOR ||
-                                colorEffect.getType() == EffectColor.TYPE_GRADIENT) {
-                            serializer.attribute("", ATTR_COLOR_EFFECT_VALUE,
-                                    Integer.toString(colorEffect.getColor()));
+
+                case ProjectRecords.TYPE_AUDIO_TRACK: {
+                    final int index = indexOfAudioTrack(ProjectRecords.getKeyId(entry.getKey()));
+                    try {
+                        final AudioTrack audioTrack = ProjectRecords.readAudioTrack(record, this);
+                        if (index >= 0) {
+                            mAudioTracks.set(index, audioTrack);
+                        } else {
+                            addAudioTrack(audioTrack);
+                        }
+                    } catch (Exception ex) {
+                        Log.w(TAG, "Cannot replay audio track: " + entry.getKey(), ex);
+                        if (index >= 0) {
+                            mAudioTracks.remove(index);
                         }
-                    } else if (effect instanceof EffectKenBurns) {
-                        final Rect startRect = ((EffectKenBurns)effect).getStartRect();
-                        serializer.attribute("", ATTR_START_RECT_LEFT,
-                                Integer.toString(startRect.left));
-                        serializer.attribute("", ATTR_START_RECT_TOP,
-                                Integer.toString(startRect.top));
-                        serializer.attribute("", ATTR_START_RECT_RIGHT,
-                                Integer.toString(startRect.right));
-                        serializer.attribute("", ATTR_START_RECT_BOTTOM,
-                                Integer.toString(startRect.bottom));
-
-                        final Rect endRect = ((EffectKenBurns)effect).getEndRect();
-                        serializer.attribute("", ATTR_END_RECT_LEFT,
-                                                Integer.toString(endRect.left));
-                        serializer.attribute("", ATTR_END_RECT_TOP,
-                                                 Integer.toString(endRect.top));
-                        serializer.attribute("", ATTR_END_RECT_RIGHT,
-                                               Integer.toString(endRect.right));
-                        serializer.attribute("", ATTR_END_RECT_BOTTOM,
-                                Integer.toString(endRect.bottom));
-                        final MediaItem mItem = effect.getMediaItem();
-                           if(((MediaImageItem)mItem).getGeneratedImageClip() != null) {
-                               serializer.attribute("", ATTR_IS_IMAGE_CLIP_GENERATED,
-                                       Boolean.toString(true));
-                               serializer.attribute("", ATTR_GENERATED_IMAGE_CLIP,
-                                     ((MediaImageItem)mItem).getGeneratedImageClip());
-                            } else {
-                                serializer.attribute("", ATTR_IS_IMAGE_CLIP_GENERATED,
-                                     Boolean.toString(false));
-                         }
                     }
+                    break;
+                }
 
-                    serializer.endTag("", TAG_EFFECT);
+                case ProjectRecords.TYPE_MEDIA_ITEM_ORDER: {
+                    mediaItemOrder = record;
+                    break;
                 }
-                serializer.endTag("", TAG_EFFECTS);
-            }
 
-            serializer.endTag("", TAG_MEDIA_ITEM);
-        }
-        serializer.endTag("", TAG_MEDIA_ITEMS);
+                case ProjectRecords.TYPE_AUDIO_TRACK_ORDER: {
+                    audioTrackOrder = record;
+                    break;
+                }
 
-        serializer.startTag("", TAG_TRANSITIONS);
+                case ProjectRecords.TYPE_REMOVED: {
+                    final String id = ProjectRecords.getKeyId(entry.getKey());
+                    switch (ProjectRecords.getKeyType(entry.getKey())) {
+                        case ProjectRecords.TYPE_MEDIA_ITEM: {
+                            final int index = indexOfMediaItem(id);
+                            if (index >= 0) {
+                                mMediaItems.remove(index);
+                            }
+                            break;
+                        }
 
-        for (Transition transition : mTransitions) {
-            serializer.startTag("", TAG_TRANSITION);
-            serializer.attribute("", ATTR_ID, transition.getId());
-            serializer.attribute("", ATTR_TYPE, transition.getClass().getSimpleName());
-            serializer.attribute("", ATTR_DURATION, Long.toString(transition.getDuration()));
-            serializer.attribute("", ATTR_BEHAVIOR, Integer.toString(transition.getBehavior()));
-            serializer.attribute("", ATTR_IS_TRANSITION_GENERATED,
-                                    Boolean.toString(transition.isGenerated()));
-            if (transition.isGenerated() == true) {
-                serializer.attribute("", ATTR_GENERATED_TRANSITION_CLIP, transition.mFilename);
+                        case ProjectRecords.TYPE_TRANSITION: {
+                            transitions.remove(entry.getKey());
+                            break;
+                        }
+
+                        case ProjectRecords.TYPE_AUDIO_TRACK: {
+                            final int index = indexOfAudioTrack(id);
+                            if (index >= 0) {
+                                mAudioTracks.remove(index);
+                            }
+                            break;
+                        }
+
+                        default: {
+                            break;
+                        }
+                    }
+                    break;
+                }
+
+                default: {
+                    Log.w(TAG, "Unknown project record: " + entry.getKey());
+                    break;
+                }
             }
-            final MediaItem afterMediaItem = transition.getAfterMediaItem();
-            if (afterMediaItem != null) {
-                serializer.attribute("", ATTR_AFTER_MEDIA_ITEM_ID, afterMediaItem.getId());
+        }
+
+        if (mediaItemOrder != null) {
+            final List<String> ids = ProjectRecords.readOrder(mediaItemOrder);
+            for (int i = 0; i < ids.size(); i++) {
+                final int index = indexOfMediaItem(ids.get(i));
+                if (index > i) {
+                    mMediaItems.add(i, mMediaItems.remove(index));
+                }
             }
+        }
 
-            final MediaItem beforeMediaItem = transition.getBeforeMediaItem();
-            if (beforeMediaItem != null) {
-                serializer.attribute("", ATTR_BEFORE_MEDIA_ITEM_ID, beforeMediaItem.getId());
-            }
-
-            if (transition instanceof TransitionSliding) {
-                serializer.attribute("", ATTR_DIRECTION,
-                        Integer.toString(((TransitionSliding)transition).getDirection()));
-            } else if (transition instanceof TransitionAlpha) {
-                TransitionAlpha ta = (TransitionAlpha)transition;
-                serializer.attribute("", ATTR_BLENDING,
-                                     Integer.toString(ta.getBlendingPercent()));
-                serializer.attribute("", ATTR_INVERT,
-                                               Boolean.toString(ta.isInvert()));
-                if (ta.getMaskFilename() != null) {
-                    serializer.attribute("", ATTR_MASK, ta.getMaskFilename());
+        if (audioTrackOrder != null) {
+            final List<String> ids = ProjectRecords.readOrder(audioTrackOrder);
+            for (int i = 0; i < ids.size(); i++) {
+                final int index = indexOfAudioTrack(ids.get(i));
+                if (index > i) {
+                    mAudioTracks.add(i, mAudioTracks.remove(index));
                 }
             }
-            serializer.endTag("", TAG_TRANSITION);
-        }
-        serializer.endTag("", TAG_TRANSITIONS);
-        serializer.startTag("", TAG_AUDIO_TRACKS);
-        for (AudioTrack at : mAudioTracks) {
-            serializer.startTag("", TAG_AUDIO_TRACK);
-            serializer.attribute("", ATTR_ID, at.getId());
-            serializer.attribute("", ATTR_FILENAME, at.getFilename());
-            serializer.attribute("", ATTR_START_TIME, Long.toString(at.getStartTime()));
-            serializer.attribute("", ATTR_BEGIN_TIME, Long.toString(at.getBoundaryBeginTime()));
-            serializer.attribute("", ATTR_END_TIME, Long.toString(at.getBoundaryEndTime()));
-            serializer.attribute("", ATTR_VOLUME, Integer.toString(at.getVolume()));
-            serializer.attribute("", ATTR_DUCK_ENABLED,
-                                       Boolean.toString(at.isDuckingEnabled()));
-            serializer.attribute("", ATTR_DUCKED_TRACK_VOLUME,
-                                   Integer.toString(at.getDuckedTrackVolume()));
-            serializer.attribute("", ATTR_DUCK_THRESHOLD,
-                                   Integer.toString(at.getDuckingThreshhold()));
-            serializer.attribute("", ATTR_MUTED, Boolean.toString(at.isMuted()));
-            serializer.attribute("", ATTR_LOOP, Boolean.toString(at.isLooping()));
-            if (at.getAudioWaveformFilename() != null) {
-                serializer.attribute("", ATTR_AUDIO_WAVEFORM_FILENAME,
-                        at.getAudioWaveformFilename());
-            }
-
-            serializer.endTag("", TAG_AUDIO_TRACK);
-        }
-        serializer.endTag("", TAG_AUDIO_TRACKS);
-
-        serializer.endTag("", TAG_PROJECT);
-        serializer.endDocument();
+        }
 
         /**
-         *  Save the metadata XML file
+         *  Link the transitions to the media items
          */
-        final FileOutputStream out = new FileOutputStream(new File(getPath(),
-                                                          PROJECT_FILENAME));
-        out.write(writer.toString().getBytes());
-        out.flush();
-        out.close();
+        for (MediaItem mediaItem : mMediaItems) {
+            mediaItem.setBeginTransition(null);
+            mediaItem.setEndTransition(null);
+        }
+
+        for (Map.Entry<String, byte[]> entry : transitions.entrySet()) {
+            try {
+                final Transition transition = ProjectRecords.readTransition(entry.getValue(),
+                        this);
+                // The transition is null if a bounding media item was removed
+                if (transition != null) {
+                    if (transition.getBeforeMediaItem() != null) {
+                        transition.getBeforeMediaItem().setBeginTransition(transition);
+                    }
+
+                    if (transition.getAfterMediaItem() != null) {
+                        transition.getAfterMediaItem().setEndTransition(transition);
+                    }
+                    mTransitions.add(transition);
+                }
+            } catch (Exception ex) {
+                Log.w(TAG, "Cannot replay transition: " + entry.getKey(), ex);
+            }
+        }
+
+        return latest;
+    }
+
+    /**
+     * @return The records describing all the project elements
+     */
+    private List<byte[]> getRecords() throws IOException {
+        final List<byte[]> records = new ArrayList<byte[]>();
+        records.add(ProjectRecords.project(mAspectRatio, mMANativeHelper.getAudioflag()));
+        for (MediaItem mediaItem : mMediaItems) {
+            records.add(ProjectRecords.mediaItem(mediaItem));
+        }
+        records.add(ProjectRecords.mediaItemOrder(mMediaItems));
+
+        for (Transition transition : mTransitions) {
+            records.add(ProjectRecords.transition(transition));
+        }
+
+        for (AudioTrack audioTrack : mAudioTracks) {
+            records.add(ProjectRecords.audioTrack(audioTrack));
+        }
+        records.add(ProjectRecords.audioTrackOrder(mAudioTracks));
+        return records;
+    }
+
+    /**
+     * @param mediaItemId The media item id
+     *
+     * @return The index of the media item, -1 if not found
+     */
+    private int indexOfMediaItem(String mediaItemId) {
+        return mMediaItems.indexOfId(mediaItemId);
+    }
+
+    /**
+     * @param audioTrackId The audio track id
+     *
+     * @return The index of the audio track, -1 if not found
+     */
+    private int indexOfAudioTrack(String audioTrackId) {
+        return mAudioTracks.indexOfId(audioTrackId);
     }
 
     /*
      * {@inheritDoc}
      */
-    public void setAspectRatio(int aspectRatio) {
-        mAspectRatio = aspectRatio;
+    public void save() throws IOException {
+        loadStoryboardIfPending();
+
         /**
-         *  Invalidate all transitions
+         *  Write the overlay bitmaps before recording their file names
          */
-        mMANativeHelper.setGeneratePreview(true);
+        for (MediaItem mediaItem : mMediaItems) {
+            for (Overlay overlay : mediaItem.getAllOverlays()) {
+                if (overlay instanceof OverlayFrame) {
+                    ((OverlayFrame)overlay).save(getPath());
+                }
+            }
+        }
 
-        for (Transition transition : mTransitions) {
-            transition.invalidate();
+        /**
+         *  Append the changed elements to the journal. Once the journal has
+         *  grown large compared to the project it is compacted into a new
+         *  snapshot.
+         */
+        final List<byte[]> records = getRecords();
+        if (!ProjectSnapshot.exists(getPath()) || mJournal.needsCompaction(records)) {
+            writeSnapshot(records, true);
+        } else {
+            mJournal.append(records);
         }
+    }
 
-        final Iterator<MediaItem> it = mMediaItems.iterator();
+    /**
+     * Write the complete project to the snapshot file and start a new journal
+     *
+     * @param records The records describing all the project elements
+     * @param keepPrevious true to keep the snapshot and the journal being
+     *      replaced for recovery, false if the snapshot is corrupt
+     */
+    private void writeSnapshot(List<byte[]> records, boolean keepPrevious) throws IOException {
+        final long generation = Math.max(mSnapshotGeneration + 1, System.currentTimeMillis());
+        ProjectSnapshot.write(getPath(), generation, ProjectRecords.groupBySection(records),
+                keepPrevious);
 
-        while (it.hasNext()) {
-            final MediaItem t = it.next();
-            List<Overlay> overlayList = t.getAllOverlays();
-            for (Overlay overlay : overlayList) {
+        /**
+         *  The XML file of older versions is superseded by the snapshot
+         */
+        new File(getPath(), PROJECT_FILENAME).delete();
+
+        mSnapshotGeneration = generation;
+        mJournal.reset(generation, records, keepPrevious);
+    }
+
+    /*
+     * {@inheritDoc}
+     */
+    public void setAspectRatio(int aspectRatio) {
+        lockStoryboardForEdit();
+        try {
+            mAspectRatio = aspectRatio;
+            /**
+             *  Invalidate all transitions
+             */
+            mMANativeHelper.setGeneratePreview(true);
+
+            for (Transition transition : mTransitions) {
+                transition.invalidate();
+            }
+
+            final Iterator<MediaItem> it = mMediaItems.iterator();
 
-                ((OverlayFrame)overlay).invalidateGeneratedFiles();
+            while (it.hasNext()) {
+                final MediaItem t = it.next();
+                List<Overlay> overlayList = t.getAllOverlays();
+                for (Overlay overlay : overlayList) {
+
+                    ((OverlayFrame)overlay).invalidateGeneratedFiles();
+                }
             }
+        } finally {
+            unlockStoryboard();
         }
     }
 
@@ -1675,10 +2220,21 @@ public class VideoEditorImpl implements VideoEditor {
                     throw new IllegalStateException("The video editor is not initialized");
                 }
 
-                if (mMediaItems.size() > 0) {
+                final StoryboardSnapshot snapshot;
+                final int storyBoardGeneration;
+                lockStoryboard();
+                try {
+                    snapshot = getSnapshot();
+                    storyBoardGeneration = mMANativeHelper.getStoryBoardGeneration();
+                } finally {
+                    unlockStoryboard();
+                }
+
+                if (snapshot.getMediaItems().size() > 0) {
                     mPreviewInProgress = true;
-                    mMANativeHelper.previewStoryBoard(mMediaItems, mTransitions,
-                                                      mAudioTracks, null);
+                    mMANativeHelper.previewStoryBoard(snapshot.getMediaItems(),
+                            snapshot.getTransitions(), snapshot.getAudioTracks(),
+                            storyBoardGeneration, null);
                     mMANativeHelper.doPreview(surface, fromMs, toMs, loop,
                                      callbackAfterFrameCount, listener);
                 }
@@ -1907,10 +2463,31 @@ public class VideoEditorImpl implements VideoEditor {
      * @throws InterruptedException
      */
     private void lock() throws InterruptedException {
+        lockEngine(true);
+    }
+
+    /**
+     * Grab the semaphore which arbitrates access to the editor
+     *
+     * @param preemptProxyEncode true to stop a proxy encode which holds the
+     *      semaphore
+     *
+     * @throws InterruptedException
+     */
+    private void lockEngine(boolean preemptProxyEncode) throws InterruptedException {
         if (Log.isLoggable(TAG, Log.DEBUG)) {
             Log.d(TAG, "lock: grabbing semaphore", new Throwable());
         }
-        mLock.acquire();
+        final long startNs = System.nanoTime();
+        // A zero timeout still honors the fairness of the semaphore
+        final boolean contended = !mLock.tryAcquire(0, TimeUnit.MILLISECONDS);
+        if (contended) {
+            if (preemptProxyEncode) {
+                preemptProxyEncode();
+            }
+            mLock.acquire();
+        }
+        mEngineLockStatistics.recordAcquired(contended, System.nanoTime() - startNs);
         if (Log.isLoggable(TAG, Log.DEBUG)) {
             Log.d(TAG, "lock: grabbed semaphore");
         }
@@ -1929,7 +2506,19 @@ public class VideoEditorImpl implements VideoEditor {
             Log.d(TAG, "lock: grabbing semaphore with timeout " + timeoutMs, new Throwable());
         }
 
-        boolean acquireSem = mLock.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+        final long startNs = System.nanoTime();
+        final boolean contended = !mLock.tryAcquire(0, TimeUnit.MILLISECONDS);
+        if (contended) {
+            preemptProxyEncode();
+        }
+        final boolean acquireSem = !contended
+                || mLock.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+        if (acquireSem) {
+            mEngineLockStatistics.recordAcquired(contended, System.nanoTime() - startNs);
+        } else {
+            mEngineLockStatistics.recordTimeout(System.nanoTime() - startNs);
+        }
+
         if (Log.isLoggable(TAG, Log.DEBUG)) {
             Log.d(TAG, "lock: grabbed semaphore status " + acquireSem);
         }
@@ -1937,6 +2526,17 @@ public class VideoEditorImpl implements VideoEditor {
         return acquireSem;
     }
 
+    /**
+     * Stop the proxy encode which holds the semaphore, if any
+     */
+    private void preemptProxyEncode() {
+        final MediaArtistNativeHelper nativeHelper = mMANativeHelper;
+        if (mProxyEncodeInProgress && !mProxyEncodePreempted && nativeHelper != null) {
+            mProxyEncodePreempted = true;
+            nativeHelper.stopProxyClip();
+        }
+    }
+
     /**
      * Release the semaphore which arbitrates access to the editor
      */
@@ -1947,6 +2547,89 @@ public class VideoEditorImpl implements VideoEditor {
         mLock.release();
     }
 
+    /**
+     * Grab the lock which serializes the modifications of the storyboard.
+     * The storyboard is loaded first if the project was opened without it.
+     */
+    private void lockStoryboard() {
+        final long startNs = System.nanoTime();
+        final boolean contended = !mStoryboardLock.tryLock();
+        if (contended) {
+            mStoryboardLock.lock();
+        }
+        mStoryboardLockStatistics.recordAcquired(contended, System.nanoTime() - startNs);
+
+        if (mStoryboardPending && !mLoadingStoryboard) {
+            try {
+                loadStoryboard();
+            } catch (RuntimeException ex) {
+                mStoryboardLock.unlock();
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Release the lock which serializes the modifications of the storyboard
+     */
+    private void unlockStoryboard() {
+        mStoryboardLock.unlock();
+    }
+
+    /**
+     * Grab the storyboard lock to modify the storyboard, waiting for the
+     * exports in progress. The lock is released while waiting.
+     */
+    private void lockStoryboardForEdit() {
+        lockStoryboard();
+        while (mExportsInProgress > 0) {
+            mExportsDone.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Wait for the exports in progress before a media item, an effect, an
+     * overlay, a transition or an audio track is modified or its generated
+     * files are deleted
+     */
+    void awaitExports() {
+        lockStoryboardForEdit();
+        unlockStoryboard();
+    }
+
+    /**
+     * @return The contention statistics of the engine semaphore
+     */
+    LockStatistics getEngineLockStatistics() {
+        return mEngineLockStatistics;
+    }
+
+    /**
+     * @return The contention statistics of the storyboard lock
+     */
+    LockStatistics getStoryboardLockStatistics() {
+        return mStoryboardLockStatistics;
+    }
+
+    /**
+     * Print the contention statistics of the engine semaphore and of the
+     * storyboard lock, and the preview frames reused and rendered
+     *
+     * @param writer The writer
+     */
+    public void dumpStatistics(PrintWriter writer) {
+        writer.println("Locks: " + mEngineLockStatistics);
+        writer.println("Locks: " + mStoryboardLockStatistics);
+
+        final MediaArtistNativeHelper nativeHelper = mMANativeHelper;
+        if (nativeHelper != null) {
+            final long hits = nativeHelper.getPreviewFrameHits();
+            final long requests = hits + nativeHelper.getPreviewFrameMisses();
+            writer.println("Preview frames: " + requests + " requests, " + hits + " reused ("
+                    + (requests > 0 ? hits * 100 / requests : 0) + "%)");
+        }
+    }
+
     /**
      * Dumps the heap memory usage information to file
      */
@@ -32,6 +32,8 @@ import android.widget.BaseAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import dogtim.android.videoeditor.util.BitmapMemoryManager;
+
 /**
  * Base class for BaseAdapters which load images.
  */
@@ -41,6 +43,28 @@ public abstract class BaseAdapterWithImages<K> extends BaseAdapter {
     // For recording keys of images that are being loaded
     private final Set<K> mLoadingImages;
     private final AbsListView mListView;
+    private final BitmapMemoryManager mBitmapMemoryManager;
+    // The images are all on screen, they are reported but never trimmed
+    private final BitmapMemoryManager.Client mBitmapMemoryClient =
+            new BitmapMemoryManager.Client() {
+        @Override
+        public long getBitmapBytes() {
+            long bytes = 0;
+            for (ImageViewHolder<K> viewHolder : mViewHolders) {
+                final BitmapDrawable drawable
+                        = (BitmapDrawable)viewHolder.mImageView.getDrawable();
+                if (drawable != null && drawable.getBitmap() != null) {
+                    bytes += drawable.getBitmap().getByteCount();
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        public long trimBitmapBytes(long bytes) {
+            return 0;
+        }
+    };
 
     /**
      * View holder class
@@ -103,6 +127,7 @@ public abstract class BaseAdapterWithImages<K> extends BaseAdapter {
             for (ImageViewHolder<K> viewHolder : mViewHolders) {
                 if (mKey.equals(viewHolder.mKey)) {
                     viewHolder.mImageView.setImageBitmap(bitmap);
+                    mBitmapMemoryManager.onBitmapsAdded();
                     return;
                 }
             }
@@ -122,6 +147,8 @@ public abstract class BaseAdapterWithImages<K> extends BaseAdapter {
         mListView = listView;
         mLoadingImages = new HashSet<K>();
         mViewHolders = new ArrayList<ImageViewHolder<K>>();
+        mBitmapMemoryManager = BitmapMemoryManager.getInstance(context);
+        mBitmapMemoryManager.register(getClass().getSimpleName(), mBitmapMemoryClient, 1);
 
         mListView.setRecyclerListener(new AbsListView.RecyclerListener() {
             @Override
@@ -150,6 +177,8 @@ public abstract class BaseAdapterWithImages<K> extends BaseAdapter {
      * Upon destroy, recycle all images and then remove all child views in the list view.
      */
     public void onDestroy() {
+        mBitmapMemoryManager.unregister(mBitmapMemoryClient);
+
         final int count = mListView.getChildCount();
         for (int i = 0; i < count; i++) {
             final View rowView = mListView.getChildAt(i);
@@ -34,6 +34,7 @@ import android.widget.FrameLayout;
 import android.widget.RadioGroup;
 import android.widget.Toast;
 
+import dogtim.android.videoeditor.util.BitmapMemoryManager;
 import dogtim.android.videoeditor.widgets.ImageViewTouchBase;
 
 /**
@@ -76,6 +77,20 @@ public class KenBurnsActivity extends Activity {
     private float mImageViewScale;
     private int mImageSubsample;
     private Bitmap mBitmap;
+    private BitmapMemoryManager mBitmapMemoryManager;
+    // The image is being edited, it is reported but never trimmed
+    private final BitmapMemoryManager.Client mBitmapMemoryClient =
+            new BitmapMemoryManager.Client() {
+        @Override
+        public long getBitmapBytes() {
+            return mBitmap != null ? mBitmap.getByteCount() : 0;
+        }
+
+        @Override
+        public long trimBitmapBytes(long bytes) {
+            return 0;
+        }
+    };
 
     /**
      * The simple gestures listener
@@ -191,6 +206,7 @@ public class KenBurnsActivity extends Activity {
                 mRadioGroup.setEnabled(true);
                 mImageView.setImageBitmapResetBase(bitmap, true);
                 mBitmap = bitmap;
+                mBitmapMemoryManager.onBitmapsAdded();
                 if (Log.isLoggable(TAG, Log.DEBUG)) {
                     Log.d(TAG, "Bitmap size: " + bitmap.getWidth() + "x" + bitmap.getHeight()
                             + ", bytes: " + (bitmap.getRowBytes() * bitmap.getHeight()));
@@ -322,6 +338,8 @@ public class KenBurnsActivity extends Activity {
         });
 
         mBitmap = (Bitmap) getLastNonConfigurationInstance();
+        mBitmapMemoryManager = BitmapMemoryManager.getInstance(this);
+        mBitmapMemoryManager.register("Ken Burns image", mBitmapMemoryClient, 1);
 
         mImageView.setEventListener(new ImageViewTouchBase.ImageTouchEventListener() {
             @Override
@@ -352,6 +370,7 @@ public class KenBurnsActivity extends Activity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        mBitmapMemoryManager.unregister(mBitmapMemoryClient);
         if (!isChangingConfigurations()) {
             if (mBitmap != null) {
                 mBitmap.recycle();
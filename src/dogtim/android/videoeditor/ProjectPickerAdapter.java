@@ -25,7 +25,6 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
 import android.graphics.Typeface;
-import android.media.videoeditor.VideoEditor;
 import android.os.AsyncTask;
 import android.text.format.DateUtils;
 import android.text.TextPaint;
@@ -39,28 +38,58 @@ import android.widget.BaseAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import dogtim.android.videoeditor.service.VideoEditorProject;
+import dogtim.android.videoeditor.service.ProjectSummary;
+import dogtim.android.videoeditor.util.BitmapMemoryManager;
 import dogtim.android.videoeditor.util.ImageUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 
 public class ProjectPickerAdapter extends BaseAdapter {
     private Context mContext;
     private Resources mResources;
     private LayoutInflater mInflater;
-    private List<VideoEditorProject> mProjects;
+    private List<ProjectSummary> mProjects;
     private int mItemWidth;
     private int mItemHeight;
     private int mOverlayHeight;
     private int mOverlayVerticalInset;
     private int mOverlayHorizontalInset;
     private LruCache<String, Bitmap> mPreviewBitmapCache;
+    private final BitmapMemoryManager mBitmapMemoryManager;
+    // The previews are cheap to reload from the project thumbnails
+    private final BitmapMemoryManager.Client mBitmapMemoryClient =
+            new BitmapMemoryManager.Client() {
+        @Override
+        public long getBitmapBytes() {
+            long bytes = 0;
+            for (Bitmap bitmap : mPreviewBitmapCache.snapshot().values()) {
+                bytes += bitmap.getByteCount();
+            }
+            return bytes;
+        }
+
+        @Override
+        public long trimBitmapBytes(long bytes) {
+            // The snapshot is ordered from the least recently used entry
+            long trimmed = 0;
+            for (Map.Entry<String, Bitmap> entry : mPreviewBitmapCache.snapshot().entrySet()) {
+                if (trimmed >= bytes) {
+                    break;
+                }
+                if (mPreviewBitmapCache.remove(entry.getKey()) != null) {
+                    trimmed += entry.getValue().getByteCount();
+                }
+            }
+            return trimmed;
+        }
+    };
 
     public ProjectPickerAdapter(Context context, LayoutInflater inflater,
-            List<VideoEditorProject> projects) {
+            List<ProjectSummary> projects) {
         mContext = context;
         mResources = context.getResources();
         mInflater = inflater;
@@ -75,6 +104,33 @@ public class ProjectPickerAdapter extends BaseAdapter {
                 R.dimen.project_picker_item_overlay_horizontal_inset);
         // Limit the cache size to 15 thumbnails.
         mPreviewBitmapCache = new LruCache<String, Bitmap>(15);
+        mBitmapMemoryManager = BitmapMemoryManager.getInstance(context);
+        mBitmapMemoryManager.register("Project previews", mBitmapMemoryClient, 1);
+    }
+
+    /**
+     * Releases the preview bitmaps. The adapter cannot be used after this call.
+     */
+    public void release() {
+        mBitmapMemoryManager.unregister(mBitmapMemoryClient);
+        mPreviewBitmapCache.evictAll();
+    }
+
+    /**
+     * A preview bitmap was added to the cache
+     */
+    void onPreviewBitmapCached() {
+        mBitmapMemoryManager.onBitmapsAdded();
+    }
+
+    /**
+     * Appends a page of projects and updates the display.
+     *
+     * @param projects The projects of the page
+     */
+    public void addAll(List<ProjectSummary> projects) {
+        mProjects.addAll(projects);
+        notifyDataSetChanged();
     }
 
     /**
@@ -95,7 +151,7 @@ public class ProjectPickerAdapter extends BaseAdapter {
      *      {@code false} if no removal happened
      */
     public boolean remove(String projectPath) {
-        for (VideoEditorProject project : mProjects) {
+        for (ProjectSummary project : mProjects) {
             if (project.getPath().equals(projectPath)) {
                 if (mProjects.remove(project)) {
                     notifyDataSetChanged();
@@ -143,13 +199,14 @@ public class ProjectPickerAdapter extends BaseAdapter {
             duration = "";
             thumbnail = renderNewProjectThumbnail();
         } else {
-            VideoEditorProject project = mProjects.get(position);
+            ProjectSummary project = mProjects.get(position);
             title = project.getName();
             if (title == null) {
                 title = "";
             }
             duration = millisecondsToTimeString(project.getProjectDuration());
-            thumbnail = getThumbnail(project.getPath(), iv, title, duration);
+            thumbnail = getThumbnail(project.getPath(), project.getThumbnailPath(), iv, title,
+                    duration);
         }
 
         if (thumbnail != null) {
@@ -192,14 +249,14 @@ public class ProjectPickerAdapter extends BaseAdapter {
                 paint);
     }
 
-    private Bitmap getThumbnail(String projectPath, ImageView imageView, String title,
-            String duration) {
+    private Bitmap getThumbnail(String projectPath, String thumbnailPath, ImageView imageView,
+            String title, String duration) {
         Bitmap previewBitmap = mPreviewBitmapCache.get(projectPath);
         if (previewBitmap == null) {
             // Cache miss: asynchronously load bitmap to avoid scroll stuttering
             // in the project picker.
-            new LoadPreviewBitmapTask(this, projectPath, imageView, mItemWidth, mItemHeight,
-                    title, duration, mPreviewBitmapCache).execute();
+            new LoadPreviewBitmapTask(this, projectPath, thumbnailPath, imageView, mItemWidth,
+                    mItemHeight, title, duration, mPreviewBitmapCache).execute();
         } else {
             return previewBitmap;
         }
@@ -241,6 +298,7 @@ class LoadPreviewBitmapTask extends AsyncTask<Void, Void, Bitmap> {
     // Handle to the adapter that initiates this async task.
     private ProjectPickerAdapter mContextAdapter;
     private String mProjectPath;
+    private String mThumbnailPath;
     // Handle to the image view we should update when the preview bitmap is loaded.
     private ImageView mImageView;
     private int mWidth;
@@ -250,10 +308,11 @@ class LoadPreviewBitmapTask extends AsyncTask<Void, Void, Bitmap> {
     private LruCache<String, Bitmap> mPreviewBitmapCache;
 
     public LoadPreviewBitmapTask(ProjectPickerAdapter contextAdapter, String projectPath,
-            ImageView imageView, int width, int height, String title, String duration,
-            LruCache<String, Bitmap> previewBitmapCache) {
+            String thumbnailPath, ImageView imageView, int width, int height, String title,
+            String duration, LruCache<String, Bitmap> previewBitmapCache) {
         mContextAdapter = contextAdapter;
         mProjectPath = projectPath;
+        mThumbnailPath = thumbnailPath;
         mImageView = imageView;
         mWidth = width;
         mHeight = height;
@@ -264,7 +323,7 @@ class LoadPreviewBitmapTask extends AsyncTask<Void, Void, Bitmap> {
 
     @Override
     protected Bitmap doInBackground(Void... param) {
-        final File thumbnail = new File(mProjectPath, VideoEditor.THUMBNAIL_FILENAME);
+        final File thumbnail = new File(mThumbnailPath);
         // Return early if thumbnail does not exist.
         if (!thumbnail.exists()) {
             return null;
@@ -304,6 +363,7 @@ class LoadPreviewBitmapTask extends AsyncTask<Void, Void, Bitmap> {
             result.eraseColor(Color.BLACK);
         } else {
             mPreviewBitmapCache.put(mProjectPath, result);
+            mContextAdapter.onPreviewBitmapCached();
         }
 
         // Update the image view.
@@ -28,6 +28,7 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.Button;
 import android.widget.GridView;
@@ -37,7 +38,7 @@ import android.widget.Toast;
 
 import dogtim.android.videoeditor.service.ApiService;
 import dogtim.android.videoeditor.service.ApiServiceListener;
-import dogtim.android.videoeditor.service.VideoEditorProject;
+import dogtim.android.videoeditor.service.ProjectSummary;
 import dogtim.android.videoeditor.util.FileUtils;
 
 import java.util.List;
@@ -68,21 +69,45 @@ public class ProjectsActivity extends NoSearchActivity {
     // Threshold in width dip for showing title in action bar
     private static final int SHOW_TITLE_THRESHOLD_WIDTH_DIP = 1000;
 
+    // The number of projects loaded at a time
+    private static final int PROJECTS_PAGE_SIZE = 24;
+
     private GridView mGridView;
-    private List<VideoEditorProject> mProjects;
+    private List<ProjectSummary> mProjects;
     private ProjectPickerAdapter mAdapter;
+    // true if a page of projects is being loaded
+    private boolean mLoadingProjects;
+    // true if more projects follow the loaded pages
+    private boolean mHasMoreProjects;
 
     // Listener that responds to the event when projects are loaded. It populates the grid view with
     // project thumbnail and information.
     private final ApiServiceListener mProjectsLoadedListener = new ApiServiceListener() {
         @Override
-        public void onProjectsLoaded(List<VideoEditorProject> projects, Exception exception) {
-            if (projects != null && exception == null) {
+        public void onProjectsLoaded(List<ProjectSummary> projects, int offset,
+                boolean hasMore, Exception exception) {
+            mLoadingProjects = false;
+            if (projects == null || exception != null) {
+                return;
+            }
+
+            if (offset == 0) {
                 mProjects = projects;
                 // Initialize adapter with project list and populate data in the grid view.
+                if (mAdapter != null) {
+                    mAdapter.release();
+                }
                 mAdapter = new ProjectPickerAdapter(ProjectsActivity.this, getLayoutInflater(), projects);
                 mGridView.setAdapter(mAdapter);
+            } else if (mAdapter != null && offset == mProjects.size()) {
+                // The adapter shares the list of projects
+                mAdapter.addAll(projects);
+            } else {
+                // The page does not follow the loaded projects
+                return;
             }
+
+            mHasMoreProjects = hasMore;
         }
     };
 
@@ -148,19 +173,50 @@ public class ProjectsActivity extends NoSearchActivity {
                 popupMenu.show();
                 return true;
             }});
+        // Load the next page of projects when the end of the grid is about to be shown
+        mGridView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                    int totalItemCount) {
+                if (firstVisibleItem + 2 * visibleItemCount >= totalItemCount) {
+                    loadMoreProjects();
+                }
+            }
+        });
     }
 
     @Override
     public void onResume() {
         super.onResume();
         ApiService.registerListener(mProjectsLoadedListener);
-        ApiService.loadProjects(this);
+        mHasMoreProjects = false;
+        mLoadingProjects = true;
+        ApiService.loadProjects(this, 0, PROJECTS_PAGE_SIZE);
+    }
+
+    /**
+     * Load the page of projects following the loaded projects, if any
+     */
+    private void loadMoreProjects() {
+        if (mLoadingProjects || !mHasMoreProjects || mAdapter == null) {
+            return;
+        }
+
+        mLoadingProjects = true;
+        ApiService.loadProjects(this, mProjects.size(), PROJECTS_PAGE_SIZE);
     }
 
     @Override
     public void onPause() {
         super.onPause();
         ApiService.unregisterListener(mProjectsLoadedListener);
+        if (mAdapter != null) {
+            mAdapter.release();
+        }
         mAdapter = null;
         mGridView.setAdapter(null);
     }
@@ -69,6 +69,7 @@ import dogtim.android.videoeditor.service.ApiService;
 import dogtim.android.videoeditor.service.MovieMediaItem;
 import dogtim.android.videoeditor.service.VideoEditorProject;
 import dogtim.android.videoeditor.util.FileUtils;
+import dogtim.android.videoeditor.util.FrameTimeRecorder;
 import dogtim.android.videoeditor.util.MediaItemUtils;
 import dogtim.android.videoeditor.util.StringUtils;
 import dogtim.android.videoeditor.widgets.AudioTrackLinearLayout;
@@ -307,9 +308,20 @@ public class VideoEditorActivity extends VideoEditorBaseActivity
             // Instance variables
             private int mActiveWidth;
             private long mDurationMs;
+            // The interaction whose frame times are recorded
+            private String mInteraction;
 
             @Override
             public void onScrollBegin(View view, int scrollX, int scrollY, boolean appScroll) {
+                if (mProject != null) {
+                    // The playhead moves by scrolling the timeline during playback
+                    mInteraction = appScroll && mPreviewThread != null
+                            && mPreviewThread.isPlaying() ? FrameTimeRecorder.INTERACTION_PLAYBACK
+                            : FrameTimeRecorder.INTERACTION_SCROLL;
+                    FrameTimeRecorder.getInstance(VideoEditorActivity.this).begin(mInteraction,
+                            mProject.getMediaItemCount(), mProject.getZoomLevel());
+                }
+
                 if (!appScroll && mProject != null) {
                     mActiveWidth = mMediaLayout.getWidth() - mActivityWidth;
                     mDurationMs = mProject.computeDuration();
@@ -324,6 +336,11 @@ public class VideoEditorActivity extends VideoEditorBaseActivity
 
             @Override
             public void onScrollEnd(View view, int scrollX, int scrollY, boolean appScroll) {
+                if (mInteraction != null) {
+                    FrameTimeRecorder.getInstance(VideoEditorActivity.this).end(mInteraction);
+                    mInteraction = null;
+                }
+
                 // We check if the project is valid since the project may
                 // close while scrolling
                 if (!appScroll && mActiveWidth > 0 && mProject != null) {
@@ -512,6 +529,9 @@ public class VideoEditorActivity extends VideoEditorBaseActivity
                 mProject.getAudioTracks().size() == 0 && haveMediaItems);
         menu.findItem(R.id.menu_item_change_aspect_ratio).setVisible(haveProject &&
                 mProject.hasMultipleAspectRatios());
+        final MenuItem proxyMenuItem = menu.findItem(R.id.menu_item_proxy_media);
+        proxyMenuItem.setVisible(haveProject);
+        proxyMenuItem.setChecked(haveProject && mProject.isProxyMode());
         menu.findItem(R.id.menu_item_edit_project_name).setVisible(haveProject);
 
         // Check if there is an operation pending or preview is on.
@@ -623,6 +643,24 @@ public class VideoEditorActivity extends VideoEditorBaseActivity
                 return true;
             }
 
+            case R.id.menu_item_proxy_media: {
+                final boolean proxyMode = !mProject.isProxyMode();
+                mProject.setProxyMode(proxyMode);
+                for (MovieMediaItem mediaItem : mProject.getMediaItems()) {
+                    if (proxyMode) {
+                        if (mediaItem.isProxySupported() && !mediaItem.hasProxy()) {
+                            ApiService.generateMediaItemProxy(this, mProjectPath,
+                                    mediaItem.getId());
+                            // Show the request as pending until its progress is reported
+                            mMediaLayout.setMediaItemProxyProgress(mediaItem.getId(), 0);
+                        }
+                    } else if (mediaItem.hasProxy()) {
+                        ApiService.removeMediaItemProxy(this, mProjectPath, mediaItem.getId());
+                    }
+                }
+                return true;
+            }
+
             case R.id.menu_item_edit_project_name: {
                 showDialog(DIALOG_EDIT_PROJECT_NAME_ID);
                 return true;
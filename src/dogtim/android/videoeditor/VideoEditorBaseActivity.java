@@ -378,7 +378,7 @@ public abstract class VideoEditorBaseActivity extends Activity {
                         R.string.editor_remove_media_item_error, Toast.LENGTH_LONG).show();
             } else {
                 // Remove the media item and bounding transitions
-                getMediaLayout().removeMediaItem(mediaItemId, transition);
+                getMediaLayout().removeMediaItem(mediaItemId);
                 getOverlayLayout().removeMediaItem(mediaItemId);
 
                 updateTimelineDuration();
@@ -474,6 +474,40 @@ public abstract class VideoEditorBaseActivity extends Activity {
             }
         }
 
+        @Override
+        public void onMediaItemProxyProgress(String projectPath, String mediaItemId,
+                int progress) {
+            // Check if the VideoEditor is the one we are expecting
+            if (!projectPath.equals(mProjectPath)) {
+                return;
+            }
+
+            if (mProject == null) {
+                return;
+            }
+
+            getMediaLayout().setMediaItemProxyProgress(mediaItemId, progress);
+        }
+
+        @Override
+        public void onMediaItemProxyComplete(String projectPath, String mediaItemId,
+                Exception exception) {
+            // Check if the VideoEditor is the one we are expecting
+            if (!projectPath.equals(mProjectPath)) {
+                return;
+            }
+
+            if (mProject == null) {
+                return;
+            }
+
+            if (exception != null) {
+                Log.w(TAG, "Proxy not available for: " + mediaItemId, exception);
+            }
+
+            getMediaLayout().setMediaItemProxyProgress(mediaItemId, -1);
+        }
+
         @Override
         public void onTransitionInserted(String projectPath, MovieTransition transition,
                 String afterMediaId, Exception exception) {
@@ -17,13 +17,14 @@
 package dogtim.android.videoeditor.service;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -56,6 +57,7 @@ import android.media.videoeditor.TransitionFadeBlack;
 import android.media.videoeditor.TransitionSliding;
 import android.media.videoeditor.VideoEditor;
 import android.media.videoeditor.VideoEditorFactory;
+import android.media.videoeditor.VideoEditorImpl;
 import android.media.videoeditor.WaveformData;
 import android.media.videoeditor.MediaItem.GetThumbnailListCallback;
 import android.media.videoeditor.VideoEditor.ExportProgressListener;
@@ -69,12 +71,16 @@ import android.provider.MediaStore;
 import android.provider.MediaStore.Audio;
 import android.provider.MediaStore.Images;
 import android.provider.MediaStore.Video;
+import android.text.TextUtils;
 import android.util.Log;
 
 import dogtim.android.videoeditor.R;
+import dogtim.android.videoeditor.util.BitmapMemoryManager;
+import dogtim.android.videoeditor.util.FrameTimeRecorder;
 import dogtim.android.videoeditor.util.FileUtils;
 import dogtim.android.videoeditor.util.ImageUtils;
 import dogtim.android.videoeditor.util.MediaItemUtils;
+import dogtim.android.videoeditor.util.OverlayBitmapCache;
 import dogtim.android.videoeditor.util.StringUtils;
 
 /**
@@ -161,6 +167,9 @@ public class ApiService extends Service {
     private static final int OP_MEDIA_ITEM_GET_THUMBNAILS = 112;
     private static final int OP_MEDIA_ITEM_LOAD = 113;
     private static final int OP_MEDIA_ITEM_LOAD_STATUS = 114;
+    private static final int OP_MEDIA_ITEM_GENERATE_PROXY = 115;
+    private static final int OP_MEDIA_ITEM_GENERATE_PROXY_STATUS = 116;
+    private static final int OP_MEDIA_ITEM_SET_PROXY = 117;
 
     private static final int OP_EFFECT_ADD_COLOR = 200;
     private static final int OP_EFFECT_ADD_IMAGE_KEN_BURNS = 201;
@@ -196,24 +205,38 @@ public class ApiService extends Service {
     private static final int DEFAULT_AUDIO_TRACK_VOLUME = 50;
 
     // Static member variables
-    private static final Map<String, Intent> mPendingIntents = new HashMap<String, Intent>();
+    private static final Map<String, ServiceCommand> mPendingCommands =
+            new HashMap<String, ServiceCommand>();
     private static final List<ApiServiceListener> mListeners = new ArrayList<ApiServiceListener>();
-    private static final IntentPool mIntentPool = new IntentPool(8);
+    private static final CommandPool mCommandPool = new CommandPool(16);
+    // Latency and queue metrics of the operations, see dump()
+    private static final OperationMetrics mMetrics = new OperationMetrics();
+    // The running service instance. Commands are handed to it directly
+    // instead of going through startService().
+    private static ApiService mService;
+    // The number of startService() calls not yet delivered to onStartCommand()
+    private static int mPendingServiceStarts;
     private static VideoEditorProject mVideoProject;
     private static VideoEditor mVideoEditor;
     private static ServiceMediaProcessingProgressListener mGeneratePreviewListener;
     private static volatile boolean mExportCancelled;
 
-    private IntentProcessor mVideoThread;
-    private IntentProcessor mAudioThread;
-    private IntentProcessor mThumbnailThread;
+    private CommandProcessor mVideoThread;
+    private CommandProcessor mAudioThread;
+    private CommandProcessor mThumbnailThread;
+    // Encodes the media item proxies one at a time
+    private CommandProcessor mProxyThread;
     private Handler mHandler;
 
     private final Runnable mStopRunnable = new Runnable() {
         @Override
         public void run() {
-            if (mPendingIntents.size() == 0) {
+            if (mPendingCommands.size() == 0) {
                 logd("Stop runnable: Stopping service");
+                // Route new commands through startService() from now on
+                if (mService == ApiService.this) {
+                    mService = null;
+                }
                 stopSelf();
             }
         }
@@ -238,28 +261,28 @@ public class ApiService extends Service {
 
         @Override
         public void onProgress(Object item, int action, int progress) {
-            final Intent intent = mIntentPool.get();
-            intent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_GENERATE_PREVIEW_PROGRESS);
-            intent.putExtra(PARAM_PROJECT_PATH, mProjectPath);
-            intent.putExtra(PARAM_ACTION, action);
-            intent.putExtra(PARAM_PROGRESS_VALUE, progress);
+            final ServiceCommand command = mCommandPool.get();
+            command.op = OP_VIDEO_EDITOR_GENERATE_PREVIEW_PROGRESS;
+            command.projectPath = mProjectPath;
+            command.action = action;
+            command.progress = progress;
 
             if (item == null) { // Last callback uses null
             } else if (item instanceof MediaItem) {
-                intent.putExtra(PARAM_STORYBOARD_ITEM_ID, ((MediaItem)item).getId());
-                intent.putExtra(PARAM_ATTRIBUTES, MediaItem.class.getCanonicalName());
+                command.itemId = ((MediaItem)item).getId();
+                command.itemClassName = MediaItem.class.getCanonicalName();
             } else if (item instanceof Transition) {
-                intent.putExtra(PARAM_STORYBOARD_ITEM_ID, ((Transition)item).getId());
-                intent.putExtra(PARAM_ATTRIBUTES, Transition.class.getCanonicalName());
+                command.itemId = ((Transition)item).getId();
+                command.itemClassName = Transition.class.getCanonicalName();
             } else if (item instanceof AudioTrack) {
-                intent.putExtra(PARAM_STORYBOARD_ITEM_ID, ((AudioTrack)item).getId());
-                intent.putExtra(PARAM_ATTRIBUTES, AudioTrack.class.getCanonicalName());
+                command.itemId = ((AudioTrack)item).getId();
+                command.itemClassName = AudioTrack.class.getCanonicalName();
             } else {
                 Log.w(TAG, "Unsupported storyboard item type: " + item.getClass());
                 return;
             }
 
-            completeRequest(intent, null, null, null, null, true);
+            completeRequest(command, null, null, null, null, true);
         }
     }
 
@@ -289,15 +312,19 @@ public class ApiService extends Service {
     }
 
     /**
-     * Load the projects
+     * Load a page of the projects, sorted by "last saved", most recent first
      *
      * @param context The context
+     * @param offset The position of the first project of the page
+     * @param count The maximum number of projects of the page
      */
-    public static void loadProjects(Context context) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_LOAD_PROJECTS);
+    public static void loadProjects(Context context, int offset, int count) {
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_VIDEO_EDITOR_LOAD_PROJECTS;
+        command.offset = offset;
+        command.count = count;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -314,15 +341,15 @@ public class ApiService extends Service {
      */
     public static void createVideoEditor(Context context, String projectPath, String projectName,
                 String[] movies, String[] photos, String themeType) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_CREATE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_PROJECT_NAME, projectName);
-        intent.putExtra(PARAM_MOVIES_FILENAMES, movies);
-        intent.putExtra(PARAM_PHOTOS_FILENAMES, photos);
-        intent.putExtra(PARAM_THEME, themeType);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_VIDEO_EDITOR_CREATE;
+        command.projectPath = projectPath;
+        command.projectName = projectName;
+        command.movies = movies;
+        command.photos = photos;
+        command.theme = themeType;
+
+        startCommand(context, command);
     }
 
     /**
@@ -332,11 +359,11 @@ public class ApiService extends Service {
      * @param projectPath The project path
      */
     public static void loadVideoEditor(Context context, String projectPath) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_LOAD);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_VIDEO_EDITOR_LOAD;
+        command.projectPath = projectPath;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -350,14 +377,14 @@ public class ApiService extends Service {
      */
     public static void exportVideoEditor(Context context, String projectPath, String filename,
             int height, int bitrate) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_EXPORT);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_FILENAME, filename);
-        intent.putExtra(PARAM_HEIGHT, height);
-        intent.putExtra(PARAM_BITRATE, bitrate);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_VIDEO_EDITOR_EXPORT;
+        command.projectPath = projectPath;
+        command.filename = filename;
+        command.height = height;
+        command.bitrate = bitrate;
+
+        startCommand(context, command);
     }
 
     /**
@@ -369,12 +396,12 @@ public class ApiService extends Service {
      * @return true if the export is pending
      */
     public static boolean isVideoEditorExportPending(String projectPath, String filename) {
-        for (Intent intent : mPendingIntents.values()) {
-            final int op = intent.getIntExtra(PARAM_OP, -1);
+        for (ServiceCommand command : mPendingCommands.values()) {
+            final int op = command.op;
             if (op == OP_VIDEO_EDITOR_EXPORT) {
-                String pp = intent.getStringExtra(PARAM_PROJECT_PATH);
+                String pp = command.projectPath;
                 if (pp.equals(projectPath)) {
-                    String fn = intent.getStringExtra(PARAM_FILENAME);
+                    String fn = command.filename;
                     if (fn.equals(filename)) {
                         return true;
                     }
@@ -395,12 +422,12 @@ public class ApiService extends Service {
     public static void cancelExportVideoEditor(Context context, String projectPath,
             String filename) {
         mExportCancelled = true;
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_CANCEL_EXPORT);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_FILENAME, filename);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_VIDEO_EDITOR_CANCEL_EXPORT;
+        command.projectPath = projectPath;
+        command.filename = filename;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -411,12 +438,12 @@ public class ApiService extends Service {
      * @param aspectRatio The aspect ratio
      */
     public static void setAspectRatio(Context context, String projectPath, int aspectRatio) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_SET_ASPECT_RATIO);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_ASPECT_RATIO, aspectRatio);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_VIDEO_EDITOR_SET_ASPECT_RATIO;
+        command.projectPath = projectPath;
+        command.aspectRatio = aspectRatio;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -427,12 +454,12 @@ public class ApiService extends Service {
      * @param theme The theme
      */
      public static void applyTheme(Context context, String projectPath, String theme) {
-         final Intent intent = mIntentPool.get(context, ApiService.class);
-         intent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_APPLY_THEME);
-         intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-         intent.putExtra(PARAM_THEME, theme);
+         final ServiceCommand command = mCommandPool.get();
+         command.op = OP_VIDEO_EDITOR_APPLY_THEME;
+         command.projectPath = projectPath;
+         command.theme = theme;
 
-         startCommand(context, intent);
+         startCommand(context, command);
      }
 
     /**
@@ -445,8 +472,8 @@ public class ApiService extends Service {
      * @return {@code true} if the video editor is modifying the timeline
      */
     public static boolean isProjectBeingEdited(String projectPath) {
-        for (Intent intent : mPendingIntents.values()) {
-            final int op = intent.getIntExtra(PARAM_OP, -1);
+        for (ServiceCommand command : mPendingCommands.values()) {
+            final int op = command.op;
             switch (op) {
                 // When these operations are pending the video editor is not busy.
                 case OP_VIDEO_EDITOR_LOAD_PROJECTS:
@@ -462,7 +489,7 @@ public class ApiService extends Service {
                 }
 
                 default: {
-                    final String pp = intent.getStringExtra(PARAM_PROJECT_PATH);
+                    final String pp = command.projectPath;
                     if (pp != null && pp.equals(projectPath)) {
                         return true;
                     }
@@ -481,11 +508,11 @@ public class ApiService extends Service {
      * @param projectPath The project path
      */
     public static void saveVideoEditor(Context context, String projectPath) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_SAVE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_VIDEO_EDITOR_SAVE;
+        command.projectPath = projectPath;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -495,11 +522,11 @@ public class ApiService extends Service {
      * @param projectPath The project path
      */
     public static void releaseVideoEditor(Context context, String projectPath) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_RELEASE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_VIDEO_EDITOR_RELEASE;
+        command.projectPath = projectPath;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -509,11 +536,11 @@ public class ApiService extends Service {
      * @param projectPath The project path
      */
     public static void deleteProject(Context context, String projectPath) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_DELETE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_VIDEO_EDITOR_DELETE;
+        command.projectPath = projectPath;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -530,16 +557,16 @@ public class ApiService extends Service {
     public static void addMediaItemVideoUri(Context context, String projectPath,
             String mediaItemId, String afterMediaItemId, Uri uri, int renderingMode,
             String themeId) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_MEDIA_ITEM_ADD_VIDEO_URI);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, afterMediaItemId);
-        intent.putExtra(PARAM_FILENAME, uri);
-        intent.putExtra(PARAM_MEDIA_ITEM_RENDERING_MODE, renderingMode);
-        intent.putExtra(PARAM_THEME, themeId);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_ADD_VIDEO_URI;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
+        command.relativeItemId = afterMediaItemId;
+        command.uri = uri;
+        command.renderingMode = renderingMode;
+        command.theme = themeId;
+
+        startCommand(context, command);
     }
 
     /**
@@ -557,17 +584,17 @@ public class ApiService extends Service {
     public static void addMediaItemImageUri(Context context, String projectPath,
             String mediaItemId, String afterMediaItemId, Uri uri, int renderingMode,
             long durationMs, String themeId) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_MEDIA_ITEM_ADD_IMAGE_URI);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, afterMediaItemId);
-        intent.putExtra(PARAM_FILENAME, uri);
-        intent.putExtra(PARAM_MEDIA_ITEM_RENDERING_MODE, renderingMode);
-        intent.putExtra(PARAM_DURATION, durationMs);
-        intent.putExtra(PARAM_THEME, themeId);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_ADD_IMAGE_URI;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
+        command.relativeItemId = afterMediaItemId;
+        command.uri = uri;
+        command.renderingMode = renderingMode;
+        command.durationMs = durationMs;
+        command.theme = themeId;
+
+        startCommand(context, command);
     }
 
     /**
@@ -580,13 +607,13 @@ public class ApiService extends Service {
      */
     public static void loadMediaItem(Context context, String projectPath, Uri uri,
             String mimeType) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_MEDIA_ITEM_LOAD);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_FILENAME, uri);
-        intent.putExtra(PARAM_ATTRIBUTES, mimeType);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_LOAD;
+        command.projectPath = projectPath;
+        command.uri = uri;
+        command.mimeType = mimeType;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -600,14 +627,14 @@ public class ApiService extends Service {
      */
     public static void moveMediaItem(Context context, String projectPath,
             String mediaItemId, String afterMediaItemId, String themeId) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_MEDIA_ITEM_MOVE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, afterMediaItemId);
-        intent.putExtra(PARAM_THEME, themeId);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_MOVE;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
+        command.relativeItemId = afterMediaItemId;
+        command.theme = themeId;
+
+        startCommand(context, command);
     }
 
     /**
@@ -620,13 +647,13 @@ public class ApiService extends Service {
      */
     public static void removeMediaItem(Context context, String projectPath, String mediaItemId,
             String themeId) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_MEDIA_ITEM_REMOVE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_THEME, themeId);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_REMOVE;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
+        command.theme = themeId;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -638,13 +665,13 @@ public class ApiService extends Service {
      */
     public static void setMediaItemRenderingMode(Context context, String projectPath,
             String mediaItemId, int renderingMode) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_MEDIA_ITEM_SET_RENDERING_MODE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_MEDIA_ITEM_RENDERING_MODE, renderingMode);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_SET_RENDERING_MODE;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
+        command.renderingMode = renderingMode;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -662,19 +689,19 @@ public class ApiService extends Service {
     public static void getMediaItemThumbnails(Context context,
             String projectPath, String mediaItemId, int width, int height,
             long startMs, long endMs, int count, int token, int[] indices) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_MEDIA_ITEM_GET_THUMBNAILS);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_WIDTH, width);
-        intent.putExtra(PARAM_HEIGHT, height);
-        intent.putExtra(PARAM_START_TIME, startMs);
-        intent.putExtra(PARAM_END_TIME, endMs);
-        intent.putExtra(PARAM_COUNT, count);
-        intent.putExtra(PARAM_TOKEN, token);
-        intent.putExtra(PARAM_INDICES, indices);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_GET_THUMBNAILS;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
+        command.width = width;
+        command.height = height;
+        command.startTimeMs = startMs;
+        command.endTimeMs = endMs;
+        command.count = count;
+        command.token = token;
+        command.indices = indices;
+
+        startCommand(context, command);
     }
 
     /**
@@ -687,13 +714,13 @@ public class ApiService extends Service {
      */
     public static void setMediaItemDuration(Context context, String projectPath,
             String mediaItemId, long durationMs) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_MEDIA_ITEM_SET_DURATION);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_DURATION, durationMs);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_SET_DURATION;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
+        command.durationMs = durationMs;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -707,14 +734,14 @@ public class ApiService extends Service {
      */
     public static void setMediaItemBoundaries(Context context, String projectPath,
             String mediaItemId, long beginBoundaryMs, long endBoundaryMs) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_MEDIA_ITEM_SET_BOUNDARIES);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_BEGIN_BOUNDARY, beginBoundaryMs);
-        intent.putExtra(PARAM_END_BOUNDARY, endBoundaryMs);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_SET_BOUNDARIES;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
+        command.beginBoundaryMs = beginBoundaryMs;
+        command.endBoundaryMs = endBoundaryMs;
+
+        startCommand(context, command);
     }
 
     /**
@@ -727,13 +754,13 @@ public class ApiService extends Service {
      */
     public static void setMediaItemVolume(Context context, String projectPath,
             String mediaItemId, int volumePercentage) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_MEDIA_ITEM_SET_VOLUME);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_VOLUME, volumePercentage);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_SET_VOLUME;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
+        command.volume = volumePercentage;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -746,13 +773,13 @@ public class ApiService extends Service {
      */
     public static void setMediaItemMute(Context context, String projectPath, String mediaItemId,
             boolean muted) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_MEDIA_ITEM_SET_MUTE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_MUTE, muted);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_SET_MUTE;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
+        command.mute = muted;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -768,12 +795,12 @@ public class ApiService extends Service {
             return;
         }
 
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_MEDIA_ITEM_EXTRACT_AUDIO_WAVEFORM);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, mediaItemId);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_EXTRACT_AUDIO_WAVEFORM;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -785,12 +812,12 @@ public class ApiService extends Service {
      * @return true if the extract audio waveform is pending
      */
     public static boolean isMediaItemAudioWaveformPending(String projectPath, String mediaItemId) {
-        for (Intent intent : mPendingIntents.values()) {
-            int op = intent.getIntExtra(PARAM_OP, -1);
+        for (ServiceCommand command : mPendingCommands.values()) {
+            int op = command.op;
             if (op == OP_MEDIA_ITEM_EXTRACT_AUDIO_WAVEFORM) {
-                String pp = intent.getStringExtra(PARAM_PROJECT_PATH);
+                String pp = command.projectPath;
                 if (pp.equals(projectPath)) {
-                    String mid = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    String mid = command.itemId;
                     if (mid.equals(mediaItemId)) {
                         return true;
                     }
@@ -801,6 +828,68 @@ public class ApiService extends Service {
         return false;
     }
 
+    /**
+     * Generate a low resolution proxy of a video media item. Once the proxy
+     * is encoded it replaces the file in previews and thumbnails. The movie
+     * is always exported from the original file.
+     *
+     * @param context The context
+     * @param projectPath The project path
+     * @param mediaItemId The id of the media item
+     */
+    public static void generateMediaItemProxy(Context context, String projectPath,
+            String mediaItemId) {
+        if (isMediaItemProxyPending(projectPath, mediaItemId)) {
+            mMetrics.recordCoalesced(OP_MEDIA_ITEM_GENERATE_PROXY);
+            return;
+        }
+
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_GENERATE_PROXY;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
+
+        startCommand(context, command);
+    }
+
+    /**
+     * Check if the proxy generation is pending for the specified MediaItem
+     *
+     * @param projectPath The project path
+     * @param mediaItemId The MediaItem id
+     *
+     * @return true if the proxy generation is pending
+     */
+    public static boolean isMediaItemProxyPending(String projectPath, String mediaItemId) {
+        for (ServiceCommand command : mPendingCommands.values()) {
+            if (command.op == OP_MEDIA_ITEM_GENERATE_PROXY
+                    && command.projectPath.equals(projectPath)
+                    && command.itemId.equals(mediaItemId)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Stop using the proxy of a video media item and delete it
+     *
+     * @param context The context
+     * @param projectPath The project path
+     * @param mediaItemId The id of the media item
+     */
+    public static void removeMediaItemProxy(Context context, String projectPath,
+            String mediaItemId) {
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_MEDIA_ITEM_SET_PROXY;
+        command.projectPath = projectPath;
+        command.itemId = mediaItemId;
+        command.filename = null;
+
+        startCommand(context, command);
+    }
+
     /**
      * Insert an alpha transition after the specified media item
      *
@@ -817,18 +906,18 @@ public class ApiService extends Service {
     public static void insertAlphaTransition(Context context, String projectPath,
             String afterMediaItemId, String transitionId, long durationMs, int behavior,
             int maskRawResourceId, int blending, boolean invert) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_TRANSITION_INSERT_ALPHA);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, afterMediaItemId);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, transitionId);
-        intent.putExtra(PARAM_DURATION, durationMs);
-        intent.putExtra(PARAM_TRANSITION_BEHAVIOR, behavior);
-        intent.putExtra(PARAM_TRANSITION_MASK, maskRawResourceId);
-        intent.putExtra(PARAM_TRANSITION_BLENDING, blending);
-        intent.putExtra(PARAM_TRANSITION_INVERT, invert);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_TRANSITION_INSERT_ALPHA;
+        command.projectPath = projectPath;
+        command.relativeItemId = afterMediaItemId;
+        command.itemId = transitionId;
+        command.durationMs = durationMs;
+        command.transitionBehavior = behavior;
+        command.transitionMask = maskRawResourceId;
+        command.transitionBlending = blending;
+        command.transitionInvert = invert;
+
+        startCommand(context, command);
     }
 
     /**
@@ -843,15 +932,15 @@ public class ApiService extends Service {
      */
     public static void insertCrossfadeTransition(Context context, String projectPath,
             String afterMediaItemId, String transitionId, long durationMs, int behavior) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_TRANSITION_INSERT_CROSSFADE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, afterMediaItemId);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, transitionId);
-        intent.putExtra(PARAM_DURATION, durationMs);
-        intent.putExtra(PARAM_TRANSITION_BEHAVIOR, behavior);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_TRANSITION_INSERT_CROSSFADE;
+        command.projectPath = projectPath;
+        command.relativeItemId = afterMediaItemId;
+        command.itemId = transitionId;
+        command.durationMs = durationMs;
+        command.transitionBehavior = behavior;
+
+        startCommand(context, command);
     }
 
     /**
@@ -866,15 +955,15 @@ public class ApiService extends Service {
      */
     public static void insertFadeBlackTransition(Context context, String projectPath,
             String afterMediaItemId, String transitionId, long durationMs, int behavior) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_TRANSITION_INSERT_FADE_BLACK);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, afterMediaItemId);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, transitionId);
-        intent.putExtra(PARAM_DURATION, durationMs);
-        intent.putExtra(PARAM_TRANSITION_BEHAVIOR, behavior);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_TRANSITION_INSERT_FADE_BLACK;
+        command.projectPath = projectPath;
+        command.relativeItemId = afterMediaItemId;
+        command.itemId = transitionId;
+        command.durationMs = durationMs;
+        command.transitionBehavior = behavior;
+
+        startCommand(context, command);
     }
 
     /**
@@ -891,16 +980,16 @@ public class ApiService extends Service {
     public static void insertSlidingTransition(Context context, String projectPath,
             String afterMediaItemId, String transitionId, long durationMs, int behavior,
             int direction) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_TRANSITION_INSERT_SLIDING);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, afterMediaItemId);
-        intent.putExtra(PARAM_DURATION, durationMs);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, transitionId);
-        intent.putExtra(PARAM_TRANSITION_BEHAVIOR, behavior);
-        intent.putExtra(PARAM_TRANSITION_DIRECTION, direction);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_TRANSITION_INSERT_SLIDING;
+        command.projectPath = projectPath;
+        command.relativeItemId = afterMediaItemId;
+        command.durationMs = durationMs;
+        command.itemId = transitionId;
+        command.transitionBehavior = behavior;
+        command.transitionDirection = direction;
+
+        startCommand(context, command);
     }
 
     /**
@@ -911,12 +1000,12 @@ public class ApiService extends Service {
      * @param transitionId The id of the transition to remove
      */
     public static void removeTransition(Context context, String projectPath, String transitionId) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_TRANSITION_REMOVE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, transitionId);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_TRANSITION_REMOVE;
+        command.projectPath = projectPath;
+        command.itemId = transitionId;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -929,13 +1018,13 @@ public class ApiService extends Service {
      */
     public static void setTransitionDuration(Context context, String projectPath,
             String transitionId, long durationMs) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_TRANSITION_SET_DURATION);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, transitionId);
-        intent.putExtra(PARAM_DURATION, durationMs);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_TRANSITION_SET_DURATION;
+        command.projectPath = projectPath;
+        command.itemId = transitionId;
+        command.durationMs = durationMs;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -948,13 +1037,13 @@ public class ApiService extends Service {
      */
     public static void getTransitionThumbnails(Context context, String projectPath,
             String transitionId, int height) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_TRANSITION_GET_THUMBNAIL);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, transitionId);
-        intent.putExtra(PARAM_HEIGHT, height);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_TRANSITION_GET_THUMBNAIL;
+        command.projectPath = projectPath;
+        command.itemId = transitionId;
+        command.height = height;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -966,12 +1055,12 @@ public class ApiService extends Service {
      * @return true if the transition thumbnailing is in progress
      */
     public static boolean isTransitionThumbnailsPending(String projectPath, String transitionId) {
-        for (Intent intent : mPendingIntents.values()) {
-            int op = intent.getIntExtra(PARAM_OP, -1);
+        for (ServiceCommand command : mPendingCommands.values()) {
+            int op = command.op;
             if (op == OP_TRANSITION_GET_THUMBNAIL) {
-                String pp = intent.getStringExtra(PARAM_PROJECT_PATH);
+                String pp = command.projectPath;
                 if (pp.equals(projectPath)) {
-                    String mid = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    String mid = command.itemId;
                     if (mid.equals(transitionId)) {
                         return true;
                     }
@@ -996,17 +1085,17 @@ public class ApiService extends Service {
      */
     public static void addEffectColor(Context context, String projectPath, String mediaItemId,
             String effectId, long startTimeMs, long durationMs, int type, int param) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_EFFECT_ADD_COLOR);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, effectId);
-        intent.putExtra(PARAM_START_TIME, startTimeMs);
-        intent.putExtra(PARAM_DURATION, durationMs);
-        intent.putExtra(PARAM_EFFECT_TYPE, type);
-        intent.putExtra(PARAM_EFFECT_PARAM, param);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_EFFECT_ADD_COLOR;
+        command.projectPath = projectPath;
+        command.relativeItemId = mediaItemId;
+        command.itemId = effectId;
+        command.startTimeMs = startTimeMs;
+        command.durationMs = durationMs;
+        command.effectType = type;
+        command.effectParam = param;
+
+        startCommand(context, command);
     }
 
     /**
@@ -1024,17 +1113,17 @@ public class ApiService extends Service {
     public static void addEffectKenBurns(Context context, String projectPath,
             String mediaItemId, String effectId, long startTimeMs, long durationMs,
             Rect startRect, Rect endRect) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_EFFECT_ADD_IMAGE_KEN_BURNS);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, effectId);
-        intent.putExtra(PARAM_START_TIME, startTimeMs);
-        intent.putExtra(PARAM_DURATION, durationMs);
-        intent.putExtra(PARAM_MEDIA_ITEM_START_RECT, startRect);
-        intent.putExtra(PARAM_MEDIA_ITEM_END_RECT, endRect);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_EFFECT_ADD_IMAGE_KEN_BURNS;
+        command.projectPath = projectPath;
+        command.relativeItemId = mediaItemId;
+        command.itemId = effectId;
+        command.startTimeMs = startTimeMs;
+        command.durationMs = durationMs;
+        command.startRect = startRect;
+        command.endRect = endRect;
+
+        startCommand(context, command);
     }
 
     /**
@@ -1047,13 +1136,13 @@ public class ApiService extends Service {
      */
     public static void removeEffect(Context context, String projectPath, String mediaItemId,
             String effectId) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_EFFECT_REMOVE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, effectId);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_EFFECT_REMOVE;
+        command.projectPath = projectPath;
+        command.relativeItemId = mediaItemId;
+        command.itemId = effectId;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -1068,16 +1157,16 @@ public class ApiService extends Service {
      */
     public static void addOverlay(Context context, String projectPath, String mediaItemId,
             String overlayId, Bundle userAttributes, long startTimeMs, long durationMs) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_OVERLAY_ADD);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, overlayId);
-        intent.putExtra(PARAM_START_TIME, startTimeMs);
-        intent.putExtra(PARAM_DURATION, durationMs);
-        intent.putExtra(PARAM_ATTRIBUTES, userAttributes);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_OVERLAY_ADD;
+        command.projectPath = projectPath;
+        command.relativeItemId = mediaItemId;
+        command.itemId = overlayId;
+        command.startTimeMs = startTimeMs;
+        command.durationMs = durationMs;
+        command.attributes = userAttributes;
+
+        startCommand(context, command);
     }
 
     /**
@@ -1090,13 +1179,13 @@ public class ApiService extends Service {
      */
     public static void removeOverlay(Context context, String projectPath, String mediaItemId,
             String overlayId) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_OVERLAY_REMOVE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, overlayId);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_OVERLAY_REMOVE;
+        command.projectPath = projectPath;
+        command.relativeItemId = mediaItemId;
+        command.itemId = overlayId;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -1110,14 +1199,14 @@ public class ApiService extends Service {
      */
     public static void setOverlayStartTime(Context context, String projectPath, String mediaItemId,
             String overlayId, long startTimeMs) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_OVERLAY_SET_START_TIME);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, overlayId);
-        intent.putExtra(PARAM_START_TIME, startTimeMs);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_OVERLAY_SET_START_TIME;
+        command.projectPath = projectPath;
+        command.relativeItemId = mediaItemId;
+        command.itemId = overlayId;
+        command.startTimeMs = startTimeMs;
+
+        startCommand(context, command);
     }
 
     /**
@@ -1131,14 +1220,14 @@ public class ApiService extends Service {
      */
     public static void setOverlayDuration(Context context, String projectPath, String mediaItemId,
             String overlayId, long durationMs) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_OVERLAY_SET_DURATION);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, overlayId);
-        intent.putExtra(PARAM_DURATION, durationMs);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_OVERLAY_SET_DURATION;
+        command.projectPath = projectPath;
+        command.relativeItemId = mediaItemId;
+        command.itemId = overlayId;
+        command.durationMs = durationMs;
+
+        startCommand(context, command);
     }
 
     /**
@@ -1152,14 +1241,14 @@ public class ApiService extends Service {
      */
     public static void setOverlayUserAttributes(Context context, String projectPath,
             String mediaItemId, String overlayId, Bundle userAttributes) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_OVERLAY_SET_ATTRIBUTES);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID, mediaItemId);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, overlayId);
-        intent.putExtra(PARAM_ATTRIBUTES, userAttributes);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_OVERLAY_SET_ATTRIBUTES;
+        command.projectPath = projectPath;
+        command.relativeItemId = mediaItemId;
+        command.itemId = overlayId;
+        command.attributes = userAttributes;
+
+        startCommand(context, command);
     }
 
     /**
@@ -1173,14 +1262,14 @@ public class ApiService extends Service {
      */
     public static void addAudioTrack(Context context, String projectPath, String id, Uri uri,
             boolean loop) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_AUDIO_TRACK_ADD);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, id);
-        intent.putExtra(PARAM_FILENAME, uri);
-        intent.putExtra(PARAM_LOOP, loop);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_AUDIO_TRACK_ADD;
+        command.projectPath = projectPath;
+        command.itemId = id;
+        command.uri = uri;
+        command.loop = loop;
+
+        startCommand(context, command);
     }
 
     /**
@@ -1191,12 +1280,12 @@ public class ApiService extends Service {
      * @param audioTrackId The id of the audio track to remove
      */
     public static void removeAudioTrack(Context context, String projectPath, String audioTrackId) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_AUDIO_TRACK_REMOVE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, audioTrackId);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_AUDIO_TRACK_REMOVE;
+        command.projectPath = projectPath;
+        command.itemId = audioTrackId;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -1210,14 +1299,14 @@ public class ApiService extends Service {
      */
     public static void setAudioTrackBoundaries(Context context, String projectPath,
             String audioTrackId, long beginBoundaryMs, long endBoundaryMs) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_AUDIO_TRACK_SET_BOUNDARIES);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, audioTrackId);
-        intent.putExtra(PARAM_BEGIN_BOUNDARY, beginBoundaryMs);
-        intent.putExtra(PARAM_END_BOUNDARY, endBoundaryMs);
-
-        startCommand(context, intent);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_AUDIO_TRACK_SET_BOUNDARIES;
+        command.projectPath = projectPath;
+        command.itemId = audioTrackId;
+        command.beginBoundaryMs = beginBoundaryMs;
+        command.endBoundaryMs = endBoundaryMs;
+
+        startCommand(context, command);
     }
 
     /**
@@ -1230,13 +1319,13 @@ public class ApiService extends Service {
      */
     public static void setAudioTrackLoop(Context context, String projectPath, String audioTrackId,
             boolean loop) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_AUDIO_TRACK_SET_LOOP);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, audioTrackId);
-        intent.putExtra(PARAM_LOOP, loop);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_AUDIO_TRACK_SET_LOOP;
+        command.projectPath = projectPath;
+        command.itemId = audioTrackId;
+        command.loop = loop;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -1249,13 +1338,13 @@ public class ApiService extends Service {
      */
     public static void setAudioTrackDuck(Context context, String projectPath, String audioTrackId,
             boolean duck) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_AUDIO_TRACK_SET_DUCK);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, audioTrackId);
-        intent.putExtra(PARAM_DUCK, duck);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_AUDIO_TRACK_SET_DUCK;
+        command.projectPath = projectPath;
+        command.itemId = audioTrackId;
+        command.duck = duck;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -1268,13 +1357,13 @@ public class ApiService extends Service {
      */
     public static void setAudioTrackVolume(Context context, String projectPath,
             String audioTrackId, int volumePercentage) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_AUDIO_TRACK_SET_VOLUME);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, audioTrackId);
-        intent.putExtra(PARAM_VOLUME, volumePercentage);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_AUDIO_TRACK_SET_VOLUME;
+        command.projectPath = projectPath;
+        command.itemId = audioTrackId;
+        command.volume = volumePercentage;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -1287,13 +1376,13 @@ public class ApiService extends Service {
      */
     public static void setAudioTrackMute(Context context, String projectPath, String audioTrackId,
             boolean muted) {
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_AUDIO_TRACK_SET_MUTE);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, audioTrackId);
-        intent.putExtra(PARAM_MUTE, muted);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_AUDIO_TRACK_SET_MUTE;
+        command.projectPath = projectPath;
+        command.itemId = audioTrackId;
+        command.mute = muted;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -1308,12 +1397,12 @@ public class ApiService extends Service {
         if (isAudioTrackAudioWaveformPending(projectPath, audioTrackId)) {
             return;
         }
-        final Intent intent = mIntentPool.get(context, ApiService.class);
-        intent.putExtra(PARAM_OP, OP_AUDIO_TRACK_EXTRACT_AUDIO_WAVEFORM);
-        intent.putExtra(PARAM_PROJECT_PATH, projectPath);
-        intent.putExtra(PARAM_STORYBOARD_ITEM_ID, audioTrackId);
+        final ServiceCommand command = mCommandPool.get();
+        command.op = OP_AUDIO_TRACK_EXTRACT_AUDIO_WAVEFORM;
+        command.projectPath = projectPath;
+        command.itemId = audioTrackId;
 
-        startCommand(context, intent);
+        startCommand(context, command);
     }
 
     /**
@@ -1326,12 +1415,12 @@ public class ApiService extends Service {
      */
     public static boolean isAudioTrackAudioWaveformPending(String projectPath,
             String audioTrackId) {
-        for (Intent intent : mPendingIntents.values()) {
-            int op = intent.getIntExtra(PARAM_OP, -1);
+        for (ServiceCommand command : mPendingCommands.values()) {
+            int op = command.op;
             if (op == OP_AUDIO_TRACK_EXTRACT_AUDIO_WAVEFORM) {
-                String pp = intent.getStringExtra(PARAM_PROJECT_PATH);
+                String pp = command.projectPath;
                 if (pp.equals(projectPath)) {
-                    String mid = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    String mid = command.itemId;
                     if (mid.equals(audioTrackId)) {
                         return true;
                     }
@@ -1343,21 +1432,31 @@ public class ApiService extends Service {
     }
 
     /**
-     * Start the service (if it is not running) with the specified Intent
+     * Submit the specified command. If the service is running the command is
+     * handed to it directly, otherwise the service is started with an Intent
+     * which only carries the request id of the command.
      *
      * @param context The context
-     * @param intent The intent
+     * @param command The command
      *
      * @return The request id of the pending request
      */
-    private static String startCommand(Context context, Intent intent) {
+    private static String startCommand(Context context, ServiceCommand command) {
         final String requestId = StringUtils.randomString(8);
-        intent.putExtra(PARAM_REQUEST_ID, requestId);
-        mPendingIntents.put(requestId, intent);
+        command.requestId = requestId;
+        mPendingCommands.put(requestId, command);
 
-        context.startService(intent);
+        // Commands queued behind a service start must not be overtaken
+        if (mService != null && mPendingServiceStarts == 0) {
+            mService.submit(command);
+        } else {
+            final Intent intent = new Intent(context, ApiService.class);
+            intent.putExtra(PARAM_REQUEST_ID, requestId);
+            mPendingServiceStarts++;
+            context.startService(intent);
+        }
 
-        final String projectPath = intent.getStringExtra(PARAM_PROJECT_PATH);
+        final String projectPath = command.projectPath;
         if (projectPath != null) {
             final boolean projectEdited = isProjectBeingEdited(projectPath);
             if (projectEdited) {
@@ -1375,19 +1474,121 @@ public class ApiService extends Service {
         super.onCreate();
         mHandler = new Handler(Looper.getMainLooper());
 
-        mVideoThread = new IntentProcessor("VideoServiceThread");
+        mVideoThread = new CommandProcessor("VideoServiceThread");
         mVideoThread.start();
 
-        mAudioThread = new IntentProcessor("AudioServiceThread");
+        mAudioThread = new CommandProcessor("AudioServiceThread");
         mAudioThread.start();
 
-        mThumbnailThread = new IntentProcessor("ThumbnailServiceThread");
+        mThumbnailThread = new CommandProcessor("ThumbnailServiceThread");
         mThumbnailThread.start();
+
+        mProxyThread = new CommandProcessor("ProxyServiceThread");
+        mProxyThread.start();
+
+        mService = this;
     }
 
     @Override
     public int onStartCommand(final Intent intent, int flags, int startId) {
-        final int op = intent.getIntExtra(PARAM_OP, -1);
+        final ServiceCommand command;
+        final String requestId = intent.getStringExtra(PARAM_REQUEST_ID);
+        if (requestId != null) {
+            // In-process request submitted while the service was not running
+            mPendingServiceStarts--;
+            command = mPendingCommands.get(requestId);
+            if (command == null) {
+                Log.w(TAG, "No pending command for request: " + requestId);
+                return START_NOT_STICKY;
+            }
+        } else {
+            command = fromIntent(intent);
+        }
+
+        // The service is running again after a stop request
+        mService = this;
+        submit(command);
+        return START_NOT_STICKY;
+    }
+
+    /**
+     * Convert an Intent sent by another process to a command
+     *
+     * @param intent The intent
+     *
+     * @return The command
+     */
+    private static ServiceCommand fromIntent(Intent intent) {
+        final ServiceCommand command = mCommandPool.get();
+        command.op = intent.getIntExtra(PARAM_OP, -1);
+        command.requestId = StringUtils.randomString(8);
+        command.projectPath = intent.getStringExtra(PARAM_PROJECT_PATH);
+        command.itemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+        command.relativeItemId = intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID);
+        final Object file = intent.getExtras() != null ?
+                intent.getExtras().get(PARAM_FILENAME) : null;
+        if (file instanceof Uri) {
+            command.uri = (Uri)file;
+        } else if (file instanceof String) {
+            command.filename = (String)file;
+        }
+        command.projectName = intent.getStringExtra(PARAM_PROJECT_NAME);
+        command.movies = intent.getStringArrayExtra(PARAM_MOVIES_FILENAMES);
+        command.photos = intent.getStringArrayExtra(PARAM_PHOTOS_FILENAMES);
+        command.theme = intent.getStringExtra(PARAM_THEME);
+        command.startTimeMs = intent.getLongExtra(PARAM_START_TIME, 0);
+        command.endTimeMs = intent.getLongExtra(PARAM_END_TIME, 0);
+        command.durationMs = intent.getLongExtra(PARAM_DURATION, 0);
+        command.beginBoundaryMs = intent.getLongExtra(PARAM_BEGIN_BOUNDARY, 0);
+        command.endBoundaryMs = intent.getLongExtra(PARAM_END_BOUNDARY, 0);
+        command.width = intent.getIntExtra(PARAM_WIDTH, 0);
+        command.height = intent.getIntExtra(PARAM_HEIGHT, 0);
+        command.bitrate = intent.getIntExtra(PARAM_BITRATE, -1);
+        command.aspectRatio = intent.getIntExtra(PARAM_ASPECT_RATIO,
+                MediaProperties.ASPECT_RATIO_UNDEFINED);
+        command.renderingMode = intent.getIntExtra(PARAM_MEDIA_ITEM_RENDERING_MODE,
+                MediaItem.RENDERING_MODE_BLACK_BORDER);
+        command.startRect = intent.getParcelableExtra(PARAM_MEDIA_ITEM_START_RECT);
+        command.endRect = intent.getParcelableExtra(PARAM_MEDIA_ITEM_END_RECT);
+        command.effectType = intent.getIntExtra(PARAM_EFFECT_TYPE, -1);
+        command.effectParam = intent.getIntExtra(PARAM_EFFECT_PARAM, -1);
+        command.transitionBehavior = intent.getIntExtra(PARAM_TRANSITION_BEHAVIOR,
+                Transition.BEHAVIOR_LINEAR);
+        command.transitionMask = intent.getIntExtra(PARAM_TRANSITION_MASK, R.raw.mask_contour);
+        command.transitionBlending = intent.getIntExtra(PARAM_TRANSITION_BLENDING, 100);
+        command.transitionInvert = intent.getBooleanExtra(PARAM_TRANSITION_INVERT, false);
+        command.transitionDirection = intent.getIntExtra(PARAM_TRANSITION_DIRECTION,
+                TransitionSliding.DIRECTION_RIGHT_OUT_LEFT_IN);
+        final Object attributes = intent.getExtras() != null ?
+                intent.getExtras().get(PARAM_ATTRIBUTES) : null;
+        if (attributes instanceof Bundle) {
+            command.attributes = (Bundle)attributes;
+        } else if (attributes instanceof String) {
+            command.mimeType = (String)attributes;
+        }
+        command.volume = intent.getIntExtra(PARAM_VOLUME, 0);
+        command.loop = intent.getBooleanExtra(PARAM_LOOP, false);
+        command.mute = intent.getBooleanExtra(PARAM_MUTE, false);
+        command.duck = intent.getBooleanExtra(PARAM_DUCK, false);
+        command.count = intent.getIntExtra(PARAM_COUNT, 0);
+        command.token = intent.getIntExtra(PARAM_TOKEN, 0);
+        command.indices = intent.getIntArrayExtra(PARAM_INDICES);
+
+        mPendingCommands.put(command.requestId, command);
+        return command;
+    }
+
+    /**
+     * Queue the command on the worker thread which handles its operation.
+     * This method must be called on the main thread.
+     *
+     * @param command The command
+     */
+    private void submit(final ServiceCommand command) {
+        // Cancel a pending stop, this command keeps the service busy
+        mHandler.removeCallbacks(mStopRunnable);
+
+        final int op = command.op;
         switch(op) {
             case OP_VIDEO_EDITOR_LOAD_PROJECTS:
             case OP_VIDEO_EDITOR_CREATE:
@@ -1412,6 +1613,7 @@ public class ApiService extends Service {
             case OP_MEDIA_ITEM_EXTRACT_AUDIO_WAVEFORM_STATUS:
             case OP_MEDIA_ITEM_LOAD:
             case OP_MEDIA_ITEM_LOAD_STATUS:
+            case OP_MEDIA_ITEM_SET_PROXY:
 
             case OP_EFFECT_ADD_COLOR:
             case OP_EFFECT_ADD_IMAGE_KEN_BURNS:
@@ -1435,40 +1637,47 @@ public class ApiService extends Service {
             case OP_AUDIO_TRACK_SET_BOUNDARIES:
             case OP_AUDIO_TRACK_EXTRACT_AUDIO_WAVEFORM:
             case OP_AUDIO_TRACK_EXTRACT_AUDIO_WAVEFORM_STATUS: {
-                mVideoThread.submit(intent);
+                mVideoThread.submit(command);
                 break;
             }
 
             case OP_TRANSITION_GET_THUMBNAIL: {
-                mThumbnailThread.submit(intent);
+                mThumbnailThread.submit(command);
+                break;
+            }
+
+            case OP_MEDIA_ITEM_GENERATE_PROXY: {
+                mProxyThread.submit(command);
                 break;
             }
 
             case OP_MEDIA_ITEM_GET_THUMBNAILS: {
-                final String projectPath = intent.getStringExtra(PARAM_PROJECT_PATH);
-                final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
-                final int token = intent.getIntExtra(PARAM_TOKEN, 0);
+                final String projectPath = command.projectPath;
+                final String mediaItemId = command.itemId;
+                final int token = command.token;
                 // Cancel any pending thumbnail request for the same media item
                 // but with a different token
-                Iterator<Intent> intentQueueIterator = mThumbnailThread.getIntentQueueIterator();
-                while (intentQueueIterator.hasNext()) {
-                    Intent qIntent = intentQueueIterator.next();
-                    int opi = qIntent.getIntExtra(PARAM_OP, -1);
-                    String pp = qIntent.getStringExtra(PARAM_PROJECT_PATH);
-                    String mid = qIntent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
-                    int tk = qIntent.getIntExtra(PARAM_TOKEN, 0);
+                Iterator<ServiceCommand> commandQueueIterator =
+                        mThumbnailThread.getCommandQueueIterator();
+                while (commandQueueIterator.hasNext()) {
+                    ServiceCommand qCommand = commandQueueIterator.next();
+                    int opi = qCommand.op;
+                    String pp = qCommand.projectPath;
+                    String mid = qCommand.itemId;
+                    int tk = qCommand.token;
                     if (opi == op && pp.equals(projectPath) && mid.equals(mediaItemId)
                             && tk != token) {
-                        boolean canceled = mThumbnailThread.cancel(qIntent);
+                        boolean canceled = mThumbnailThread.cancel(qCommand);
                         if (canceled) {
                             logd("Canceled operation: " + op + " for media item" + mediaItemId);
-                            mPendingIntents.remove(qIntent.getStringExtra(PARAM_REQUEST_ID));
-                            mIntentPool.put(qIntent);
+                            mMetrics.recordCancelled(op);
+                            mPendingCommands.remove(qCommand.requestId);
+                            mCommandPool.put(qCommand);
                         }
                         break;
                     }
                 }
-                mThumbnailThread.submit(intent);
+                mThumbnailThread.submit(command);
                 break;
             }
 
@@ -1479,7 +1688,7 @@ public class ApiService extends Service {
             case OP_AUDIO_TRACK_SET_MUTE:
             case OP_AUDIO_TRACK_SET_LOOP:
             case OP_AUDIO_TRACK_SET_DUCK: {
-                mAudioThread.submit(intent);
+                mAudioThread.submit(command);
                 break;
             }
 
@@ -1488,19 +1697,26 @@ public class ApiService extends Service {
                 break;
             }
         }
-
-        return START_NOT_STICKY;
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
 
+        if (mService == this) {
+            mService = null;
+        }
+
         if (mThumbnailThread != null) {
             mThumbnailThread.quit();
             mThumbnailThread = null;
         }
 
+        if (mProxyThread != null) {
+            mProxyThread.quit();
+            mProxyThread = null;
+        }
+
         if (mAudioThread != null) {
             mAudioThread.quit();
             mAudioThread = null;
@@ -1518,15 +1734,54 @@ public class ApiService extends Service {
     }
 
     /**
-     * Process the intent
+     * Print the latency and queue metrics of the operations, the frame times
+     * of the timeline interactions, the bitmap memory usage and the lock
+     * contention of the video editor. Pass "reset" to clear the metrics and
+     * the frame times after printing:
+     * adb shell dumpsys activity service dogtim.android.videoeditor/.service.ApiService
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        final Map<Integer, String> opNames = new HashMap<Integer, String>();
+        for (Field field : ApiService.class.getDeclaredFields()) {
+            if (field.getName().startsWith("OP_") && field.getType() == int.class
+                    && Modifier.isStatic(field.getModifiers())) {
+                try {
+                    field.setAccessible(true);
+                    opNames.put(field.getInt(null), field.getName());
+                } catch (IllegalAccessException ex) {
+                    // Print the operation number instead
+                }
+            }
+        }
+
+        final FrameTimeRecorder frameTimeRecorder = FrameTimeRecorder.getInstance(this);
+        mMetrics.dump(writer, opNames);
+        frameTimeRecorder.dump(writer);
+        if (args != null && args.length > 0 && "reset".equals(args[0])) {
+            mMetrics.reset();
+            frameTimeRecorder.reset();
+        }
+
+        BitmapMemoryManager.getInstance(this).dump(writer);
+        OverlayBitmapCache.getInstance(this).dump(writer);
+
+        final VideoEditor videoEditor = mVideoEditor;
+        if (videoEditor instanceof VideoEditorImpl) {
+            ((VideoEditorImpl)videoEditor).dumpStatistics(writer);
+        }
+    }
+
+    /**
+     * Process the command
      *
-     * @param intent The intent
+     * @param command The command
      */
-    public void processIntent(final Intent intent) {
-        final int op = intent.getIntExtra(PARAM_OP, -1);
+    public void processCommand(final ServiceCommand command) {
+        final int op = command.op;
         VideoEditor videoEditor = null;
         try {
-            final String projectPath = intent.getStringExtra(PARAM_PROJECT_PATH);
+            final String projectPath = command.projectPath;
             // Check if the project path matches the current VideoEditor project
             switch (op) {
                 case OP_VIDEO_EDITOR_LOAD_PROJECTS:
@@ -1548,47 +1803,13 @@ public class ApiService extends Service {
 
             switch (op) {
                 case OP_VIDEO_EDITOR_LOAD_PROJECTS: {
-                    logd("OP_LOAD_PROJECTS");
-                    final List<VideoEditorProject> projects = new ArrayList<VideoEditorProject>();
+                    logd("OP_LOAD_PROJECTS: " + command.offset + "+" + command.count);
+                    final List<ProjectSummary> projects = new ArrayList<ProjectSummary>();
                     final File dir = FileUtils.getProjectsRootDir(getApplicationContext());
-                    if (dir != null) {
-                        // Collect valid projects (project with valid metadata).
-                        final File[] files = dir.listFiles();
-                        if (files != null) {
-                            for (int i = 0; i < files.length; i++) {
-                                if (files[i].isDirectory()) {
-                                    final String pp = files[i].getAbsolutePath();
-                                    try {
-                                        projects.add(VideoEditorProject.fromXml(null, pp));
-                                    } catch (FileNotFoundException ex) {
-                                        Log.w(TAG, "processIntent: Project file not found: " + pp);
-                                        FileUtils.deleteDir(new File(pp));
-                                    } catch (Exception ex) {
-                                        ex.printStackTrace();
-                                    }
-                                }
-                            }
-
-                            if (projects.size() > 0) {
-                                // Sort the projects in order of "last saved"
-                                Collections.sort(projects, new Comparator<VideoEditorProject>() {
-                                    @Override
-                                    public int compare(VideoEditorProject object1,
-                                            VideoEditorProject object2) {
-                                        if (object1.getLastSaved() > object2.getLastSaved()) {
-                                            return -1;
-                                        } else if (object1.getLastSaved() == object2.getLastSaved()) {
-                                            return 0;
-                                        } else {
-                                            return 1;
-                                        }
-                                    }
-                                });
-                            }
-                        }
-                    }
+                    final boolean hasMore = dir != null && ProjectSummaryIndex.loadSummaries(dir,
+                            command.offset, command.count, projects);
 
-                    completeRequest(intent, videoEditor, null, projects, null, true);
+                    completeRequest(command, videoEditor, null, projects, hasMore, true);
                     break;
                 }
 
@@ -1602,7 +1823,7 @@ public class ApiService extends Service {
                         videoEditor = VideoEditorFactory.create(projectPath);
 
                         // Add the movies to the timeline
-                        final String[] movies = intent.getStringArrayExtra(PARAM_MOVIES_FILENAMES);
+                        final String[] movies = command.movies;
                         for (int i = 0; i < movies.length; i++) {
                             final MediaItem mediaItem = new MediaVideoItem(videoEditor,
                                     generateId(), movies[i],
@@ -1611,7 +1832,7 @@ public class ApiService extends Service {
                         }
 
                         // Add the photos to the timeline
-                        final String[] photos = intent.getStringArrayExtra(PARAM_PHOTOS_FILENAMES);
+                        final String[] photos = command.photos;
                         for (int i = 0; i < photos.length; i++) {
                             final MediaItem mediaItem = new MediaImageItem(videoEditor,
                                     generateId(), photos[i],
@@ -1621,8 +1842,8 @@ public class ApiService extends Service {
                         }
 
                         // Create the project
-                        final String projectName = intent.getStringExtra(PARAM_PROJECT_NAME);
-                        final String themeId = intent.getStringExtra(PARAM_THEME);
+                        final String projectName = command.projectName;
+                        final String themeId = command.theme;
                         if (themeId != null) {
                             applyThemeToMovie(videoEditor, themeId);
                         }
@@ -1637,9 +1858,9 @@ public class ApiService extends Service {
                         final VideoEditorProject videoProject = new VideoEditorProject(
                                 videoEditor, projectPath, projectName, System.currentTimeMillis(),
                                 0, 0, VideoEditorProject.DEFAULT_ZOOM_LEVEL, null, themeId, null);
-                        videoProject.setMediaItems(copyMediaItems(
+                        videoProject.setMediaItems(VideoEditorProject.copyMediaItems(
                                 videoEditor.getAllMediaItems()));
-                        videoProject.setAudioTracks(copyAudioTracks(
+                        videoProject.setAudioTracks(VideoEditorProject.copyAudioTracks(
                                 videoEditor.getAllAudioTracks()));
 
                         // Make this project the current project
@@ -1647,9 +1868,9 @@ public class ApiService extends Service {
                         mGeneratePreviewListener = new ServiceMediaProcessingProgressListener(
                                 projectPath);
 
-                        completeRequest(intent, videoEditor, null, videoProject, null, false);
+                        completeRequest(command, videoEditor, null, videoProject, null, false);
                         generatePreview(videoEditor, true);
-                        completeRequest(intent);
+                        completeRequest(command);
                     } catch (Exception ex) {
                         if (videoEditor != null) {
                             videoEditor.release();
@@ -1667,24 +1888,18 @@ public class ApiService extends Service {
                     if (videoEditor == null) {  // The old project was released.
                         logd("OP_VIDEO_EDITOR_LOAD: Loading: " + projectPath);
                         try {
-                            // Load the project
-                            videoEditor = VideoEditorFactory.load(projectPath, false);
-
-                            // Load the video editor project
-                            final VideoEditorProject videoProject = VideoEditorProject.fromXml(
-                                    videoEditor, projectPath);
-                            videoProject.setMediaItems(copyMediaItems(
-                                    videoEditor.getAllMediaItems()));
-                            videoProject.setAudioTracks(copyAudioTracks(
-                                    videoEditor.getAllAudioTracks()));
+                            // Load the video editor and the project
+                            final VideoEditorProject videoProject =
+                                    VideoEditorProject.load(projectPath);
+                            videoEditor = videoProject.getVideoEditor();
                             // Make this the current project
                             mVideoEditor = videoEditor;
                             mGeneratePreviewListener = new ServiceMediaProcessingProgressListener(
                                     projectPath);
 
-                            completeRequest(intent, videoEditor, null, videoProject, null, false);
+                            completeRequest(command, videoEditor, null, videoProject, null, false);
                             generatePreview(videoEditor, true);
-                            completeRequest(intent);
+                            completeRequest(command);
                         } catch (Exception ex) {
                             if (videoEditor != null) {
                                 videoEditor.release();
@@ -1694,7 +1909,7 @@ public class ApiService extends Service {
                         }
                     } else {  // The project is already loaded.
                         logd("OP_VIDEO_EDITOR_LOAD: Was already loaded: " + projectPath);
-                        completeRequest(intent, videoEditor, null, null, null, true);
+                        completeRequest(command, videoEditor, null, null, null, true);
                     }
 
                     break;
@@ -1703,12 +1918,11 @@ public class ApiService extends Service {
                 case OP_VIDEO_EDITOR_SET_ASPECT_RATIO: {
                     logd("OP_VIDEO_EDITOR_SET_ASPECT_RATIO");
 
-                    videoEditor.setAspectRatio(intent.getIntExtra(PARAM_ASPECT_RATIO,
-                            MediaProperties.ASPECT_RATIO_UNDEFINED));
+                    videoEditor.setAspectRatio(command.aspectRatio);
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
@@ -1716,35 +1930,35 @@ public class ApiService extends Service {
                     logd("OP_VIDEO_EDITOR_APPLY_THEME");
 
                     // Apply the theme
-                    applyThemeToMovie(videoEditor, intent.getStringExtra(PARAM_THEME));
+                    applyThemeToMovie(videoEditor, command.theme);
 
                     final List<MovieMediaItem> mediaItems =
-                            copyMediaItems(videoEditor.getAllMediaItems());
+                            VideoEditorProject.copyMediaItems(videoEditor.getAllMediaItems());
                     final List<MovieAudioTrack> audioTracks =
-                            copyAudioTracks(videoEditor.getAllAudioTracks());
+                            VideoEditorProject.copyAudioTracks(videoEditor.getAllAudioTracks());
 
-                    completeRequest(intent, videoEditor, null, mediaItems, audioTracks, false);
+                    completeRequest(command, videoEditor, null, mediaItems, audioTracks, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_VIDEO_EDITOR_EXPORT: {
                     logd("OP_VIDEO_EDITOR_EXPORT");
-                    exportMovie(videoEditor, intent);
+                    exportMovie(videoEditor, command);
                     break;
                 }
 
                 case OP_VIDEO_EDITOR_CANCEL_EXPORT: {
                     logd("OP_VIDEO_EDITOR_CANCEL_EXPORT");
-                    videoEditor.cancelExport(intent.getStringExtra(PARAM_FILENAME));
-                    completeRequest(intent, videoEditor, null, null, null, true);
+                    videoEditor.cancelExport(command.filename);
+                    completeRequest(command, videoEditor, null, null, null, true);
                     break;
                 }
 
                 case OP_VIDEO_EDITOR_EXPORT_STATUS: {
                     logd("OP_VIDEO_EDITOR_EXPORT_STATUS");
-                    completeRequest(intent, videoEditor, null, null, null, true);
+                    completeRequest(command, videoEditor, null, null, null, true);
                     break;
                 }
 
@@ -1757,14 +1971,14 @@ public class ApiService extends Service {
                         videoProject.saveToXml();
                     }
 
-                    completeRequest(intent, videoEditor, null, null, null, true);
+                    completeRequest(command, videoEditor, null, null, null, true);
                     break;
                 }
 
                 case OP_VIDEO_EDITOR_RELEASE: {
                     logd("OP_VIDEO_EDITOR_RELEASE: " + projectPath);
                     releaseEditor(projectPath);
-                    completeRequest(intent, videoEditor, null, null, null, true);
+                    completeRequest(command, videoEditor, null, null, null, true);
                     break;
                 }
 
@@ -1773,14 +1987,15 @@ public class ApiService extends Service {
                     releaseEditor(projectPath);
                     // Delete all the files and the project folder.
                     FileUtils.deleteDir(new File(projectPath));
-                    completeRequest(intent, videoEditor, null, null, null, true);
+                    ProjectSummaryIndex.remove(projectPath);
+                    completeRequest(command, videoEditor, null, null, null, true);
                     break;
                 }
 
                 case OP_MEDIA_ITEM_ADD_VIDEO_URI: {
                     logd("OP_MEDIA_ITEM_ADD_VIDEO_URI: " +
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
-                    final Uri data = intent.getParcelableExtra(PARAM_FILENAME);
+                            command.itemId);
+                    final Uri data = command.uri;
                     String filename = null;
                     // Get the filename
                     Cursor cursor = null;
@@ -1801,12 +2016,12 @@ public class ApiService extends Service {
                     }
 
                     final MediaItem mediaItem = new MediaVideoItem(videoEditor,
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID),
+                            command.itemId,
                             filename,
-                            intent.getIntExtra(PARAM_MEDIA_ITEM_RENDERING_MODE, 0));
+                            command.renderingMode);
 
                     videoEditor.insertMediaItem(mediaItem,
-                            intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                            command.relativeItemId);
 
                     // If this is the first media item, change the aspect ratio
                     final Integer aspectRatio;
@@ -1818,23 +2033,23 @@ public class ApiService extends Service {
                     }
 
                     // Apply the theme if any
-                    final String themeId = intent.getStringExtra(PARAM_THEME);
+                    final String themeId = command.theme;
                     if (themeId != null) {
                         applyThemeToMediaItem(videoEditor, themeId, mediaItem);
                     }
 
-                    completeRequest(intent, videoEditor, null, new MovieMediaItem(mediaItem),
+                    completeRequest(command, videoEditor, null, new MovieMediaItem(mediaItem),
                             aspectRatio, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_MEDIA_ITEM_ADD_IMAGE_URI: {
                     logd("OP_MEDIA_ITEM_ADD_IMAGE_URI: "
-                        + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                        + command.itemId);
 
-                    final Uri data = intent.getParcelableExtra(PARAM_FILENAME);
+                    final Uri data = command.uri;
                     String filename = null;
                     // Get the filename
                     Cursor cursor = null;
@@ -1869,13 +2084,13 @@ public class ApiService extends Service {
                     }
 
                     final MediaItem mediaItem = new MediaImageItem(videoEditor,
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID),
+                            command.itemId,
                             filename,
-                            intent.getLongExtra(PARAM_DURATION, 0),
-                            intent.getIntExtra(PARAM_MEDIA_ITEM_RENDERING_MODE, 0));
+                            command.durationMs,
+                            command.renderingMode);
 
                     videoEditor.insertMediaItem(mediaItem,
-                            intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                            command.relativeItemId);
 
                     // If this is the first media item, change the aspect ratio
                     final Integer aspectRatio;
@@ -1887,22 +2102,22 @@ public class ApiService extends Service {
                     }
 
                     // Apply the theme if any
-                    final String themeId = intent.getStringExtra(PARAM_THEME);
+                    final String themeId = command.theme;
                     if (themeId != null) {
                         applyThemeToMediaItem(videoEditor, themeId, mediaItem);
                     }
 
-                    completeRequest(intent, videoEditor, null, new MovieMediaItem(mediaItem),
+                    completeRequest(command, videoEditor, null, new MovieMediaItem(mediaItem),
                             aspectRatio, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_MEDIA_ITEM_LOAD: {
-                    final Uri data = intent.getParcelableExtra(PARAM_FILENAME);
+                    final Uri data = command.uri;
                     logd("OP_MEDIA_ITEM_LOAD: " + data);
-                    final Intent requestIntent = intent;
+                    final ServiceCommand requestCommand = command;
                     new Thread() {
                         @Override
                         public void run() {
@@ -1910,11 +2125,10 @@ public class ApiService extends Service {
                             FileOutputStream fos = null;
                             final File file = new File(projectPath, "download_" + generateId());
 
-                            final Intent statusIntent = mIntentPool.get();
-                            statusIntent.putExtra(PARAM_OP, OP_MEDIA_ITEM_LOAD_STATUS);
-                            statusIntent.putExtra(PARAM_PROJECT_PATH,
-                                    requestIntent.getStringExtra(PARAM_PROJECT_PATH));
-                            statusIntent.putExtra(PARAM_INTENT, requestIntent);
+                            final ServiceCommand statusCommand = mCommandPool.get();
+                            statusCommand.op = OP_MEDIA_ITEM_LOAD_STATUS;
+                            statusCommand.projectPath = requestCommand.projectPath;
+                            statusCommand.original = requestCommand;
                             try {
                                 is = getContentResolver().openInputStream(data);
                                 // Save the input stream to a file
@@ -1926,7 +2140,7 @@ public class ApiService extends Service {
                                 }
                             } catch (Exception ex) {
                                 Log.e(TAG, "Cannot open input stream for: " + data);
-                                statusIntent.putExtra(PARAM_EXCEPTION, ex);
+                                statusCommand.exception = ex;
                                 file.delete();
                             } finally {
                                 if (is != null) {
@@ -1947,7 +2161,7 @@ public class ApiService extends Service {
                                 }
                             }
 
-                            if (!statusIntent.hasExtra(PARAM_EXCEPTION)) {
+                            if (statusCommand.exception == null) {
                                 final String filename = file.getAbsolutePath();
                                 try {
                                     final String mimeType = getContentResolver().getType(data);
@@ -1957,22 +2171,21 @@ public class ApiService extends Service {
                                         if (ImageUtils.transformJpeg(filename, outputFile)) {
                                             // Delete the downloaded file
                                             file.delete();
-                                            statusIntent.putExtra(PARAM_FILENAME,
-                                                    outputFile.getAbsolutePath());
+                                            statusCommand.filename = outputFile.getAbsolutePath();
                                         } else {
-                                            statusIntent.putExtra(PARAM_FILENAME, filename);
+                                            statusCommand.filename = filename;
                                         }
                                     } else {
-                                        statusIntent.putExtra(PARAM_FILENAME, filename);
+                                        statusCommand.filename = filename;
                                     }
                                 } catch (Exception ex) {
                                     // Ignore the exception and continue
                                     Log.w(TAG, "Could not transform JPEG: " + filename, ex);
-                                    statusIntent.putExtra(PARAM_FILENAME, filename);
+                                    statusCommand.filename = filename;
                                 }
                             }
 
-                            mVideoThread.submit(statusIntent);
+                            mVideoThread.submit(statusCommand);
                         }
                     }.start();
 
@@ -1980,85 +2193,69 @@ public class ApiService extends Service {
                 }
 
                 case OP_MEDIA_ITEM_LOAD_STATUS: {
-                    final Intent originalIntent = (Intent)intent.getParcelableExtra(PARAM_INTENT);
-                    if (intent.hasExtra(PARAM_EXCEPTION)) { //
-                        final Exception exception =
-                            (Exception)intent.getSerializableExtra(PARAM_EXCEPTION);
-                        completeRequest(intent, videoEditor, exception, null, originalIntent,
+                    final ServiceCommand originalCommand = command.original;
+                    if (command.exception != null) {
+                        final Exception exception = command.exception;
+                        completeRequest(command, videoEditor, exception, null, originalCommand,
                                 true);
                     } else {
-                        completeRequest(intent, videoEditor, null,
-                                intent.getStringExtra(PARAM_FILENAME), originalIntent, true);
+                        completeRequest(command, videoEditor, null,
+                                command.filename, originalCommand, true);
                     }
                     break;
                 }
 
                 case OP_MEDIA_ITEM_MOVE: {
-                    final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String mediaItemId = command.itemId;
                     logd("OP_MEDIA_ITEM_MOVE: " + mediaItemId);
 
-                    // Determine the position of the media item we are moving
-                    final List<MediaItem> mediaItems = videoEditor.getAllMediaItems();
-                    final int mediaItemsCount = mediaItems.size();
-                    int movedItemPosition = -1;
-                    MediaItem movedMediaItem = null;
-                    for (int i = 0; i < mediaItemsCount; i++) {
-                        final MediaItem mi = mediaItems.get(i);
-                        if (mi.getId().equals(mediaItemId)) {
-                            movedMediaItem = mi;
-                            movedItemPosition = i;
-                            break;
-                        }
-                    }
-
-                    if (movedItemPosition == -1) {
+                    // Determine the position of the media item we are moving. The
+                    // media item list indexes the position of its items.
+                    final MediaItem movedMediaItem = videoEditor.getMediaItem(mediaItemId);
+                    if (movedMediaItem == null) {
                         throw new IllegalArgumentException("Moved MediaItem not found: " +
                                 mediaItemId);
                     }
 
+                    final List<MediaItem> mediaItems = videoEditor.getAllMediaItems();
+                    final int movedItemPosition = mediaItems.indexOf(movedMediaItem);
+
                     final Transition beginTransition = movedMediaItem.getBeginTransition();
                     final Transition endTransition = movedMediaItem.getEndTransition();
 
-                    final String afterMediaItemId = intent.getStringExtra(
-                            PARAM_RELATIVE_STORYBOARD_ITEM_ID);
+                    final String afterMediaItemId = command.relativeItemId;
                     videoEditor.moveMediaItem(mediaItemId, afterMediaItemId);
 
                     // Apply the theme if any
-                    final String themeId = intent.getStringExtra(PARAM_THEME);
+                    final String themeId = command.theme;
                     if (themeId != null) {
                         // Apply the theme at the removed position
                         applyThemeAfterMove(videoEditor, themeId, movedMediaItem,
                                 movedItemPosition, beginTransition, endTransition);
                     }
 
-                    final List<MovieMediaItem> mediaItemsCopy = copyMediaItems(mediaItems);
-                    completeRequest(intent, videoEditor, null, mediaItemsCopy, null, false);
+                    final List<MovieMediaItem> mediaItemsCopy =
+                            VideoEditorProject.copyMediaItems(mediaItems);
+                    completeRequest(command, videoEditor, null, mediaItemsCopy, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_MEDIA_ITEM_REMOVE: {
-                    final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String mediaItemId = command.itemId;
                     logd("OP_MEDIA_ITEM_REMOVE: " + mediaItemId);
 
-                    // Determine the position of the media item we are removing
-                    final List<MediaItem> mediaItems = videoEditor.getAllMediaItems();
-                    final int mediaItemsCount = mediaItems.size();
-                    int removedItemPosition = -1;
-                    MediaItem removedMediaItem = null;
-                    for (int i = 0; i < mediaItemsCount; i++) {
-                        if (mediaItems.get(i).getId().equals(mediaItemId)) {
-                            removedMediaItem = mediaItems.get(i);
-                            removedItemPosition = i;
-                            break;
-                        }
-                    }
-
+                    // Determine the position of the media item we are removing. The
+                    // media item list indexes the position of its items.
+                    final MediaItem removedMediaItem = videoEditor.getMediaItem(mediaItemId);
                     if (removedMediaItem == null) {
                         throw new IllegalArgumentException("MediaItem not found: " + mediaItemId);
                     }
 
+                    final List<MediaItem> mediaItems = videoEditor.getAllMediaItems();
+                    final int removedItemPosition = mediaItems.indexOf(removedMediaItem);
+
                     final Transition beginTransition = removedMediaItem.getBeginTransition();
                     final Transition endTransition = removedMediaItem.getEndTransition();
 
@@ -2066,7 +2263,7 @@ public class ApiService extends Service {
 
                     // Apply the theme if any
                     MovieTransition movieTransition = null;
-                    final String themeId = intent.getStringExtra(PARAM_THEME);
+                    final String themeId = command.theme;
                     if (themeId != null && mediaItems.size() > 0) {
                         final Transition transition = applyThemeAfterRemove(videoEditor, themeId,
                                 removedItemPosition, beginTransition, endTransition);
@@ -2075,31 +2272,30 @@ public class ApiService extends Service {
                         }
                     }
 
-                    completeRequest(intent, videoEditor, null, movieTransition, null, false);
+                    completeRequest(command, videoEditor, null, movieTransition, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_MEDIA_ITEM_SET_RENDERING_MODE: {
-                    final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String mediaItemId = command.itemId;
                     logd("OP_MEDIA_ITEM_SET_RENDERING_MODE: " + mediaItemId);
 
                     final MediaItem mediaItem = videoEditor.getMediaItem(mediaItemId);
                     if (mediaItem == null) {
                         throw new IllegalArgumentException("MediaItem not found: " + mediaItemId);
                     }
-                    mediaItem.setRenderingMode(intent.getIntExtra(PARAM_MEDIA_ITEM_RENDERING_MODE,
-                            MediaItem.RENDERING_MODE_BLACK_BORDER));
+                    mediaItem.setRenderingMode(command.renderingMode);
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_MEDIA_ITEM_SET_DURATION: {
-                    final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String mediaItemId = command.itemId;
                     logd("OP_MEDIA_ITEM_SET_DURATION: " + mediaItemId);
 
                     final MediaImageItem mediaItem =
@@ -2108,7 +2304,7 @@ public class ApiService extends Service {
                         throw new IllegalArgumentException("MediaItem not found: " + mediaItemId);
                     }
 
-                    final long durationMs = intent.getLongExtra(PARAM_DURATION, 0);
+                    final long durationMs = command.durationMs;
                     mediaItem.setDuration(durationMs);
                     // Adjust all effects to the new duration
                     final List<Effect> effects = mediaItem.getAllEffects();
@@ -2116,23 +2312,23 @@ public class ApiService extends Service {
                         effect.setDuration(durationMs);
                     }
 
-                    completeRequest(intent, videoEditor, null, new MovieMediaItem(mediaItem), null,
+                    completeRequest(command, videoEditor, null, new MovieMediaItem(mediaItem), null,
                             false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_MEDIA_ITEM_SET_BOUNDARIES: {
-                    final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String mediaItemId = command.itemId;
                     final MediaVideoItem mediaItem =
                         (MediaVideoItem)videoEditor.getMediaItem(mediaItemId);
                     if (mediaItem == null) {
                         throw new IllegalArgumentException("MediaItem not found: " + mediaItemId);
                     }
 
-                    mediaItem.setExtractBoundaries(intent.getLongExtra(PARAM_BEGIN_BOUNDARY, 0),
-                            intent.getLongExtra(PARAM_END_BOUNDARY, 0));
+                    mediaItem.setExtractBoundaries(command.beginBoundaryMs,
+                            command.endBoundaryMs);
 
                     final List<Overlay> overlays = mediaItem.getAllOverlays();
                     if (overlays.size() > 0) {
@@ -2151,16 +2347,16 @@ public class ApiService extends Service {
                         }
                     }
 
-                    completeRequest(intent, videoEditor, null, new MovieMediaItem(mediaItem), null,
+                    completeRequest(command, videoEditor, null, new MovieMediaItem(mediaItem), null,
                             false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_MEDIA_ITEM_GET_THUMBNAILS: {
                     // Note that this command is executed in the thumbnail thread
-                    final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String mediaItemId = command.itemId;
                     logd("OP_MEDIA_ITEM_GET_THUMBNAILS: " + mediaItemId);
 
                     final MediaItem mediaItem = videoEditor.getMediaItem(mediaItemId);
@@ -2168,38 +2364,56 @@ public class ApiService extends Service {
                         throw new IllegalArgumentException("MediaItem not found: " + mediaItemId);
                     }
 
+                    // Decode the frames of the queued requests for the same
+                    // source file along with this one
+                    final List<ServiceCommand> commands =
+                            takeQueuedThumbnailCommands(command, videoEditor, mediaItem);
                     final VideoEditor ve = videoEditor; // Just to make it "final"
-                    mediaItem.getThumbnailList(
-                            intent.getIntExtra(PARAM_WIDTH, 0),
-                            intent.getIntExtra(PARAM_HEIGHT, 0),
-                            intent.getLongExtra(PARAM_START_TIME, 0),
-                            intent.getLongExtra(PARAM_END_TIME, 0),
-                            intent.getIntExtra(PARAM_COUNT, 0),
-                            intent.getIntArrayExtra(PARAM_INDICES),
-                            new GetThumbnailListCallback() {
-                                public void onThumbnail(Bitmap bitmap, int index) {
-                                    completeRequest(
-                                            intent, ve, null, bitmap,
-                                            Integer.valueOf(index), false);
-                                }
+                    final ThumbnailBatch.Receiver receiver = new ThumbnailBatch.Receiver() {
+                        @Override
+                        public void onThumbnail(ServiceCommand c, Bitmap bitmap, int index) {
+                            completeRequest(c, ve, null, bitmap, Integer.valueOf(index), false);
+                        }
+                    };
+
+                    try {
+                        for (final ThumbnailBatch.Pass pass
+                                : new ThumbnailBatch(commands).getPasses()) {
+                            mediaItem.getThumbnailList(command.width, command.height,
+                                    pass.startMs, pass.endMs, pass.count, pass.indices,
+                                    new GetThumbnailListCallback() {
+                                        public void onThumbnail(Bitmap bitmap, int index) {
+                                            pass.dispatch(bitmap, index, receiver);
+                                        }
+                                    });
+                        }
+                    } catch (Exception ex) {
+                        // This command is completed by the caller
+                        for (ServiceCommand c : commands) {
+                            if (c != command) {
+                                completeRequest(c, videoEditor, ex, null, null, true);
                             }
-                            );
+                        }
+                        throw ex;
+                    }
 
-                    completeRequest(intent, videoEditor, null, null, null, true);
+                    for (ServiceCommand c : commands) {
+                        completeRequest(c, videoEditor, null, null, null, true);
+                    }
                     break;
                 }
 
                 case OP_MEDIA_ITEM_SET_VOLUME: {
-                    final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String mediaItemId = command.itemId;
                     logd("OP_MEDIA_ITEM_SET_VOLUME: " + mediaItemId);
 
                     final MediaItem mediaItem = videoEditor.getMediaItem(mediaItemId);
                     if (mediaItem != null && mediaItem instanceof MediaVideoItem) {
-                        ((MediaVideoItem)mediaItem).setVolume(intent.getIntExtra(PARAM_VOLUME, 0));
+                        ((MediaVideoItem)mediaItem).setVolume(command.volume);
 
-                        completeRequest(intent, videoEditor, null, null, null, false);
+                        completeRequest(command, videoEditor, null, null, null, false);
                         generatePreview(videoEditor, false);
-                        completeRequest(intent);
+                        completeRequest(command);
                     } else {
                         throw new IllegalArgumentException("MediaItem not found: " + mediaItemId);
                     }
@@ -2207,17 +2421,16 @@ public class ApiService extends Service {
                 }
 
                 case OP_MEDIA_ITEM_SET_MUTE: {
-                    final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String mediaItemId = command.itemId;
                     logd("OP_MEDIA_ITEM_SET_MUTE: " + mediaItemId);
 
                     final MediaItem mediaItem = videoEditor.getMediaItem(mediaItemId);
                     if (mediaItem != null && mediaItem instanceof MediaVideoItem) {
-                        ((MediaVideoItem)mediaItem).setMute(intent.getBooleanExtra(PARAM_MUTE,
-                                false));
+                        ((MediaVideoItem)mediaItem).setMute(command.mute);
 
-                        completeRequest(intent, videoEditor, null, null, null, false);
+                        completeRequest(command, videoEditor, null, null, null, false);
                         generatePreview(videoEditor, false);
-                        completeRequest(intent);
+                        completeRequest(command);
                     } else {
                         throw new IllegalArgumentException("MediaItem not found: " + mediaItemId);
                     }
@@ -2225,7 +2438,7 @@ public class ApiService extends Service {
                 }
 
                 case OP_MEDIA_ITEM_EXTRACT_AUDIO_WAVEFORM: {
-                    final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String mediaItemId = command.itemId;
                     logd("OP_MEDIA_ITEM_EXTRACT_AUDIO_WAVEFORM: " + mediaItemId);
 
                     final MediaItem mediaItem = videoEditor.getMediaItem(mediaItemId);
@@ -2233,11 +2446,11 @@ public class ApiService extends Service {
                         final MediaVideoItem movieMediaItem = ((MediaVideoItem)mediaItem);
                         final WaveformData waveformData = movieMediaItem.getWaveformData();
                         if (waveformData == null) {
-                            extractMediaItemAudioWaveform(intent, videoEditor, movieMediaItem);
-                            completeRequest(intent, videoEditor, null,
+                            extractMediaItemAudioWaveform(command, videoEditor, movieMediaItem);
+                            completeRequest(command, videoEditor, null,
                                     movieMediaItem.getWaveformData(), null, true);
                         } else {
-                            completeRequest(intent, videoEditor, null, waveformData, null, true);
+                            completeRequest(command, videoEditor, null, waveformData, null, true);
                         }
                     } else {
                         throw new IllegalArgumentException("MediaItem not found: " + mediaItemId);
@@ -2245,12 +2458,60 @@ public class ApiService extends Service {
                     break;
                 }
 
+                case OP_MEDIA_ITEM_GENERATE_PROXY: {
+                    final String mediaItemId = command.itemId;
+                    logd("OP_MEDIA_ITEM_GENERATE_PROXY: " + mediaItemId);
+
+                    final MediaItem mediaItem = videoEditor.getMediaItem(mediaItemId);
+                    if (mediaItem != null && mediaItem instanceof MediaVideoItem) {
+                        final MediaVideoItem videoMediaItem = (MediaVideoItem)mediaItem;
+                        if (videoMediaItem.getProxyFilename() == null) {
+                            // The proxy is put to use by the video thread,
+                            // which owns the storyboard
+                            final ServiceCommand setCommand = mCommandPool.get();
+                            setCommand.op = OP_MEDIA_ITEM_SET_PROXY;
+                            setCommand.projectPath = projectPath;
+                            setCommand.itemId = mediaItemId;
+                            setCommand.original = command;
+                            setCommand.filename = encodeMediaItemProxy(command, videoEditor,
+                                    videoMediaItem);
+                            mVideoThread.submit(setCommand);
+                        } else {
+                            completeRequest(command, videoEditor, null,
+                                    videoMediaItem.getProxyFilename(), null, true);
+                        }
+                    } else {
+                        throw new IllegalArgumentException("MediaItem not found: " + mediaItemId);
+                    }
+                    break;
+                }
+
+                case OP_MEDIA_ITEM_SET_PROXY: {
+                    final String mediaItemId = command.itemId;
+                    logd("OP_MEDIA_ITEM_SET_PROXY: " + mediaItemId + " " + command.filename);
+
+                    final MediaItem mediaItem = videoEditor.getMediaItem(mediaItemId);
+                    if (mediaItem != null && mediaItem instanceof MediaVideoItem) {
+                        ((MediaVideoItem)mediaItem).setProxyFilename(command.filename);
+                        completeRequest(command, videoEditor, null, command.filename, null,
+                                false);
+                        generatePreview(videoEditor, true);
+                        completeRequest(command);
+                    } else {
+                        if (command.filename != null) {
+                            // The media item was removed while the proxy was encoded
+                            new File(command.filename).delete();
+                        }
+                        throw new IllegalArgumentException("MediaItem not found: " + mediaItemId);
+                    }
+                    break;
+                }
+
                 case OP_TRANSITION_INSERT_ALPHA: {
                     logd("OP_TRANSITION_INSERT_ALPHA: "
-                            + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                            + command.itemId);
 
-                    final String afterMediaItemId =
-                        intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID);
+                    final String afterMediaItemId = command.relativeItemId;
                     final MediaItem afterMediaItem;
                     if (afterMediaItemId != null) {
                         afterMediaItem = videoEditor.getMediaItem(afterMediaItemId);
@@ -2258,34 +2519,30 @@ public class ApiService extends Service {
                         afterMediaItem = null;
                     }
 
-                    final int maskRawResourceId = intent.getIntExtra(PARAM_TRANSITION_MASK,
-                            R.raw.mask_contour);
+                    final int maskRawResourceId = command.transitionMask;
 
                     final MediaItem beforeMediaItem = nextMediaItem(videoEditor, afterMediaItemId);
-                    final Transition transition = new TransitionAlpha(
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID),
+                    final Transition transition = new TransitionAlpha(command.itemId,
                             afterMediaItem, beforeMediaItem,
-                            intent.getLongExtra(PARAM_DURATION, 0),
-                            intent.getIntExtra(PARAM_TRANSITION_BEHAVIOR,
-                                    Transition.BEHAVIOR_LINEAR),
+                            command.durationMs,
+                            command.transitionBehavior,
                                     FileUtils.getMaskFilename(getApplicationContext(),
                                             maskRawResourceId),
-                            intent.getIntExtra(PARAM_TRANSITION_BLENDING, 100),
-                            intent.getBooleanExtra(PARAM_TRANSITION_INVERT, false));
+                            command.transitionBlending,
+                            command.transitionInvert);
                     videoEditor.addTransition(transition);
 
-                    completeRequest(intent, videoEditor, null, transition, null, false);
+                    completeRequest(command, videoEditor, null, transition, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_TRANSITION_INSERT_CROSSFADE: {
                     logd("OP_TRANSITION_INSERT_CROSSFADE: "
-                        + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                        + command.itemId);
 
-                    final String afterMediaItemId =
-                        intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID);
+                    final String afterMediaItemId = command.relativeItemId;
                     final MediaItem afterMediaItem;
                     if (afterMediaItemId != null) {
                         afterMediaItem = videoEditor.getMediaItem(afterMediaItemId);
@@ -2294,26 +2551,23 @@ public class ApiService extends Service {
                     }
 
                     final MediaItem beforeMediaItem = nextMediaItem(videoEditor, afterMediaItemId);
-                    final Transition transition = new TransitionCrossfade(
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID),
+                    final Transition transition = new TransitionCrossfade(command.itemId,
                             afterMediaItem, beforeMediaItem,
-                            intent.getLongExtra(PARAM_DURATION, 0),
-                            intent.getIntExtra(PARAM_TRANSITION_BEHAVIOR,
-                                    Transition.BEHAVIOR_LINEAR));
+                            command.durationMs,
+                            command.transitionBehavior);
                     videoEditor.addTransition(transition);
 
-                    completeRequest(intent, videoEditor, null, transition, null, false);
+                    completeRequest(command, videoEditor, null, transition, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_TRANSITION_INSERT_FADE_BLACK: {
                     logd("OP_TRANSITION_INSERT_FADE_TO_BLACK: "
-                            + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                            + command.itemId);
 
-                    final String afterMediaItemId =
-                        intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID);
+                    final String afterMediaItemId = command.relativeItemId;
                     final MediaItem afterMediaItem;
                     if (afterMediaItemId != null) {
                         afterMediaItem = videoEditor.getMediaItem(afterMediaItemId);
@@ -2322,26 +2576,23 @@ public class ApiService extends Service {
                     }
 
                     final MediaItem beforeMediaItem = nextMediaItem(videoEditor, afterMediaItemId);
-                    final Transition transition = new TransitionFadeBlack(
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID),
+                    final Transition transition = new TransitionFadeBlack(command.itemId,
                             afterMediaItem, beforeMediaItem,
-                            intent.getLongExtra(PARAM_DURATION, 0),
-                            intent.getIntExtra(PARAM_TRANSITION_BEHAVIOR,
-                                    Transition.BEHAVIOR_LINEAR));
+                            command.durationMs,
+                            command.transitionBehavior);
                     videoEditor.addTransition(transition);
 
-                    completeRequest(intent, videoEditor, null, transition, null, false);
+                    completeRequest(command, videoEditor, null, transition, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_TRANSITION_INSERT_SLIDING: {
                     logd("OP_TRANSITION_INSERT_SLIDING: "
-                            + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                            + command.itemId);
 
-                    final String afterMediaItemId =
-                        intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID);
+                    final String afterMediaItemId = command.relativeItemId;
                     final MediaItem afterMediaItem;
                     if (afterMediaItemId != null) {
                         afterMediaItem = videoEditor.getMediaItem(afterMediaItemId);
@@ -2350,36 +2601,33 @@ public class ApiService extends Service {
                     }
 
                     final MediaItem beforeMediaItem = nextMediaItem(videoEditor, afterMediaItemId);
-                    final Transition transition = new TransitionSliding(
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID),
+                    final Transition transition = new TransitionSliding(command.itemId,
                             afterMediaItem, beforeMediaItem,
-                            intent.getLongExtra(PARAM_DURATION, 0),
-                            intent.getIntExtra(PARAM_TRANSITION_BEHAVIOR,
-                                    Transition.BEHAVIOR_LINEAR),
-                                    intent.getIntExtra(PARAM_TRANSITION_DIRECTION,
-                                            TransitionSliding.DIRECTION_RIGHT_OUT_LEFT_IN));
+                            command.durationMs,
+                            command.transitionBehavior,
+                                    command.transitionDirection);
                     videoEditor.addTransition(transition);
 
-                    completeRequest(intent, videoEditor, null, transition, null, false);
+                    completeRequest(command, videoEditor, null, transition, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_TRANSITION_REMOVE: {
                     logd("OP_TRANSITION_REMOVE: "
-                        + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                        + command.itemId);
 
-                    videoEditor.removeTransition(intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                    videoEditor.removeTransition(command.itemId);
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_TRANSITION_SET_DURATION: {
-                    final String transitionId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String transitionId = command.itemId;
                     logd("OP_TRANSITION_SET_DURATION: " + transitionId);
 
                     final Transition transition = videoEditor.getTransition(transitionId);
@@ -2387,16 +2635,16 @@ public class ApiService extends Service {
                         throw new IllegalArgumentException("Transition not found: " +
                                 transitionId);
                     }
-                    transition.setDuration(intent.getLongExtra(PARAM_DURATION, 0));
+                    transition.setDuration(command.durationMs);
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_TRANSITION_GET_THUMBNAIL: {
-                    final String transitionId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String transitionId = command.itemId;
                     logd("OP_TRANSITION_GET_THUMBNAIL: " + transitionId);
 
                     final Transition transition = videoEditor.getTransition(transitionId);
@@ -2405,7 +2653,7 @@ public class ApiService extends Service {
                                 transitionId);
                     }
 
-                    final int height = intent.getIntExtra(PARAM_HEIGHT, 0);
+                    final int height = command.height;
                     final MediaItem afterMediaItem = transition.getAfterMediaItem();
                     final Bitmap[] thumbnails = new Bitmap[2];
                     if (afterMediaItem != null) {
@@ -2425,19 +2673,18 @@ public class ApiService extends Service {
                         thumbnails[1] = null;
                     }
 
-                    completeRequest(intent, videoEditor, null, thumbnails, null, true);
+                    completeRequest(command, videoEditor, null, thumbnails, null, true);
                     break;
                 }
 
                 case OP_EFFECT_ADD_COLOR: {
                     logd("OP_EFFECT_ADD_COLOR: "
-                            + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                            + command.itemId);
 
-                    final MediaItem mediaItem = videoEditor.getMediaItem(
-                            intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                    final MediaItem mediaItem = videoEditor.getMediaItem(command.relativeItemId);
                     if (mediaItem == null) {
                         throw new IllegalArgumentException("MediaItem not found: " +
-                                intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                                command.relativeItemId);
                     }
 
                     // Remove any existing effect
@@ -2447,29 +2694,28 @@ public class ApiService extends Service {
                     }
 
                     final Effect effect = new EffectColor(mediaItem,
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID),
-                            intent.getLongExtra(PARAM_START_TIME, -1),
-                            intent.getLongExtra(PARAM_DURATION, 0),
-                            intent.getIntExtra(PARAM_EFFECT_TYPE, -1),
-                            intent.getIntExtra(PARAM_EFFECT_PARAM, -1));
+                            command.itemId,
+                            command.startTimeMs,
+                            command.durationMs,
+                            command.effectType,
+                            command.effectParam);
                     mediaItem.addEffect(effect);
 
-                    completeRequest(intent, videoEditor, null, new MovieEffect(effect), null,
+                    completeRequest(command, videoEditor, null, new MovieEffect(effect), null,
                             false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_EFFECT_ADD_IMAGE_KEN_BURNS: {
                     logd("OP_EFFECT_ADD_IMAGE_KEN_BURNS: "
-                            + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                            + command.itemId);
 
-                    final MediaItem mediaItem = videoEditor.getMediaItem(
-                            intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                    final MediaItem mediaItem = videoEditor.getMediaItem(command.relativeItemId);
                     if (mediaItem == null) {
                         throw new IllegalArgumentException("MediaItem not found: " +
-                                intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                                command.relativeItemId);
                     }
 
                     // Remove any existing effect
@@ -2479,46 +2725,44 @@ public class ApiService extends Service {
                     }
 
                     final Effect effect = new EffectKenBurns(mediaItem,
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID),
-                            (Rect)intent.getParcelableExtra(PARAM_MEDIA_ITEM_START_RECT),
-                            (Rect)intent.getParcelableExtra(PARAM_MEDIA_ITEM_END_RECT),
-                            intent.getLongExtra(PARAM_START_TIME, 0),
-                            intent.getLongExtra(PARAM_DURATION, 0));
+                            command.itemId,
+                            command.startRect,
+                            command.endRect,
+                            command.startTimeMs,
+                            command.durationMs);
                     mediaItem.addEffect(effect);
 
-                    completeRequest(intent, videoEditor, null, new MovieEffect(effect), null,
+                    completeRequest(command, videoEditor, null, new MovieEffect(effect), null,
                             false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_EFFECT_REMOVE: {
-                    logd("OP_EFFECT_REMOVE: " + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                    logd("OP_EFFECT_REMOVE: " + command.itemId);
 
-                    final MediaItem mediaItem = videoEditor.getMediaItem(
-                            intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                    final MediaItem mediaItem = videoEditor.getMediaItem(command.relativeItemId);
                     if (mediaItem == null) {
                         throw new IllegalArgumentException("MediaItem not found: " +
-                                intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                                command.relativeItemId);
                     }
 
-                    mediaItem.removeEffect(intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                    mediaItem.removeEffect(command.itemId);
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_OVERLAY_ADD: {
-                    logd("OP_OVERLAY_ADD: " + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                    logd("OP_OVERLAY_ADD: " + command.itemId);
 
-                    final MediaItem mediaItem = videoEditor.getMediaItem(
-                            intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                    final MediaItem mediaItem = videoEditor.getMediaItem(command.relativeItemId);
                     if (mediaItem == null) {
                         throw new IllegalArgumentException("MediaItem not found: " +
-                                intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                                command.relativeItemId);
                     }
 
                     // Remove any existing overlays
@@ -2536,18 +2780,18 @@ public class ApiService extends Service {
                         scaledHeight = ((MediaImageItem)mediaItem).getScaledHeight();
                     }
 
-                    final Bundle userAttributes = intent.getBundleExtra(PARAM_ATTRIBUTES);
+                    final Bundle userAttributes = command.attributes;
 
                     final int overlayType = MovieOverlay.getType(userAttributes);
                     final String title = MovieOverlay.getTitle(userAttributes);
                     final String subTitle = MovieOverlay.getSubtitle(userAttributes);
 
                     final OverlayFrame overlay = new OverlayFrame(mediaItem,
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID),
-                            ImageUtils.buildOverlayBitmap(getApplicationContext(), null,
+                            command.itemId,
+                            OverlayBitmapCache.getInstance(this).getOverlayBitmap(
                                     overlayType, title, subTitle, scaledWidth, scaledHeight),
-                            intent.getLongExtra(PARAM_START_TIME, -1),
-                            intent.getLongExtra(PARAM_DURATION, 0));
+                            command.startTimeMs,
+                            command.durationMs);
 
                     // Set the user attributes
                     for (String name : userAttributes.keySet()) {
@@ -2560,99 +2804,92 @@ public class ApiService extends Service {
                     }
                     mediaItem.addOverlay(overlay);
 
-                    completeRequest(intent, videoEditor, null, new MovieOverlay(overlay), null,
+                    completeRequest(command, videoEditor, null, new MovieOverlay(overlay), null,
                             false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_OVERLAY_REMOVE: {
-                    logd("OP_OVERLAY_REMOVE: " + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                    logd("OP_OVERLAY_REMOVE: " + command.itemId);
 
-                    final MediaItem mediaItem = videoEditor.getMediaItem(
-                            intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                    final MediaItem mediaItem = videoEditor.getMediaItem(command.relativeItemId);
                     if (mediaItem == null) {
                         throw new IllegalArgumentException("MediaItem not found: " +
-                                intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                                command.relativeItemId);
                     }
 
-                    mediaItem.removeOverlay(intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                    mediaItem.removeOverlay(command.itemId);
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_OVERLAY_SET_START_TIME: {
                     logd("OP_OVERLAY_SET_START_TIME: "
-                            + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                            + command.itemId);
 
-                    final MediaItem mediaItem = videoEditor.getMediaItem(
-                            intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                    final MediaItem mediaItem = videoEditor.getMediaItem(command.relativeItemId);
                     if (mediaItem == null) {
                         throw new IllegalArgumentException("MediaItem not found: " +
-                                intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                                command.relativeItemId);
                     }
 
-                    final Overlay overlay = mediaItem.getOverlay(
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                    final Overlay overlay = mediaItem.getOverlay(command.itemId);
                     if (overlay == null) {
                         throw new IllegalArgumentException("Overlay not found: " +
-                                intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                                command.itemId);
                     }
 
-                    overlay.setStartTime(intent.getLongExtra(PARAM_START_TIME, 0));
+                    overlay.setStartTime(command.startTimeMs);
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_OVERLAY_SET_DURATION: {
                     logd("OP_OVERLAY_SET_DURATION: "
-                            + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                            + command.itemId);
 
-                    final MediaItem mediaItem = videoEditor.getMediaItem(
-                            intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                    final MediaItem mediaItem = videoEditor.getMediaItem(command.relativeItemId);
                     if (mediaItem == null) {
                         throw new IllegalArgumentException("MediaItem not found: " +
-                                intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                                command.relativeItemId);
                     }
 
-                    final Overlay overlay = mediaItem.getOverlay(
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                    final Overlay overlay = mediaItem.getOverlay(command.itemId);
                     if (overlay == null) {
                         throw new IllegalArgumentException("Overlay not found: " +
-                                intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                                command.itemId);
                     }
 
-                    overlay.setDuration(intent.getLongExtra(PARAM_DURATION, 0));
+                    overlay.setDuration(command.durationMs);
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_OVERLAY_SET_ATTRIBUTES: {
                     logd("OP_OVERLAY_SET_ATTRIBUTES: "
-                            + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                            + command.itemId);
 
-                    final MediaItem mediaItem = videoEditor.getMediaItem(
-                            intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                    final MediaItem mediaItem = videoEditor.getMediaItem(command.relativeItemId);
                     if (mediaItem == null) {
                         throw new IllegalArgumentException("MediaItem not found: " +
-                                intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID));
+                                command.relativeItemId);
                     }
 
-                    final Overlay overlay = mediaItem.getOverlay(
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                    final Overlay overlay = mediaItem.getOverlay(command.itemId);
                     if (overlay == null) {
                         throw new IllegalArgumentException("Overlay not found: " +
-                                intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                                command.itemId);
                     }
 
                     final int scaledWidth, scaledHeight;
@@ -2664,13 +2901,13 @@ public class ApiService extends Service {
                         scaledHeight = ((MediaImageItem)mediaItem).getScaledHeight();
                     }
 
-                    final Bundle userAttributes = intent.getBundleExtra(PARAM_ATTRIBUTES);
+                    final Bundle userAttributes = command.attributes;
                     final int overlayType = MovieOverlay.getType(userAttributes);
                     final String title = MovieOverlay.getTitle(userAttributes);
                     final String subTitle = MovieOverlay.getSubtitle(userAttributes);
 
                     ((OverlayFrame)overlay).setBitmap(
-                            ImageUtils.buildOverlayBitmap(getApplicationContext(), null,
+                            OverlayBitmapCache.getInstance(this).getOverlayBitmap(
                                     overlayType, title, subTitle, scaledWidth, scaledHeight));
 
                     for (String name : userAttributes.keySet()) {
@@ -2682,16 +2919,16 @@ public class ApiService extends Service {
                         }
                     }
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, true);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_AUDIO_TRACK_ADD: {
-                    logd("OP_AUDIO_TRACK_ADD: " + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                    logd("OP_AUDIO_TRACK_ADD: " + command.itemId);
 
-                    final Uri data = intent.getParcelableExtra(PARAM_FILENAME);
+                    final Uri data = command.uri;
                     String filename = null;
                     // Get the filename
                     Cursor cursor = null;
@@ -2712,10 +2949,10 @@ public class ApiService extends Service {
                     }
 
                     final AudioTrack audioTrack = new AudioTrack(videoEditor,
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID), filename);
+                            command.itemId, filename);
                     audioTrack.enableDucking(DUCK_THRESHOLD, DUCK_TRACK_VOLUME);
                     audioTrack.setVolume(DEFAULT_AUDIO_TRACK_VOLUME);
-                    if (intent.getBooleanExtra(PARAM_LOOP, false)) {
+                    if (command.loop) {
                         audioTrack.enableLoop();
                     } else {
                         audioTrack.disableLoop();
@@ -2723,28 +2960,28 @@ public class ApiService extends Service {
 
                     videoEditor.addAudioTrack(audioTrack);
 
-                    completeRequest(intent, videoEditor, null, new MovieAudioTrack(audioTrack),
+                    completeRequest(command, videoEditor, null, new MovieAudioTrack(audioTrack),
                             null, false);
                     // This is needed to decode the audio file into a PCM file
                     generatePreview(videoEditor, false);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_AUDIO_TRACK_REMOVE: {
                     logd("OP_AUDIO_TRACK_REMOVE: "
-                            + intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                            + command.itemId);
 
-                    videoEditor.removeAudioTrack(intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID));
+                    videoEditor.removeAudioTrack(command.itemId);
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, false);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_AUDIO_TRACK_SET_BOUNDARIES: {
-                    final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String audioTrackId = command.itemId;
                     logd("OP_AUDIO_TRACK_SET_BOUNDARIES: " + audioTrackId);
 
                     final AudioTrack audioTrack = videoEditor.getAudioTrack(audioTrackId);
@@ -2753,17 +2990,17 @@ public class ApiService extends Service {
                                 audioTrackId);
                     }
 
-                    audioTrack.setExtractBoundaries(intent.getLongExtra(PARAM_BEGIN_BOUNDARY, 0),
-                            intent.getLongExtra(PARAM_END_BOUNDARY, 0));
+                    audioTrack.setExtractBoundaries(command.beginBoundaryMs,
+                            command.endBoundaryMs);
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, false);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_AUDIO_TRACK_SET_LOOP: {
-                    final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String audioTrackId = command.itemId;
                     logd("OP_AUDIO_TRACK_SET_LOOP: " + audioTrackId);
 
                     final AudioTrack audioTrack = videoEditor.getAudioTrack(audioTrackId);
@@ -2772,20 +3009,20 @@ public class ApiService extends Service {
                                 audioTrackId);
                     }
 
-                    if (intent.getBooleanExtra(PARAM_LOOP, false)) {
+                    if (command.loop) {
                         audioTrack.enableLoop();
                     } else {
                         audioTrack.disableLoop();
                     }
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, false);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_AUDIO_TRACK_SET_DUCK: {
-                    final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String audioTrackId = command.itemId;
                     logd("OP_AUDIO_TRACK_SET_DUCK: " + audioTrackId);
 
                     final AudioTrack audioTrack = videoEditor.getAudioTrack(audioTrackId);
@@ -2794,20 +3031,20 @@ public class ApiService extends Service {
                                 audioTrackId);
                     }
 
-                    if (intent.getBooleanExtra(PARAM_DUCK, false)) {
+                    if (command.duck) {
                         audioTrack.enableDucking(DUCK_THRESHOLD, DUCK_TRACK_VOLUME);
                     } else {
                         audioTrack.disableDucking();
                     }
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, false);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_AUDIO_TRACK_SET_VOLUME: {
-                    final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String audioTrackId = command.itemId;
                     logd("OP_AUDIO_TRACK_SET_VOLUME: " + audioTrackId);
 
                     final AudioTrack audioTrack = videoEditor.getAudioTrack(audioTrackId);
@@ -2816,16 +3053,16 @@ public class ApiService extends Service {
                                 audioTrackId);
                     }
 
-                    audioTrack.setVolume(intent.getIntExtra(PARAM_VOLUME, 0));
+                    audioTrack.setVolume(command.volume);
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, false);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_AUDIO_TRACK_SET_MUTE: {
-                    final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String audioTrackId = command.itemId;
                     logd("OP_AUDIO_TRACK_SET_MUTE: " + audioTrackId);
 
                     final AudioTrack audioTrack = videoEditor.getAudioTrack(audioTrackId);
@@ -2834,16 +3071,16 @@ public class ApiService extends Service {
                                 audioTrackId);
                     }
 
-                    audioTrack.setMute(intent.getBooleanExtra(PARAM_MUTE, false));
+                    audioTrack.setMute(command.mute);
 
-                    completeRequest(intent, videoEditor, null, null, null, false);
+                    completeRequest(command, videoEditor, null, null, null, false);
                     generatePreview(videoEditor, false);
-                    completeRequest(intent);
+                    completeRequest(command);
                     break;
                 }
 
                 case OP_AUDIO_TRACK_EXTRACT_AUDIO_WAVEFORM: {
-                    final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String audioTrackId = command.itemId;
                     logd("OP_AUDIO_TRACK_EXTRACT_AUDIO_WAVEFORM: " + audioTrackId);
 
                     final AudioTrack audioTrack = videoEditor.getAudioTrack(audioTrackId);
@@ -2854,11 +3091,11 @@ public class ApiService extends Service {
 
                     final WaveformData waveformData = audioTrack.getWaveformData();
                     if (waveformData == null) {
-                        extractAudioTrackAudioWaveform(intent, videoEditor, audioTrack);
-                        completeRequest(intent, videoEditor, null, audioTrack.getWaveformData(),
+                        extractAudioTrackAudioWaveform(command, videoEditor, audioTrack);
+                        completeRequest(command, videoEditor, null, audioTrack.getWaveformData(),
                                 null, true);
                     } else {
-                        completeRequest(intent, videoEditor, null, waveformData, null, true);
+                        completeRequest(command, videoEditor, null, waveformData, null, true);
                     }
                     break;
                 }
@@ -2869,27 +3106,82 @@ public class ApiService extends Service {
             }
         } catch (Exception ex) {
             ex.printStackTrace();
-            completeRequest(intent, videoEditor, ex, null, null, true);
+            completeRequest(command, videoEditor, ex, null, null, true);
         }
     }
 
+    /**
+     * Take the queued thumbnail requests which can be decoded along with the
+     * specified request: the requests for media items of the same project
+     * with the same source file and thumbnail size.
+     *
+     * @param command The thumbnail command being processed
+     * @param videoEditor The video editor
+     * @param mediaItem The media item of the command
+     *
+     * @return The command followed by the requests taken from the queue
+     */
+    private List<ServiceCommand> takeQueuedThumbnailCommands(ServiceCommand command,
+            VideoEditor videoEditor, MediaItem mediaItem) {
+        final List<ServiceCommand> commands = new ArrayList<ServiceCommand>();
+        commands.add(command);
+        // The image items are decoded from their own generated clip
+        if (!(mediaItem instanceof MediaVideoItem)) {
+            return commands;
+        }
+
+        final MediaVideoItem videoItem = (MediaVideoItem)mediaItem;
+        final Iterator<ServiceCommand> commandQueueIterator =
+                mThumbnailThread.getCommandQueueIterator();
+        while (commandQueueIterator.hasNext()) {
+            final ServiceCommand qCommand = commandQueueIterator.next();
+            if (qCommand.op != command.op || !qCommand.projectPath.equals(command.projectPath)
+                    || qCommand.width != command.width || qCommand.height != command.height) {
+                continue;
+            }
+
+            final MediaItem qMediaItem = videoEditor.getMediaItem(qCommand.itemId);
+            if (!(qMediaItem instanceof MediaVideoItem)) {
+                continue;
+            }
+
+            final MediaVideoItem qVideoItem = (MediaVideoItem)qMediaItem;
+            if (qVideoItem.getFilename().equals(videoItem.getFilename())
+                    && TextUtils.equals(qVideoItem.getProxyFilename(),
+                            videoItem.getProxyFilename())
+                    && mThumbnailThread.cancel(qCommand)) {
+                mMetrics.record(qCommand.op, OperationMetrics.QUEUE_WAIT,
+                        System.nanoTime() - qCommand.submitTimeNs);
+                mMetrics.recordCoalesced(qCommand.op);
+                commands.add(qCommand);
+            }
+        }
+
+        if (commands.size() > 1) {
+            logd("Batched " + commands.size() + " thumbnail requests for: "
+                    + videoItem.getFilename());
+        }
+
+        return commands;
+    }
+
     /**
      * Complete the request
      *
-     * @param intent The intent
+     * @param command The command
      * @param videoEditor The video editor
      * @param exception The exception
      * @param result The result object
      * @param extraResult The extra result object
      * @param finalize true if the request should be finalized
      */
-    private void completeRequest(final Intent intent, final VideoEditor videoEditor,
+    private void completeRequest(final ServiceCommand command, final VideoEditor videoEditor,
             final Exception exception, final Object result, final Object extraResult,
             final boolean finalize) {
         mHandler.post(new Runnable() {
             @Override
             public void run() {
-                onIntentProcessed(intent, videoEditor, result, extraResult, exception, finalize);
+                onCommandProcessed(command, videoEditor, result, extraResult, exception, finalize);
             }
         });
     }
@@ -2897,22 +3189,22 @@ public class ApiService extends Service {
     /**
      * Complete the request
      *
-     * @param intent The intent
+     * @param command The command
      */
-    private void completeRequest(final Intent intent) {
+    private void completeRequest(final ServiceCommand command) {
         mHandler.post (new Runnable() {
             @Override
             public void run() {
-                finalizeRequest(intent);
-                mIntentPool.put(intent);
+                finalizeRequest(command);
+                mCommandPool.put(command);
             }
         });
     }
 
     /**
-     * Callback called after the specified intent is processed.
+     * Callback called after the specified command is processed.
      *
-     * @param intent The intent
+     * @param command The command
      * @param videoEditor The VideoEditor on which the operation was performed
      * @param result The result object
      * @param extraResult The extra result object
@@ -2920,20 +3212,21 @@ public class ApiService extends Service {
      * @param finalize true if the request should be finalized
      */
     @SuppressWarnings("unchecked")
-    public void onIntentProcessed(final Intent intent, VideoEditor videoEditor,
+    public void onCommandProcessed(final ServiceCommand command, VideoEditor videoEditor,
             Object result, Object extraResult, Exception ex, boolean finalize) {
 
-        final String projectPath = intent.getStringExtra(PARAM_PROJECT_PATH);
-        final int op = intent.getIntExtra(PARAM_OP, -1);
+        final String projectPath = command.projectPath;
+        final int op = command.op;
         switch (op) {
             case OP_VIDEO_EDITOR_LOAD_PROJECTS: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final List<VideoEditorProject> projects = (List<VideoEditorProject>)result;
+                final List<ProjectSummary> projects = (List<ProjectSummary>)result;
+                final boolean hasMore = extraResult != null && (Boolean)extraResult;
                 for (ApiServiceListener listener : mListeners) {
-                    listener.onProjectsLoaded(projects, ex);
+                    listener.onProjectsLoaded(projects, command.offset, hasMore, ex);
                 }
 
                 break;
@@ -2941,7 +3234,7 @@ public class ApiService extends Service {
 
             case OP_VIDEO_EDITOR_CREATE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 // Release the old project
@@ -2967,7 +3260,7 @@ public class ApiService extends Service {
 
             case OP_VIDEO_EDITOR_LOAD: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 if (result != null) { // A new project was created
@@ -2989,11 +3282,10 @@ public class ApiService extends Service {
 
             case OP_VIDEO_EDITOR_SET_ASPECT_RATIO: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final int aspectRatio = intent.getIntExtra(PARAM_ASPECT_RATIO,
-                        MediaProperties.ASPECT_RATIO_UNDEFINED);
+                final int aspectRatio = command.aspectRatio;
                 if (ex == null) {
                     final VideoEditorProject videoProject = getProject(projectPath);
                     if (videoProject != null) {
@@ -3010,10 +3302,10 @@ public class ApiService extends Service {
 
             case OP_VIDEO_EDITOR_APPLY_THEME: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String theme = intent.getStringExtra(PARAM_THEME);
+                final String theme = command.theme;
                 if (ex == null) {
                     final VideoEditorProject videoProject = getProject(projectPath);
                     if (videoProject != null) {
@@ -3031,11 +3323,10 @@ public class ApiService extends Service {
             }
 
             case OP_VIDEO_EDITOR_GENERATE_PREVIEW_PROGRESS: {
-                final String className = intent.getStringExtra(PARAM_ATTRIBUTES);
-                final String itemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
-                final int action = intent.getIntExtra(PARAM_ACTION,
-                        VideoEditor.MediaProcessingProgressListener.ACTION_DECODE);
-                final int progress = intent.getIntExtra(PARAM_PROGRESS_VALUE, 0);
+                final String className = command.itemClassName;
+                final String itemId = command.itemId;
+                final int action = command.action;
+                final int progress = command.progress;
 
                 for (ApiServiceListener listener : mListeners) {
                     listener.onVideoEditorGeneratePreviewProgress(projectPath, className, itemId,
@@ -3047,19 +3338,19 @@ public class ApiService extends Service {
 
             case OP_VIDEO_EDITOR_EXPORT: {
                 // The finalizeRequest() call and listener callbacks are done in
-                // OP_VIDEO_EDITOR_EXPORT_STATUS intent handling (where we are
-                // called originalIntent).
+                // OP_VIDEO_EDITOR_EXPORT_STATUS command handling (where we are
+                // called originalCommand).
                 break;
             }
 
             case OP_VIDEO_EDITOR_CANCEL_EXPORT: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 for (ApiServiceListener listener : mListeners) {
                     listener.onVideoEditorExportCanceled(projectPath,
-                            intent.getStringExtra(PARAM_FILENAME));
+                            command.filename);
                 }
                 break;
             }
@@ -3067,21 +3358,20 @@ public class ApiService extends Service {
             case OP_VIDEO_EDITOR_EXPORT_STATUS: {
                 // This operation is for the service internal use only
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String filename = intent.getStringExtra(PARAM_FILENAME);
-                if (intent.hasExtra(PARAM_EXCEPTION)) { // Complete
-                    final Intent originalIntent = (Intent)intent.getParcelableExtra(PARAM_INTENT);
-                    finalizeRequest(originalIntent);
-                    mIntentPool.put(originalIntent);
+                final String filename = command.filename;
+                if (command.complete) {
+                    final ServiceCommand originalCommand = command.original;
+                    finalizeRequest(originalCommand);
+                    mCommandPool.put(originalCommand);
 
-                    final Exception exception =
-                        (Exception)intent.getSerializableExtra(PARAM_EXCEPTION);
+                    final Exception exception = command.exception;
                     final VideoEditorProject videoProject = getProject(projectPath);
-                    final boolean cancelled = intent.getBooleanExtra(PARAM_CANCELLED, false);
+                    final boolean cancelled = command.cancelled;
                     if (!cancelled && videoProject != null && exception == null) {
-                        final Uri uri = (Uri)intent.getParcelableExtra(PARAM_MOVIE_URI);
+                        final Uri uri = command.movieUri;
                         videoProject.addExportedMovieUri(uri);
                     }
 
@@ -3092,7 +3382,7 @@ public class ApiService extends Service {
                 } else { // Progress
                     for (ApiServiceListener listener : mListeners) {
                         listener.onVideoEditorExportProgress(projectPath, filename,
-                                intent.getIntExtra(PARAM_PROGRESS_VALUE, -1));
+                                command.progress);
                     }
 
                     // The original request is still pending
@@ -3102,7 +3392,7 @@ public class ApiService extends Service {
 
             case OP_VIDEO_EDITOR_SAVE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 for (ApiServiceListener listener : mListeners) {
@@ -3113,7 +3403,7 @@ public class ApiService extends Service {
 
             case OP_VIDEO_EDITOR_RELEASE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 final VideoEditorProject videoProject = getProject(projectPath);
@@ -3133,7 +3423,7 @@ public class ApiService extends Service {
 
             case OP_VIDEO_EDITOR_DELETE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 final VideoEditorProject videoProject = getProject(projectPath);
@@ -3153,11 +3443,10 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_ADD_VIDEO_URI: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String afterMediaItemId =
-                    intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID);
+                final String afterMediaItemId = command.relativeItemId;
 
                 final MovieMediaItem movieMediaItem = (MovieMediaItem)result;
                 final VideoEditorProject videoProject = getProject(projectPath);
@@ -3169,12 +3458,15 @@ public class ApiService extends Service {
 
                     if (ex == null) {
                         videoProject.insertMediaItem(movieMediaItem, afterMediaItemId);
+                        if (videoProject.isProxyMode() && movieMediaItem.isProxySupported()) {
+                            generateMediaItemProxy(this, projectPath, movieMediaItem.getId());
+                        }
                     }
                 }
 
                 for (ApiServiceListener listener : mListeners) {
                     listener.onMediaItemAdded(projectPath,
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID), movieMediaItem,
+                            command.itemId, movieMediaItem,
                             afterMediaItemId, MediaVideoItem.class, (Integer)extraResult, ex);
                 }
 
@@ -3183,11 +3475,10 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_ADD_IMAGE_URI: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String afterMediaItemId =
-                    intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID);
+                final String afterMediaItemId = command.relativeItemId;
 
                 final MovieMediaItem movieMediaItem = (MovieMediaItem)result;
                 final VideoEditorProject videoProject = getProject(projectPath);
@@ -3204,7 +3495,7 @@ public class ApiService extends Service {
 
                 for (ApiServiceListener listener : mListeners) {
                     listener.onMediaItemAdded(projectPath,
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID), movieMediaItem,
+                            command.itemId, movieMediaItem,
                             afterMediaItemId, MediaImageItem.class, (Integer)extraResult, ex);
                 }
 
@@ -3214,10 +3505,10 @@ public class ApiService extends Service {
             case OP_MEDIA_ITEM_LOAD: {
                 // Note that this message is handled only if the download
                 // cannot start.
-                final Uri data = (Uri)intent.getParcelableExtra(PARAM_FILENAME);
-                final String mimeType = intent.getStringExtra(PARAM_ATTRIBUTES);
+                final Uri data = command.uri;
+                final String mimeType = command.mimeType;
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 for (ApiServiceListener listener : mListeners) {
@@ -3228,17 +3519,17 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_LOAD_STATUS: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final Intent originalIntent = (Intent)intent.getParcelableExtra(PARAM_INTENT);
-                final Uri data = (Uri)originalIntent.getParcelableExtra(PARAM_FILENAME);
-                final String mimeType = originalIntent.getStringExtra(PARAM_ATTRIBUTES);
+                final ServiceCommand originalCommand = command.original;
+                final Uri data = originalCommand.uri;
+                final String mimeType = originalCommand.mimeType;
 
-                finalizeRequest(originalIntent);
-                mIntentPool.put(originalIntent);
+                finalizeRequest(originalCommand);
+                mCommandPool.put(originalCommand);
 
-                final String filename = intent.getStringExtra(PARAM_FILENAME);
+                final String filename = command.filename;
 
                 if (ex == null && filename != null) {
                     final VideoEditorProject videoProject = getProject(projectPath);
@@ -3253,7 +3544,7 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_MOVE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 if (ex == null) {
@@ -3265,8 +3556,8 @@ public class ApiService extends Service {
 
                 for (ApiServiceListener listener : mListeners) {
                     listener.onMediaItemMoved(projectPath,
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID),
-                            intent.getStringExtra(PARAM_RELATIVE_STORYBOARD_ITEM_ID), ex);
+                            command.itemId,
+                            command.relativeItemId, ex);
                 }
 
                 break;
@@ -3274,10 +3565,10 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_REMOVE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                final String mediaItemId = command.itemId;
                 final MovieTransition transition = (MovieTransition)result;
                 if (ex == null) {
                     final VideoEditorProject videoProject = getProject(projectPath);
@@ -3295,12 +3586,11 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_SET_RENDERING_MODE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
-                final int renderingMode = intent.getIntExtra(PARAM_MEDIA_ITEM_RENDERING_MODE,
-                        MediaItem.RENDERING_MODE_BLACK_BORDER);
+                final String mediaItemId = command.itemId;
+                final int renderingMode = command.renderingMode;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
@@ -3325,10 +3615,10 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_SET_DURATION: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                final String mediaItemId = command.itemId;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
@@ -3345,7 +3635,7 @@ public class ApiService extends Service {
 
                 for (ApiServiceListener listener : mListeners) {
                     listener.onMediaItemDurationSet(projectPath, mediaItemId,
-                            intent.getLongExtra(PARAM_DURATION, 0), ex);
+                            command.durationMs, ex);
                 }
 
                 break;
@@ -3353,10 +3643,10 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_SET_BOUNDARIES: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                final String mediaItemId = command.itemId;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
@@ -3376,8 +3666,8 @@ public class ApiService extends Service {
 
                 for (ApiServiceListener listener : mListeners) {
                     listener.onMediaItemBoundariesSet(projectPath, mediaItemId,
-                            intent.getLongExtra(PARAM_BEGIN_BOUNDARY, 0),
-                            intent.getLongExtra(PARAM_END_BOUNDARY, 0), ex);
+                            command.beginBoundaryMs,
+                            command.endBoundaryMs, ex);
                 }
 
                 break;
@@ -3385,7 +3675,7 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_GET_THUMBNAILS: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                     break;
                 }
 
@@ -3394,8 +3684,8 @@ public class ApiService extends Service {
                 boolean used = false;
                 for (ApiServiceListener listener : mListeners) {
                     used |= listener.onMediaItemThumbnail(projectPath,
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID),
-                            bitmap, index, intent.getIntExtra(PARAM_TOKEN, 0),
+                            command.itemId,
+                            bitmap, index, command.token,
                             ex);
                 }
 
@@ -3410,17 +3700,17 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_SET_VOLUME: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
-                    final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String mediaItemId = command.itemId;
                     final MovieMediaItem mediaItem = videoProject.getMediaItem(mediaItemId);
                     if (mediaItem != null) {
                         videoProject.setClean(false);
                         if (ex == null) {
-                            mediaItem.setVolume(intent.getIntExtra(PARAM_VOLUME, 0));
+                            mediaItem.setVolume(command.volume);
                         } else {
                             mediaItem.setAppVolume(mediaItem.getVolume());
                         }
@@ -3432,17 +3722,17 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_SET_MUTE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
-                    final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String mediaItemId = command.itemId;
                     final MovieMediaItem mediaItem = videoProject.getMediaItem(mediaItemId);
                     if (mediaItem != null) {
                         videoProject.setClean(false);
                         if (ex == null) {
-                            mediaItem.setMute(intent.getBooleanExtra(PARAM_MUTE, false));
+                            mediaItem.setMute(command.mute);
                         } else {
                             mediaItem.setAppMute(mediaItem.isMuted());
                         }
@@ -3454,11 +3744,11 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_EXTRACT_AUDIO_WAVEFORM_STATUS: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
-                final int progress = intent.getIntExtra(PARAM_PROGRESS_VALUE, 0);
+                final String mediaItemId = command.itemId;
+                final int progress = command.progress;
 
                 for (ApiServiceListener listener : mListeners) {
                     listener.onMediaItemExtractAudioWaveformProgress(projectPath, mediaItemId,
@@ -3470,10 +3760,10 @@ public class ApiService extends Service {
 
             case OP_MEDIA_ITEM_EXTRACT_AUDIO_WAVEFORM: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                final String mediaItemId = command.itemId;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (ex == null && videoProject != null) {
@@ -3493,16 +3783,61 @@ public class ApiService extends Service {
                 break;
             }
 
+            case OP_MEDIA_ITEM_GENERATE_PROXY_STATUS: {
+                if (finalize) {
+                    finalizeRequest(command);
+                }
+
+                for (ApiServiceListener listener : mListeners) {
+                    listener.onMediaItemProxyProgress(projectPath, command.itemId,
+                            command.progress);
+                }
+
+                break;
+            }
+
+            case OP_MEDIA_ITEM_GENERATE_PROXY:
+            case OP_MEDIA_ITEM_SET_PROXY: {
+                // A generated proxy completes the original request when the
+                // video thread has put it to use
+                if (finalize) {
+                    finalizeRequest(command);
+                }
+
+                final ServiceCommand originalCommand = command.original;
+                if (originalCommand != null) {
+                    finalizeRequest(originalCommand);
+                    mCommandPool.put(originalCommand);
+                }
+
+                final String mediaItemId = command.itemId;
+                final VideoEditorProject videoProject = getProject(projectPath);
+                if (ex == null && videoProject != null) {
+                    final MovieMediaItem mediaItem = videoProject.getMediaItem(mediaItemId);
+                    if (mediaItem != null) {
+                        if (op == OP_MEDIA_ITEM_SET_PROXY) {
+                            videoProject.setClean(false);
+                        }
+                        mediaItem.setProxyFilename((String)result);
+                    }
+                }
+
+                for (ApiServiceListener listener : mListeners) {
+                    listener.onMediaItemProxyComplete(projectPath, mediaItemId, ex);
+                }
+
+                break;
+            }
+
             case OP_TRANSITION_INSERT_ALPHA:
             case OP_TRANSITION_INSERT_CROSSFADE:
             case OP_TRANSITION_INSERT_FADE_BLACK:
             case OP_TRANSITION_INSERT_SLIDING: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String afterMediaItemId = intent.getStringExtra(
-                        PARAM_RELATIVE_STORYBOARD_ITEM_ID);
+                final String afterMediaItemId = command.relativeItemId;
 
                 final MovieTransition movieTransition;
                 final VideoEditorProject videoProject = getProject(projectPath);
@@ -3529,10 +3864,10 @@ public class ApiService extends Service {
 
             case OP_TRANSITION_REMOVE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String transitionId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                final String transitionId = command.itemId;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
@@ -3550,11 +3885,11 @@ public class ApiService extends Service {
 
             case OP_TRANSITION_SET_DURATION: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String transitionId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
-                final long durationMs = intent.getLongExtra(PARAM_DURATION, 0);
+                final String transitionId = command.itemId;
+                final long durationMs = command.durationMs;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
@@ -3578,14 +3913,14 @@ public class ApiService extends Service {
 
             case OP_TRANSITION_GET_THUMBNAIL: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 final Bitmap[] bitmaps = (Bitmap[])result;
                 boolean used = false;
                 for (ApiServiceListener listener : mListeners) {
                     used |= listener.onTransitionThumbnails(projectPath,
-                            intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID),
+                            command.itemId,
                             bitmaps, ex);
                 }
 
@@ -3604,11 +3939,10 @@ public class ApiService extends Service {
 
             case OP_OVERLAY_ADD: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(
-                        PARAM_RELATIVE_STORYBOARD_ITEM_ID);
+                final String mediaItemId = command.relativeItemId;
 
                 final MovieOverlay movieOverlay = (MovieOverlay)result;
                 final VideoEditorProject videoProject = getProject(projectPath);
@@ -3627,12 +3961,11 @@ public class ApiService extends Service {
 
             case OP_OVERLAY_REMOVE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(
-                        PARAM_RELATIVE_STORYBOARD_ITEM_ID);
-                final String overlayId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                final String mediaItemId = command.relativeItemId;
+                final String overlayId = command.itemId;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
@@ -3650,13 +3983,12 @@ public class ApiService extends Service {
 
             case OP_OVERLAY_SET_START_TIME: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(
-                        PARAM_RELATIVE_STORYBOARD_ITEM_ID);
-                final String overlayId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
-                final long startTimeMs = intent.getLongExtra(PARAM_START_TIME, 0);
+                final String mediaItemId = command.relativeItemId;
+                final String overlayId = command.itemId;
+                final long startTimeMs = command.startTimeMs;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
@@ -3681,13 +4013,12 @@ public class ApiService extends Service {
 
             case OP_OVERLAY_SET_DURATION: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(
-                        PARAM_RELATIVE_STORYBOARD_ITEM_ID);
-                final String overlayId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
-                final long durationMs = intent.getLongExtra(PARAM_DURATION, 0);
+                final String mediaItemId = command.relativeItemId;
+                final String overlayId = command.itemId;
+                final long durationMs = command.durationMs;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
@@ -3712,13 +4043,12 @@ public class ApiService extends Service {
 
             case OP_OVERLAY_SET_ATTRIBUTES: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(
-                        PARAM_RELATIVE_STORYBOARD_ITEM_ID);
-                final String overlayId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
-                final Bundle userAttributes = intent.getBundleExtra(PARAM_ATTRIBUTES);
+                final String mediaItemId = command.relativeItemId;
+                final String overlayId = command.itemId;
+                final Bundle userAttributes = command.attributes;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
@@ -3743,11 +4073,10 @@ public class ApiService extends Service {
             case OP_EFFECT_ADD_COLOR:
             case OP_EFFECT_ADD_IMAGE_KEN_BURNS:{
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(
-                        PARAM_RELATIVE_STORYBOARD_ITEM_ID);
+                final String mediaItemId = command.relativeItemId;
 
                 final MovieEffect movieEffect = (MovieEffect)result;
                 final VideoEditorProject videoProject = getProject(projectPath);
@@ -3766,12 +4095,11 @@ public class ApiService extends Service {
 
             case OP_EFFECT_REMOVE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String mediaItemId = intent.getStringExtra(
-                        PARAM_RELATIVE_STORYBOARD_ITEM_ID);
-                final String effectId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                final String mediaItemId = command.relativeItemId;
+                final String effectId = command.itemId;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
@@ -3789,7 +4117,7 @@ public class ApiService extends Service {
 
             case OP_AUDIO_TRACK_ADD: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 final MovieAudioTrack movieAudioTrack = (MovieAudioTrack)result;
@@ -3809,10 +4137,10 @@ public class ApiService extends Service {
 
             case OP_AUDIO_TRACK_REMOVE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                final String audioTrackId = command.itemId;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
@@ -3830,12 +4158,12 @@ public class ApiService extends Service {
 
             case OP_AUDIO_TRACK_SET_BOUNDARIES: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
-                final long beginBoundary = intent.getLongExtra(PARAM_BEGIN_BOUNDARY, 0);
-                final long endBoundary = intent.getLongExtra(PARAM_END_BOUNDARY, 0);
+                final String audioTrackId = command.itemId;
+                final long beginBoundary = command.beginBoundaryMs;
+                final long endBoundary = command.endBoundaryMs;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
@@ -3859,17 +4187,17 @@ public class ApiService extends Service {
 
             case OP_AUDIO_TRACK_SET_LOOP: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
-                    final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String audioTrackId = command.itemId;
                     final MovieAudioTrack audioTrack = videoProject.getAudioTrack(audioTrackId);
                     if (audioTrack != null) {
                         videoProject.setClean(false);
                         if (ex == null) {
-                            audioTrack.enableLoop(intent.getBooleanExtra(PARAM_LOOP, false));
+                            audioTrack.enableLoop(command.loop);
                         } else {
                             audioTrack.enableAppLoop(audioTrack.isLooping());
                         }
@@ -3881,17 +4209,17 @@ public class ApiService extends Service {
 
             case OP_AUDIO_TRACK_SET_DUCK: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
-                    final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String audioTrackId = command.itemId;
                     final MovieAudioTrack audioTrack = videoProject.getAudioTrack(audioTrackId);
                     if (audioTrack != null) {
                         videoProject.setClean(false);
                         if (ex == null) {
-                            audioTrack.enableDucking(intent.getBooleanExtra(PARAM_DUCK, false));
+                            audioTrack.enableDucking(command.duck);
                         } else {
                             audioTrack.enableAppDucking(audioTrack.isDuckingEnabled());
                         }
@@ -3903,17 +4231,17 @@ public class ApiService extends Service {
 
             case OP_AUDIO_TRACK_SET_VOLUME: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
-                    final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String audioTrackId = command.itemId;
                     final MovieAudioTrack audioTrack = videoProject.getAudioTrack(audioTrackId);
                     if (audioTrack != null) {
                         videoProject.setClean(false);
                         if (ex == null) {
-                            audioTrack.setVolume(intent.getIntExtra(PARAM_VOLUME, 0));
+                            audioTrack.setVolume(command.volume);
                         } else {
                             audioTrack.setAppVolume(audioTrack.getVolume());
                         }
@@ -3925,17 +4253,17 @@ public class ApiService extends Service {
 
             case OP_AUDIO_TRACK_SET_MUTE: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (videoProject != null) {
-                    final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                    final String audioTrackId = command.itemId;
                     final MovieAudioTrack audioTrack = videoProject.getAudioTrack(audioTrackId);
                     if (audioTrack != null) {
                         videoProject.setClean(false);
                         if (ex == null) {
-                            audioTrack.setMute(intent.getBooleanExtra(PARAM_MUTE, false));
+                            audioTrack.setMute(command.mute);
                         } else {
                             audioTrack.setAppMute(audioTrack.isMuted());
                         }
@@ -3947,11 +4275,11 @@ public class ApiService extends Service {
 
             case OP_AUDIO_TRACK_EXTRACT_AUDIO_WAVEFORM_STATUS: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
-                final int progress = intent.getIntExtra(PARAM_PROGRESS_VALUE, 0);
+                final String audioTrackId = command.itemId;
+                final int progress = command.progress;
 
                 for (ApiServiceListener listener : mListeners) {
                     listener.onAudioTrackExtractAudioWaveformProgress(projectPath, audioTrackId,
@@ -3963,10 +4291,10 @@ public class ApiService extends Service {
 
             case OP_AUDIO_TRACK_EXTRACT_AUDIO_WAVEFORM: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
 
-                final String audioTrackId = intent.getStringExtra(PARAM_STORYBOARD_ITEM_ID);
+                final String audioTrackId = command.itemId;
 
                 final VideoEditorProject videoProject = getProject(projectPath);
                 if (ex == null && videoProject != null) {
@@ -3990,14 +4318,14 @@ public class ApiService extends Service {
 
             default: {
                 if (finalize) {
-                    finalizeRequest(intent);
+                    finalizeRequest(command);
                 }
                 break;
             }
         }
 
         if (finalize) {
-            mIntentPool.put(intent);
+            mCommandPool.put(command);
         }
     }
 
@@ -4005,12 +4333,12 @@ public class ApiService extends Service {
      * Finalizes a request. Calls the listeners that are interested in project status
      * change and stops this service if there are no more pending intents.
      *
-     * @param intent The intent that just completed
+     * @param command The command that just completed
      */
-    private void finalizeRequest(Intent intent) {
-        mPendingIntents.remove(intent.getStringExtra(PARAM_REQUEST_ID));
+    private void finalizeRequest(ServiceCommand command) {
+        mPendingCommands.remove(command.requestId);
 
-        final String projectPath = intent.getStringExtra(PARAM_PROJECT_PATH);
+        final String projectPath = command.projectPath;
         if (projectPath != null) {
             final boolean projectEdited = isProjectBeingEdited(projectPath);
             if (projectEdited == false) {
@@ -4020,12 +4348,12 @@ public class ApiService extends Service {
             }
         }
 
-        if (mPendingIntents.size() == 0) {
+        if (mPendingCommands.size() == 0) {
             // Cancel the current timer if any. Extend the timeout by 5000 ms.
             mHandler.removeCallbacks(mStopRunnable);
 
             // Start a timer which will stop the service if the queue of
-            // pending intent will be empty at that time.
+            // pending command will be empty at that time.
             // This prevents the service from starting & stopping too often.
             mHandler.postDelayed(mStopRunnable, 5000);
             logd("completeRequest: Stopping service in 5000 ms");
@@ -4127,6 +4455,7 @@ public class ApiService extends Service {
      * @param updatePreviewFrame true to show preview frame when done
      */
     private void generatePreview(VideoEditor videoEditor, boolean updatePreviewFrame) {
+        final long startNs = System.nanoTime();
         try {
             videoEditor.generatePreview(mGeneratePreviewListener);
             if (mGeneratePreviewListener != null) {
@@ -4137,6 +4466,13 @@ public class ApiService extends Service {
             }
         } catch (Exception ex) {
             ex.printStackTrace();
+        } finally {
+            // Account the preview to the operation being processed
+            final Thread thread = Thread.currentThread();
+            if (thread instanceof CommandProcessor) {
+                mMetrics.record(((CommandProcessor)thread).mCurrentOp, OperationMetrics.PREVIEW,
+                        System.nanoTime() - startNs);
+            }
         }
     }
 
@@ -4144,24 +4480,23 @@ public class ApiService extends Service {
      * Exports a movie in a distinct worker thread.
      *
      * @param videoEditor The video editor
-     * @param intent The intent
+     * @param command The command
      */
-    private void exportMovie(final VideoEditor videoEditor, final Intent intent) {
+    private void exportMovie(final VideoEditor videoEditor, final ServiceCommand command) {
         mExportCancelled = false;
         new Thread() {
             @Override
             public void run() {
-                final String filename = intent.getStringExtra(PARAM_FILENAME);
-                final int height = intent.getIntExtra(PARAM_HEIGHT, -1);
-                final int bitrate = intent.getIntExtra(PARAM_BITRATE, -1);
-
-                // Create the export status Intent
-                final Intent statusIntent = mIntentPool.get();
-                statusIntent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_EXPORT_STATUS);
-                statusIntent.putExtra(PARAM_PROJECT_PATH, intent.getStringExtra(
-                        PARAM_PROJECT_PATH));
-                statusIntent.putExtra(PARAM_FILENAME, filename);
-                statusIntent.putExtra(PARAM_INTENT, intent);
+                final String filename = command.filename;
+                final int height = command.height;
+                final int bitrate = command.bitrate;
+
+                // Create the export status command
+                final ServiceCommand statusCommand = mCommandPool.get();
+                statusCommand.op = OP_VIDEO_EDITOR_EXPORT_STATUS;
+                statusCommand.projectPath = command.projectPath;
+                statusCommand.filename = filename;
+                statusCommand.original = command;
                 Exception resultException = null;
 
                 try {
@@ -4169,22 +4504,21 @@ public class ApiService extends Service {
                         @Override
                         public void onProgress(VideoEditor videoEditor, String filename,
                                 int progress) {
-                            final Intent progressIntent = mIntentPool.get();
-                            progressIntent.putExtra(PARAM_OP, OP_VIDEO_EDITOR_EXPORT_STATUS);
-                            progressIntent.putExtra(PARAM_PROJECT_PATH, intent.getStringExtra(
-                                    PARAM_PROJECT_PATH));
-                            progressIntent.putExtra(PARAM_FILENAME, filename);
-                            progressIntent.putExtra(PARAM_INTENT, intent);
-                            progressIntent.putExtra(PARAM_PROGRESS_VALUE, progress);
-                            mVideoThread.submit(progressIntent);
+                            final ServiceCommand progressCommand = mCommandPool.get();
+                            progressCommand.op = OP_VIDEO_EDITOR_EXPORT_STATUS;
+                            progressCommand.projectPath = command.projectPath;
+                            progressCommand.filename = filename;
+                            progressCommand.original = command;
+                            progressCommand.progress = progress;
+                            mVideoThread.submit(progressCommand);
                             logv("Export progress: " + progress + " for: " + filename);
                         }
                     });
 
-                    statusIntent.putExtra(PARAM_CANCELLED, mExportCancelled);
+                    statusCommand.cancelled = mExportCancelled;
                     if (!mExportCancelled) {
                         if (new File(filename).exists()) {
-                            statusIntent.putExtra(PARAM_MOVIE_URI, exportToGallery(filename));
+                            statusCommand.movieUri = exportToGallery(filename);
                         } else {
                             resultException = new IllegalStateException("Export file does not exist: " + filename);
                         }
@@ -4199,8 +4533,9 @@ public class ApiService extends Service {
                 }
 
                 // Complete the request
-                statusIntent.putExtra(PARAM_EXCEPTION, resultException);
-                mVideoThread.submit(statusIntent);
+                statusCommand.exception = resultException;
+                statusCommand.complete = true;
+                mVideoThread.submit(statusCommand);
             }
         }.start();
     }
@@ -4208,25 +4543,50 @@ public class ApiService extends Service {
     /**
      * Extract the audio waveform of a media item
      *
-     * @param intent The original Intent
+     * @param command The original command
      * @param videoEditor The video editor
      * @param mediaItem The media item
      */
-    private void extractMediaItemAudioWaveform(final Intent intent, final VideoEditor videoEditor,
+    private void extractMediaItemAudioWaveform(final ServiceCommand command, final VideoEditor videoEditor,
             final MediaVideoItem mediaItem) throws IOException {
         mediaItem.extractAudioWaveform(
             new ExtractAudioWaveformProgressListener() {
             @Override
             public void onProgress(int progress) {
-                final Intent progressIntent = mIntentPool.get();
-                progressIntent.putExtra(PARAM_OP, OP_MEDIA_ITEM_EXTRACT_AUDIO_WAVEFORM_STATUS);
-                progressIntent.putExtra(PARAM_PROJECT_PATH,
-                        intent.getStringExtra(PARAM_PROJECT_PATH));
-                progressIntent.putExtra(PARAM_INTENT, intent);
-                progressIntent.putExtra(PARAM_STORYBOARD_ITEM_ID, mediaItem.getId());
-                progressIntent.putExtra(PARAM_PROGRESS_VALUE, progress);
-
-                completeRequest(progressIntent, videoEditor, null, null, null, true);
+                final ServiceCommand progressCommand = mCommandPool.get();
+                progressCommand.op = OP_MEDIA_ITEM_EXTRACT_AUDIO_WAVEFORM_STATUS;
+                progressCommand.projectPath = command.projectPath;
+                progressCommand.original = command;
+                progressCommand.itemId = mediaItem.getId();
+                progressCommand.progress = progress;
+
+                completeRequest(progressCommand, videoEditor, null, null, null, true);
+            }
+        });
+    }
+
+    /**
+     * Encode the proxy of a media item
+     *
+     * @param command The original command
+     * @param videoEditor The video editor
+     * @param mediaItem The media item
+     *
+     * @return The name of the proxy file
+     */
+    private String encodeMediaItemProxy(final ServiceCommand command,
+            final VideoEditor videoEditor, final MediaVideoItem mediaItem) {
+        return mediaItem.generateProxy(new MediaProcessingProgressListener() {
+            @Override
+            public void onProgress(Object item, int action, int progress) {
+                final ServiceCommand progressCommand = mCommandPool.get();
+                progressCommand.op = OP_MEDIA_ITEM_GENERATE_PROXY_STATUS;
+                progressCommand.projectPath = command.projectPath;
+                progressCommand.original = command;
+                progressCommand.itemId = mediaItem.getId();
+                progressCommand.progress = progress;
+
+                completeRequest(progressCommand, videoEditor, null, null, null, true);
             }
         });
     }
@@ -4234,26 +4594,24 @@ public class ApiService extends Service {
     /**
      * Extract the audio waveform of an AudioTrack
      *
-     * @param intent The original Intent
+     * @param command The original command
      * @param videoEditor The video editor
      * @param audioTrack The audio track
      */
-    private void extractAudioTrackAudioWaveform(final Intent intent, final VideoEditor videoEditor,
+    private void extractAudioTrackAudioWaveform(final ServiceCommand command, final VideoEditor videoEditor,
             final AudioTrack audioTrack) throws IOException {
         audioTrack.extractAudioWaveform(
             new ExtractAudioWaveformProgressListener() {
             @Override
             public void onProgress(int progress) {
-                final Intent progressIntent = mIntentPool.get();
-                progressIntent.putExtra(PARAM_OP,
-                        OP_AUDIO_TRACK_EXTRACT_AUDIO_WAVEFORM_STATUS);
-                progressIntent.putExtra(PARAM_PROJECT_PATH,
-                        intent.getStringExtra(PARAM_PROJECT_PATH));
-                progressIntent.putExtra(PARAM_INTENT, intent);
-                progressIntent.putExtra(PARAM_STORYBOARD_ITEM_ID, audioTrack.getId());
-                progressIntent.putExtra(PARAM_PROGRESS_VALUE, progress);
-
-                completeRequest(progressIntent, videoEditor, null, null, null, true);
+                final ServiceCommand progressCommand = mCommandPool.get();
+                progressCommand.op = OP_AUDIO_TRACK_EXTRACT_AUDIO_WAVEFORM_STATUS;
+                progressCommand.projectPath = command.projectPath;
+                progressCommand.original = command;
+                progressCommand.itemId = audioTrack.getId();
+                progressCommand.progress = progress;
+
+                completeRequest(progressCommand, videoEditor, null, null, null, true);
             }
         });
     }
@@ -4272,15 +4630,11 @@ public class ApiService extends Service {
                 return mediaItems.get(0);
             }
         } else {
-            final int mediaItemCount = mediaItems.size();
-            for (int i = 0; i < mediaItemCount; i++) {
-                MediaItem mi = mediaItems.get(i);
-                if (mi.getId().equals(mediaItemId)) {
-                    if (i < mediaItemCount - 1) {
-                        return mediaItems.get(i + 1);
-                    } else {
-                        break;
-                    }
+            final MediaItem mediaItem = videoEditor.getMediaItem(mediaItemId);
+            if (mediaItem != null) {
+                final int index = mediaItems.indexOf(mediaItem);
+                if (index >= 0 && index < mediaItems.size() - 1) {
+                    return mediaItems.get(index + 1);
                 }
             }
         }
@@ -4386,7 +4740,7 @@ public class ApiService extends Service {
             }
 
             final Overlay overlay = new OverlayFrame(mediaItem, generateId(),
-                    ImageUtils.buildOverlayBitmap(getApplicationContext(), null,
+                    OverlayBitmapCache.getInstance(this).getOverlayBitmap(
                             movieOverlay.getType(), movieOverlay.getTitle(),
                             movieOverlay.getSubtitle(), scaledWidth, scaledHeight),
                             movieOverlay.getStartTime(), movieOverlay.getDuration());
@@ -4519,7 +4873,7 @@ public class ApiService extends Service {
                 }
 
                 final Overlay overlay = new OverlayFrame(mediaItem, generateId(),
-                        ImageUtils.buildOverlayBitmap(getApplicationContext(), null,
+                        OverlayBitmapCache.getInstance(this).getOverlayBitmap(
                                 movieOverlay.getType(), movieOverlay.getTitle(),
                                 movieOverlay.getSubtitle(), scaledWidth, scaledHeight),
                         movieOverlay.getStartTime(),
@@ -4647,51 +5001,6 @@ public class ApiService extends Service {
         applyThemeToMediaItem(videoEditor, themeId, movedMediaItem);
     }
 
-    /**
-     * Copy the media items
-     *
-     * @param mediaItems The media items
-     *
-     * @return The list of media items
-     */
-    private List<MovieMediaItem> copyMediaItems(List<MediaItem> mediaItems) {
-        final List<MovieMediaItem> movieMediaItems
-            = new ArrayList<MovieMediaItem>(mediaItems.size());
-        MovieMediaItem prevMediaItem = null;
-        for (MediaItem mediaItem : mediaItems) {
-            final MovieTransition prevTransition;
-            if (prevMediaItem != null) {
-                prevTransition = prevMediaItem.getEndTransition();
-            } else if (mediaItem.getBeginTransition() != null) {
-                prevTransition = new MovieTransition(mediaItem.getBeginTransition());
-            } else {
-                prevTransition = null;
-            }
-
-            final MovieMediaItem movieMediaItem = new MovieMediaItem(mediaItem, prevTransition);
-            movieMediaItems.add(movieMediaItem);
-            prevMediaItem = movieMediaItem;
-        }
-
-        return movieMediaItems;
-    }
-
-    /**
-     * Copy the audio tracks
-     *
-     * @param audioTracks The audio tracks
-     *
-     * @return The list of audio tracks
-     */
-    private List<MovieAudioTrack> copyAudioTracks(List<AudioTrack> audioTracks) {
-        final List<MovieAudioTrack> movieAudioTracks
-            = new ArrayList<MovieAudioTrack>(audioTracks.size());
-        for (AudioTrack audioTrack : audioTracks) {
-            movieAudioTracks.add(new MovieAudioTrack(audioTrack));
-        }
-        return movieAudioTracks;
-    }
-
     private static void logd(String message) {
         if (Log.isLoggable(TAG, Log.DEBUG)) {
             Log.d(TAG, message);
@@ -4705,21 +5014,32 @@ public class ApiService extends Service {
     }
 
     /**
-     * Worker thread that processes intents and maintains its own intent queue.
+     * Worker thread that processes commands and maintains its own command queue.
      */
-    private class IntentProcessor extends Thread {
-        private final BlockingQueue<Intent> mIntentQueue;
-
-        public IntentProcessor(String threadName) {
-            super("IntentProcessor-" + threadName);
-            mIntentQueue = new LinkedBlockingQueue<Intent>();
+    private class CommandProcessor extends Thread {
+        private final BlockingQueue<ServiceCommand> mCommandQueue;
+        // The operation being processed
+        private volatile int mCurrentOp;
+
+        public CommandProcessor(String threadName) {
+            super("CommandProcessor-" + threadName);
+            mCommandQueue = new LinkedBlockingQueue<ServiceCommand>();
         }
 
         @Override
         public void run() {
             try {
                 while(true) {
-                    processIntent(mIntentQueue.take());
+                    final ServiceCommand command = mCommandQueue.take();
+                    // The command may be recycled once processed
+                    final int op = command.op;
+                    final long startNs = System.nanoTime();
+                    mMetrics.record(op, OperationMetrics.QUEUE_WAIT,
+                            startNs - command.submitTimeNs);
+                    mCurrentOp = op;
+                    processCommand(command);
+                    mCurrentOp = 0;
+                    mMetrics.record(op, OperationMetrics.EXECUTION, System.nanoTime() - startNs);
                 }
             } catch (InterruptedException e) {
                 Log.e(TAG, "Terminating " + getName());
@@ -4727,39 +5047,40 @@ public class ApiService extends Service {
         }
 
         /**
-         * Submits a new intent for processing.
+         * Submits a new command for processing.
          *
-         * @param intent The intent to be processed
+         * @param command The command to be processed
          */
-        public void submit(Intent intent) {
+        public void submit(ServiceCommand command) {
             if (isAlive()) {
-                mIntentQueue.add(intent);
+                command.submitTimeNs = System.nanoTime();
+                mCommandQueue.add(command);
             } else {
                 Log.e(TAG, getName() + " should be started before submitting tasks.");
             }
         }
 
         /**
-         * Removes an intent from the queue.
+         * Removes a command from the queue.
          *
-         * @param intent The intent to be removed
+         * @param command The command to be removed
          *
-         * @return true if the intent is removed
+         * @return true if the command is removed
          */
-        public boolean cancel(Intent intent) {
-            return mIntentQueue.remove(intent);
+        public boolean cancel(ServiceCommand command) {
+            return mCommandQueue.remove(command);
         }
 
-        public Iterator<Intent> getIntentQueueIterator() {
-            return mIntentQueue.iterator();
+        public Iterator<ServiceCommand> getCommandQueueIterator() {
+            return mCommandQueue.iterator();
         }
 
         public void quit() {
             // Display an error if the queue is not empty and clear it.
-            final int queueSize = mIntentQueue.size();
+            final int queueSize = mCommandQueue.size();
             if (queueSize > 0) {
                 Log.e(TAG, "Thread queue is not empty. Size: " + queueSize);
-                mIntentQueue.clear();
+                mCommandQueue.clear();
             }
             interrupt();
         }
@@ -32,12 +32,15 @@ import java.util.List;
  */
 public class ApiServiceListener {
     /**
-     * The list of projects was loaded
+     * A page of the list of projects was loaded
      *
-     * @param projects The array of projects
+     * @param projects The summaries of the projects of the page
+     * @param offset The position of the first project of the page
+     * @param hasMore true if more projects follow the page
      * @param exception The exception
      */
-    public void onProjectsLoaded(List<VideoEditorProject> projects, Exception exception) {}
+    public void onProjectsLoaded(List<ProjectSummary> projects, int offset, boolean hasMore,
+            Exception exception) {}
 
     /**
      * The project edit state
@@ -274,6 +277,26 @@ public class ApiServiceListener {
     public void onMediaItemExtractAudioWaveformComplete(String projectPath,
             String mediaItemId, Exception exception) {}
 
+    /**
+     * Media item proxy generation progress callback
+     *
+     * @param projectPath The project path
+     * @param mediaItemId The id of the media item
+     * @param progress The progress (0, 100)
+     */
+    public void onMediaItemProxyProgress(String projectPath, String mediaItemId,
+            int progress) {}
+
+    /**
+     * The proxy of the specified media item was generated or removed
+     *
+     * @param projectPath The project path
+     * @param mediaItemId The id of the MediaItem
+     * @param exception The exception which occurred
+     */
+    public void onMediaItemProxyComplete(String projectPath, String mediaItemId,
+            Exception exception) {}
+
     /**
      * A new transition was inserted
      *
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.service;
+
+import android.util.Log;
+
+/**
+ * A pool of service commands. The pool is a fixed capacity stack so that
+ * retrieving and returning a command does not allocate or shift elements.
+ */
+class CommandPool {
+    // Logging
+    private static final String TAG = "CommandPool";
+
+    // Instance variables
+    private final ServiceCommand[] mCommandPool;
+    private int mSize;
+
+    /**
+     * Constructor
+     *
+     * @param capacity The maximum number of idle commands kept in the pool
+     */
+    public CommandPool(int capacity) {
+        mCommandPool = new ServiceCommand[capacity];
+        mSize = 0;
+    }
+
+    /**
+     * @return The command is retrieved from the pool or if the pool is empty
+     *      a new command is allocated
+     */
+    public synchronized ServiceCommand get() {
+        if (mSize > 0) {
+            mSize--;
+            final ServiceCommand command = mCommandPool[mSize];
+            mCommandPool[mSize] = null;
+            return command;
+        } else {
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Pool enlarged");
+            }
+            return new ServiceCommand();
+        }
+    }
+
+    /**
+     * Clear the command and return it to the pool. If the pool is full the
+     * command is left to the garbage collector.
+     *
+     * @param command Return a command to the pool
+     */
+    public synchronized void put(ServiceCommand command) {
+        command.clear();
+        if (mSize < mCommandPool.length) {
+            mCommandPool[mSize++] = command;
+        }
+    }
+}
@@ -29,7 +29,7 @@ import android.media.videoeditor.WaveformData;
 /**
  * This class represents a media item
  */
-public class MovieMediaItem {
+public class MovieMediaItem implements TimelineIndex.IndexedMediaItem {
     // The unique id of the media item
     private final String mUniqueId;
 
@@ -69,6 +69,10 @@ public class MovieMediaItem {
     // The audio waveform data
     private WaveformData mWaveformData;
 
+    // The low resolution proxy which replaces the file in previews
+    private final boolean mProxySupported;
+    private String mProxyFilename;
+
     // Sound control
     private int mVolumePercent;
     private boolean mMuted;
@@ -79,6 +83,9 @@ public class MovieMediaItem {
     private int mAppVolumePercent;
     private boolean mAppMuted;
 
+    // The index of the timeline which contains this media item
+    private TimelineIndex mTimelineIndex;
+
     /**
      * Constructor
      *
@@ -116,7 +123,10 @@ public class MovieMediaItem {
             }
             mAppVolumePercent = mVolumePercent = videoMediaItem.getVolume();
             mAppMuted = mMuted = videoMediaItem.isMuted();
+            mProxySupported = videoMediaItem.isProxySupported();
+            mProxyFilename = videoMediaItem.getProxyFilename();
         } else {
+            mProxySupported = false;
             mAppBeginBoundaryTimeMs = mBeginBoundaryTimeMs = 0;
             mAppEndBoundaryTimeMs = mEndBoundaryTimeMs = mediaItem.getTimelineDuration();
             mWaveformData = null;
@@ -309,6 +319,9 @@ public class MovieMediaItem {
     public void setAppExtractBoundaries(long beginMs, long endMs) {
         mAppBeginBoundaryTimeMs = beginMs;
         mAppEndBoundaryTimeMs = endMs;
+        if (mTimelineIndex != null) {
+            mTimelineIndex.onMediaItemChanged(this);
+        }
     }
 
     /**
@@ -365,6 +378,14 @@ public class MovieMediaItem {
         return mAspectRatio;
     }
 
+    /**
+     * @param timelineIndex The index of the timeline which contains this
+     *      media item
+     */
+    public void setTimelineIndex(TimelineIndex timelineIndex) {
+        mTimelineIndex = timelineIndex;
+    }
+
     /**
      * @param beginTransition Begin transition
      */
@@ -472,6 +493,27 @@ public class MovieMediaItem {
         mWaveformData = waveformData;
     }
 
+    /**
+     * @return true if a low resolution proxy can be generated for the file
+     */
+    public boolean isProxySupported() {
+        return mProxySupported;
+    }
+
+    /**
+     * @return true if previews use a low resolution proxy of the file
+     */
+    public boolean hasProxy() {
+        return mProxyFilename != null;
+    }
+
+    /**
+     * @param proxyFilename The proxy file name, null if there is no proxy
+     */
+    void setProxyFilename(String proxyFilename) {
+        mProxyFilename = proxyFilename;
+    }
+
     /*
      * {@inheritDoc}
      */
@@ -33,7 +33,7 @@ import dogtim.android.videoeditor.util.FileUtils;
 /**
  * This class represents a transition in the user interface
  */
-public class MovieTransition {
+public class MovieTransition implements TimelineIndex.IndexedTransition {
     // The unique id of the transition
     private final String mUniqueId;
     private final Class<?> mTypeClass;
@@ -48,6 +48,9 @@ public class MovieTransition {
 
     private long mAppDurationMs;
 
+    // The index of the timeline which contains this transition
+    private TimelineIndex mTimelineIndex;
+
     /**
      * Constructor
      *
@@ -196,6 +199,17 @@ public class MovieTransition {
      */
     public void setAppDuration(long durationMs) {
         mAppDurationMs = durationMs;
+        if (mTimelineIndex != null) {
+            mTimelineIndex.onTransitionChanged(this);
+        }
+    }
+
+    /**
+     * @param timelineIndex The index of the timeline which contains this
+     *      transition
+     */
+    public void setTimelineIndex(TimelineIndex timelineIndex) {
+        mTimelineIndex = timelineIndex;
     }
 
     /**
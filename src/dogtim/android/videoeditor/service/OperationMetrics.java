@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.service;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency and queue metrics of the service operations. For each operation
+ * three histograms are kept: the time a command waits in its worker queue,
+ * the time it takes to process and the time spent generating the preview
+ * while processing it. Recording is lock free so the worker threads never
+ * block each other on the metrics.
+ */
+class OperationMetrics {
+    // The histogram kinds
+    static final int QUEUE_WAIT = 0;
+    static final int EXECUTION = 1;
+    static final int PREVIEW = 2;
+    private static final String[] KIND_NAMES = {"queue", "exec", "preview"};
+
+    // Instance variables
+    private final ConcurrentHashMap<Integer, OperationStats> mStats =
+            new ConcurrentHashMap<Integer, OperationStats>();
+
+    /**
+     * Record a duration
+     *
+     * @param op The operation
+     * @param kind The histogram kind
+     * @param durationNs The duration in nanoseconds
+     */
+    void record(int op, int kind, long durationNs) {
+        getStats(op).mHistograms[kind].record(durationNs / 1000);
+    }
+
+    /**
+     * A request was merged into an identical pending request
+     *
+     * @param op The operation
+     */
+    void recordCoalesced(int op) {
+        getStats(op).mCoalesced.incrementAndGet();
+    }
+
+    /**
+     * A request was removed from its queue before being processed
+     *
+     * @param op The operation
+     */
+    void recordCancelled(int op) {
+        getStats(op).mCancelled.incrementAndGet();
+    }
+
+    /**
+     * Print the metrics of all the operations
+     *
+     * @param writer The writer
+     * @param opNames The names of the operations, may be incomplete
+     */
+    void dump(PrintWriter writer, Map<Integer, String> opNames) {
+        writer.println("Operation metrics (us): count p50 p90 p99 max");
+        for (Map.Entry<Integer, OperationStats> entry
+                : new TreeMap<Integer, OperationStats>(mStats).entrySet()) {
+            final String name = opNames.get(entry.getKey());
+            final OperationStats stats = entry.getValue();
+            writer.println("  " + (name != null ? name : "OP " + entry.getKey())
+                    + ": coalesced " + stats.mCoalesced.get()
+                    + ", cancelled " + stats.mCancelled.get());
+            for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+                final Histogram histogram = stats.mHistograms[kind];
+                if (histogram.getCount() > 0) {
+                    writer.println("    " + KIND_NAMES[kind] + ": " + histogram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Clear all the metrics
+     */
+    void reset() {
+        mStats.clear();
+    }
+
+    /**
+     * @param op The operation
+     *
+     * @return The metrics of the operation
+     */
+    private OperationStats getStats(int op) {
+        final Integer key = op;
+        OperationStats stats = mStats.get(key);
+        if (stats == null) {
+            // Keep the instance stored first if another thread raced us
+            mStats.putIfAbsent(key, new OperationStats());
+            stats = mStats.get(key);
+        }
+
+        return stats;
+    }
+
+    /**
+     * The metrics of one operation
+     */
+    private static class OperationStats {
+        private final Histogram[] mHistograms = {
+            new Histogram(), new Histogram(), new Histogram()
+        };
+        private final AtomicLong mCoalesced = new AtomicLong();
+        private final AtomicLong mCancelled = new AtomicLong();
+    }
+
+    /**
+     * A log-linear histogram: values below SUB_BUCKETS are counted exactly
+     * and each higher power of two range is split in SUB_BUCKETS / 2 linear
+     * buckets, so a value is reported with a relative error below 2 /
+     * SUB_BUCKETS, like HdrHistogram.
+     */
+    static class Histogram {
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+        // Values up to 2^40 us are kept, higher values are clamped
+        private static final int MAX_VALUE_BITS = 40;
+        private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+        private final AtomicLongArray mCounts = new AtomicLongArray(SUB_BUCKETS
+                + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        /**
+         * Record a value
+         *
+         * @param value The value, negative values are recorded as 0
+         */
+        void record(long value) {
+            value = Math.max(0, Math.min(value, MAX_VALUE));
+            mCounts.incrementAndGet(getIndex(value));
+            mCount.incrementAndGet();
+
+            long max = mMax.get();
+            while (value > max && !mMax.compareAndSet(max, value)) {
+                max = mMax.get();
+            }
+        }
+
+        /**
+         * @return The number of recorded values
+         */
+        long getCount() {
+            return mCount.get();
+        }
+
+        /**
+         * @param percentile The percentile (0 - 100)
+         *
+         * @return The highest value equivalent to the percentile
+         */
+        long getValueAtPercentile(double percentile) {
+            final long count = mCount.get();
+            final long target = Math.max(1, (long)Math.ceil(count * percentile / 100));
+            long sum = 0;
+            for (int i = 0; i < mCounts.length(); i++) {
+                sum += mCounts.get(i);
+                if (sum >= target) {
+                    return Math.min(getHighestValue(i), mMax.get());
+                }
+            }
+
+            return mMax.get();
+        }
+
+        @Override
+        public String toString() {
+            return getCount() + " " + getValueAtPercentile(50) + " "
+                    + getValueAtPercentile(90) + " " + getValueAtPercentile(99) + " "
+                    + mMax.get();
+        }
+
+        /**
+         * @param value The value
+         *
+         * @return The index of the bucket which counts the value
+         */
+        private static int getIndex(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int)value;
+            }
+
+            // The shift which brings the value in [HALF_SUB_BUCKETS, SUB_BUCKETS)
+            final int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+            return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS
+                    + (int)(value >> shift) - HALF_SUB_BUCKETS;
+        }
+
+        /**
+         * @param index The bucket index
+         *
+         * @return The highest value counted by the bucket
+         */
+        private static long getHighestValue(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+
+            final int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+            final long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+            return ((subBucket + 1) << shift) - 1;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.service;
+
+/**
+ * The information needed to display a project in the project picker. Summaries
+ * are kept in the {@link ProjectSummaryIndex} so listing the projects does not
+ * require parsing every project metadata file.
+ */
+public class ProjectSummary {
+    // Instance variables
+    private final String mProjectPath;
+    private final String mProjectName;
+    private final long mProjectDurationMs;
+    private final long mLastSaved;
+    private final String mThumbnailPath;
+    private final int mAspectRatio;
+    private final long mMetadataModified;
+
+    /**
+     * Constructor
+     *
+     * @param projectPath The project path
+     * @param projectName The project name
+     * @param durationMs The project duration
+     * @param lastSaved Time when project was last saved
+     * @param thumbnailPath The path of the project thumbnail
+     * @param aspectRatio The project aspect ratio, 0 if unknown
+     * @param metadataModified The modification time of the project metadata
+     *      file described by this summary
+     */
+    ProjectSummary(String projectPath, String projectName, long durationMs, long lastSaved,
+            String thumbnailPath, int aspectRatio, long metadataModified) {
+        mProjectPath = projectPath;
+        mProjectName = projectName;
+        mProjectDurationMs = durationMs;
+        mLastSaved = lastSaved;
+        mThumbnailPath = thumbnailPath;
+        mAspectRatio = aspectRatio;
+        mMetadataModified = metadataModified;
+    }
+
+    /**
+     * @return The project path
+     */
+    public String getPath() {
+        return mProjectPath;
+    }
+
+    /**
+     * @return The project name
+     */
+    public String getName() {
+        return mProjectName;
+    }
+
+    /**
+     * @return The project duration as saved on disk
+     */
+    public long getProjectDuration() {
+        return mProjectDurationMs;
+    }
+
+    /**
+     * @return Time when the project was last saved
+     */
+    public long getLastSaved() {
+        return mLastSaved;
+    }
+
+    /**
+     * @return The path of the project thumbnail. The file may not exist.
+     */
+    public String getThumbnailPath() {
+        return mThumbnailPath;
+    }
+
+    /**
+     * @return The project aspect ratio, 0 if unknown
+     */
+    public int getAspectRatio() {
+        return mAspectRatio;
+    }
+
+    /**
+     * @return The modification time of the metadata file this summary was
+     *      built from
+     */
+    long getMetadataModified() {
+        return mMetadataModified;
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.media.videoeditor.VideoEditor;
+import android.media.videoeditor.VideoEditorFactory;
+import android.util.Log;
+
+import dogtim.android.videoeditor.util.FileUtils;
+
+/**
+ * A compact index of the project summaries stored in the projects root
+ * directory. An entry is trusted as long as the modification time of the
+ * project metadata file matches the one recorded in the index, otherwise the
+ * project is read again and every field of the entry is replaced. The
+ * projects are listed by pages and only the projects of the requested page
+ * are read.
+ */
+class ProjectSummaryIndex {
+    // Logging
+    private static final String TAG = "ProjectSummaryIndex";
+
+    // The name of the index file in the projects root directory
+    private static final String INDEX_FILENAME = "projects.idx";
+
+    // Bump the version when the entry layout changes
+    private static final int INDEX_VERSION = 1;
+
+    // Sort the summaries in order of "last saved"
+    private static final Comparator<ProjectSummary> LAST_SAVED_COMPARATOR =
+            new Comparator<ProjectSummary>() {
+        @Override
+        public int compare(ProjectSummary object1, ProjectSummary object2) {
+            if (object1.getLastSaved() > object2.getLastSaved()) {
+                return -1;
+            } else if (object1.getLastSaved() == object2.getLastSaved()) {
+                return 0;
+            } else {
+                return 1;
+            }
+        }
+    };
+
+    // Sort the listings in order of "last saved"
+    private static final Comparator<Listing> LISTING_COMPARATOR = new Comparator<Listing>() {
+        @Override
+        public int compare(Listing object1, Listing object2) {
+            if (object1.getLastSaved() > object2.getLastSaved()) {
+                return -1;
+            } else if (object1.getLastSaved() == object2.getLastSaved()) {
+                return 0;
+            } else {
+                return 1;
+            }
+        }
+    };
+
+    // The entries keyed by project folder name. Access is guarded by the
+    // class lock.
+    private static Map<String, ProjectSummary> mSummaries;
+    private static File mIndexDir;
+
+    /**
+     * It is not possible to instantiate this class
+     */
+    private ProjectSummaryIndex() {
+    }
+
+    /**
+     * A project folder listed for a page
+     */
+    private static class Listing {
+        private final File mDir;
+        private final long mMetadataModified;
+        // The indexed summary, null if the project must be read
+        private final ProjectSummary mSummary;
+
+        private Listing(File dir, long metadataModified, ProjectSummary summary) {
+            mDir = dir;
+            mMetadataModified = metadataModified;
+            mSummary = summary;
+        }
+
+        /**
+         * @return The time the project was last saved. The metadata file is
+         *      written when the project is saved, so its modification time
+         *      orders the projects which are not indexed yet.
+         */
+        private long getLastSaved() {
+            return mSummary != null ? mSummary.getLastSaved() : mMetadataModified;
+        }
+    }
+
+    /**
+     * Get the summaries of a page of the projects in the projects root
+     * directory, sorted by "last saved", most recent first. The folders are
+     * listed without being read, then only the projects of the page whose
+     * metadata changed since they were indexed are read. Folders without
+     * metadata are deleted.
+     *
+     * @param rootDir The projects root directory
+     * @param offset The position of the first project of the page
+     * @param count The maximum number of projects of the page
+     * @param page The list to which the summaries of the page are added
+     *
+     * @return true if more projects follow the page
+     */
+    static synchronized boolean loadSummaries(File rootDir, int offset, int count,
+            List<ProjectSummary> page) {
+        final Map<String, ProjectSummary> summaries = getSummaries(rootDir);
+        final File[] files = rootDir.listFiles();
+        if (files == null) {
+            return false;
+        }
+
+        final List<Listing> listings = new ArrayList<Listing>(files.length);
+        final Set<String> keys = new HashSet<String>();
+        for (int i = 0; i < files.length; i++) {
+            if (!files[i].isDirectory()) {
+                continue;
+            }
+
+            final String key = files[i].getName();
+            final long modified = new File(files[i],
+                    VideoEditorProject.PROJECT_METADATA_FILENAME).lastModified();
+            ProjectSummary summary = summaries.get(key);
+            if (summary != null && (modified == 0 || summary.getMetadataModified() != modified)) {
+                summary = null;
+            }
+
+            listings.add(new Listing(files[i], modified, summary));
+            keys.add(key);
+        }
+
+        // Forget the deleted projects
+        boolean changed = summaries.keySet().retainAll(keys);
+
+        Collections.sort(listings, LISTING_COMPARATOR);
+        final int end = Math.min(offset + count, listings.size());
+        for (int i = offset; i < end; i++) {
+            final Listing listing = listings.get(i);
+            final String pp = listing.mDir.getAbsolutePath();
+            ProjectSummary summary = listing.mSummary;
+            if (summary == null) {
+                try {
+                    final VideoEditorProject project = VideoEditorProject.fromXml(null, pp);
+                    summary = newSummary(project, readAspectRatio(pp),
+                            project.getProjectDuration(), listing.mMetadataModified);
+                    changed = true;
+                } catch (FileNotFoundException ex) {
+                    Log.w(TAG, "loadSummaries: Project file not found: " + pp);
+                    FileUtils.deleteDir(listing.mDir);
+                    summaries.remove(listing.mDir.getName());
+                    continue;
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    continue;
+                }
+            } else if (summary.getAspectRatio() == 0) {
+                // The aspect ratio could not be read when the project was indexed
+                final int aspectRatio = readAspectRatio(pp);
+                if (aspectRatio != 0) {
+                    summary = new ProjectSummary(summary.getPath(), summary.getName(),
+                            summary.getProjectDuration(), summary.getLastSaved(),
+                            summary.getThumbnailPath(), aspectRatio,
+                            summary.getMetadataModified());
+                    changed = true;
+                }
+            }
+
+            summaries.put(listing.mDir.getName(), summary);
+            page.add(summary);
+        }
+
+        if (changed) {
+            writeIndex();
+        }
+
+        Collections.sort(page, LAST_SAVED_COMPARATOR);
+        return end < listings.size();
+    }
+
+    /**
+     * Update the summary of a project after its metadata file was saved
+     *
+     * @param project The project
+     * @param durationMs The saved project duration
+     */
+    static synchronized void update(VideoEditorProject project, long durationMs) {
+        final File projectDir = new File(project.getPath());
+        final File metadata = new File(projectDir, VideoEditorProject.PROJECT_METADATA_FILENAME);
+        final Map<String, ProjectSummary> summaries = getSummaries(projectDir.getParentFile());
+        summaries.put(projectDir.getName(), newSummary(project, project.getAspectRatio(),
+                durationMs, metadata.lastModified()));
+        writeIndex();
+    }
+
+    /**
+     * Remove the summary of a deleted project
+     *
+     * @param projectPath The project path
+     */
+    static synchronized void remove(String projectPath) {
+        final File projectDir = new File(projectPath);
+        final Map<String, ProjectSummary> summaries = getSummaries(projectDir.getParentFile());
+        if (summaries.remove(projectDir.getName()) != null) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Read the aspect ratio of a project which has no summary yet
+     *
+     * @param projectPath The project path
+     *
+     * @return The aspect ratio, 0 if it cannot be read
+     */
+    private static int readAspectRatio(String projectPath) {
+        try {
+            return VideoEditorFactory.getAspectRatio(projectPath);
+        } catch (IOException ex) {
+            Log.w(TAG, "readAspectRatio: Cannot read project: " + projectPath + ": " + ex);
+            return 0;
+        }
+    }
+
+    /**
+     * Create a summary for the specified project
+     */
+    private static ProjectSummary newSummary(VideoEditorProject project, int aspectRatio,
+            long durationMs, long metadataModified) {
+        return new ProjectSummary(project.getPath(), project.getName(), durationMs,
+                project.getLastSaved(),
+                new File(project.getPath(), VideoEditor.THUMBNAIL_FILENAME).getAbsolutePath(),
+                aspectRatio, metadataModified);
+    }
+
+    /**
+     * @param rootDir The projects root directory
+     *
+     * @return The entries, read from the index file the first time they are
+     *      needed for this directory
+     */
+    private static Map<String, ProjectSummary> getSummaries(File rootDir) {
+        if (mSummaries == null || !rootDir.equals(mIndexDir)) {
+            mIndexDir = rootDir;
+            mSummaries = new HashMap<String, ProjectSummary>();
+            try {
+                readIndex();
+            } catch (FileNotFoundException ex) {
+                // No index yet
+            } catch (IOException ex) {
+                // A damaged index is rebuilt from the metadata files
+                Log.w(TAG, "getSummaries: Cannot read index: " + ex);
+                mSummaries.clear();
+            }
+        }
+
+        return mSummaries;
+    }
+
+    /**
+     * Read the index file
+     */
+    private static void readIndex() throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(mIndexDir, INDEX_FILENAME))));
+        try {
+            if (in.readInt() != INDEX_VERSION) {
+                return;
+            }
+
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String key = in.readUTF();
+                final String name = in.readBoolean() ? in.readUTF() : null;
+                final long durationMs = in.readLong();
+                final long lastSaved = in.readLong();
+                final String thumbnailPath = in.readUTF();
+                final int aspectRatio = in.readInt();
+                final long metadataModified = in.readLong();
+                mSummaries.put(key, new ProjectSummary(new File(mIndexDir, key).getAbsolutePath(),
+                        name, durationMs, lastSaved, thumbnailPath, aspectRatio,
+                        metadataModified));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the index file. The index is written to a temporary file which
+     * then replaces the index so a crash never leaves a partial index behind.
+     */
+    private static void writeIndex() {
+        final File tmpFile = new File(mIndexDir, INDEX_FILENAME + ".tmp");
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(mSummaries.size());
+                for (Map.Entry<String, ProjectSummary> entry : mSummaries.entrySet()) {
+                    final ProjectSummary summary = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeBoolean(summary.getName() != null);
+                    if (summary.getName() != null) {
+                        out.writeUTF(summary.getName());
+                    }
+                    out.writeLong(summary.getProjectDuration());
+                    out.writeLong(summary.getLastSaved());
+                    out.writeUTF(summary.getThumbnailPath());
+                    out.writeInt(summary.getAspectRatio());
+                    out.writeLong(summary.getMetadataModified());
+                }
+            } finally {
+                out.close();
+            }
+
+            if (!tmpFile.renameTo(new File(mIndexDir, INDEX_FILENAME))) {
+                Log.w(TAG, "writeIndex: Cannot rename index file");
+            }
+        } catch (IOException ex) {
+            Log.w(TAG, "writeIndex: Cannot write index: " + ex);
+            tmpFile.delete();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.service;
+
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Bundle;
+
+/**
+ * A typed request processed by the ApiService. Commands are obtained from
+ * a {@link CommandPool} and travel between the caller, the service worker
+ * threads and the main thread without being marshalled into an Intent.
+ *
+ * Like {@link android.os.Message}, the fields are public for cheap access;
+ * each operation only uses the subset of fields it needs.
+ */
+final class ServiceCommand {
+    // Request identification
+    public int op;
+    public String requestId;
+    public String projectPath;
+
+    // Storyboard items
+    public String itemId;
+    public String relativeItemId;
+
+    // Files and URIs
+    public String filename;
+    public Uri uri;
+    public Uri movieUri;
+    public String projectName;
+    public String[] movies;
+    public String[] photos;
+    public String mimeType;
+    public String itemClassName;
+    public String theme;
+
+    // Timing
+    public long startTimeMs;
+    public long endTimeMs;
+    public long durationMs;
+    public long beginBoundaryMs;
+    public long endBoundaryMs;
+
+    // Dimensions and encoding
+    public int width;
+    public int height;
+    public int bitrate;
+    public int aspectRatio;
+    public int renderingMode;
+    public Rect startRect;
+    public Rect endRect;
+
+    // Effects and transitions
+    public int effectType;
+    public int effectParam;
+    public int transitionBehavior;
+    public int transitionMask;
+    public int transitionBlending;
+    public boolean transitionInvert;
+    public int transitionDirection;
+
+    // Overlays
+    public Bundle attributes;
+
+    // Audio
+    public int volume;
+    public boolean loop;
+    public boolean mute;
+    public boolean duck;
+
+    // Thumbnails and pages
+    public int offset;
+    public int count;
+    public int token;
+    public int[] indices;
+
+    // Progress and status
+    public int action;
+    public int progress;
+    public boolean complete;
+    public boolean cancelled;
+    public Exception exception;
+    public ServiceCommand original;
+
+    // Metrics
+    public long submitTimeNs;
+
+    /**
+     * Clear all the fields of the command so it can be reused
+     */
+    void clear() {
+        op = 0;
+        requestId = null;
+        projectPath = null;
+        itemId = null;
+        relativeItemId = null;
+        filename = null;
+        uri = null;
+        movieUri = null;
+        projectName = null;
+        movies = null;
+        photos = null;
+        mimeType = null;
+        itemClassName = null;
+        theme = null;
+        startTimeMs = 0;
+        endTimeMs = 0;
+        durationMs = 0;
+        beginBoundaryMs = 0;
+        endBoundaryMs = 0;
+        width = 0;
+        height = 0;
+        bitrate = 0;
+        aspectRatio = 0;
+        renderingMode = 0;
+        startRect = null;
+        endRect = null;
+        effectType = 0;
+        effectParam = 0;
+        transitionBehavior = 0;
+        transitionMask = 0;
+        transitionBlending = 0;
+        transitionInvert = false;
+        transitionDirection = 0;
+        attributes = null;
+        volume = 0;
+        loop = false;
+        mute = false;
+        duck = false;
+        offset = 0;
+        count = 0;
+        token = 0;
+        indices = null;
+        action = 0;
+        progress = 0;
+        complete = false;
+        cancelled = false;
+        exception = null;
+        original = null;
+        submitTimeNs = 0;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import android.graphics.Bitmap;
+
+/**
+ * Thumbnail requests for the same source file and thumbnail size merged in
+ * decode passes. A request asks for frames of an evenly spaced grid; the
+ * requests whose grids are sub-grids of a finer grid share the pass of the
+ * finer grid, so each frame is decoded once and all the frames of a pass are
+ * decoded in one forward pass over the file.
+ */
+class ThumbnailBatch {
+    /**
+     * The receiver of the thumbnails of a pass
+     */
+    interface Receiver {
+        /**
+         * @param command The requesting command
+         * @param bitmap The thumbnail, owned by the receiver
+         * @param index The index of the thumbnail in the command grid
+         */
+        public void onThumbnail(ServiceCommand command, Bitmap bitmap, int index);
+    }
+
+    // Instance variables
+    private final List<Pass> mPasses = new ArrayList<Pass>();
+
+    /**
+     * A decode pass over one grid
+     */
+    static class Pass {
+        final long startMs;
+        final long endMs;
+        final int count;
+        // The merged indices in the grid of the pass, sorted
+        int[] indices;
+
+        // The requests served by the pass and the factor which maps their
+        // grid indices to the pass grid indices
+        private final List<ServiceCommand> mCommands = new ArrayList<ServiceCommand>();
+        private final List<int[]> mSortedIndices = new ArrayList<int[]>();
+        private final List<Integer> mFactors = new ArrayList<Integer>();
+
+        private Pass(ServiceCommand command) {
+            startMs = command.startTimeMs;
+            endMs = command.endTimeMs;
+            count = command.count;
+        }
+
+        /**
+         * Send a decoded thumbnail to the requests which asked for it. Each
+         * request receives its own bitmap.
+         *
+         * @param bitmap The thumbnail
+         * @param index The index of the thumbnail in the grid of the pass
+         * @param receiver The receiver
+         */
+        void dispatch(Bitmap bitmap, int index, Receiver receiver) {
+            boolean delivered = false;
+            for (int i = 0; i < mCommands.size(); i++) {
+                final int factor = mFactors.get(i);
+                if (index % factor == 0
+                        && Arrays.binarySearch(mSortedIndices.get(i), index / factor) >= 0) {
+                    final Bitmap copy = (!delivered || bitmap == null) ? bitmap
+                            : bitmap.copy(bitmap.getConfig(), false);
+                    receiver.onThumbnail(mCommands.get(i), copy, index / factor);
+                    delivered = true;
+                }
+            }
+
+            if (!delivered && bitmap != null) {
+                bitmap.recycle();
+            }
+        }
+
+        /**
+         * Add a request to the pass if its grid is a sub-grid of the pass grid
+         *
+         * @param command The command
+         *
+         * @return true if the request was added
+         */
+        private boolean add(ServiceCommand command) {
+            final int factor = getFactor(command);
+            if (factor <= 0) {
+                return false;
+            }
+
+            for (int index : command.indices) {
+                if ((long)index * factor >= count) {
+                    return false;
+                }
+            }
+
+            final int[] sortedIndices = command.indices.clone();
+            Arrays.sort(sortedIndices);
+            mCommands.add(command);
+            mSortedIndices.add(sortedIndices);
+            mFactors.add(factor);
+            return true;
+        }
+
+        /**
+         * @param command The command
+         *
+         * @return The number of pass grid steps in one step of the command
+         *      grid, 0 if the command grid is not a sub-grid of the pass grid
+         */
+        private int getFactor(ServiceCommand command) {
+            if (command.startTimeMs == startMs && command.endTimeMs == endMs
+                    && command.count == count) {
+                return 1;
+            }
+
+            // Only grids with whole millisecond steps are matched, the frame
+            // times are then the same whatever the rounding of the decoder
+            final long stepMs = getStepMs(startMs, endMs, count);
+            final long commandStepMs = getStepMs(command.startTimeMs, command.endTimeMs,
+                    command.count);
+            if (command.startTimeMs != startMs || stepMs <= 0 || commandStepMs <= 0
+                    || commandStepMs % stepMs != 0) {
+                return 0;
+            }
+
+            return (int)(commandStepMs / stepMs);
+        }
+
+        /**
+         * Merge the indices of the requests
+         */
+        private void mergeIndices() {
+            int total = 0;
+            for (int[] sortedIndices : mSortedIndices) {
+                total += sortedIndices.length;
+            }
+
+            final int[] merged = new int[total];
+            int size = 0;
+            for (int i = 0; i < mCommands.size(); i++) {
+                for (int index : mSortedIndices.get(i)) {
+                    merged[size++] = index * mFactors.get(i);
+                }
+            }
+            Arrays.sort(merged);
+
+            // Remove the duplicates
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || merged[i] != merged[unique - 1]) {
+                    merged[unique++] = merged[i];
+                }
+            }
+            indices = Arrays.copyOf(merged, unique);
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param commands The thumbnail commands for the same source file and
+     *      thumbnail size
+     */
+    ThumbnailBatch(List<ServiceCommand> commands) {
+        // Start the passes with the finest grids so the coarser grids join them
+        final List<ServiceCommand> sorted = new ArrayList<ServiceCommand>(commands);
+        Collections.sort(sorted, new Comparator<ServiceCommand>() {
+            @Override
+            public int compare(ServiceCommand c1, ServiceCommand c2) {
+                return Double.compare(
+                        (double)(c1.endTimeMs - c1.startTimeMs) / Math.max(c1.count, 1),
+                        (double)(c2.endTimeMs - c2.startTimeMs) / Math.max(c2.count, 1));
+            }
+        });
+
+        for (ServiceCommand command : sorted) {
+            boolean added = false;
+            for (Pass pass : mPasses) {
+                if (pass.add(command)) {
+                    added = true;
+                    break;
+                }
+            }
+
+            if (!added) {
+                final Pass pass = new Pass(command);
+                pass.add(command);
+                mPasses.add(pass);
+            }
+        }
+
+        for (Pass pass : mPasses) {
+            pass.mergeIndices();
+        }
+    }
+
+    /**
+     * @return The decode passes
+     */
+    List<Pass> getPasses() {
+        return mPasses;
+    }
+
+    /**
+     * @param startMs The start time of a grid
+     * @param endMs The end time of a grid
+     * @param count The number of frames of a grid
+     *
+     * @return The step of the grid, 0 if it is not a whole number of milliseconds
+     */
+    private static long getStepMs(long startMs, long endMs, int count) {
+        if (count <= 0 || (endMs - startMs) % count != 0) {
+            return 0;
+        }
+
+        return (endMs - startMs) / count;
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The begin times of the media items of a project. The effective duration of
+ * each media item (its timeline duration minus the duration of the end
+ * transition it shares with the next media item) is kept in a Fenwick tree so
+ * begin times and time lookups take O(log n). Trimming a media item or
+ * changing a transition duration updates the tree in O(log n); inserting or
+ * removing media items invalidates the index, which is rebuilt in O(n) on the
+ * next lookup. Like {@link android.media.videoeditor.Transition}, the index
+ * assumes a transition lasts at most half of each media item it joins.
+ */
+class TimelineIndex {
+    /**
+     * A media item of the timeline
+     */
+    interface IndexedMediaItem {
+        /**
+         * @return The media item id
+         */
+        public String getId();
+
+        /**
+         * @return The timeline duration of the media item
+         */
+        public long getAppTimelineDuration();
+
+        /**
+         * @return The transition at the end of the media item, null if none
+         */
+        public IndexedTransition getEndTransition();
+
+        /**
+         * @param timelineIndex The index to notify when the timeline duration
+         *      changes
+         */
+        public void setTimelineIndex(TimelineIndex timelineIndex);
+    }
+
+    /**
+     * A transition of the timeline
+     */
+    interface IndexedTransition {
+        /**
+         * @return The transition id
+         */
+        public String getId();
+
+        /**
+         * @return The duration of the transition
+         */
+        public long getAppDuration();
+
+        /**
+         * @param timelineIndex The index to notify when the duration changes
+         */
+        public void setTimelineIndex(TimelineIndex timelineIndex);
+    }
+
+    // Instance variables
+    private final Map<String, Integer> mMediaItemPositions = new HashMap<String, Integer>();
+    private final Map<String, Integer> mTransitionPositions = new HashMap<String, Integer>();
+    private List<? extends IndexedMediaItem> mMediaItems;
+    private long[] mDurations = new long[0];
+    private long[] mTree = new long[1];
+    private int mCount;
+    private boolean mValid;
+
+    /**
+     * Rebuild the index on the next lookup. Call this method when media items
+     * are added, removed or replaced or when transitions are linked or
+     * unlinked.
+     *
+     * @param mediaItems The media items
+     */
+    void invalidate(List<? extends IndexedMediaItem> mediaItems) {
+        mMediaItems = mediaItems;
+        mValid = false;
+    }
+
+    /**
+     * @return The number of indexed media items
+     */
+    int size() {
+        validate();
+        return mCount;
+    }
+
+    /**
+     * @param mediaItemId The media item id
+     *
+     * @return The position of the media item, -1 if not found
+     */
+    int indexOf(String mediaItemId) {
+        validate();
+        final Integer position = mMediaItemPositions.get(mediaItemId);
+        return position != null ? position : -1;
+    }
+
+    /**
+     * @param transitionId The transition id
+     *
+     * @return The position of the media item which ends with the transition,
+     *      -1 if not found
+     */
+    int indexOfTransition(String transitionId) {
+        validate();
+        final Integer position = mTransitionPositions.get(transitionId);
+        return position != null ? position : -1;
+    }
+
+    /**
+     * @param position The media item position
+     *
+     * @return The begin time of the media item
+     */
+    long getBeginTime(int position) {
+        validate();
+        long beginMs = 0;
+        for (int i = position; i > 0; i -= i & -i) {
+            beginMs += mTree[i];
+        }
+
+        return beginMs;
+    }
+
+    /**
+     * @return The duration of the timeline
+     */
+    long getDuration() {
+        return getBeginTime(size());
+    }
+
+    /**
+     * @param position The media item position
+     *
+     * @return The effective duration of the media item
+     */
+    long getEffectiveDuration(int position) {
+        validate();
+        return mDurations[position];
+    }
+
+    /**
+     * Find the last media item which begins at or before the specified time
+     *
+     * @param timeMs The time
+     *
+     * @return The position of the media item, -1 if the time is negative or
+     *      the timeline is empty
+     */
+    int floor(long timeMs) {
+        validate();
+        if (timeMs < 0 || mCount == 0) {
+            return -1;
+        }
+
+        // Find the largest number of media items whose duration does not
+        // exceed the time
+        int position = 0;
+        long remainingMs = timeMs;
+        for (int step = Integer.highestOneBit(mCount); step > 0; step >>= 1) {
+            final int next = position + step;
+            if (next <= mCount && mTree[next] <= remainingMs) {
+                position = next;
+                remainingMs -= mTree[next];
+            }
+        }
+
+        return Math.min(position, mCount - 1);
+    }
+
+    /**
+     * Find the media item the "previous" action moves to from the specified
+     * time: the media item playing at the time, or the one before when the
+     * time is the beginning of a media item.
+     *
+     * @param timeMs The time
+     *
+     * @return The position of the media item, the last position if there is
+     *      no media item at the time, -1 if the timeline is empty or the time
+     *      is the beginning of the timeline
+     */
+    int getPreviousPosition(long timeMs) {
+        final int position = floor(timeMs);
+        if (position < 0) {
+            return mCount - 1;
+        }
+
+        // The time may be in the transition at the end of the media item
+        // before the media item which begins at or before the time
+        if (position > 0 && timeMs < getBeginTime(position - 1)
+                + mMediaItems.get(position - 1).getAppTimelineDuration()) {
+            return position - 1;
+        }
+
+        final long beginMs = getBeginTime(position);
+        if (timeMs == beginMs) {
+            return position - 1;
+        }
+
+        if (timeMs < beginMs + mMediaItems.get(position).getAppTimelineDuration()) {
+            return position;
+        }
+
+        return mCount - 1;
+    }
+
+    /**
+     * Find the media item the "next" action moves to from the specified time:
+     * the media item after the one playing at the time, skipping the media
+     * item which begins with the transition playing at the time.
+     *
+     * @param timeMs The time
+     *
+     * @return The position of the media item, -1 if there is none
+     */
+    int getNextPosition(long timeMs) {
+        final int position = floor(timeMs);
+        if (position < 0) {
+            return -1;
+        }
+
+        // The time may be in the transition at the end of the media item
+        // before the media item which begins at or before the time
+        if (position > 0 && timeMs < getBeginTime(position - 1)
+                + mMediaItems.get(position - 1).getAppTimelineDuration()) {
+            return position < mCount - 1 ? position + 1 : -1;
+        }
+
+        final long beginMs = getBeginTime(position);
+        final IndexedMediaItem mediaItem = mMediaItems.get(position);
+        final long endMs = beginMs + mediaItem.getAppTimelineDuration();
+        final IndexedTransition endTransition = mediaItem.getEndTransition();
+        if (timeMs < endMs - (endTransition != null ? endTransition.getAppDuration() : 0)) {
+            return position < mCount - 1 ? position + 1 : -1;
+        } else if (timeMs < endMs) {
+            return position < mCount - 2 ? position + 2 : -1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Determine the media item after which a media item inserted at the
+     * specified time goes: the media item ending closest to the time.
+     *
+     * @param timeMs The time
+     *
+     * @return The position of the media item, -1 to insert at the beginning
+     *      or if the time is outside of the timeline
+     */
+    int getInsertAfterPosition(long timeMs) {
+        final int position = floor(timeMs);
+        if (position < 0) {
+            return -1;
+        }
+
+        final long beginMs = getBeginTime(position);
+        if (position > 0 && timeMs == beginMs) {
+            // At the end of the previous media item
+            return position - 1;
+        }
+
+        final long endMs = beginMs + mDurations[position];
+        if (timeMs > endMs) {
+            return -1;
+        }
+
+        if (timeMs - beginMs < endMs - timeMs) { // Closer to the beginning
+            return position - 1;
+        } else { // Closer to the end
+            return position; // Insert after this item
+        }
+    }
+
+    /**
+     * The timeline duration of a media item changed
+     *
+     * @param mediaItem The media item
+     */
+    void onMediaItemChanged(IndexedMediaItem mediaItem) {
+        if (!mValid) {
+            return;
+        }
+
+        final Integer position = mMediaItemPositions.get(mediaItem.getId());
+        if (position != null && mMediaItems.get(position) == mediaItem) {
+            update(position);
+        }
+    }
+
+    /**
+     * The duration of a transition changed
+     *
+     * @param transition The transition
+     */
+    void onTransitionChanged(IndexedTransition transition) {
+        if (!mValid) {
+            return;
+        }
+
+        final Integer position = mTransitionPositions.get(transition.getId());
+        if (position != null && mMediaItems.get(position).getEndTransition() == transition) {
+            update(position);
+        }
+    }
+
+    /**
+     * Recompute the effective duration of a media item
+     *
+     * @param position The media item position
+     */
+    private void update(int position) {
+        final long durationMs = computeEffectiveDuration(position);
+        final long deltaMs = durationMs - mDurations[position];
+        mDurations[position] = durationMs;
+        for (int i = position + 1; i <= mCount; i += i & -i) {
+            mTree[i] += deltaMs;
+        }
+    }
+
+    /**
+     * Rebuild the index if it was invalidated
+     */
+    private void validate() {
+        if (mValid) {
+            return;
+        }
+
+        mCount = mMediaItems != null ? mMediaItems.size() : 0;
+        if (mDurations.length < mCount) {
+            mDurations = new long[mCount];
+            mTree = new long[mCount + 1];
+        }
+
+        mMediaItemPositions.clear();
+        mTransitionPositions.clear();
+        mTree[0] = 0;
+        for (int i = 0; i < mCount; i++) {
+            final IndexedMediaItem mediaItem = mMediaItems.get(i);
+            mediaItem.setTimelineIndex(this);
+            mMediaItemPositions.put(mediaItem.getId(), i);
+            final IndexedTransition endTransition = mediaItem.getEndTransition();
+            if (endTransition != null) {
+                endTransition.setTimelineIndex(this);
+                mTransitionPositions.put(endTransition.getId(), i);
+            }
+
+            mDurations[i] = computeEffectiveDuration(i);
+            mTree[i + 1] = mDurations[i];
+        }
+
+        // Build the tree in place in O(n)
+        for (int i = 1; i <= mCount; i++) {
+            final int parent = i + (i & -i);
+            if (parent <= mCount) {
+                mTree[parent] += mTree[i];
+            }
+        }
+
+        mValid = true;
+    }
+
+    /**
+     * @param position The media item position
+     *
+     * @return The duration of the media item minus the duration of the
+     *      transition shared with the next media item
+     */
+    private long computeEffectiveDuration(int position) {
+        final IndexedMediaItem mediaItem = mMediaItems.get(position);
+        long durationMs = mediaItem.getAppTimelineDuration();
+        if (mediaItem.getEndTransition() != null && position < mCount - 1) {
+            durationMs -= mediaItem.getEndTransition().getAppDuration();
+        }
+
+        return durationMs;
+    }
+}
@@ -29,9 +29,12 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
+import android.media.videoeditor.AudioTrack;
+import android.media.videoeditor.MediaItem;
 import android.media.videoeditor.MediaProperties;
 import android.media.videoeditor.MediaVideoItem;
 import android.media.videoeditor.VideoEditor;
+import android.media.videoeditor.VideoEditorFactory;
 import android.media.videoeditor.VideoEditor.PreviewProgressListener;
 import android.net.Uri;
 import android.util.Xml;
@@ -43,7 +46,7 @@ import android.view.SurfaceHolder;
  */
 public class VideoEditorProject {
     // The name of the metadata file
-    private final static String PROJECT_METADATA_FILENAME = "metadata.xml";
+    final static String PROJECT_METADATA_FILENAME = "metadata.xml";
 
     public static final int DEFAULT_ZOOM_LEVEL = 20;
 
@@ -58,6 +61,7 @@ public class VideoEditorProject {
     private static final String ATTR_PLAYHEAD_POSITION = "playhead";
     private static final String ATTR_DURATION = "duration";
     private static final String ATTR_ZOOM_LEVEL = "zoom_level";
+    private static final String ATTR_PROXY_MODE = "proxy_mode";
     private static final String ATTR_MIME = "mime";
     private static final String ATTR_FILENAME = "filename";
     private static final String ATTR_TIME = "time";
@@ -74,8 +78,10 @@ public class VideoEditorProject {
     private String mTheme;
     private long mPlayheadPosMs;
     private int mZoomLevel;
+    private boolean mProxyMode;
     private List<MovieMediaItem> mMediaItems = new ArrayList<MovieMediaItem>();
     private List<MovieAudioTrack> mAudioTracks = new ArrayList<MovieAudioTrack>();
+    private final TimelineIndex mTimelineIndex = new TimelineIndex();
     private boolean mClean;
 
     /**
@@ -167,9 +173,18 @@ public class VideoEditorProject {
         mZoomLevel = zoomLevel;
         mExportedMovieUri = exportedMovieUri;
         mTheme = theme;
+        mTimelineIndex.invalidate(mMediaItems);
         mClean = true;
     }
 
+    /**
+     * @return The video editor, null if the project was loaded for display
+     *      in the project list
+     */
+    VideoEditor getVideoEditor() {
+        return mVideoEditor;
+    }
+
     /**
      * @param clean true if this is clean
      */
@@ -238,6 +253,23 @@ public class VideoEditorProject {
         mZoomLevel = zoomLevel;
     }
 
+    /**
+     * @return true if low resolution proxies are generated for the imported
+     *      video clips
+     */
+    public boolean isProxyMode() {
+        return mProxyMode;
+    }
+
+    /**
+     * @param proxyMode true to generate low resolution proxies for the
+     *      imported video clips
+     */
+    public void setProxyMode(boolean proxyMode) {
+        mProxyMode = proxyMode;
+        mClean = false;
+    }
+
     /**
      * @return The aspect ratio
      */
@@ -306,6 +338,7 @@ public class VideoEditorProject {
      */
     void setMediaItems(List<MovieMediaItem> mediaItems) {
         mMediaItems = mediaItems;
+        mTimelineIndex.invalidate(mMediaItems);
         mClean = false;
     }
 
@@ -326,6 +359,7 @@ public class VideoEditorProject {
             }
 
             mMediaItems.add(0, mediaItem);
+            mTimelineIndex.invalidate(mMediaItems);
             mClean = false;
         } else {
             final int mediaItemCount = mMediaItems.size();
@@ -341,6 +375,7 @@ public class VideoEditorProject {
 
                     // Insert the new media item
                     mMediaItems.add(i + 1, mediaItem);
+                    mTimelineIndex.invalidate(mMediaItems);
                     mClean = false;
                     return;
                 }
@@ -363,6 +398,7 @@ public class VideoEditorProject {
             final MovieMediaItem mediaItem = mMediaItems.get(i);
             if (mediaItem.getId().equals(newMediaItemId)) {
                 mMediaItems.set(i, newMediaItem);
+                mTimelineIndex.invalidate(mMediaItems);
                 mClean = false;
                 // Update the transitions of the previous and next item
                 if (i > 0) {
@@ -393,6 +429,7 @@ public class VideoEditorProject {
             final MovieMediaItem mediaItem = mMediaItems.get(i);
             if (mediaItem.getId().equals(mediaItemId)) {
                 mMediaItems.remove(i);
+                mTimelineIndex.invalidate(mMediaItems);
                 mClean = false;
                 if (transition != null) {
                     addTransition(transition, prevMediaItemId);
@@ -434,13 +471,29 @@ public class VideoEditorProject {
      * @return The media item
      */
     public MovieMediaItem getMediaItem(String mediaItemId) {
-        for (MovieMediaItem mediaItem : mMediaItems) {
-            if (mediaItem.getId().equals(mediaItemId)) {
-                return mediaItem;
-            }
-        }
+        final int position = mTimelineIndex.indexOf(mediaItemId);
+        return position >= 0 ? mMediaItems.get(position) : null;
+    }
 
-        return null;
+    /**
+     * @param mediaItemId The media item id
+     *
+     * @return The position of the media item, -1 if not found
+     */
+    public int getMediaItemPosition(String mediaItemId) {
+        return mTimelineIndex.indexOf(mediaItemId);
+    }
+
+    /**
+     * Find the last media item which begins at or before the specified time
+     *
+     * @param timeMs The time
+     *
+     * @return The position of the media item, -1 if the time is negative or
+     *      there are no media items
+     */
+    public int findMediaItemPosition(long timeMs) {
+        return mTimelineIndex.floor(timeMs);
     }
 
     /**
@@ -517,16 +570,12 @@ public class VideoEditorProject {
      * @return The previous media item
      */
     public MovieMediaItem getPreviousMediaItem(String mediaItemId) {
-        MovieMediaItem prevMediaItem = null;
-        for (MovieMediaItem mediaItem : mMediaItems) {
-            if (mediaItemId.equals(mediaItem.getId())) {
-                break;
-            } else {
-                prevMediaItem = mediaItem;
-            }
+        final int position = mTimelineIndex.indexOf(mediaItemId);
+        if (position < 0) {
+            return getLastMediaItem();
         }
 
-        return prevMediaItem;
+        return position > 0 ? mMediaItems.get(position - 1) : null;
     }
 
     /**
@@ -536,20 +585,12 @@ public class VideoEditorProject {
      * @return The next media item
      */
     public MovieMediaItem getNextMediaItem(String mediaItemId) {
-        boolean getNext = false;
-        final int count = mMediaItems.size();
-        for (int i = 0; i < count; i++) {
-            final MovieMediaItem mi = mMediaItems.get(i);
-            if (getNext) {
-                return mi;
-            } else {
-                if (mediaItemId.equals(mi.getId())) {
-                    getNext = true;
-                }
-            }
+        final int position = mTimelineIndex.indexOf(mediaItemId);
+        if (position < 0 || position >= mMediaItems.size() - 1) {
+            return null;
         }
 
-        return null;
+        return mMediaItems.get(position + 1);
     }
 
     /**
@@ -559,25 +600,8 @@ public class VideoEditorProject {
      * @return The previous media item
      */
     public MovieMediaItem getPreviousMediaItem(long positionMs) {
-        long startTimeMs = 0;
-        MovieMediaItem prevMediaItem = null;
-        for (MovieMediaItem mediaItem : mMediaItems) {
-            if (positionMs == startTimeMs) {
-                break;
-            } else if (positionMs > startTimeMs
-                    && positionMs < startTimeMs + mediaItem.getAppTimelineDuration()) {
-                return mediaItem;
-            } else {
-                prevMediaItem = mediaItem;
-            }
-
-            startTimeMs += mediaItem.getAppTimelineDuration();
-            if (mediaItem.getEndTransition() != null) {
-                startTimeMs -= mediaItem.getEndTransition().getAppDuration();
-            }
-        }
-
-        return prevMediaItem;
+        final int position = mTimelineIndex.getPreviousPosition(positionMs);
+        return position >= 0 ? mMediaItems.get(position) : null;
     }
 
     /**
@@ -587,32 +611,8 @@ public class VideoEditorProject {
      * @return The next media item
      */
     public MovieMediaItem getNextMediaItem(long positionMs) {
-        long startTimeMs = 0;
-        final int count = mMediaItems.size();
-        for (int i = 0; i < count; i++) {
-            final MovieMediaItem mediaItem = mMediaItems.get(i);
-            if (positionMs >= startTimeMs
-                    && positionMs < startTimeMs + mediaItem.getAppTimelineDuration() -
-                    getEndTransitionDuration(mediaItem)) {
-                if (i < count - 1) {
-                    return mMediaItems.get(i + 1);
-                } else {
-                    return null;
-                }
-            } else if (positionMs >= startTimeMs
-                    && positionMs < startTimeMs + mediaItem.getAppTimelineDuration()) {
-                if (i < count - 2) {
-                    return mMediaItems.get(i + 2);
-                } else {
-                    return null;
-                }
-            } else {
-                startTimeMs += mediaItem.getAppTimelineDuration();
-                startTimeMs -= getEndTransitionDuration(mediaItem);
-            }
-        }
-
-        return null;
+        final int position = mTimelineIndex.getNextPosition(positionMs);
+        return position >= 0 ? mMediaItems.get(position) : null;
     }
 
     /**
@@ -623,37 +623,19 @@ public class VideoEditorProject {
      * @return The media item
      */
     public MovieMediaItem getPreviousMediaItem(MovieTransition transition) {
-        final int count = mMediaItems.size();
-        for (int i = 0; i < count; i++) {
-            final MovieMediaItem mediaItem = mMediaItems.get(i);
-            if (i == 0) {
-                if (mediaItem.getBeginTransition() == transition) {
-                    return null;
-                }
-            }
+        final MovieMediaItem firstMediaItem = getFirstMediaItem();
+        if (firstMediaItem == null || firstMediaItem.getBeginTransition() == transition) {
+            return null;
+        }
 
-            if (mediaItem.getEndTransition() == transition) {
-                return mediaItem;
-            }
+        final int position = mTimelineIndex.indexOfTransition(transition.getId());
+        if (position >= 0 && mMediaItems.get(position).getEndTransition() == transition) {
+            return mMediaItems.get(position);
         }
 
         return null;
     }
 
-    /**
-     * Return the end transition duration
-     *
-     * @param mediaItem The media item
-     * @return the end transition duration
-     */
-    private static long getEndTransitionDuration(MovieMediaItem mediaItem) {
-        if (mediaItem.getEndTransition() != null) {
-            return mediaItem.getEndTransition().getAppDuration();
-        } else {
-            return 0;
-        }
-    }
-
     /**
      * Determine the media item after which a new media item will be inserted.
      *
@@ -662,34 +644,8 @@ public class VideoEditorProject {
      * @return The media item after which the insertion will be performed
      */
     public MovieMediaItem getInsertAfterMediaItem(long timeMs) {
-        long beginMs = 0;
-        long endMs = 0;
-        MovieMediaItem prevMediaItem = null;
-        final int mediaItemsCount = mMediaItems.size();
-        for (int i = 0; i < mediaItemsCount; i++) {
-            final MovieMediaItem mediaItem = mMediaItems.get(i);
-
-            endMs = beginMs + mediaItem.getAppTimelineDuration();
-
-            if (mediaItem.getEndTransition() != null) {
-                if (i < mediaItemsCount - 1) {
-                    endMs -= mediaItem.getEndTransition().getAppDuration();
-                }
-            }
-
-            if (timeMs >= beginMs && timeMs <= endMs) {
-                if (timeMs - beginMs < endMs - timeMs) { // Closer to the beginning
-                    return prevMediaItem;
-                } else { // Closer to the end
-                    return mediaItem; // Insert after this item
-                }
-            }
-
-            beginMs = endMs;
-            prevMediaItem = mediaItem;
-        }
-
-        return null;
+        final int position = mTimelineIndex.getInsertAfterPosition(timeMs);
+        return position >= 0 ? mMediaItems.get(position) : null;
     }
 
     /**
@@ -763,6 +719,7 @@ public class VideoEditorProject {
             beforeMediaItem.setBeginTransition(transition);
         }
 
+        mTimelineIndex.invalidate(mMediaItems);
         mClean = false;
     }
 
@@ -787,6 +744,7 @@ public class VideoEditorProject {
             }
         }
 
+        mTimelineIndex.invalidate(mMediaItems);
         mClean = false;
     }
 
@@ -807,14 +765,14 @@ public class VideoEditorProject {
             return beginTransition;
         }
 
-        for (MovieMediaItem mediaItem : mMediaItems) {
-            final MovieTransition endTransition = mediaItem.getEndTransition();
-            if (endTransition != null && endTransition.getId().equals(transitionId)) {
-                return endTransition;
-            }
+        final int position = mTimelineIndex.indexOfTransition(transitionId);
+        if (position < 0) {
+            return null;
         }
 
-        return null;
+        final MovieTransition endTransition = mMediaItems.get(position).getEndTransition();
+        return endTransition != null && endTransition.getId().equals(transitionId) ?
+                endTransition : null;
     }
 
     /**
@@ -968,44 +926,28 @@ public class VideoEditorProject {
      * @return The begin time for this media item
      */
     public long getMediaItemBeginTime(String mediaItemId) {
-        long beginMs = 0;
-        final int mediaItemsCount = mMediaItems.size();
-        for (int i = 0; i < mediaItemsCount; i++) {
-            final MovieMediaItem mi = mMediaItems.get(i);
-            if (mi.getId().equals(mediaItemId)) {
-                break;
-            }
-
-            beginMs += mi.getAppTimelineDuration();
-
-            if (mi.getEndTransition() != null) {
-                if (i < mediaItemsCount - 1) {
-                    beginMs -= mi.getEndTransition().getAppDuration();
-                }
-            }
+        final int position = mTimelineIndex.indexOf(mediaItemId);
+        if (position < 0) {
+            return mTimelineIndex.getDuration();
         }
 
-        return beginMs;
+        return mTimelineIndex.getBeginTime(position);
+    }
+
+    /**
+     * @param position The media item position
+     *
+     * @return The begin time of the media item at the specified position
+     */
+    public long getMediaItemBeginTime(int position) {
+        return mTimelineIndex.getBeginTime(position);
     }
 
     /**
      * @return The total duration
      */
     public long computeDuration() {
-        long totalDurationMs = 0;
-        final int mediaItemsCount = mMediaItems.size();
-        for (int i = 0; i < mediaItemsCount; i++) {
-            final MovieMediaItem mediaItem = mMediaItems.get(i);
-            totalDurationMs += mediaItem.getAppTimelineDuration();
-
-            if (mediaItem.getEndTransition() != null) {
-                if (i < mediaItemsCount - 1) {
-                    totalDurationMs -= mediaItem.getEndTransition().getAppDuration();
-                }
-            }
-        }
-
-        return totalDurationMs;
+        return mTimelineIndex.getDuration();
     }
 
     /**
@@ -1165,6 +1107,84 @@ public class VideoEditorProject {
         return mDownloads;
     }
 
+    /**
+     * Open a project: load the video editor, parse the project metadata file
+     * and copy the media items and audio tracks of the video editor. The
+     * video editor files and the metadata file are each read once, but this
+     * is not a single pass: the movie media items and audio tracks are built
+     * from the video editor elements, not from the project files. The movie
+     * model keeps the edits the UI made before the video editor applies them,
+     * so it cannot share the video editor elements.
+     *
+     * @param projectPath The project path
+     *
+     * @return A new instance of the VideoEditorProject
+     */
+    static VideoEditorProject load(String projectPath)
+            throws XmlPullParserException, FileNotFoundException, IOException {
+        final VideoEditor videoEditor = VideoEditorFactory.load(projectPath, false);
+        boolean loaded = false;
+        try {
+            final VideoEditorProject videoProject = fromXml(videoEditor, projectPath);
+            videoProject.mMediaItems = copyMediaItems(videoEditor.getAllMediaItems());
+            videoProject.mTimelineIndex.invalidate(videoProject.mMediaItems);
+            videoProject.mAudioTracks = copyAudioTracks(videoEditor.getAllAudioTracks());
+            // The UI must be initialized from the loaded project
+            videoProject.mClean = false;
+            loaded = true;
+            return videoProject;
+        } finally {
+            if (!loaded) {
+                videoEditor.release();
+            }
+        }
+    }
+
+    /**
+     * Copy the media items
+     *
+     * @param mediaItems The media items
+     *
+     * @return The list of media items
+     */
+    static List<MovieMediaItem> copyMediaItems(List<MediaItem> mediaItems) {
+        final List<MovieMediaItem> movieMediaItems
+            = new ArrayList<MovieMediaItem>(mediaItems.size());
+        MovieMediaItem prevMediaItem = null;
+        for (MediaItem mediaItem : mediaItems) {
+            final MovieTransition prevTransition;
+            if (prevMediaItem != null) {
+                prevTransition = prevMediaItem.getEndTransition();
+            } else if (mediaItem.getBeginTransition() != null) {
+                prevTransition = new MovieTransition(mediaItem.getBeginTransition());
+            } else {
+                prevTransition = null;
+            }
+
+            final MovieMediaItem movieMediaItem = new MovieMediaItem(mediaItem, prevTransition);
+            movieMediaItems.add(movieMediaItem);
+            prevMediaItem = movieMediaItem;
+        }
+
+        return movieMediaItems;
+    }
+
+    /**
+     * Copy the audio tracks
+     *
+     * @param audioTracks The audio tracks
+     *
+     * @return The list of audio tracks
+     */
+    static List<MovieAudioTrack> copyAudioTracks(List<AudioTrack> audioTracks) {
+        final List<MovieAudioTrack> movieAudioTracks
+            = new ArrayList<MovieAudioTrack>(audioTracks.size());
+        for (AudioTrack audioTrack : audioTracks) {
+            movieAudioTracks.add(new MovieAudioTrack(audioTrack));
+        }
+        return movieAudioTracks;
+    }
+
     /**
      * Load metadata from file
      *
@@ -1191,6 +1211,7 @@ public class VideoEditorProject {
             long playheadPosMs = 0;
             long durationMs = 0;
             int zoomLevel = DEFAULT_ZOOM_LEVEL;
+            boolean proxyMode = false;
             while (eventType != XmlPullParser.END_DOCUMENT) {
                 String name = null;
                 switch (eventType) {
@@ -1206,6 +1227,8 @@ public class VideoEditorProject {
                                     ATTR_DURATION));
                             zoomLevel = Integer.parseInt(parser.getAttributeValue("",
                                     ATTR_ZOOM_LEVEL));
+                            proxyMode = Boolean.parseBoolean(parser.getAttributeValue("",
+                                    ATTR_PROXY_MODE));
                         } else if (name.equalsIgnoreCase(TAG_MOVIE)) {
                             exportedMovieUri = Uri.parse(parser.getAttributeValue("", ATTR_URI));
                         } else if (name.equalsIgnoreCase(TAG_DOWNLOAD)) {
@@ -1225,8 +1248,11 @@ public class VideoEditorProject {
                 eventType = parser.next();
             }
 
-            return new VideoEditorProject(videoEditor, projectPath, projectName, lastSaved,
-                    playheadPosMs, durationMs, zoomLevel, exportedMovieUri, themeId, downloads);
+            final VideoEditorProject project = new VideoEditorProject(videoEditor, projectPath,
+                    projectName, lastSaved, playheadPosMs, durationMs, zoomLevel,
+                    exportedMovieUri, themeId, downloads);
+            project.mProxyMode = proxyMode;
+            return project;
         } finally {
             if (fis != null) {
                 fis.close();
@@ -1252,8 +1278,12 @@ public class VideoEditorProject {
         }
 
         serializer.attribute("", ATTR_PLAYHEAD_POSITION, Long.toString(mPlayheadPosMs));
-        serializer.attribute("", ATTR_DURATION, Long.toString(computeDuration()));
+        final long durationMs = computeDuration();
+        serializer.attribute("", ATTR_DURATION, Long.toString(durationMs));
         serializer.attribute("", ATTR_ZOOM_LEVEL, Integer.toString(mZoomLevel));
+        if (mProxyMode) {
+            serializer.attribute("", ATTR_PROXY_MODE, Boolean.toString(mProxyMode));
+        }
 
         mLastSaved = System.currentTimeMillis();
         serializer.attribute("", ATTR_SAVED, Long.toString(mLastSaved));
@@ -1280,5 +1310,8 @@ public class VideoEditorProject {
         out.write(writer.toString().getBytes("UTF-8"));
         out.flush();
         out.close();
+
+        // Keep the project list in sync without parsing this file again
+        ProjectSummaryIndex.update(this, durationMs);
     }
 }
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.util;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * The global bitmap memory budget of the application. The bitmap caches and
+ * holders register with the manager, which trims them when the bitmaps they
+ * hold together exceed the budget or when the system is low on memory. Each
+ * client has a weight: under pressure, the clients holding the most memory
+ * relative to their weight are trimmed first. The clients are called on the
+ * UI thread, except by {@link #dump(PrintWriter)} which is a best effort
+ * report: a budget check requested by a worker thread runs later on the UI
+ * thread.
+ */
+public class BitmapMemoryManager implements ComponentCallbacks2 {
+    // Logging
+    private static final String TAG = "BitmapMemoryManager";
+
+    // The default budget is a fraction of the application heap
+    private static final int DEFAULT_BUDGET_HEAP_DIVIDER = 4;
+
+    /**
+     * A bitmap cache or holder
+     */
+    public interface Client {
+        /**
+         * @return The number of bytes of the bitmaps held by the client
+         */
+        public long getBitmapBytes();
+
+        /**
+         * Release bitmaps which are not in use
+         *
+         * @param bytes The number of bytes to release
+         *
+         * @return The number of bytes actually released
+         */
+        public long trimBitmapBytes(long bytes);
+    }
+
+    // The singleton
+    private static BitmapMemoryManager sInstance;
+
+    // Instance variables
+    private final List<Registration> mRegistrations = new ArrayList<Registration>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private long mBudget;
+    // True if a budget check is posted to the UI thread
+    private boolean mTrimPosted;
+
+    // The budget check requested by the worker threads
+    private final Runnable mTrimRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (BitmapMemoryManager.this) {
+                mTrimPosted = false;
+                trimTo(mBudget);
+            }
+        }
+    };
+
+    /**
+     * A registered client
+     */
+    private static class Registration {
+        private final String mName;
+        private final Client mClient;
+        private final int mWeight;
+        // The client usage, updated before each trim
+        private long mBytes;
+
+        private Registration(String name, Client client, int weight) {
+            mName = name;
+            mClient = client;
+            mWeight = weight;
+        }
+    }
+
+    /**
+     * @param context The context
+     *
+     * @return The bitmap memory manager
+     */
+    public static synchronized BitmapMemoryManager getInstance(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            final int memoryClass = ((ActivityManager)appContext.getSystemService(
+                    Context.ACTIVITY_SERVICE)).getMemoryClass();
+            sInstance = new BitmapMemoryManager(
+                    memoryClass * 1024L * 1024L / DEFAULT_BUDGET_HEAP_DIVIDER);
+            appContext.registerComponentCallbacks(sInstance);
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param budget The budget in bytes
+     */
+    private BitmapMemoryManager(long budget) {
+        mBudget = budget;
+    }
+
+    /**
+     * Set the number of bytes all the bitmaps may use together
+     *
+     * @param budget The budget in bytes
+     */
+    public synchronized void setBudget(long budget) {
+        mBudget = budget;
+        checkBudget();
+    }
+
+    /**
+     * @return The budget in bytes
+     */
+    public long getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * Register a client
+     *
+     * @param name The name used to report the client usage
+     * @param client The client
+     * @param weight The weight of the client, the share of the budget a
+     *      client keeps under pressure is proportional to its weight
+     */
+    public synchronized void register(String name, Client client, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Invalid weight: " + weight);
+        }
+
+        mRegistrations.add(new Registration(name, client, weight));
+    }
+
+    /**
+     * Unregister a client
+     *
+     * @param client The client
+     */
+    public synchronized void unregister(Client client) {
+        for (int i = 0; i < mRegistrations.size(); i++) {
+            if (mRegistrations.get(i).mClient == client) {
+                mRegistrations.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * A client allocated bitmaps, trim the clients if the budget is exceeded.
+     * This method may be called on any thread.
+     */
+    public synchronized void onBitmapsAdded() {
+        checkBudget();
+    }
+
+    /**
+     * @return The number of bytes of the bitmaps held by all the clients
+     */
+    public synchronized long getTotalBytes() {
+        long total = 0;
+        for (Registration registration : mRegistrations) {
+            total += registration.mClient.getBitmapBytes();
+        }
+
+        return total;
+    }
+
+    /**
+     * Print the usage of each client
+     *
+     * @param writer The writer
+     */
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Bitmap memory: " + getTotalBytes() / 1024 + " of "
+                + mBudget / 1024 + " KB");
+        for (Registration registration : mRegistrations) {
+            writer.println("  " + registration.mName + " (weight " + registration.mWeight
+                    + "): " + registration.mClient.getBitmapBytes() / 1024 + " KB");
+        }
+    }
+
+    @Override
+    public synchronized void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            trimTo(0);
+        } else if (level >= TRIM_MEMORY_MODERATE) {
+            trimTo(mBudget / 4);
+        } else if (level >= TRIM_MEMORY_BACKGROUND) {
+            trimTo(mBudget / 2);
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            trimTo(mBudget);
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimTo(mBudget / 4);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            trimTo(mBudget / 2);
+        } else {
+            trimTo(mBudget * 3 / 4);
+        }
+    }
+
+    @Override
+    public synchronized void onLowMemory() {
+        trimTo(0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Trim the clients to the budget now on the UI thread, or post a single
+     * trim to the UI thread from the other threads
+     */
+    private synchronized void checkBudget() {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            trimTo(mBudget);
+        } else if (!mTrimPosted) {
+            mTrimPosted = true;
+            mHandler.post(mTrimRunnable);
+        }
+    }
+
+    /**
+     * Trim the clients until their bitmaps fit in the specified number of
+     * bytes. The clients which exceed their weighted share of the target the
+     * most are trimmed first, then the others in the same order.
+     *
+     * @param target The target number of bytes
+     */
+    private synchronized void trimTo(long target) {
+        long total = 0;
+        int totalWeight = 0;
+        for (Registration registration : mRegistrations) {
+            registration.mBytes = registration.mClient.getBitmapBytes();
+            total += registration.mBytes;
+            totalWeight += registration.mWeight;
+        }
+
+        if (total <= target) {
+            return;
+        }
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Trimming bitmaps from " + total + " to " + target + " bytes");
+        }
+
+        final List<Registration> registrations = new ArrayList<Registration>(mRegistrations);
+        Collections.sort(registrations, new Comparator<Registration>() {
+            @Override
+            public int compare(Registration r1, Registration r2) {
+                // Highest usage per weight unit first
+                return Double.compare((double)r2.mBytes / r2.mWeight,
+                        (double)r1.mBytes / r1.mWeight);
+            }
+        });
+
+        // First bring the clients down to their share of the target
+        for (Registration registration : registrations) {
+            if (total <= target) {
+                return;
+            }
+
+            final long share = target * registration.mWeight / totalWeight;
+            final long excess = Math.min(registration.mBytes - share, total - target);
+            if (excess > 0) {
+                final long trimmed = registration.mClient.trimBitmapBytes(excess);
+                registration.mBytes -= trimmed;
+                total -= trimmed;
+            }
+        }
+
+        // Some clients could not release their excess, trim the others further
+        for (Registration registration : registrations) {
+            if (total <= target) {
+                return;
+            }
+
+            if (registration.mBytes > 0) {
+                total -= registration.mClient.trimBitmapBytes(
+                        Math.min(registration.mBytes, total - target));
+            }
+        }
+    }
+}
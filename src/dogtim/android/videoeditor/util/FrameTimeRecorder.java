@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.util;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.content.Context;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+/**
+ * Frame times of the timeline interactions. While an interaction (scrolling,
+ * playback or trimming) is in progress the recorder receives a Choreographer
+ * callback for every frame and records the time between frames in a
+ * histogram and the number of frames dropped. The histograms are kept per
+ * interaction, project size and zoom level; the sizes and levels are
+ * rounded up to a power of two so comparable runs share a histogram. No
+ * callback is registered when no interaction is in progress. The recorder is
+ * used on the UI thread, except by {@link #dump(PrintWriter)}.
+ */
+public class FrameTimeRecorder implements Choreographer.FrameCallback {
+    // The interactions
+    public static final String INTERACTION_SCROLL = "scroll";
+    public static final String INTERACTION_PLAYBACK = "playback";
+    public static final String INTERACTION_TRIM = "trim";
+
+    // Frames longer than this are counted in the last bucket
+    private static final int MAX_FRAME_MS = 250;
+    private static final long NS_PER_MS = 1000000;
+
+    // The singleton
+    private static FrameTimeRecorder sInstance;
+
+    // Instance variables
+    private final Map<String, FrameStats> mStats = new TreeMap<String, FrameStats>();
+    private final List<Interaction> mInteractions = new ArrayList<Interaction>();
+    private final long mFrameIntervalNs;
+    private boolean mCallbackPosted;
+    private long mLastFrameTimeNs;
+
+    /**
+     * An interaction in progress
+     */
+    private static class Interaction {
+        private final String mName;
+        private final FrameStats mStats;
+
+        private Interaction(String name, FrameStats stats) {
+            mName = name;
+            mStats = stats;
+        }
+    }
+
+    /**
+     * The frame times of an interaction for a project size and zoom level
+     */
+    private static class FrameStats {
+        private final int[] mCounts = new int[MAX_FRAME_MS + 1];
+        private long mInteractions;
+        private long mFrames;
+        private long mDroppedFrames;
+        private long mMaxNs;
+
+        /**
+         * @param percentile The percentile (0 - 100)
+         *
+         * @return The frame time in milliseconds at the percentile
+         */
+        private int getFrameMsAtPercentile(double percentile) {
+            final long target = Math.max(1, (long)Math.ceil(mFrames * percentile / 100));
+            long sum = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                sum += mCounts[i];
+                if (sum >= target) {
+                    return i;
+                }
+            }
+
+            return MAX_FRAME_MS;
+        }
+    }
+
+    /**
+     * @param context The context
+     *
+     * @return The frame time recorder
+     */
+    public static synchronized FrameTimeRecorder getInstance(Context context) {
+        if (sInstance == null) {
+            final float refreshRate = ((WindowManager)context.getApplicationContext()
+                    .getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay()
+                    .getRefreshRate();
+            sInstance = new FrameTimeRecorder(
+                    (long)(1000 * NS_PER_MS / (refreshRate > 0 ? refreshRate : 60)));
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param frameIntervalNs The display frame interval
+     */
+    private FrameTimeRecorder(long frameIntervalNs) {
+        mFrameIntervalNs = frameIntervalNs;
+    }
+
+    /**
+     * An interaction begins. Nothing is done if the interaction is already
+     * in progress.
+     *
+     * @param interaction The interaction
+     * @param mediaItemCount The number of media items of the project
+     * @param zoomLevel The zoom level of the timeline
+     */
+    public synchronized void begin(String interaction, int mediaItemCount, int zoomLevel) {
+        for (Interaction inProgress : mInteractions) {
+            if (inProgress.mName.equals(interaction)) {
+                return;
+            }
+        }
+
+        final String key = interaction + " items<=" + roundUp(mediaItemCount)
+                + " zoom<=" + roundUp(zoomLevel);
+        FrameStats stats = mStats.get(key);
+        if (stats == null) {
+            stats = new FrameStats();
+            mStats.put(key, stats);
+        }
+        stats.mInteractions++;
+        mInteractions.add(new Interaction(interaction, stats));
+
+        if (!mCallbackPosted) {
+            mCallbackPosted = true;
+            mLastFrameTimeNs = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * An interaction ends
+     *
+     * @param interaction The interaction
+     */
+    public synchronized void end(String interaction) {
+        for (int i = 0; i < mInteractions.size(); i++) {
+            if (mInteractions.get(i).mName.equals(interaction)) {
+                mInteractions.remove(i);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void doFrame(long frameTimeNanos) {
+        if (mInteractions.isEmpty()) {
+            // Stop receiving callbacks
+            mCallbackPosted = false;
+            return;
+        }
+
+        if (mLastFrameTimeNs != 0) {
+            final long durationNs = frameTimeNanos - mLastFrameTimeNs;
+            final int bucket = (int)Math.min(durationNs / NS_PER_MS, MAX_FRAME_MS);
+            // The frames which should have been drawn in the interval
+            final long droppedFrames =
+                    Math.max(0, (durationNs + mFrameIntervalNs / 2) / mFrameIntervalNs - 1);
+            for (Interaction interaction : mInteractions) {
+                final FrameStats stats = interaction.mStats;
+                stats.mCounts[bucket]++;
+                stats.mFrames++;
+                stats.mDroppedFrames += droppedFrames;
+                stats.mMaxNs = Math.max(stats.mMaxNs, durationNs);
+            }
+        }
+
+        mLastFrameTimeNs = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Print the frame times of each interaction, one line per interaction,
+     * project size and zoom level
+     *
+     * @param writer The writer
+     */
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Frame times (ms): interactions frames dropped p50 p90 p99 max, "
+                + "frame interval " + mFrameIntervalNs / 1000 + " us");
+        for (Map.Entry<String, FrameStats> entry : mStats.entrySet()) {
+            final FrameStats stats = entry.getValue();
+            writer.println("  " + entry.getKey() + ": " + stats.mInteractions + " "
+                    + stats.mFrames + " " + stats.mDroppedFrames + " "
+                    + stats.getFrameMsAtPercentile(50) + " "
+                    + stats.getFrameMsAtPercentile(90) + " "
+                    + stats.getFrameMsAtPercentile(99) + " " + stats.mMaxNs / NS_PER_MS);
+        }
+    }
+
+    /**
+     * Clear the frame times. The interactions in progress keep recording in
+     * their previous histograms.
+     */
+    public synchronized void reset() {
+        mStats.clear();
+    }
+
+    /**
+     * @param value The value
+     *
+     * @return The smallest power of two greater or equal to the value
+     */
+    private static int roundUp(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+}
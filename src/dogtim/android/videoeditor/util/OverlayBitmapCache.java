@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.util;
+
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.text.TextUtils;
+
+/**
+ * The rendered title overlay bitmaps. Themed projects add the same few title
+ * styles to many media items; the bitmap of an overlay type, title, subtitle
+ * and size is rendered once and the overlays receive copies of it, which is
+ * much cheaper than drawing the background and the text again. The least
+ * recently used bitmaps are released first.
+ */
+public class OverlayBitmapCache implements BitmapMemoryManager.Client {
+    // The maximum number of rendered bitmaps
+    private static final int MAX_ENTRIES = 8;
+
+    // The singleton
+    private static OverlayBitmapCache sInstance;
+
+    // Instance variables
+    private final Context mContext;
+    private final BitmapMemoryManager mBitmapMemoryManager;
+    private final LinkedHashMap<Key, Bitmap> mBitmaps =
+            new LinkedHashMap<Key, Bitmap>(MAX_ENTRIES, 0.75f, true);
+    private long mBytes;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * The contents of a rendered overlay
+     */
+    private static class Key {
+        private final int mType;
+        private final String mTitle;
+        private final String mSubtitle;
+        private final int mWidth;
+        private final int mHeight;
+
+        private Key(int type, String title, String subtitle, int width, int height) {
+            mType = type;
+            mTitle = title;
+            mSubtitle = subtitle;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+
+            final Key key = (Key)object;
+            return mType == key.mType && mWidth == key.mWidth && mHeight == key.mHeight
+                    && TextUtils.equals(mTitle, key.mTitle)
+                    && TextUtils.equals(mSubtitle, key.mSubtitle);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = mType;
+            hash = 31 * hash + (mTitle != null ? mTitle.hashCode() : 0);
+            hash = 31 * hash + (mSubtitle != null ? mSubtitle.hashCode() : 0);
+            hash = 31 * hash + mWidth;
+            return 31 * hash + mHeight;
+        }
+    }
+
+    /**
+     * @param context The context
+     *
+     * @return The overlay bitmap cache
+     */
+    public static synchronized OverlayBitmapCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new OverlayBitmapCache(context.getApplicationContext());
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param context The application context
+     */
+    private OverlayBitmapCache(Context context) {
+        mContext = context;
+        mBitmapMemoryManager = BitmapMemoryManager.getInstance(context);
+        mBitmapMemoryManager.register("Overlay bitmaps", this, 1);
+    }
+
+    /**
+     * Get an overlay bitmap, rendering it if it is not cached
+     *
+     * @param overlayType The overlay type
+     * @param title The title
+     * @param subTitle The subtitle
+     * @param width The width
+     * @param height The height
+     *
+     * @return A copy of the rendered bitmap, owned by the caller
+     */
+    public Bitmap getOverlayBitmap(int overlayType, String title, String subTitle, int width,
+            int height) {
+        final Key key = new Key(overlayType, title, subTitle, width, height);
+        synchronized (this) {
+            final Bitmap bitmap = mBitmaps.get(key);
+            if (bitmap != null) {
+                mHits++;
+                return bitmap.copy(bitmap.getConfig(), true);
+            }
+            mMisses++;
+        }
+
+        final Bitmap bitmap = ImageUtils.buildOverlayBitmap(mContext, null, overlayType, title,
+                subTitle, width, height);
+        final Bitmap copy = bitmap.copy(bitmap.getConfig(), true);
+        synchronized (this) {
+            final Bitmap previous = mBitmaps.put(key, bitmap);
+            if (previous != null) {
+                // Rendered concurrently
+                mBytes -= previous.getByteCount();
+                previous.recycle();
+            }
+            mBytes += bitmap.getByteCount();
+
+            final Iterator<Bitmap> it = mBitmaps.values().iterator();
+            while (mBitmaps.size() > MAX_ENTRIES && it.hasNext()) {
+                final Bitmap evicted = it.next();
+                it.remove();
+                mBytes -= evicted.getByteCount();
+                evicted.recycle();
+            }
+        }
+        mBitmapMemoryManager.onBitmapsAdded();
+
+        return copy;
+    }
+
+    /**
+     * Print the cache usage
+     *
+     * @param writer The writer
+     */
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Overlay bitmaps: " + mBitmaps.size() + " bitmaps, " + mBytes / 1024
+                + " KB, " + mHits + " hits, " + mMisses + " misses");
+    }
+
+    @Override
+    public synchronized long getBitmapBytes() {
+        return mBytes;
+    }
+
+    @Override
+    public synchronized long trimBitmapBytes(long bytes) {
+        long released = 0;
+        final Iterator<Map.Entry<Key, Bitmap>> it = mBitmaps.entrySet().iterator();
+        while (released < bytes && it.hasNext()) {
+            final Bitmap bitmap = it.next().getValue();
+            it.remove();
+            released += bitmap.getByteCount();
+            bitmap.recycle();
+        }
+
+        mBytes -= released;
+        return released;
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The timeline thumbnails of all the media items. The thumbnails of each
+ * media item are indexed by an int slot made of their level and frame index,
+ * so a visible range is read without hashing and the thumbnails of one media
+ * item are released without scanning the others. All the thumbnails are also
+ * linked in least recently used order for the eviction. The size of a
+ * thumbnail is computed by {@link #sizeOf(Object)}.
+ *
+ * @param <T> The thumbnail type
+ */
+public abstract class ThumbnailCache<T> {
+    // The bits of the frame index in a slot, the level is in the higher bits
+    private static final int INDEX_BITS = 24;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+
+    // Instance variables
+    private final HashMap<String, Slots<T>> mMediaItems = new HashMap<String, Slots<T>>();
+    // The least recently used entry is mHead.mNext, the most recently used
+    // is mHead.mPrevious
+    private final Entry<T> mHead = new Entry<T>(null, 0, null);
+    private final long mMaxSize;
+    private long mSize;
+    private long mHitCount, mMissCount, mEvictionCount;
+
+    /**
+     * A cached thumbnail
+     */
+    private static class Entry<T> {
+        private final String mMediaItemId;
+        private final int mSlot;
+        private T mThumbnail;
+        private Entry<T> mPrevious, mNext;
+
+        private Entry(String mediaItemId, int slot, T thumbnail) {
+            mMediaItemId = mediaItemId;
+            mSlot = slot;
+            mThumbnail = thumbnail;
+            mPrevious = this;
+            mNext = this;
+        }
+    }
+
+    /**
+     * The entries of a media item sorted by slot
+     */
+    private static class Slots<T> {
+        private int[] mKeys = new int[8];
+        private Entry<T>[] mEntries = newEntries(8);
+        private int mSize;
+
+        @SuppressWarnings("unchecked")
+        private static <T> Entry<T>[] newEntries(int size) {
+            return new Entry[size];
+        }
+
+        /**
+         * @param slot The slot
+         *
+         * @return The position of the first entry with a slot greater or
+         *      equal to the specified slot
+         */
+        private int findFirst(int slot) {
+            int low = 0;
+            int high = mSize;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (mKeys[middle] < slot) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        private Entry<T> get(int slot) {
+            final int position = findFirst(slot);
+            return position < mSize && mKeys[position] == slot ? mEntries[position] : null;
+        }
+
+        private void put(int slot, Entry<T> entry) {
+            final int position = findFirst(slot);
+            if (position < mSize && mKeys[position] == slot) {
+                mEntries[position] = entry;
+                return;
+            }
+
+            if (mSize == mKeys.length) {
+                mKeys = Arrays.copyOf(mKeys, mSize * 2);
+                mEntries = Arrays.copyOf(mEntries, mSize * 2);
+            }
+            System.arraycopy(mKeys, position, mKeys, position + 1, mSize - position);
+            System.arraycopy(mEntries, position, mEntries, position + 1, mSize - position);
+            mKeys[position] = slot;
+            mEntries[position] = entry;
+            mSize++;
+        }
+
+        private void remove(int slot) {
+            final int position = findFirst(slot);
+            if (position < mSize && mKeys[position] == slot) {
+                System.arraycopy(mKeys, position + 1, mKeys, position, mSize - position - 1);
+                System.arraycopy(mEntries, position + 1, mEntries, position,
+                        mSize - position - 1);
+                mSize--;
+                mEntries[mSize] = null;
+            }
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxSize The maximum size of the thumbnails
+     */
+    public ThumbnailCache(long maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @param thumbnail The thumbnail
+     *
+     * @return The size of the thumbnail, in the unit of the maximum size
+     */
+    protected abstract long sizeOf(T thumbnail);
+
+    /**
+     * Add a thumbnail, evicting the least recently used thumbnails if needed
+     *
+     * @param mediaItemId The media item id
+     * @param level The level of detail
+     * @param index The frame index
+     * @param thumbnail The thumbnail
+     */
+    public synchronized void put(String mediaItemId, int level, int index, T thumbnail) {
+        Slots<T> entries = mMediaItems.get(mediaItemId);
+        if (entries == null) {
+            entries = new Slots<T>();
+            mMediaItems.put(mediaItemId, entries);
+        }
+
+        final int slot = getSlot(level, index);
+        Entry<T> entry = entries.get(slot);
+        if (entry != null) {
+            mSize -= sizeOf(entry.mThumbnail);
+            entry.mThumbnail = thumbnail;
+            unlink(entry);
+        } else {
+            entry = new Entry<T>(mediaItemId, slot, thumbnail);
+            entries.put(slot, entry);
+        }
+        mSize += sizeOf(thumbnail);
+        linkLast(entry);
+
+        while (mSize > mMaxSize && mHead.mNext != entry) {
+            remove(mHead.mNext);
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * @param mediaItemId The media item id
+     * @param level The level of detail
+     * @param index The frame index
+     *
+     * @return The thumbnail, null if it is not cached
+     */
+    public synchronized T get(String mediaItemId, int level, int index) {
+        final Slots<T> entries = mMediaItems.get(mediaItemId);
+        final Entry<T> entry = entries != null ? entries.get(getSlot(level, index)) : null;
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+
+        mHitCount++;
+        touch(entry);
+        return entry.mThumbnail;
+    }
+
+    /**
+     * Get the thumbnails of consecutive frames of one level
+     *
+     * @param mediaItemId The media item id
+     * @param level The level of detail
+     * @param firstIndex The index of the first frame
+     * @param count The number of frames
+     * @param thumbnails Filled with the thumbnails from position 0, null for
+     *      the frames which are not cached
+     */
+    public synchronized void getRange(String mediaItemId, int level, int firstIndex, int count,
+            T[] thumbnails) {
+        Arrays.fill(thumbnails, 0, count, null);
+
+        final Slots<T> entries = mMediaItems.get(mediaItemId);
+        int hits = 0;
+        if (entries != null) {
+            // The slots are sorted, walk them from the first frame
+            final int firstSlot = getSlot(level, firstIndex);
+            final int lastSlot = firstSlot + count - 1;
+            for (int i = entries.findFirst(firstSlot); i < entries.mSize; i++) {
+                final int slot = entries.mKeys[i];
+                if (slot > lastSlot) {
+                    break;
+                }
+
+                final Entry<T> entry = entries.mEntries[i];
+                thumbnails[slot - firstSlot] = entry.mThumbnail;
+                touch(entry);
+                hits++;
+            }
+        }
+
+        mHitCount += hits;
+        mMissCount += count - hits;
+    }
+
+    /**
+     * Release the thumbnails of a media item
+     *
+     * @param mediaItemId The media item id
+     */
+    public synchronized void clearForMediaItemId(String mediaItemId) {
+        final Slots<T> entries = mMediaItems.remove(mediaItemId);
+        if (entries != null) {
+            for (int i = 0; i < entries.mSize; i++) {
+                final Entry<T> entry = entries.mEntries[i];
+                unlink(entry);
+                mSize -= sizeOf(entry.mThumbnail);
+            }
+        }
+    }
+
+    /**
+     * Release the least recently used thumbnails
+     *
+     * @param size The size to release
+     *
+     * @return The size actually released
+     */
+    public synchronized long trim(long size) {
+        long trimmed = 0;
+        while (trimmed < size && mHead.mNext != mHead) {
+            final Entry<T> entry = mHead.mNext;
+            trimmed += sizeOf(entry.mThumbnail);
+            remove(entry);
+            mEvictionCount++;
+        }
+
+        return trimmed;
+    }
+
+    /**
+     * @return The size of the cached thumbnails
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return The number of lookups which found a thumbnail
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return The number of lookups which did not find a thumbnail
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return The number of thumbnails evicted to stay within the size or
+     *      trimmed
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final long lookups = mHitCount + mMissCount;
+        return "ThumbnailCache[size=" + mSize + ",maxSize=" + mMaxSize
+                + ",hits=" + mHitCount + ",misses=" + mMissCount
+                + ",evictions=" + mEvictionCount
+                + ",hitRate=" + (lookups != 0 ? (100 * mHitCount / lookups) : 0) + "%]";
+    }
+
+    /**
+     * @param level The level of detail
+     * @param index The frame index
+     *
+     * @return The slot of the frame
+     */
+    private static int getSlot(int level, int index) {
+        return (level << INDEX_BITS) | (index & INDEX_MASK);
+    }
+
+    /**
+     * Remove an entry from the cache
+     *
+     * @param entry The entry
+     */
+    private void remove(Entry<T> entry) {
+        unlink(entry);
+        mSize -= sizeOf(entry.mThumbnail);
+
+        final Slots<T> entries = mMediaItems.get(entry.mMediaItemId);
+        entries.remove(entry.mSlot);
+        if (entries.mSize == 0) {
+            mMediaItems.remove(entry.mMediaItemId);
+        }
+    }
+
+    /**
+     * Mark an entry as the most recently used
+     *
+     * @param entry The entry
+     */
+    private void touch(Entry<T> entry) {
+        unlink(entry);
+        linkLast(entry);
+    }
+
+    private void unlink(Entry<T> entry) {
+        entry.mPrevious.mNext = entry.mNext;
+        entry.mNext.mPrevious = entry.mPrevious;
+        entry.mPrevious = entry;
+        entry.mNext = entry;
+    }
+
+    private void linkLast(Entry<T> entry) {
+        entry.mPrevious = mHead.mPrevious;
+        entry.mNext = mHead;
+        mHead.mPrevious.mNext = entry;
+        mHead.mPrevious = entry;
+    }
+}
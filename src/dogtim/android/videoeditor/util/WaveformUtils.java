@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.util;
+
+/**
+ * Audio waveform utilities
+ */
+public class WaveformUtils {
+    /**
+     * It is not possible to instantiate this type
+     */
+    private WaveformUtils() {
+    }
+
+    /**
+     * Smooth the frame gains of a waveform and scale them to the specified
+     * height. The lowest 5% and the highest 1% of the gains are clipped.
+     *
+     * @param frameGains The frame gains
+     * @param numFrames The number of frames
+     * @param capacity The minimum length of the returned array
+     * @param halfHeight The height of the highest gain
+     *
+     * @return The normalized heights, one per frame
+     */
+    public static float[] normalizeGains(short[] frameGains, int numFrames, int capacity,
+            int halfHeight) {
+        final double[] smoothedGains = new double[numFrames];
+
+        if (numFrames == 1) {
+            smoothedGains[0] = frameGains[0];
+        } else if (numFrames == 2) {
+            smoothedGains[0] = frameGains[0];
+            smoothedGains[1] = frameGains[1];
+        } else if (numFrames > 2) {
+            smoothedGains[0] = (frameGains[0] / 2.0) + (frameGains[1] / 2.0);
+            for (int i = 1; i < numFrames - 1; i++) {
+                smoothedGains[i] =
+                    (frameGains[i - 1] / 3.0) + (frameGains[i] / 3.0) + (frameGains[i + 1] / 3.0);
+            }
+            smoothedGains[numFrames - 1] = (frameGains[numFrames - 2] / 2.0) +
+                (frameGains[numFrames - 1] / 2.0);
+        }
+
+        // Make sure the range is no more than 0 - 255
+        double maxGain = 1.0;
+        for (int i = 0; i < numFrames; i++) {
+            if (smoothedGains[i] > maxGain) {
+                maxGain = smoothedGains[i];
+            }
+        }
+
+        double scaleFactor = 1.0;
+        if (maxGain > 255.0) {
+            scaleFactor = 255 / maxGain;
+        }
+
+        // Build histogram of 256 bins and figure out the new scaled max
+        maxGain = 0;
+        final int gainHist[] = new int[256];
+        for (int i = 0; i < numFrames; i++) {
+            int smoothedGain = (int)(smoothedGains[i] * scaleFactor);
+            if (smoothedGain < 0) {
+                smoothedGain = 0;
+            }
+            if (smoothedGain > 255) {
+                smoothedGain = 255;
+            }
+
+            if (smoothedGain > maxGain) {
+                maxGain = smoothedGain;
+            }
+
+            gainHist[smoothedGain]++;
+        }
+
+        // Re-calibrate the minimum to be 5%
+        double minGain = 0;
+        int sum = 0;
+        while (minGain < 255 && sum < numFrames / 20) {
+            sum += gainHist[(int)minGain];
+            minGain++;
+        }
+
+        // Re-calibrate the max to be 99%
+        sum = 0;
+        while (maxGain > 2 && sum < numFrames / 100) {
+            sum += gainHist[(int)maxGain];
+            maxGain--;
+        }
+
+        // Compute the normalized heights
+        final float[] normalizedGains = new float[Math.max(capacity, numFrames)];
+        final double range = maxGain - minGain;
+        for (int i = 0; i < numFrames; i++) {
+            double value = (smoothedGains[i] * scaleFactor - minGain) / range;
+            if (value < 0.0) {
+                value = 0.0;
+            }
+
+            if (value > 1.0) {
+                value = 1.0;
+            }
+
+            normalizedGains[i] = (float)(value * value * halfHeight);
+        }
+
+        return normalizedGains;
+    }
+}
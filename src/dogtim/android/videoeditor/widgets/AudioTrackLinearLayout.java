@@ -16,7 +16,12 @@
 
 package dogtim.android.videoeditor.widgets;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import android.app.Activity;
 import android.app.Dialog;
@@ -60,6 +65,17 @@ public class AudioTrackLinearLayout extends LinearLayout {
     private final int mHalfParentWidth;
     private final View mAddAudioTrackButtonView;
     private final int mAddAudioTrackButtonWidth;
+    private final View mBeginView, mEndView;
+    // Only the audio tracks in the window around the visible part of the
+    // timeline have a view, recycled through a pool
+    private final TimelineWindow mWindow;
+    private final Map<String, AudioTrackView> mAudioTrackViews =
+            new HashMap<String, AudioTrackView>();
+    private final HashSet<String> mWindowAudioTrackIds = new HashSet<String>();
+    private final ArrayList<AudioTrackView> mAudioTrackViewPool = new ArrayList<AudioTrackView>();
+    // The progress of the audio tracks being processed, applied to their
+    // views when they enter the window
+    private final Map<String, Integer> mProgress = new HashMap<String, Integer>();
     private AudioTracksLayoutListener mListener;
     private ActionMode mAudioTrackActionMode;
     private VideoEditorProject mProject;
@@ -207,24 +223,24 @@ public class AudioTrackLinearLayout extends LinearLayout {
         };
 
         // Add the beginning timeline item
-        final View beginView = inflate(getContext(), R.layout.empty_timeline_item, null);
-        beginView.setOnClickListener(new View.OnClickListener() {
+        mBeginView = inflate(getContext(), R.layout.empty_timeline_item, null);
+        mBeginView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
                 unselectAllViews();
             }
         });
-        addView(beginView);
+        addView(mBeginView);
 
         // Add the end timeline item
-        final View endView = inflate(context, R.layout.empty_timeline_item, null);
-        endView.setOnClickListener(new View.OnClickListener() {
+        mEndView = inflate(context, R.layout.empty_timeline_item, null);
+        mEndView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
                 unselectAllViews();
             }
         });
-        addView(endView);
+        addView(mEndView);
 
         // Add the audio track button
         mAddAudioTrackButtonView = inflate(getContext(), R.layout.add_audio_track_button, null);
@@ -244,6 +260,13 @@ public class AudioTrackLinearLayout extends LinearLayout {
         final Display display = ((Activity)context).getWindowManager().getDefaultDisplay();
         mHalfParentWidth = display.getWidth() / 2;
 
+        mWindow = new TimelineWindow(this, 2 * mHalfParentWidth, new Runnable() {
+            @Override
+            public void run() {
+                updateWindow();
+            }
+        });
+
         // Get the layout height
         mAudioTrackHeight = (int)context.getResources().getDimension(R.dimen.audio_layout_height);
 
@@ -262,18 +285,12 @@ public class AudioTrackLinearLayout extends LinearLayout {
      * The activity was resumed
      */
     public void onResume() {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final Object tag = childView.getTag();
-            if (tag != null) { // This view represents an audio track
-                final AudioTrackView audioTrackView = (AudioTrackView)childView;
-                if (audioTrackView.getWaveformData() == null) {
-                    final MovieAudioTrack audioTrack = (MovieAudioTrack)tag;
-                    if (audioTrack.getWaveformData() != null) {
-                        audioTrackView.setWaveformData(audioTrack.getWaveformData());
-                        audioTrackView.invalidate();
-                    }
+        for (AudioTrackView audioTrackView : mAudioTrackViews.values()) {
+            if (audioTrackView.getWaveformData() == null) {
+                final MovieAudioTrack audioTrack = (MovieAudioTrack)audioTrackView.getTag();
+                if (audioTrack.getWaveformData() != null) {
+                    audioTrackView.setWaveformData(audioTrack.getWaveformData());
+                    audioTrackView.invalidate();
                 }
             }
         }
@@ -334,71 +351,40 @@ public class AudioTrackLinearLayout extends LinearLayout {
 
         mTimelineDurationMs = mProject.computeDuration();
 
-        for (MovieAudioTrack audioTrack : audioTracks) {
-            addAudioTrack(audioTrack);
-        }
+        updateWindow();
+        requestLayout();
     }
 
     /**
      * Add a new audio track
      *
      * @param audioTrack The audio track
-     *
-     * @return The view that was added
      */
-    public View addAudioTrack(MovieAudioTrack audioTrack) {
+    public void addAudioTrack(MovieAudioTrack audioTrack) {
         updateAddAudioTrackButton();
 
-        final AudioTrackView audioTrackView = (AudioTrackView)inflate(getContext(),
-                R.layout.audio_track_item, null);
-
-        audioTrackView.setTag(audioTrack);
-
-        audioTrackView.setGestureListener(mAudioTrackGestureListener);
-
-        audioTrackView.updateTimelineDuration(mTimelineDurationMs);
-
-        if (audioTrack.getWaveformData() != null) {
-            audioTrackView.setWaveformData(audioTrack.getWaveformData());
-        } else {
-            ApiService.extractAudioTrackAudioWaveform(getContext(), mProject.getPath(),
-                    audioTrack.getId());
-        }
-
-        final LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
-                LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.FILL_PARENT);
-        addView(audioTrackView, getChildCount() - 1, lp);
+        updateWindow();
 
         if (mAudioTrackActionMode != null) {
             mAudioTrackActionMode.invalidate();
         }
 
         requestLayout();
-        return audioTrackView;
     }
 
     /**
      * Remove an audio track
      *
      * @param audioTrackId The audio track id
-     * @return The view which was removed
      */
-    public View removeAudioTrack(String audioTrackId) {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final MovieAudioTrack audioTrack = (MovieAudioTrack)childView.getTag();
-            if (audioTrack != null && audioTrack.getId().equals(audioTrackId)) {
-                removeViewAt(i);
+    public void removeAudioTrack(String audioTrackId) {
+        mProgress.remove(audioTrackId);
 
-                updateAddAudioTrackButton();
+        updateWindow();
 
-                requestLayout();
-                return childView;
-            }
-        }
+        updateAddAudioTrackButton();
 
-        return null;
+        requestLayout();
     }
 
     /**
@@ -407,12 +393,14 @@ public class AudioTrackLinearLayout extends LinearLayout {
      * @param audioTrackId The audio track id
      */
     public void updateAudioTrack(String audioTrackId) {
-        final AudioTrackView audioTrackView = (AudioTrackView)getAudioTrackView(audioTrackId);
-        if (audioTrackView == null) {
-            Log.e(TAG, "updateAudioTrack: audio track view not found: " + audioTrackId);
+        if (mProject.getAudioTrack(audioTrackId) == null) {
+            Log.e(TAG, "updateAudioTrack: audio track not found: " + audioTrackId);
             return;
         }
 
+        // The audio track may have moved in or out of the window
+        updateWindow();
+
         if (mAudioTrackActionMode != null) {
             mAudioTrackActionMode.invalidate();
         }
@@ -429,13 +417,7 @@ public class AudioTrackLinearLayout extends LinearLayout {
      * @param progress The progress
      */
     public void onGeneratePreviewProgress(String audioTrackId, int action, int progress) {
-        final AudioTrackView audioTrackView = (AudioTrackView)getAudioTrackView(audioTrackId);
-        if (audioTrackView == null) {
-            Log.e(TAG, "onGeneratePreviewProgress: audio track view not found: " + audioTrackId);
-            return;
-        }
-
-        audioTrackView.setProgress(progress);
+        setProgress("onGeneratePreviewProgress", audioTrackId, progress);
     }
 
     /**
@@ -445,14 +427,7 @@ public class AudioTrackLinearLayout extends LinearLayout {
      * @param progress The progress
      */
     public void setWaveformExtractionProgress(String audioTrackId, int progress) {
-        final AudioTrackView audioTrackView = (AudioTrackView)getAudioTrackView(audioTrackId);
-        if (audioTrackView == null) {
-            Log.e(TAG, "setWaveformExtractionProgress: audio track view not found: "
-                    + audioTrackId);
-            return;
-        }
-
-        audioTrackView.setProgress(progress);
+        setProgress("setWaveformExtractionProgress", audioTrackId, progress);
     }
 
     /**
@@ -461,14 +436,16 @@ public class AudioTrackLinearLayout extends LinearLayout {
      * @param audioTrackId The audio track id
      */
     public void setWaveformExtractionComplete(String audioTrackId) {
-        final AudioTrackView audioTrackView = (AudioTrackView)getAudioTrackView(audioTrackId);
-        if (audioTrackView == null) {
-            Log.e(TAG, "setWaveformExtractionComplete: audio track view not found: "
-                    + audioTrackId);
+        if (!setProgress("setWaveformExtractionComplete", audioTrackId, -1)) {
             return;
         }
 
-        audioTrackView.setProgress(-1);
+        // The waveform of an audio track outside of the window is set when
+        // the audio track enters the window
+        final AudioTrackView audioTrackView = mAudioTrackViews.get(audioTrackId);
+        if (audioTrackView == null) {
+            return;
+        }
 
         final MovieAudioTrack audioTrack = (MovieAudioTrack)audioTrackView.getTag();
         if (audioTrack.getWaveformData() != null) {
@@ -479,6 +456,35 @@ public class AudioTrackLinearLayout extends LinearLayout {
         invalidate();
     }
 
+    /**
+     * Set the processing progress of an audio track
+     *
+     * @param caller The name of the caller, for logging
+     * @param audioTrackId The audio track id
+     * @param progress The progress, -1 when the processing is complete
+     *
+     * @return false if the audio track is not found
+     */
+    private boolean setProgress(String caller, String audioTrackId, int progress) {
+        if (mProject.getAudioTrack(audioTrackId) == null) {
+            Log.e(TAG, caller + ": audio track not found: " + audioTrackId);
+            return false;
+        }
+
+        if (progress < 0) {
+            mProgress.remove(audioTrackId);
+        } else {
+            mProgress.put(audioTrackId, progress);
+        }
+
+        final AudioTrackView audioTrackView = mAudioTrackViews.get(audioTrackId);
+        if (audioTrackView != null) {
+            audioTrackView.setProgress(progress);
+        }
+
+        return true;
+    }
+
     /**
      * The timeline duration has changed. Refresh the view.
      */
@@ -489,81 +495,206 @@ public class AudioTrackLinearLayout extends LinearLayout {
         updateAddAudioTrackButton();
 
         // Update the project duration for all views
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final MovieAudioTrack audioTrack = (MovieAudioTrack)childView.getTag();
-            if (audioTrack != null) {
-                ((AudioTrackView)childView).updateTimelineDuration(mTimelineDurationMs);
-            }
+        for (AudioTrackView audioTrackView : mAudioTrackViews.values()) {
+            audioTrackView.updateTimelineDuration(mTimelineDurationMs);
         }
 
+        updateWindow();
         requestLayout();
         invalidate();
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mWindow.setScrollView((View)getParent().getParent());
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mWindow.setScrollView(null);
+    }
+
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        final int childrenCount = getChildCount();
-        if (mTimelineDurationMs == 0) {
-            int left = 0;
-            for (int i = 0; i < childrenCount; i++) {
-                final View childView = getChildAt(i);
-                final MovieAudioTrack audioTrack = (MovieAudioTrack)childView.getTag();
-                if (audioTrack != null) {
-                    // Audio tracks are not visible
-                    childView.layout(left, 0, left, mAudioTrackHeight);
-                } else { // Beginning and end views
-                    childView.layout(left, 0, left + mHalfParentWidth, mAudioTrackHeight);
-                    left += mHalfParentWidth;
-                }
+        if (mTimelineDurationMs == 0 || mProject == null) {
+            // Audio tracks are not visible
+            mBeginView.layout(0, 0, mHalfParentWidth, mAudioTrackHeight);
+            mAddAudioTrackButtonView.layout(mHalfParentWidth, 0, 2 * mHalfParentWidth,
+                    mAudioTrackHeight);
+            for (AudioTrackView audioTrackView : mAudioTrackViews.values()) {
+                audioTrackView.layout(2 * mHalfParentWidth, 0, 2 * mHalfParentWidth,
+                        mAudioTrackHeight);
             }
+            mEndView.layout(2 * mHalfParentWidth, 0, 3 * mHalfParentWidth, mAudioTrackHeight);
         } else {
             final int viewWidth = getWidth() - (2 * mHalfParentWidth);
-            int left = 0;
-
-            final int leftViewWidth = (Integer)((View)getParent().getParent()).getTag(
-                    R.id.left_view_width);
-
-            for (int i = 0; i < childrenCount; i++) {
-                final View childView = getChildAt(i);
-                final int id = childView.getId();
-                final MovieAudioTrack audioTrack = (MovieAudioTrack)childView.getTag();
-                if (audioTrack != null) { // Audio track views
-                    final int width;
-                    if (audioTrack.isAppLooping()) {
-                        width = (int)((mTimelineDurationMs -
-                                audioTrack.getAppStartTime()) * viewWidth / mTimelineDurationMs);
-                    } else {
-                        if (audioTrack.getAppStartTime() + audioTrack.getTimelineDuration() >
-                                mTimelineDurationMs) {
-                            width = (int)((mTimelineDurationMs -
-                                audioTrack.getAppStartTime()) * viewWidth / mTimelineDurationMs);
-                        } else {
-                            width = (int)(audioTrack.getTimelineDuration() * viewWidth /
-                                    mTimelineDurationMs);
-                        }
-                    }
+            final int leftViewWidth = getLeftViewWidth();
 
-                    final int trackLeft =
-                        (int)((audioTrack.getAppStartTime() * viewWidth) / mTimelineDurationMs) +
-                            leftViewWidth;
-                    childView.layout(trackLeft, 0, trackLeft + width, mAudioTrackHeight);
-                    left = trackLeft + width;
-                } else if (id == R.id.add_audio_track_button) {
-                    if (childView.getVisibility() == View.VISIBLE) {
-                        childView.layout(left, 0, left + mAddAudioTrackButtonWidth,
-                                mAudioTrackHeight);
-                        left += mAddAudioTrackButtonWidth;
-                    }
-                } else if (i == 0) { // Begin view
-                    childView.layout(left, 0, left + leftViewWidth, mAudioTrackHeight);
-                    left += leftViewWidth;
-                } else { // End view
-                    childView.layout(left, 0, getWidth(), mAudioTrackHeight);
+            // Begin view
+            mBeginView.layout(0, 0, leftViewWidth, mAudioTrackHeight);
+            int left = leftViewWidth;
+
+            if (mAddAudioTrackButtonView.getVisibility() == View.VISIBLE) {
+                mAddAudioTrackButtonView.layout(left, 0, left + mAddAudioTrackButtonWidth,
+                        mAudioTrackHeight);
+                left += mAddAudioTrackButtonWidth;
+            }
+
+            // Only the audio tracks in the window have a view
+            for (AudioTrackView audioTrackView : mAudioTrackViews.values()) {
+                final MovieAudioTrack audioTrack = (MovieAudioTrack)audioTrackView.getTag();
+                final int trackLeft = getAudioTrackLeft(audioTrack, viewWidth, leftViewWidth);
+                audioTrackView.layout(trackLeft, 0,
+                        trackLeft + getAudioTrackWidth(audioTrack, viewWidth), mAudioTrackHeight);
+            }
+
+            // The end view follows the last audio track
+            final List<MovieAudioTrack> audioTracks = mProject.getAudioTracks();
+            if (!audioTracks.isEmpty()) {
+                final MovieAudioTrack lastAudioTrack = audioTracks.get(audioTracks.size() - 1);
+                left = getAudioTrackLeft(lastAudioTrack, viewWidth, leftViewWidth)
+                        + getAudioTrackWidth(lastAudioTrack, viewWidth);
+            }
+            mEndView.layout(left, 0, getWidth(), mAudioTrackHeight);
+        }
+
+        // The children cannot be replaced during the layout
+        mWindow.postUpdate();
+    }
+
+    /**
+     * @return The width of the begin view
+     */
+    private int getLeftViewWidth() {
+        return (Integer)((View)getParent().getParent()).getTag(R.id.left_view_width);
+    }
+
+    /**
+     * @param audioTrack The audio track
+     * @param viewWidth The width of the timeline
+     * @param leftViewWidth The width of the begin view
+     *
+     * @return The left edge of the audio track view
+     */
+    private int getAudioTrackLeft(MovieAudioTrack audioTrack, int viewWidth, int leftViewWidth) {
+        return (int)((audioTrack.getAppStartTime() * viewWidth) / mTimelineDurationMs) +
+                leftViewWidth;
+    }
+
+    /**
+     * @param audioTrack The audio track
+     * @param viewWidth The width of the timeline
+     *
+     * @return The width of the audio track view
+     */
+    private int getAudioTrackWidth(MovieAudioTrack audioTrack, int viewWidth) {
+        if (audioTrack.isAppLooping()) {
+            return (int)((mTimelineDurationMs -
+                    audioTrack.getAppStartTime()) * viewWidth / mTimelineDurationMs);
+        } else if (audioTrack.getAppStartTime() + audioTrack.getTimelineDuration() >
+                mTimelineDurationMs) {
+            return (int)((mTimelineDurationMs -
+                    audioTrack.getAppStartTime()) * viewWidth / mTimelineDurationMs);
+        } else {
+            return (int)(audioTrack.getTimelineDuration() * viewWidth / mTimelineDurationMs);
+        }
+    }
+
+    /**
+     * Binds the audio tracks in the window around the visible part of the
+     * timeline to views and returns the views of the others to the pool. A
+     * selected view is kept until its audio track is removed.
+     */
+    private void updateWindow() {
+        if (mProject == null || !mWindow.moveToScrollPosition()) {
+            return;
+        }
+
+        mWindowAudioTrackIds.clear();
+        final int viewWidth = getWidth() - (2 * mHalfParentWidth);
+        if (mTimelineDurationMs > 0 && viewWidth > 0) {
+            final int leftViewWidth = getLeftViewWidth();
+            for (MovieAudioTrack audioTrack : mProject.getAudioTracks()) {
+                final int left = getAudioTrackLeft(audioTrack, viewWidth, leftViewWidth);
+                if (!mWindow.contains(left, left + getAudioTrackWidth(audioTrack, viewWidth))) {
+                    continue;
+                }
+
+                mWindowAudioTrackIds.add(audioTrack.getId());
+                final AudioTrackView audioTrackView = mAudioTrackViews.get(audioTrack.getId());
+                if (audioTrackView == null) {
+                    bindView(audioTrack);
+                } else if (audioTrackView.getTag() != audioTrack) {
+                    // The audio track is a new instance
+                    audioTrackView.setTag(audioTrack);
                 }
             }
         }
+
+        final Iterator<Map.Entry<String, AudioTrackView>> audioTrackViews =
+                mAudioTrackViews.entrySet().iterator();
+        while (audioTrackViews.hasNext()) {
+            final Map.Entry<String, AudioTrackView> entry = audioTrackViews.next();
+            final AudioTrackView audioTrackView = entry.getValue();
+            if (!mWindowAudioTrackIds.contains(entry.getKey())
+                    && (!audioTrackView.isSelected()
+                            || mProject.getAudioTrack(entry.getKey()) == null)) {
+                audioTrackViews.remove();
+                unbindView(audioTrackView);
+            }
+        }
+    }
+
+    /**
+     * Creates or reuses the view of an audio track
+     *
+     * @param audioTrack The audio track
+     */
+    private void bindView(MovieAudioTrack audioTrack) {
+        final AudioTrackView audioTrackView = mAudioTrackViewPool.isEmpty() ?
+                (AudioTrackView)inflate(getContext(), R.layout.audio_track_item, null) :
+                mAudioTrackViewPool.remove(mAudioTrackViewPool.size() - 1);
+
+        audioTrackView.setTag(audioTrack);
+
+        audioTrackView.setGestureListener(mAudioTrackGestureListener);
+
+        audioTrackView.updateTimelineDuration(mTimelineDurationMs);
+
+        if (audioTrack.getWaveformData() != null) {
+            audioTrackView.setWaveformData(audioTrack.getWaveformData());
+        } else {
+            // Ignored while the waveform is being extracted
+            ApiService.extractAudioTrackAudioWaveform(getContext(), mProject.getPath(),
+                    audioTrack.getId());
+        }
+
+        final Integer progress = mProgress.get(audioTrack.getId());
+        if (progress != null) {
+            audioTrackView.setProgress(progress);
+        }
+
+        final LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
+                LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.FILL_PARENT);
+        // Add the view before the end view
+        addView(audioTrackView, getChildCount() - 1, lp);
+        mAudioTrackViews.put(audioTrack.getId(), audioTrackView);
+    }
+
+    /**
+     * Removes an audio track view and returns it to the pool. The caller
+     * removes the view from the map.
+     *
+     * @param audioTrackView The view
+     */
+    private void unbindView(AudioTrackView audioTrackView) {
+        removeView(audioTrackView);
+
+        audioTrackView.prepareForReuse();
+        audioTrackView.setTag(null);
+        mAudioTrackViewPool.add(audioTrackView);
     }
 
     /**
@@ -628,34 +759,20 @@ public class AudioTrackLinearLayout extends LinearLayout {
      * Find the audio track view with the specified id
      *
      * @param audioTrackId The audio track id
-     * @return The audio track view
+     * @return The audio track view, null if outside of the window
      */
     private View getAudioTrackView(String audioTrackId) {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final MovieAudioTrack audioTrack = (MovieAudioTrack)childView.getTag();
-            if (audioTrack != null && audioTrackId.equals(audioTrack.getId())) {
-                return childView;
-            }
-        }
-
-        return null;
+        return mAudioTrackViews.get(audioTrackId);
     }
 
     /**
      * Remove all audio track views (leave the beginning and end views)
      */
     private void removeAudioTrackViews() {
-        int index = 0;
-        while (index < getChildCount()) {
-            final Object tag = getChildAt(index).getTag();
-            if (tag != null) {
-                removeViewAt(index);
-            } else {
-                index++;
-            }
+        for (AudioTrackView audioTrackView : mAudioTrackViews.values()) {
+            unbindView(audioTrackView);
         }
+        mAudioTrackViews.clear();
 
         requestLayout();
     }
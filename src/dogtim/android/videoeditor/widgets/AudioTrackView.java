@@ -22,6 +22,7 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.media.videoeditor.WaveformData;
+import android.os.AsyncTask;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.view.Display;
@@ -30,8 +31,11 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.view.WindowManager;
 
+import java.util.Arrays;
+
 import dogtim.android.videoeditor.service.MovieAudioTrack;
 import dogtim.android.videoeditor.R;
+import dogtim.android.videoeditor.util.WaveformUtils;
 
 /**
  * Audio track view
@@ -44,7 +48,17 @@ public class AudioTrackView extends View {
     private final Rect mProgressDestRect;
     private final ScrollViewListener mScrollListener;
 
-    private double[] mNormalizedGains;
+    // The normalized heights, null while they are computed
+    private float[] mNormalizedGains;
+    private NormalizeGainsTask mNormalizeGainsTask;
+    // The line segments of the visible waveform, rebuilt when the zoom, the
+    // scroll position or the track change
+    private float[] mLines;
+    private int mLinesLength;
+    private boolean mLinesValid;
+    private int mLinesStart, mLinesLimit, mLinesCenter, mLinesStartFrame, mLinesNumFrames;
+    private float mLinesFramesPerPixel;
+    private boolean mLinesLooping;
     private long mTimelineDurationMs;
     private int mProgress;
     private ItemSimpleGestureListener mGestureListener;
@@ -145,7 +159,7 @@ public class AudioTrackView extends View {
         final TimelineHorizontalScrollView scrollView =
             (TimelineHorizontalScrollView)((View)((View)getParent()).getParent()).getParent();
         mScrollX = scrollView.getScrollX();
-        scrollView.addScrollListener(mScrollListener);
+        scrollView.addScrollListener(mScrollListener, this);
     }
 
     @Override
@@ -155,6 +169,44 @@ public class AudioTrackView extends View {
         scrollView.removeScrollListener(mScrollListener);
     }
 
+    /**
+     * Normalizes the frame gains in the background
+     */
+    private class NormalizeGainsTask extends AsyncTask<Void, Void, float[]> {
+        private final WaveformData mData;
+        private final int mCapacity;
+        private final int mHalfHeight;
+
+        /**
+         * Constructor
+         *
+         * @param data The waveform data
+         * @param capacity The minimum number of normalized heights
+         * @param halfHeight The height of the highest gain
+         */
+        public NormalizeGainsTask(WaveformData data, int capacity, int halfHeight) {
+            mData = data;
+            mCapacity = capacity;
+            mHalfHeight = halfHeight;
+        }
+
+        @Override
+        protected float[] doInBackground(Void... zzz) {
+            return WaveformUtils.normalizeGains(mData.getFrameGains(), mData.getFramesCount(),
+                    mCapacity, mHalfHeight);
+        }
+
+        @Override
+        protected void onPostExecute(float[] normalizedGains) {
+            if (mNormalizeGainsTask == this) {
+                mNormalizeGainsTask = null;
+                mNormalizedGains = normalizedGains;
+                mLinesValid = false;
+                invalidate();
+            }
+        }
+    }
+
     /**
      * @param listener The gesture listener
      */
@@ -169,93 +221,21 @@ public class AudioTrackView extends View {
      */
     public void setWaveformData(WaveformData waveformData) {
         mWaveformData = waveformData;
-        final int numFrames = mWaveformData.getFramesCount();
-        final short[] frameGains = mWaveformData.getFrameGains();
-        final double[] smoothedGains = new double[numFrames];
-
-        if (numFrames == 1) {
-            smoothedGains[0] = frameGains[0];
-        } else if (numFrames == 2) {
-            smoothedGains[0] = frameGains[0];
-            smoothedGains[1] = frameGains[1];
-        } else if (numFrames > 2) {
-            smoothedGains[0] = (frameGains[0] / 2.0) + (frameGains[1] / 2.0);
-            for (int i = 1; i < numFrames - 1; i++) {
-                smoothedGains[i] =
-                    (frameGains[i - 1] / 3.0) + (frameGains[i] / 3.0) + (frameGains[i + 1] / 3.0);
-            }
-            smoothedGains[numFrames - 1] = (frameGains[numFrames - 2] / 2.0) +
-                (frameGains[numFrames - 1] / 2.0);
-        }
-
-        // Make sure the range is no more than 0 - 255
-        double maxGain = 1.0;
-        for (int i = 0; i < numFrames; i++) {
-            if (smoothedGains[i] > maxGain) {
-                maxGain = smoothedGains[i];
-            }
-        }
-
-        double scaleFactor = 1.0;
-        if (maxGain > 255.0) {
-            scaleFactor = 255 / maxGain;
-        }
-
-        // Build histogram of 256 bins and figure out the new scaled max
-        maxGain = 0;
-        final int gainHist[] = new int[256];
-        for (int i = 0; i < numFrames; i++) {
-            int smoothedGain = (int)(smoothedGains[i] * scaleFactor);
-            if (smoothedGain < 0) {
-                smoothedGain = 0;
-            }
-            if (smoothedGain > 255) {
-                smoothedGain = 255;
-            }
-
-            if (smoothedGain > maxGain) {
-                maxGain = smoothedGain;
-            }
-
-            gainHist[smoothedGain]++;
-        }
-
-        // Re-calibrate the minimum to be 5%
-        double minGain = 0;
-        int sum = 0;
-        while (minGain < 255 && sum < numFrames / 20) {
-            sum += gainHist[(int)minGain];
-            minGain++;
-        }
-
-        // Re-calibrate the max to be 99%
-        sum = 0;
-        while (maxGain > 2 && sum < numFrames / 100) {
-            sum += gainHist[(int)maxGain];
-            maxGain--;
-        }
 
-        // Compute the normalized heights
+        // Compute the normalized heights in the background
         final int halfHeight =
             (int)((getResources().getDimension(R.dimen.audio_layout_height) - getPaddingTop() -
                     getPaddingBottom() - 4) / 2);
         final MovieAudioTrack audioTrack = (MovieAudioTrack)getTag();
 
         final int numFramesComp = (int)audioTrack.getDuration() / mWaveformData.getFrameDuration();
-        mNormalizedGains = new double[Math.max(numFramesComp, numFrames)];
-        final double range = maxGain - minGain;
-        for (int i = 0; i < numFrames; i++) {
-            double value = (smoothedGains[i] * scaleFactor - minGain) / range;
-            if (value < 0.0) {
-                value = 0.0;
-            }
-
-            if (value > 1.0) {
-                value = 1.0;
-            }
-
-            mNormalizedGains[i] = value * value * halfHeight;
+        if (mNormalizeGainsTask != null) {
+            mNormalizeGainsTask.cancel(false);
         }
+        mNormalizedGains = null;
+        mLinesValid = false;
+        mNormalizeGainsTask = new NormalizeGainsTask(waveformData, numFramesComp, halfHeight);
+        mNormalizeGainsTask.execute();
     }
 
     /**
@@ -285,6 +265,21 @@ public class AudioTrackView extends View {
         return mWaveformData;
     }
 
+    /**
+     * Resets the state of the view before it is reused for another audio track
+     */
+    void prepareForReuse() {
+        if (mNormalizeGainsTask != null) {
+            mNormalizeGainsTask.cancel(false);
+            mNormalizeGainsTask = null;
+        }
+        mWaveformData = null;
+        mNormalizedGains = null;
+        mLinesValid = false;
+        mProgress = -1;
+        setSelected(false);
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
@@ -294,7 +289,7 @@ public class AudioTrackView extends View {
                 ProgressBar.getProgressBar(getContext()).draw(canvas, mProgress,
                         mProgressDestRect, getPaddingLeft(), getWidth() - getPaddingRight());
             }
-        } else if (mTimelineDurationMs > 0) { // Draw waveform
+        } else if (mTimelineDurationMs > 0 && mNormalizedGains != null) { // Draw waveform
             // Compute the number of frames in the trimmed audio track
             final MovieAudioTrack audioTrack = (MovieAudioTrack)getTag();
             final int startFrame = (int)(audioTrack.getBoundaryBeginTime() /
@@ -303,39 +298,86 @@ public class AudioTrackView extends View {
                 (int)(audioTrack.getTimelineDuration() / mWaveformData.getFrameDuration());
 
             final int ctr = getHeight() / 2;
-            short value;
-            int index;
             final int start = Math.max(mScrollX - mScreenWidth / 2, getPaddingLeft());
             final int limit = Math.min(mScrollX + mScreenWidth, getWidth() - getPaddingRight());
-            if (audioTrack.isAppLooping()) {
-                // Compute the milliseconds / pixel at the current zoom level
-                final float framesPerPixel = mTimelineDurationMs /
+            final boolean looping = audioTrack.isAppLooping();
+            // Compute the frames / pixel at the current zoom level
+            final float framesPerPixel;
+            if (looping) {
+                framesPerPixel = mTimelineDurationMs /
                     ((float)(mWaveformData.getFrameDuration() *
                             (((View)getParent()).getWidth() - mScreenWidth)));
-
-                for (int i = start; i < limit; i++) {
-                    index = startFrame + (int)(framesPerPixel * i);
-                    index = index % numFrames;
-                    value = (short)mNormalizedGains[index];
-                    canvas.drawLine(i, ctr - value, i, ctr + 1 + value, mLinePaint);
-
-                    if (index == startFrame) { // Draw the loop delineation
-                        canvas.drawLine(i, getPaddingTop(), i,
-                                getHeight() - getPaddingBottom(), mLinePaint);
-                    }
-                }
             } else {
-                // Compute the milliseconds / pixel at the current zoom level
-                final float framesPerPixel =  audioTrack.getTimelineDuration() /
+                framesPerPixel =  audioTrack.getTimelineDuration() /
                     ((float)(mWaveformData.getFrameDuration() * getWidth()));
+            }
 
-                for (int i = start; i < limit; i++) {
-                    index = startFrame + (int)(framesPerPixel * i);
-                    value = (short)(mNormalizedGains[index]);
-                    canvas.drawLine(i, ctr - value, i, ctr + 1 + value, mLinePaint);
+            if (!mLinesValid || start != mLinesStart || limit != mLinesLimit
+                    || ctr != mLinesCenter || startFrame != mLinesStartFrame
+                    || numFrames != mLinesNumFrames || framesPerPixel != mLinesFramesPerPixel
+                    || looping != mLinesLooping) {
+                buildLines(start, limit, ctr, startFrame, numFrames, framesPerPixel, looping);
+            }
+
+            canvas.drawLines(mLines, 0, mLinesLength, mLinePaint);
+        }
+    }
+
+    /**
+     * Builds the line segments of the visible waveform: one vertical line
+     * per pixel column and one per loop delineation.
+     *
+     * @param start The first column
+     * @param limit The column after the last column
+     * @param ctr The vertical center
+     * @param startFrame The first frame of the trimmed audio track
+     * @param numFrames The number of frames of the trimmed audio track
+     * @param framesPerPixel The frames / pixel at the current zoom level
+     * @param looping true if the audio track loops
+     */
+    private void buildLines(int start, int limit, int ctr, int startFrame, int numFrames,
+            float framesPerPixel, boolean looping) {
+        final int capacity = Math.max(limit - start, 0) * 4;
+        if (mLines == null || mLines.length < capacity) {
+            mLines = new float[capacity];
+        }
+
+        int length = 0;
+        for (int i = start; i < limit; i++) {
+            int index = startFrame + (int)(framesPerPixel * i);
+            if (looping) {
+                index = index % numFrames;
+            }
+
+            final float value = (short)mNormalizedGains[index];
+            if (length + 4 > mLines.length) {
+                mLines = Arrays.copyOf(mLines, mLines.length * 2);
+            }
+            mLines[length++] = i;
+            mLines[length++] = ctr - value;
+            mLines[length++] = i;
+            mLines[length++] = ctr + 1 + value;
+
+            if (looping && index == startFrame) { // Draw the loop delineation
+                if (length + 4 > mLines.length) {
+                    mLines = Arrays.copyOf(mLines, mLines.length * 2);
                 }
+                mLines[length++] = i;
+                mLines[length++] = getPaddingTop();
+                mLines[length++] = i;
+                mLines[length++] = getHeight() - getPaddingBottom();
             }
         }
+
+        mLinesLength = length;
+        mLinesStart = start;
+        mLinesLimit = limit;
+        mLinesCenter = ctr;
+        mLinesStartFrame = startFrame;
+        mLinesNumFrames = numFrames;
+        mLinesFramesPerPixel = framesPerPixel;
+        mLinesLooping = looping;
+        mLinesValid = true;
     }
 
     @Override
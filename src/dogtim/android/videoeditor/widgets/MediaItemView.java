@@ -19,6 +19,8 @@ package dogtim.android.videoeditor.widgets;
 
 import dogtim.android.videoeditor.service.ApiService;
 import dogtim.android.videoeditor.service.MovieMediaItem;
+import dogtim.android.videoeditor.util.BitmapMemoryManager;
+import dogtim.android.videoeditor.util.ThumbnailCache;
 import dogtim.android.videoeditor.R;
 
 import android.content.Context;
@@ -32,16 +34,14 @@ import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Log;
-import android.util.LruCache;
+import android.util.SparseBooleanArray;
 import android.view.Display;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.WindowManager;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Media item preview view on the timeline. This class assumes the media item is always put on a
@@ -50,10 +50,19 @@ import java.util.Map;
 public class MediaItemView extends View {
     private static final String TAG = "MediaItemView";
 
+    // The filmstrip levels of detail. The thumbnails of level L are the
+    // frames taken every THUMBNAIL_BASE_INTERVAL_MS << L from the beginning of
+    // the media item, so a level stays valid when the timeline is zoomed or
+    // the media item is trimmed.
+    private static final long THUMBNAIL_BASE_INTERVAL_MS = 100;
+    private static final int THUMBNAIL_MAX_LEVEL = 16;
+
     // Static variables
     private static Drawable sAddTransitionDrawable;
     private static Drawable sEmptyFrameDrawable;
-    private static ThumbnailCache sThumbnailCache;
+    private static TimelineThumbnailCache sThumbnailCache;
+    private static BitmapMemoryManager sBitmapMemoryManager;
+    private static Paint sProxyPaint;
 
     // Because MediaItemView may be recreated for the same MediaItem (it happens
     // when the device orientation is changed), we use a globally unique
@@ -65,10 +74,16 @@ public class MediaItemView extends View {
     private final GestureDetector mGestureDetector;
     private final ScrollViewListener mScrollListener;
     private final Rect mGeneratingEffectProgressDestRect;
+    private final Rect mThumbnailDestRect = new Rect();
 
     private boolean mIsScrolling;
     private boolean mIsPlaying;
 
+    // Progress of generation of the proxy, -1 if the proxy is not being generated
+    private int mProxyProgress;
+    // The proxy status drawn on the item, null if there is no proxy
+    private String mProxyStatus;
+
     // Progress of generation of the effect applied on this media item view.
     // -1 indicates the generation is not in progress. 0-100 indicates the
     // generation is in progress. Currently only Ken Burns effect is used with
@@ -91,10 +106,17 @@ public class MediaItemView extends View {
     private int mThumbnailWidth, mThumbnailHeight;
     private int mNumberOfThumbnails;
     private long mBeginTimeMs, mEndTimeMs;
+    // The duration covered by each thumbnail on the timeline
+    private long mThumbnailDurationMs;
+    // The filmstrip level matching the current zoom
+    private int mLevel;
 
     private int mGeneration;
-    private HashSet<Integer> mPending;
-    private ArrayList<Integer> mWantThumbnails;
+    private SparseBooleanArray mPending;
+    private int[] mWantThumbnails;
+    private int mWantThumbnailCount;
+    // The thumbnails of the visible frames, reused by each draw
+    private Bitmap[] mVisibleThumbnails;
 
     public MediaItemView(Context context, AttributeSet attrs) {
         this(context, attrs, 0);
@@ -115,7 +137,16 @@ public class MediaItemView extends View {
                     R.drawable.timeline_loading);
 
             // Initialize the thumbnail cache, limit the memory usage to 3MB
-            sThumbnailCache = new ThumbnailCache(3*1024*1024);
+            sThumbnailCache = new TimelineThumbnailCache(3*1024*1024);
+            // The timeline thumbnails are costly to regenerate, keep a large share
+            sBitmapMemoryManager = BitmapMemoryManager.getInstance(context);
+            sBitmapMemoryManager.register("Timeline thumbnails", sThumbnailCache, 4);
+
+            sProxyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            sProxyPaint.setColor(Color.WHITE);
+            sProxyPaint.setShadowLayer(2, 0, 0, Color.BLACK);
+            sProxyPaint.setTextSize(getResources().getDimension(
+                    R.dimen.media_item_proxy_font_size));
         }
 
         // Get the screen width
@@ -140,16 +171,18 @@ public class MediaItemView extends View {
 
         // Initialize the progress value
         mGeneratingEffectProgress = -1;
+        mProxyProgress = -1;
 
         // Initialize the "Add transition" indicators state
         mLeftState = View.EMPTY_STATE_SET;
         mRightState = View.EMPTY_STATE_SET;
 
         // Initialize the thumbnail indices we want to request
-        mWantThumbnails = new ArrayList<Integer>();
+        mWantThumbnails = new int[16];
 
         // Initialize the set of indices we are waiting
-        mPending = new HashSet<Integer>();
+        mPending = new SparseBooleanArray();
+        mVisibleThumbnails = new Bitmap[16];
 
         // Initialize the generation number
         mGeneration = sGenerationCounter++;
@@ -213,18 +246,23 @@ public class MediaItemView extends View {
 
         mScrollView = (TimelineHorizontalScrollView) getRootView().findViewById(
                 R.id.timeline_scroller);
-        mScrollView.addScrollListener(mScrollListener);
+        mScrollView.addScrollListener(mScrollListener, this);
         // Add the horizontal scroll view listener
         mScrollX = mScrollView.getScrollX();
+        // A view bound during a fling missed the scroll begin event
+        mIsScrolling = mScrollView.isScrolling();
 
         mTimeline = (MediaLinearLayout) getRootView().findViewById(R.id.timeline_media);
+        updateProxyStatus();
     }
 
     @Override
     protected void onDetachedFromWindow() {
         mScrollView.removeScrollListener(mScrollListener);
-        // Release the cached bitmaps
-        releaseBitmapsAndClear();
+        // Ignore the pending requests, the thumbnails stay cached for the next
+        // view of this media item
+        mPending.clear();
+        mGeneration = sGenerationCounter++;
     }
 
     /**
@@ -284,19 +322,13 @@ public class MediaItemView extends View {
     }
 
     private Bitmap getOneThumbnail() {
-        ThumbnailKey key = new ThumbnailKey();
-        key.mediaItemId = mMediaItem.getId();
-
-        // Find any one cached thumbnail
-        for (int i = 0; i < mNumberOfThumbnails; i++) {
-            key.index = i;
-            Bitmap bitmap = sThumbnailCache.get(key);
-            if (bitmap != null) {
-                return bitmap;
-            }
+        final Bitmap bitmap = sThumbnailCache.get(mMediaItem.getId(), mLevel,
+                getFrameIndex(mLevel, mBeginTimeMs));
+        if (bitmap != null) {
+            return bitmap;
         }
 
-        return null;
+        return getClosestThumbnail(mBeginTimeMs);
     }
 
     /**
@@ -323,6 +355,16 @@ public class MediaItemView extends View {
         invalidate();
     }
 
+    /**
+     * Resets the state of the view before it is reused for another media item
+     */
+    void prepareForReuse() {
+        mIsPlaying = false;
+        mGeneratingEffectProgress = -1;
+        mProxyProgress = -1;
+        setSelected(false);
+    }
+
     /**
      * Resets the effect generation progress status.
      */
@@ -347,6 +389,35 @@ public class MediaItemView extends View {
         invalidate();
     }
 
+    /**
+     * Sets the proxy generation progress of this view.
+     *
+     * @param progress The progress (0, 100), -1 when the generation ended
+     */
+    public void setProxyProgress(int progress) {
+        mProxyProgress = progress;
+        updateProxyStatus();
+        invalidate();
+    }
+
+    /**
+     * Builds the proxy status label when the proxy progress or the media item
+     * changes, so drawing does not look up the pending requests
+     */
+    private void updateProxyStatus() {
+        if (mMediaItem == null) {
+            mProxyStatus = null;
+        } else if (mProxyProgress >= 0 || ApiService.isMediaItemProxyPending(mProjectPath,
+                mMediaItem.getId())) {
+            mProxyStatus = getContext().getString(R.string.editor_proxy_progress,
+                    Math.max(mProxyProgress, 0));
+        } else if (mMediaItem.hasProxy()) {
+            mProxyStatus = getContext().getString(R.string.editor_proxy_ready);
+        } else {
+            mProxyStatus = null;
+        }
+    }
+
     /**
      * The view has been layout out.
      *
@@ -354,6 +425,9 @@ public class MediaItemView extends View {
      * @param oldRight The old right position
      */
     public void onLayoutPerformed(int oldLeft, int oldRight) {
+        final int oldThumbnailWidth = mThumbnailWidth;
+        final int oldThumbnailHeight = mThumbnailHeight;
+
         // Compute the thumbnail width and height
         mThumbnailHeight = getHeight() - getPaddingTop() - getPaddingBottom();
         mThumbnailWidth = (mThumbnailHeight * mMediaItem.getWidth()) / mMediaItem.getHeight();
@@ -369,11 +443,193 @@ public class MediaItemView extends View {
         mNumberOfThumbnails = (usableWidth + mThumbnailWidth - 1) / mThumbnailWidth;
         mBeginTimeMs = mMediaItem.getAppBoundaryBeginTime();
         mEndTimeMs = mMediaItem.getAppBoundaryEndTime();
+        mThumbnailDurationMs = Math.max(1,
+                (mEndTimeMs - mBeginTimeMs) / Math.max(mNumberOfThumbnails, 1));
+
+        // Pick the most detailed level with at most one frame per thumbnail.
+        // The cached thumbnails of all the levels are kept: they are drawn
+        // until the thumbnails of the new level are loaded.
+        final int level = getLevel(mThumbnailDurationMs);
+        if (level != mLevel || mThumbnailWidth != oldThumbnailWidth
+                || mThumbnailHeight != oldThumbnailHeight) {
+            // The pending requests are for another level or size
+            mLevel = level;
+            mPending.clear();
+            mGeneration = sGenerationCounter++;
+        }
 
-        releaseBitmapsAndClear();
         invalidate();
     }
 
+    /**
+     * @param thumbnailDurationMs The duration covered by one thumbnail
+     *
+     * @return The most detailed level with at most one frame per thumbnail
+     */
+    private static int getLevel(long thumbnailDurationMs) {
+        int level = 0;
+        while (level < THUMBNAIL_MAX_LEVEL
+                && (THUMBNAIL_BASE_INTERVAL_MS << (level + 1)) <= thumbnailDurationMs) {
+            level++;
+        }
+
+        return level;
+    }
+
+    /**
+     * @param level The level
+     *
+     * @return The number of frames of the level
+     */
+    private int getFrameCount(int level) {
+        return getFrameCount(mMediaItem.getDuration(), level);
+    }
+
+    /**
+     * @param durationMs The duration of the media item
+     * @param level The level
+     *
+     * @return The number of frames of the level
+     */
+    private static int getFrameCount(long durationMs, int level) {
+        return (int)Math.max(1, durationMs / (THUMBNAIL_BASE_INTERVAL_MS << level));
+    }
+
+    /**
+     * @param level The level
+     * @param timeMs The time in the media item
+     *
+     * @return The index of the frame of the level closest to the time
+     */
+    private int getFrameIndex(int level, long timeMs) {
+        return getFrameIndex(mMediaItem.getDuration(), level, timeMs);
+    }
+
+    /**
+     * @param durationMs The duration of the media item
+     * @param level The level
+     * @param timeMs The time in the media item
+     *
+     * @return The index of the frame of the level closest to the time
+     */
+    private static int getFrameIndex(long durationMs, int level, long timeMs) {
+        final long intervalMs = THUMBNAIL_BASE_INTERVAL_MS << level;
+        return clamp((int)((timeMs + intervalMs / 2) / intervalMs), 0,
+                getFrameCount(durationMs, level) - 1);
+    }
+
+    /**
+     * Get the cached filmstrip frame at the beginning or the end of a media
+     * item, used by the transition views instead of decoding the frame again.
+     *
+     * @param mediaItem The media item
+     * @param end true for the frame at the end boundary, false for the
+     *      frame at the begin boundary
+     *
+     * @return The thumbnail of the most detailed cached level, null if none.
+     *      The thumbnail belongs to the cache and must not be recycled.
+     */
+    static Bitmap getEdgeThumbnail(MovieMediaItem mediaItem, boolean end) {
+        if (sThumbnailCache == null) {
+            return null;
+        }
+
+        final long timeMs = end ? mediaItem.getAppBoundaryEndTime()
+                : mediaItem.getAppBoundaryBeginTime();
+        for (int level = 0; level <= THUMBNAIL_MAX_LEVEL; level++) {
+            final Bitmap bitmap = sThumbnailCache.get(mediaItem.getId(), level,
+                    getFrameIndex(mediaItem.getDuration(), level, timeMs));
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Request the frames at the boundaries which have a transition, even if
+     * they are not on screen
+     *
+     * @return true if the frames are cached or will be cached, false if this
+     *      view is not laid out yet
+     */
+    boolean prefetchEdgeThumbnails() {
+        if (mThumbnailWidth <= 0 || mGeneratingEffectProgress >= 0) {
+            return false;
+        }
+
+        addWantedEdgeThumbnails();
+        final boolean isBusy = mIsPlaying || mTimeline.isTrimming() || mIsScrolling;
+        if (!isBusy && mWantThumbnailCount > 0) {
+            requestThumbnails();
+        }
+
+        return true;
+    }
+
+    /**
+     * Add the frames at the boundaries which have a transition to
+     * mWantThumbnails if they are neither cached nor pending
+     */
+    private void addWantedEdgeThumbnails() {
+        if (mMediaItem.getBeginTransition() != null) {
+            addWantedEdgeThumbnail(getFrameIndex(mLevel, mBeginTimeMs));
+        }
+
+        if (mMediaItem.getEndTransition() != null) {
+            addWantedEdgeThumbnail(getFrameIndex(mLevel, mEndTimeMs));
+        }
+    }
+
+    /**
+     * @param index The frame index of a boundary
+     */
+    private void addWantedEdgeThumbnail(int index) {
+        if (!mPending.get(index)
+                && sThumbnailCache.get(mMediaItem.getId(), mLevel, index) == null) {
+            addWantedThumbnail(index);
+        }
+    }
+
+    /**
+     * Finds the cached thumbnail of the closest level to the current level
+     *
+     * @param timeMs The time of the thumbnail
+     *
+     * @return The thumbnail, null if no level has a thumbnail for this time
+     */
+    private Bitmap getClosestThumbnail(long timeMs) {
+        final int level = mLevel;
+        for (int distance = 1; distance <= THUMBNAIL_MAX_LEVEL; distance++) {
+            // Prefer the coarser level, it is more likely to be cached
+            Bitmap bitmap = getCachedThumbnail(level + distance, timeMs);
+            if (bitmap == null) {
+                bitmap = getCachedThumbnail(level - distance, timeMs);
+            }
+
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param level The level
+     * @param timeMs The time of the thumbnail
+     *
+     * @return The cached thumbnail of the level for the time, null if none
+     */
+    private Bitmap getCachedThumbnail(int level, long timeMs) {
+        if (level < 0 || level > THUMBNAIL_MAX_LEVEL) {
+            return null;
+        }
+
+        return sThumbnailCache.get(mMediaItem.getId(), level, getFrameIndex(level, timeMs));
+    }
+
     /**
      * @return True if the effect generation is in progress
      */
@@ -386,7 +642,7 @@ public class MediaItemView extends View {
         if (token != mGeneration) {
             return false;
         }
-        if (!mPending.contains(index)) {
+        if (!mPending.get(index)) {
             Log.e(TAG, "received unasked bitmap, index = " + index);
             return false;
         }
@@ -395,9 +651,15 @@ public class MediaItemView extends View {
             // We keep this request in mPending, so we won't request it again.
             return false;
         }
-        mPending.remove(index);
-        ThumbnailKey key = new ThumbnailKey(mMediaItem.getId(), index);
-        sThumbnailCache.put(key, bitmap);
+        mPending.delete(index);
+        sThumbnailCache.put(mMediaItem.getId(), mLevel, index, bitmap);
+        sBitmapMemoryManager.onBitmapsAdded();
+
+        // The transition views draw the frames at the boundaries
+        if (mTimeline != null && (index == getFrameIndex(mLevel, mBeginTimeMs)
+                || index == getFrameIndex(mLevel, mEndTimeMs))) {
+            mTimeline.onEdgeThumbnailCached(mMediaItem);
+        }
 
         invalidate();
         return true;
@@ -406,6 +668,9 @@ public class MediaItemView extends View {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        // The scroll progress is only dispatched to the views near the screen,
+        // so the last position this view received may be stale
+        mScrollX = mScrollView.getScrollX();
         if (mGeneratingEffectProgress >= 0) {
             ProgressBar.getProgressBar(getContext()).draw(
                     canvas, mGeneratingEffectProgress, mGeneratingEffectProgressDestRect,
@@ -419,6 +684,9 @@ public class MediaItemView extends View {
             // Draw thumbnails
             drawThumbnails(canvas);
 
+            // Draw the proxy status
+            drawProxyStatus(canvas);
+
             // Draw the "Add transition" indicators
             if (isSelected()) {
                 drawAddTransitionIcons(canvas);
@@ -433,7 +701,7 @@ public class MediaItemView extends View {
 
             // Request thumbnails if things are not moving
             boolean isBusy = mIsPlaying || mTimeline.isTrimming() || mIsScrolling;
-            if (!isBusy && !mWantThumbnails.isEmpty()) {
+            if (!isBusy && mWantThumbnailCount > 0) {
                 requestThumbnails();
             }
         }
@@ -442,7 +710,7 @@ public class MediaItemView extends View {
     // Draws the thumbnails, also put unavailable thumbnail indices in
     // mWantThumbnails.
     private void drawThumbnails(Canvas canvas) {
-        mWantThumbnails.clear();
+        mWantThumbnailCount = 0;
 
         // The screen coordinate of the left edge of the usable area.
         int left = getLeft() + getPaddingLeft() - mScrollX;
@@ -460,9 +728,18 @@ public class MediaItemView extends View {
         startIdx = clamp(startIdx, 0, mNumberOfThumbnails - 1);
         endIdx = clamp(endIdx, 0, mNumberOfThumbnails - 1);
 
+        // Get the cached thumbnails of all the frames of the level on screen
+        final int firstIndex = getFrameIndex(mLevel,
+                mBeginTimeMs + startIdx * mThumbnailDurationMs);
+        final int frameCount = getFrameIndex(mLevel,
+                mBeginTimeMs + endIdx * mThumbnailDurationMs) - firstIndex + 1;
+        if (mVisibleThumbnails.length < frameCount) {
+            mVisibleThumbnails = new Bitmap[frameCount];
+        }
+        sThumbnailCache.getRange(mMediaItem.getId(), mLevel, firstIndex, frameCount,
+                mVisibleThumbnails);
+
         // Prepare variables used in the loop
-        ThumbnailKey key = new ThumbnailKey();
-        key.mediaItemId = mMediaItem.getId();
         int x = getPaddingLeft() + startIdx * mThumbnailWidth;
         int y = getPaddingTop();
 
@@ -473,21 +750,75 @@ public class MediaItemView extends View {
 
         // Loop through the thumbnails on screen and draw it
         for (int i = startIdx; i <= endIdx; i++) {
-            key.index = i;
-            Bitmap bitmap = sThumbnailCache.get(key);
+            final long timeMs = mBeginTimeMs + i * mThumbnailDurationMs;
+            final int index = getFrameIndex(mLevel, timeMs);
+            Bitmap bitmap = mVisibleThumbnails[index - firstIndex];
+            if (bitmap == null || bitmap.getWidth() != mThumbnailWidth
+                    || bitmap.getHeight() != mThumbnailHeight) {
+                if (!mPending.get(index)) {
+                    addWantedThumbnail(index);
+                }
+
+                // Use the closest level until this level is loaded
+                if (bitmap == null) {
+                    bitmap = getClosestThumbnail(timeMs);
+                }
+            }
+
             if (bitmap == null) {
                 // Draw a frame placeholder
                 sEmptyFrameDrawable.setBounds(
                         x, y, x + mThumbnailWidth, y + mThumbnailHeight);
                 sEmptyFrameDrawable.draw(canvas);
-                if (!mPending.contains(i)) {
-                    mWantThumbnails.add(Integer.valueOf(i));
-                }
-            } else {
+            } else if (bitmap.getWidth() == mThumbnailWidth
+                    && bitmap.getHeight() == mThumbnailHeight) {
                 canvas.drawBitmap(bitmap, x, y, null);
+            } else {
+                // Stretch a thumbnail of another size
+                mThumbnailDestRect.set(x, y, x + mThumbnailWidth, y + mThumbnailHeight);
+                canvas.drawBitmap(bitmap, null, mThumbnailDestRect, null);
             }
             x += mThumbnailWidth;
         }
+
+        // Do not hold the thumbnails beyond the draw
+        Arrays.fill(mVisibleThumbnails, 0, frameCount, null);
+
+        // Prefetch the frames drawn by the transitions
+        addWantedEdgeThumbnails();
+    }
+
+    /**
+     * Add a frame index to mWantThumbnails if it is not there yet
+     *
+     * @param index The frame index
+     */
+    private void addWantedThumbnail(int index) {
+        for (int i = 0; i < mWantThumbnailCount; i++) {
+            if (mWantThumbnails[i] == index) {
+                return;
+            }
+        }
+
+        if (mWantThumbnailCount == mWantThumbnails.length) {
+            mWantThumbnails = Arrays.copyOf(mWantThumbnails, mWantThumbnailCount * 2);
+        }
+        mWantThumbnails[mWantThumbnailCount++] = index;
+    }
+
+    /**
+     * Draws the proxy status at the bottom of the media item.
+     *
+     * @param canvas Canvas to be drawn
+     */
+    private void drawProxyStatus(Canvas canvas) {
+        if (mProxyStatus == null) {
+            return;
+        }
+
+        final int x = getPaddingLeft() + (int)sProxyPaint.getTextSize() / 2;
+        final int y = getHeight() - getPaddingBottom() - (int)sProxyPaint.getTextSize() / 2;
+        canvas.drawText(mProxyStatus, x, y, sProxyPaint);
     }
 
     /**
@@ -541,19 +872,19 @@ public class MediaItemView extends View {
      * Requests the thumbnails in mWantThumbnails (which is filled by onDraw).
      */
     private void requestThumbnails() {
-        // Copy mWantThumbnails to an array
-        int indices[] = new int[mWantThumbnails.size()];
-        for (int i = 0; i < mWantThumbnails.size(); i++) {
-            indices[i] = mWantThumbnails.get(i);
+        // Copy mWantThumbnails to an array and put them in the pending set
+        final int indices[] = Arrays.copyOf(mWantThumbnails, mWantThumbnailCount);
+        for (int index : indices) {
+            mPending.put(index, true);
         }
 
-        // Put them in the pending set
-        mPending.addAll(mWantThumbnails);
-
+        // The frames of the level, from the beginning of the media item
+        final int count = getFrameCount(mLevel);
+        final long endMs = Math.min(count * (THUMBNAIL_BASE_INTERVAL_MS << mLevel),
+                mMediaItem.getDuration());
         ApiService.getMediaItemThumbnails(getContext(), mProjectPath,
                 mMediaItem.getId(), mThumbnailWidth, mThumbnailHeight,
-                mBeginTimeMs, mEndTimeMs, mNumberOfThumbnails, mGeneration,
-                indices);
+                0, endMs, count, mGeneration, indices);
     }
 
     @Override
@@ -606,59 +937,33 @@ public class MediaItemView extends View {
     }
 }
 
-class ThumbnailKey {
-    public String mediaItemId;
-    public int index;
-
-    public ThumbnailKey() {
-    }
-
-    public ThumbnailKey(String id, int idx) {
-        mediaItemId = id;
-        index = idx;
+/**
+ * The timeline thumbnails of all the media items, trimmed by the bitmap
+ * memory manager
+ */
+class TimelineThumbnailCache extends ThumbnailCache<Bitmap>
+        implements BitmapMemoryManager.Client {
+    /**
+     * Constructor
+     *
+     * @param size The maximum number of bytes of the thumbnails
+     */
+    public TimelineThumbnailCache(int size) {
+        super(size);
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (!(o instanceof ThumbnailKey)) {
-            return false;
-        }
-        ThumbnailKey key = (ThumbnailKey) o;
-        return index == key.index && mediaItemId.equals(key.mediaItemId);
+    protected long sizeOf(Bitmap bitmap) {
+        return bitmap.getByteCount();
     }
 
     @Override
-    public int hashCode() {
-        return mediaItemId.hashCode() ^ index;
+    public long getBitmapBytes() {
+        return getSize();
     }
-}
-
-class ThumbnailCache {
-    private LruCache<ThumbnailKey, Bitmap> mCache;
 
-    public ThumbnailCache(int size) {
-        mCache = new LruCache<ThumbnailKey, Bitmap>(size) {
-            @Override
-            protected int sizeOf(ThumbnailKey key, Bitmap value) {
-                return value.getByteCount();
-            }
-        };
-    }
-
-    void put(ThumbnailKey key, Bitmap value) {
-        mCache.put(key, value);
-    }
-
-    Bitmap get(ThumbnailKey key) {
-        return mCache.get(key);
-    }
-
-    void clearForMediaItemId(String id) {
-        Map<ThumbnailKey, Bitmap> map = mCache.snapshot();
-        for (ThumbnailKey key : map.keySet()) {
-            if (key.mediaItemId.equals(id)) {
-                mCache.remove(key);
-            }
-        }
+    @Override
+    public long trimBitmapBytes(long bytes) {
+        return trim(bytes);
     }
 }
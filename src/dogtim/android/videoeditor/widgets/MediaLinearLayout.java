@@ -16,7 +16,12 @@
 
 package dogtim.android.videoeditor.widgets;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -61,6 +66,7 @@ import dogtim.android.videoeditor.service.MovieOverlay;
 import dogtim.android.videoeditor.service.MovieTransition;
 import dogtim.android.videoeditor.service.VideoEditorProject;
 import dogtim.android.videoeditor.util.FileUtils;
+import dogtim.android.videoeditor.util.FrameTimeRecorder;
 import dogtim.android.videoeditor.util.MediaItemUtils;
 import dogtim.android.videoeditor.R;
 
@@ -108,6 +114,30 @@ public class MediaLinearLayout extends LinearLayout {
     private int mDropIndex;
     private boolean mFirstEntered;
 
+    // Only the media items and transitions in the window around the visible
+    // part of the timeline have a view. The views are laid out from the begin
+    // times of the timeline index and recycled through a pool per view type.
+    private final View mBeginView, mEndView;
+    private final TimelineWindow mWindow;
+    private final Map<String, MediaItemView> mMediaItemViews =
+            new HashMap<String, MediaItemView>();
+    private final Map<String, TransitionView> mTransitionViews =
+            new HashMap<String, TransitionView>();
+    private final HashSet<String> mWindowMediaItemIds = new HashSet<String>();
+    private final HashSet<String> mWindowTransitionIds = new HashSet<String>();
+    private final ArrayList<MediaItemView> mMediaItemViewPool = new ArrayList<MediaItemView>();
+    private final ArrayList<TransitionView> mTransitionViewPool = new ArrayList<TransitionView>();
+    // The scale of the timeline
+    private long mTotalDurationMs;
+    private int mViewWidth;
+    private int mLeftViewWidth;
+    // The progress of the items being generated, applied to their views when
+    // they enter the window
+    private final Map<String, Integer> mGeneratingEffectProgress = new HashMap<String, Integer>();
+    private final Map<String, Integer> mGeneratingTransitionProgress =
+            new HashMap<String, Integer>();
+    private final Map<String, Integer> mProxyProgress = new HashMap<String, Integer>();
+
     /**
      * The media item action mode handler.
      */
@@ -467,15 +497,15 @@ public class MediaLinearLayout extends LinearLayout {
         };
 
         // Add the beginning timeline item
-        final View beginView = inflate(getContext(), R.layout.empty_left_timeline_item, null);
-        beginView.setOnClickListener(new View.OnClickListener() {
+        mBeginView = inflate(getContext(), R.layout.empty_left_timeline_item, null);
+        mBeginView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
                 unselectAllTimelineViews();
             }
         });
 
-        mLeftAddClipButton = (ImageButton) beginView.findViewById(
+        mLeftAddClipButton = (ImageButton) mBeginView.findViewById(
                 R.id.add_left_media_item_button);
         mLeftAddClipButton.setVisibility(View.GONE);
         mLeftAddClipButton.setOnClickListener(new View.OnClickListener() {
@@ -488,18 +518,18 @@ public class MediaLinearLayout extends LinearLayout {
                 }
             }
         });
-        addView(beginView);
+        addView(mBeginView);
 
         // Add the end timeline item
-        final View endView = inflate(getContext(), R.layout.empty_right_timeline_item, null);
-        endView.setOnClickListener(new View.OnClickListener() {
+        mEndView = inflate(getContext(), R.layout.empty_right_timeline_item, null);
+        mEndView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
                 unselectAllTimelineViews();
             }
         });
 
-        mRightAddClipButton = (ImageButton) endView.findViewById(
+        mRightAddClipButton = (ImageButton) mEndView.findViewById(
                 R.id.add_right_media_item_button);
         mRightAddClipButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -516,7 +546,7 @@ public class MediaLinearLayout extends LinearLayout {
                 }
             }
         });
-        addView(endView);
+        addView(mEndView);
 
         mLeftHandle = (HandleView)inflate(getContext(), R.layout.left_handle_view, null);
         addView(mLeftHandle);
@@ -533,6 +563,13 @@ public class MediaLinearLayout extends LinearLayout {
         final Display display = ((Activity) context).getWindowManager().getDefaultDisplay();
         mHalfParentWidth = display.getWidth() / 2;
 
+        mWindow = new TimelineWindow(this, 2 * mHalfParentWidth, new Runnable() {
+            @Override
+            public void run() {
+                updateWindow();
+            }
+        });
+
         mHandler = new Handler();
 
         setMotionEventSplittingEnabled(false);
@@ -548,6 +585,7 @@ public class MediaLinearLayout extends LinearLayout {
 
     public void setParentTimelineScrollView(View scrollView) {
         mScrollView = scrollView;
+        mWindow.setScrollView(scrollView);
     }
 
     /**
@@ -556,16 +594,15 @@ public class MediaLinearLayout extends LinearLayout {
     public void onResume() {
         // Invalidate all progress in case the transition generation or
         // Ken Burns effect completed while the activity was being paused.
+        mGeneratingEffectProgress.clear();
+        mGeneratingTransitionProgress.clear();
         final int childrenCount = getChildCount();
         for (int i = 0; i < childrenCount; i++) {
             final View childView = getChildAt(i);
-            final Object item = childView.getTag();
-            if (item != null) {
-                if (item instanceof MovieMediaItem) {
-                    ((MediaItemView) childView).resetGeneratingEffectProgress();
-                } else if (item instanceof MovieTransition) {
-                    ((TransitionView) childView).resetGeneratingTransitionProgress();
-                }
+            if (childView instanceof MediaItemView) {
+                ((MediaItemView) childView).resetGeneratingEffectProgress();
+            } else if (childView instanceof TransitionView) {
+                ((TransitionView) childView).resetGeneratingTransitionProgress();
             }
         }
     }
@@ -597,85 +634,86 @@ public class MediaLinearLayout extends LinearLayout {
      * Returns selected view's position on the timeline; -1 if none.
      */
     public int getSelectedViewPos() {
-        return indexOfChild(mSelectedView);
+        if (mSelectedView == null) {
+            return -1;
+        }
+
+        // The begin transition of the first media item is at position 0,
+        // each media item is followed by its end transition
+        final Object tag = mSelectedView.getTag();
+        if (tag instanceof MovieMediaItem) {
+            final int position = mProject.getMediaItemPosition(((MovieMediaItem) tag).getId());
+            return position >= 0 ? (2 * position) + 1 : -1;
+        } else if (tag instanceof MovieTransition) {
+            final MovieTransition transition = (MovieTransition) tag;
+            final MovieMediaItem prevMediaItem = mProject.getPreviousMediaItem(transition);
+            if (prevMediaItem != null) {
+                return (2 * mProject.getMediaItemPosition(prevMediaItem.getId())) + 2;
+            }
+
+            final MovieMediaItem firstMediaItem = mProject.getFirstMediaItem();
+            if (firstMediaItem != null && firstMediaItem.getBeginTransition() != null
+                    && firstMediaItem.getBeginTransition().getId().equals(transition.getId())) {
+                return 0;
+            }
+        }
+
+        return -1;
     }
 
     /**
      * Selects the view at the specified position; null if it does not exist.
      */
     public void setSelectedView(int pos) {
-        if (pos < 0) {
+        if (pos < 0 || mProject == null) {
             return;
         }
-        mSelectedView = getChildAt(pos);
-        if (mSelectedView != null) {
-            select(mSelectedView);
+
+        final int position = (pos == 0) ? 0 : (pos - 1) / 2;
+        if (position >= mProject.getMediaItemCount()) {
+            return;
+        }
+
+        final MovieMediaItem mediaItem = mProject.getMediaItems().get(position);
+        final Object item;
+        if (pos == 0) {
+            item = mediaItem.getBeginTransition();
+        } else if (pos % 2 == 1) {
+            item = mediaItem;
+        } else {
+            item = mediaItem.getEndTransition();
+        }
+
+        if (item == null) {
+            return;
+        }
+
+        View view = (item instanceof MovieMediaItem) ?
+                mMediaItemViews.get(mediaItem.getId()) :
+                mTransitionViews.get(((MovieTransition) item).getId());
+        if (view == null) {
+            // The selected view is kept when it leaves the window
+            view = bindView(item);
         }
+
+        select(view);
     }
 
     /**
      * Clears existing media or transition items and adds all given media items.
      *
-     * @param mediaItems The list of media items
+     * @param mediaItems The list of media items of the project
      */
     public void addMediaItems(List<MovieMediaItem> mediaItems) {
         closeActionBars();
         removeAllMediaItemAndTransitionViews();
 
-        for (MovieMediaItem mediaItem : mediaItems) {
-            addMediaItem(mediaItem);
-        }
-    }
-
-    /**
-     * Adds a new media item at the end of the timeline.
-     *
-     * @param mediaItem The media item
-     */
-    private void addMediaItem(MovieMediaItem mediaItem) {
-        final View mediaItemView = inflate(getContext(), R.layout.media_item, null);
-        ((MediaItemView) mediaItemView).setGestureListener(mMediaItemGestureListener);
-        ((MediaItemView) mediaItemView).setProjectPath(mProject.getPath());
-        mediaItemView.setTag(mediaItem);
-
-        // Add the new view
-        final LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
-                LinearLayout.LayoutParams.WRAP_CONTENT,
-                LinearLayout.LayoutParams.FILL_PARENT);
-        // Add the view before the end view, left handle and right handle views.
-        addView(mediaItemView, getChildCount() - 3, lp);
-
-        // If the new media item has beginning and end transitions, add them.
-        final MovieTransition beginTransition = mediaItem.getBeginTransition();
-        if (beginTransition != null) {
-            final int cc = getChildCount();
-            // Account for the beginning and end views and the trim handles
-            if (cc > 5) { // There is a previous view (transition or media item)
-                final View view = getChildAt(cc - 5);
-                final Object tag = view.getTag();
-                // Do not add transition if it already exists
-                if (tag != null && tag instanceof MovieMediaItem) {
-                    final MovieMediaItem prevMediaItem = (MovieMediaItem)tag;
-                    addTransition(beginTransition, prevMediaItem.getId());
-                }
-            } else { // This is the first media item
-                addTransition(beginTransition, null);
-            }
-        }
+        onTimelineChanged();
 
-        final MovieTransition endTransition = mediaItem.getEndTransition();
-        if (endTransition != null) {
-            addTransition(endTransition, mediaItem.getId());
+        if (!mediaItems.isEmpty()) {
+            // Now we can add clips by tapping the beginning view
+            mLeftAddClipButton.setVisibility(View.VISIBLE);
         }
-
-        requestLayout();
-
-        if (mMediaItemActionMode != null) {
-            mMediaItemActionMode.invalidate();
-        }
-
-        // Now we can add clips by tapping the beginning view
-        mLeftAddClipButton.setVisibility(View.VISIBLE);
     }
 
     /**
@@ -685,69 +723,12 @@ public class MediaLinearLayout extends LinearLayout {
      * @param afterMediaItemId The id of the media item preceding the media item
      */
     public void insertMediaItem(MovieMediaItem mediaItem, String afterMediaItemId) {
-        final View mediaItemView = inflate(getContext(), R.layout.media_item, null);
-        ((MediaItemView)mediaItemView).setGestureListener(mMediaItemGestureListener);
-        ((MediaItemView)mediaItemView).setProjectPath(mProject.getPath());
-
-        mediaItemView.setTag(mediaItem);
-
-        int insertViewIndex;
-        if (afterMediaItemId != null) {
-            if ((insertViewIndex = getMediaItemViewIndex(afterMediaItemId)) == -1) {
-                Log.e(TAG, "Media item not found: " + afterMediaItemId);
-                return;
-            }
-
-            insertViewIndex++;
-
-            if (insertViewIndex < getChildCount()) {
-                final Object tag = getChildAt(insertViewIndex).getTag();
-                if (tag != null && tag instanceof MovieTransition) {
-                    // Remove the transition following the media item
-                    removeViewAt(insertViewIndex);
-                }
-            }
-        } else { // Insert at the beginning
-            // If we have a transition at the beginning remove it
-            final Object tag = getChildAt(1).getTag();
-            if (tag != null && tag instanceof MovieTransition) {
-                removeViewAt(1);
-            }
-
-            insertViewIndex = 1;
-        }
-
-        // Add the new view
-        final LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
-                LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.FILL_PARENT);
-        addView(mediaItemView, insertViewIndex, lp);
-
-        // If the new media item has beginning and end transitions add them
-        final MovieTransition beginTransition = mediaItem.getBeginTransition();
-        if (beginTransition != null) {
-            if (insertViewIndex > 1) { // There is a previous view (transition or media item)
-                final View view = getChildAt(insertViewIndex - 1);
-                final Object tag = view.getTag();
-                // Do not add transition if it already exists
-                if (tag != null && tag instanceof MovieMediaItem) {
-                    final MovieMediaItem prevMediaItem = (MovieMediaItem)tag;
-                    addTransition(beginTransition, prevMediaItem.getId());
-                }
-            } else { // This is the first media item
-                addTransition(beginTransition, null);
-            }
-        }
-
-        final MovieTransition endTransition = mediaItem.getEndTransition();
-        if (endTransition != null) {
-            addTransition(endTransition, mediaItem.getId());
+        if (afterMediaItemId != null && mProject.getMediaItem(afterMediaItemId) == null) {
+            Log.e(TAG, "Media item not found: " + afterMediaItemId);
+            return;
         }
 
-        requestLayout();
-
-        if (mMediaItemActionMode != null) {
-            mMediaItemActionMode.invalidate();
-        }
+        onTimelineChanged();
 
         // Now we can add clips by tapping the beginning view
         mLeftAddClipButton.setVisibility(View.VISIBLE);
@@ -759,118 +740,31 @@ public class MediaLinearLayout extends LinearLayout {
      * @param mediaItem The media item to be updated
      */
     public void updateMediaItem(MovieMediaItem mediaItem) {
-        final String mediaItemId = mediaItem.getId();
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final Object tag = childView.getTag();
-            if (tag != null && tag instanceof MovieMediaItem) {
-                final MovieMediaItem mi = (MovieMediaItem) tag;
-                if (mediaItemId.equals(mi.getId())) {
-                    if (mediaItem != mi) {
-                        // The media item is a new instance of the media item
-                        childView.setTag(mediaItem);
-                        if (mediaItem.getBeginTransition() != null) {
-                            if (i > 0) {
-                                final View tView = getChildAt(i - 1);
-                                final Object tagT = tView.getTag();
-                                if (tagT != null && tagT instanceof MovieTransition) {
-                                    tView.setTag(mediaItem.getBeginTransition());
-                                }
-                            }
-                        }
-
-                        if (mediaItem.getEndTransition() != null) {
-                            if (i < childrenCount - 1) {
-                                final View tView = getChildAt(i + 1);
-                                final Object tagT = tView.getTag();
-                                if (tagT != null && tagT instanceof MovieTransition) {
-                                    tView.setTag(mediaItem.getEndTransition());
-                                }
-                            }
-                        }
-                    }
+        // The views in the window are attached to the new instance of the
+        // media item and its transitions
+        onTimelineChanged();
 
-                    if (childView.isSelected()) {
-                        mLeftHandle.setEnabled(true);
-                        mRightHandle.setEnabled(true);
-                    }
-
-                    break;
-                }
-            }
-        }
-
-        requestLayout();
-
-        if (mMediaItemActionMode != null) {
-            mMediaItemActionMode.invalidate();
+        final View mediaItemView = mMediaItemViews.get(mediaItem.getId());
+        if (mediaItemView != null && mediaItemView.isSelected()) {
+            mLeftHandle.setEnabled(true);
+            mRightHandle.setEnabled(true);
         }
     }
 
     /**
-     * Removes a media item view.
+     * Removes a media item view and the views of its transitions. The
+     * transition inserted at the removal position if a theme is in use is
+     * already part of the project.
      *
      * @param mediaItemId The media item id
-     * @param transition The transition inserted at the removal position
-     *          if a theme is in use.
-     *
-     * @return The view which was removed
      */
-    public View removeMediaItem(String mediaItemId, MovieTransition transition) {
-        final int childrenCount = getChildCount();
-        MovieMediaItem prevMediaItem = null;
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final Object tag = childView.getTag();
-            if (tag != null && tag instanceof MovieMediaItem) {
-                final MovieMediaItem mi = (MovieMediaItem)tag;
-                if (mediaItemId.equals(mi.getId())) {
-                    int mediaItemViewIndex = i;
-
-                    // Remove the before transition
-                    if (mediaItemViewIndex > 0) {
-                        final Object beforeTag = getChildAt(mediaItemViewIndex - 1).getTag();
-                        if (beforeTag != null && beforeTag instanceof MovieTransition) {
-                            // Remove the transition view
-                            removeViewAt(mediaItemViewIndex - 1);
-                            mediaItemViewIndex--;
-                        }
-                    }
-
-                    // Remove the after transition view
-                    if (mediaItemViewIndex < getChildCount() - 1) {
-                        final Object afterTag = getChildAt(mediaItemViewIndex + 1).getTag();
-                        if (afterTag != null && afterTag instanceof MovieTransition) {
-                            // Remove the transition view
-                            removeViewAt(mediaItemViewIndex + 1);
-                        }
-                    }
-
-                    // Remove the media item view
-                    removeViewAt(mediaItemViewIndex);
-
-                    if (transition != null) {
-                        addTransition(transition,
-                                prevMediaItem != null ? prevMediaItem.getId() : null);
-                    }
-
-                    if (mMediaItemActionMode != null) {
-                        mMediaItemActionMode.invalidate();
-                    }
+    public void removeMediaItem(String mediaItemId) {
+        onTimelineChanged();
 
-                    if (mProject.getMediaItemCount() == 0) {
-                        // We cannot add clips by tapping the beginning view
-                        mLeftAddClipButton.setVisibility(View.GONE);
-                    }
-                    return childView;
-                }
-
-                prevMediaItem = mi;
-            }
+        if (mProject.getMediaItemCount() == 0) {
+            // We cannot add clips by tapping the beginning view
+            mLeftAddClipButton.setVisibility(View.GONE);
         }
-
-        return null;
     }
 
     /**
@@ -992,57 +886,20 @@ public class MediaLinearLayout extends LinearLayout {
     }
 
     /**
-     * Adds a new transition after the specified media id. This method assumes that a
-     * transition does not exist at the insertion point.
+     * Adds a new transition after the specified media id.
      *
      * @param transition The transition to be added
      * @param afterMediaItemId After the specified media item id
-     *
-     * @return The transition view that was added, {@code null} upon errors.
      */
-    public View addTransition(MovieTransition transition, String afterMediaItemId) {
-        // Determine the insert position
-        int index;
-        if (afterMediaItemId != null) {
-            index = -1;
-            final int childrenCount = getChildCount();
-            for (int i = 0; i < childrenCount; i++) {
-                final Object tag = getChildAt(i).getTag();
-                if (tag != null && tag instanceof MovieMediaItem) {
-                    final MovieMediaItem mi = (MovieMediaItem) tag;
-                    if (afterMediaItemId.equals(mi.getId())) {
-                        index = i + 1;
-                        break;
-                    }
-                }
-            }
-
-            if (index < 0) {
-                Log.e(TAG, "addTransition media item not found: " + afterMediaItemId);
-                return null;
-            }
-        } else {
-            index = 1;
-        }
-
-        final View transitionView = inflate(getContext(), R.layout.transition_view, null);
-        ((TransitionView) transitionView).setGestureListener(mTransitionGestureListener);
-        ((TransitionView) transitionView).setProjectPath(mProject.getPath());
-        transitionView.setTag(transition);
-
-        final LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
-                LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.FILL_PARENT);
-        addView(transitionView, index, lp);
-
-        // Adjust the size of all the views
-        requestLayout();
-
-        // If this transition was added by the user invalidate the menu item
-        if (mMediaItemActionMode != null) {
-            mMediaItemActionMode.invalidate();
+    public void addTransition(MovieTransition transition, String afterMediaItemId) {
+        if (afterMediaItemId != null && mProject.getMediaItem(afterMediaItemId) == null) {
+            Log.e(TAG, "addTransition media item not found: " + afterMediaItemId);
+            return;
         }
 
-        return transitionView;
+        // Adjust the size of all the views. If this transition was added by
+        // the user invalidate the menu item.
+        onTimelineChanged();
     }
 
     /**
@@ -1061,27 +918,9 @@ public class MediaLinearLayout extends LinearLayout {
      * @param transitionId The transition id
      */
     public void removeTransition(String transitionId) {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final Object tag = getChildAt(i).getTag();
-            if (tag != null && tag instanceof MovieTransition) {
-                final MovieTransition transition = (MovieTransition)tag;
-                if (transitionId.equals(transition.getId())) {
-                    // Remove the view
-                    removeViewAt(i);
-
-                    // Adjust the size of all the views
-                    requestLayout();
-
-                    // If this transition was removed by the user invalidate the menu item
-                    if (mMediaItemActionMode != null) {
-                        mMediaItemActionMode.invalidate();
-                    }
-
-                    return;
-                }
-            }
-        }
+        // Adjust the size of all the views. If this transition was removed by
+        // the user invalidate the menu item.
+        onTimelineChanged();
     }
 
     /**
@@ -1105,8 +944,15 @@ public class MediaLinearLayout extends LinearLayout {
      */
     public void onGeneratePreviewMediaItemProgress(String mediaItemId, int action, int progress) {
         // Display the progress while generating the Ken Burns video clip
-        final MediaItemView view = (MediaItemView) getMediaItemView(mediaItemId);
-        if (view != null) {
+        if (progress == 100) {
+            mGeneratingEffectProgress.remove(mediaItemId);
+        } else {
+            mGeneratingEffectProgress.put(mediaItemId, progress);
+        }
+
+        final View childView = getMediaItemView(mediaItemId);
+        if (childView instanceof MediaItemView) {
+            final MediaItemView view = (MediaItemView) childView;
             view.setGeneratingEffectProgress(progress);
 
             if (view.isSelected()) {
@@ -1131,8 +977,15 @@ public class MediaLinearLayout extends LinearLayout {
     public void onGeneratePreviewTransitionProgress(String transitionId, int action,
             int progress) {
         // Display the progress while generating the transition
-        final TransitionView view = (TransitionView) getTransitionView(transitionId);
-        if (view != null) {
+        if (progress == 100) {
+            mGeneratingTransitionProgress.remove(transitionId);
+        } else {
+            mGeneratingTransitionProgress.put(transitionId, progress);
+        }
+
+        final View childView = getTransitionView(transitionId);
+        if (childView instanceof TransitionView) {
+            final TransitionView view = (TransitionView) childView;
             view.setGeneratingTransitionProgress(progress);
 
             if (view.isSelected()) {
@@ -1211,19 +1064,28 @@ public class MediaLinearLayout extends LinearLayout {
      */
     public boolean setMediaItemThumbnail(
             String mediaItemId, Bitmap bitmap, int index, int token) {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final Object tag = getChildAt(i).getTag();
-            if (tag != null && tag instanceof MovieMediaItem) {
-                final MovieMediaItem mi = (MovieMediaItem)tag;
-                if (mediaItemId.equals(mi.getId())) {
-                    return ((MediaItemView)getChildAt(i)).setBitmap(
-                            bitmap, index, token);
-                }
-            }
+        // The thumbnails of an item outside of the window are dropped
+        final MediaItemView view = mMediaItemViews.get(mediaItemId);
+        return view != null && view.setBitmap(bitmap, index, token);
+    }
+
+    /**
+     * Sets the proxy generation progress of a media item.
+     *
+     * @param mediaItemId The media item id
+     * @param progress The progress (0, 100), -1 when the generation ended
+     */
+    public void setMediaItemProxyProgress(String mediaItemId, int progress) {
+        if (progress < 0) {
+            mProxyProgress.remove(mediaItemId);
+        } else {
+            mProxyProgress.put(mediaItemId, progress);
         }
 
-        return false;
+        final View view = getMediaItemView(mediaItemId);
+        if (view instanceof MediaItemView) {
+            ((MediaItemView)view).setProxyProgress(progress);
+        }
     }
 
     /**
@@ -1235,128 +1097,446 @@ public class MediaLinearLayout extends LinearLayout {
      * @return true if the bitmaps were used
      */
     public boolean setTransitionThumbnails(String transitionId, Bitmap[] bitmaps) {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final Object tag = getChildAt(i).getTag();
-            if (tag != null && tag instanceof MovieTransition) {
-                final MovieTransition transition = (MovieTransition)tag;
-                if (transitionId.equals(transition.getId())) {
-                    return ((TransitionView)getChildAt(i)).setBitmaps(bitmaps);
+        final TransitionView view = mTransitionViews.get(transitionId);
+        return view != null && view.setBitmaps(bitmaps);
+    }
+
+    /**
+     * Gets the thumbnails of a transition from the timeline thumbnail cache:
+     * the last frame of the media item before the transition and the first
+     * frame of the media item after it.
+     *
+     * @param transition The transition
+     *
+     * @return The thumbnails, null if the frame of a media item is not
+     *      cached. The thumbnails belong to the cache.
+     */
+    Bitmap[] getTransitionEdgeThumbnails(MovieTransition transition) {
+        final MovieMediaItem[] mediaItems = getTransitionMediaItems(transition);
+        final Bitmap[] bitmaps = new Bitmap[2];
+        for (int i = 0; i < 2; i++) {
+            if (mediaItems[i] != null) {
+                bitmaps[i] = MediaItemView.getEdgeThumbnail(mediaItems[i], i == 0);
+                if (bitmaps[i] == null) {
+                    return null;
+                }
+            }
+        }
+
+        return bitmaps;
+    }
+
+    /**
+     * Requests the frames of a transition from the views of the media items
+     * around it.
+     *
+     * @param transition The transition
+     *
+     * @return true if the frames will be cached, false if a media item
+     *      view cannot load them and the frames must be decoded
+     */
+    boolean prefetchTransitionEdgeThumbnails(MovieTransition transition) {
+        final MovieMediaItem[] mediaItems = getTransitionMediaItems(transition);
+        for (int i = 0; i < 2; i++) {
+            if (mediaItems[i] != null
+                    && MediaItemView.getEdgeThumbnail(mediaItems[i], i == 0) == null) {
+                final View view = getMediaItemView(mediaItems[i].getId());
+                if (!(view instanceof MediaItemView)
+                        || !((MediaItemView)view).prefetchEdgeThumbnails()) {
+                    return false;
                 }
             }
         }
 
-        return false;
+        return true;
+    }
+
+    /**
+     * A frame at a boundary of a media item was cached, redraw the
+     * transitions at its boundaries.
+     *
+     * @param mediaItem The media item
+     */
+    void onEdgeThumbnailCached(MovieMediaItem mediaItem) {
+        final MovieTransition[] transitions = {
+            mediaItem.getBeginTransition(), mediaItem.getEndTransition()
+        };
+        for (MovieTransition transition : transitions) {
+            if (transition != null) {
+                final View view = getTransitionView(transition.getId());
+                if (view instanceof TransitionView) {
+                    ((TransitionView)view).onEdgeThumbnailCached();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param transition The transition
+     *
+     * @return The media item before the transition and the media item after
+     *      it, null for a transition at the beginning or the end of the movie
+     */
+    private MovieMediaItem[] getTransitionMediaItems(MovieTransition transition) {
+        final MovieMediaItem[] mediaItems = new MovieMediaItem[2];
+        mediaItems[0] = mProject.getPreviousMediaItem(transition);
+        if (mediaItems[0] != null) {
+            mediaItems[1] = mProject.getNextMediaItem(mediaItems[0].getId());
+        } else {
+            final MovieMediaItem firstMediaItem = mProject.getFirstMediaItem();
+            if (firstMediaItem != null && firstMediaItem.getBeginTransition() != null
+                    && firstMediaItem.getBeginTransition().getId().equals(transition.getId())) {
+                mediaItems[1] = firstMediaItem;
+            }
+        }
+
+        return mediaItems;
     }
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        updateScale();
+
+        // Top and bottom position are fixed for media item views. For transition views,
+        // there is additional inset which makes them smaller. See below.
+        final int top = getPaddingTop();
+        final int bottom = b - t;
+
+        mBeginView.layout(0, top, mLeftViewWidth, bottom);
+        mEndView.layout(timeToX(mTotalDurationMs), top, getWidth(), bottom);
+
+        // Only the views in the window are laid out, from the begin times of
+        // their media items
+        for (MediaItemView view : mMediaItemViews.values()) {
+            final MovieMediaItem mediaItem = (MovieMediaItem) view.getTag();
+            final long beginMs = mProject.getMediaItemBeginTime(mediaItem.getId());
+            final int left = timeToX(beginMs + getBeginTransitionDuration(mediaItem));
+            final int right = timeToX(beginMs + mediaItem.getAppTimelineDuration()
+                    - getEndTransitionDuration(mediaItem));
+            if (left != view.getLeft() || right != view.getRight()) {
+                final int oldLeft = view.getLeft();
+                final int oldRight = view.getRight();
+                view.layout(left, top, right, bottom);
+                view.onLayoutPerformed(oldLeft, oldRight);
+            } else {
+                view.layout(left, top, right, bottom);
+            }
+        }
+
+        for (TransitionView view : mTransitionViews.values()) {
+            final MovieTransition transition = (MovieTransition) view.getTag();
+            final long endMs = getTransitionEndTime(transition);
+            // Note that we set additional inset so it looks smaller
+            // than media item views on the timeline.
+            view.layout(timeToX(endMs - transition.getAppDuration()),
+                    top + mTransitionVerticalInset,
+                    timeToX(endMs),
+                    bottom - mTransitionVerticalInset);
+        }
+
+        if (mSelectedView != null) {
+            // We are in trimming mode, the handles must be shown.
+            mLeftHandle.layout(mSelectedView.getLeft() - mHandleWidth,
+                    top + mSelectedView.getPaddingTop(),
+                    mSelectedView.getLeft(),
+                    bottom - mSelectedView.getPaddingBottom());
+            mRightHandle.layout(mSelectedView.getRight(),
+                    top + mSelectedView.getPaddingTop(),
+                    mSelectedView.getRight() + mHandleWidth,
+                    bottom - mSelectedView.getPaddingBottom());
+        }
+        mMoveLayoutPending = false;
+
+        // The children cannot be replaced during the layout
+        mWindow.postUpdate();
+    }
+
+    /**
+     * Updates the scale of the timeline from the duration of the project
+     * and the width of the layout
+     */
+    private void updateScale() {
         // Compute the total duration of the project.
-        final long totalDurationMs = mProject.computeDuration();
+        mTotalDurationMs = (mProject != null) ? mProject.computeDuration() : 0;
 
         // Total available width for putting media items and transitions.
         // We subtract 2 half screen widths from the width because we put
         // 2 empty view at the beginning and end of the timeline, each with
-        // half screen width. We then layout each child view into the
-        // available width.
-        final int viewWidth = getWidth() - (2 * mHalfParentWidth);
+        // half screen width.
+        mViewWidth = getWidth() - (2 * mHalfParentWidth);
 
         // If we are in trimming mode, the left view width might be different
         // due to trimming; otherwise it equals half of screen width.
-        final int leftViewWidth = (mSelectedView != null) ?
+        mLeftViewWidth = (mSelectedView != null) ?
                 (Integer) mScrollView.getTag(R.id.left_view_width) : mHalfParentWidth;
+    }
 
-        // Top and bottom position are fixed for media item views. For transition views,
-        // there is additional inset which makes them smaller. See below.
-        final int top = getPaddingTop();
-        final int bottom = b - t;
+    /**
+     * @param timeMs The time on the timeline
+     *
+     * @return The horizontal position of the time in the layout
+     */
+    private int timeToX(long timeMs) {
+        if (mTotalDurationMs == 0) {
+            return mLeftViewWidth;
+        }
 
-        long startMs = 0;
-        int left = 0;
+        return (int)((float)(timeMs * mViewWidth) / (float)mTotalDurationMs) + mLeftViewWidth;
+    }
 
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View view = getChildAt(i);
-            final Object tag = view.getTag();
-            if (tag != null) {
-                final long durationMs = computeViewDuration(view);
+    /**
+     * @param transition The transition
+     *
+     * @return The end time of the transition on the timeline
+     */
+    private long getTransitionEndTime(MovieTransition transition) {
+        final MovieMediaItem prevMediaItem = mProject.getPreviousMediaItem(transition);
+        if (prevMediaItem == null) { // The transition at the beginning of the movie
+            return transition.getAppDuration();
+        }
 
-                final int right = (int)((float)((startMs + durationMs) * viewWidth) /
-                        (float)totalDurationMs) + leftViewWidth;
+        return mProject.getMediaItemBeginTime(prevMediaItem.getId())
+                + prevMediaItem.getAppTimelineDuration();
+    }
 
-                if (tag instanceof MovieMediaItem) {
-                    if (left != view.getLeft() || right != view.getRight()) {
-                        final int oldLeft = view.getLeft();
-                        final int oldRight = view.getRight();
-                        view.layout(left, top, right, bottom);
-                        ((MediaItemView) view).onLayoutPerformed(oldLeft, oldRight);
-                    } else {
-                        view.layout(left, top, right, bottom);
-                    }
-                } else {  // Transition view.
-                    // Note that we set additional inset so it looks smaller
-                    // than media item views on the timeline.
-                    view.layout(left,
-                            top + mTransitionVerticalInset,
-                            right,
-                            bottom - mTransitionVerticalInset);
+    /**
+     * Binds the media items and transitions in the window around the visible
+     * part of the timeline to views and returns the views of the others to
+     * their pools. The media items are looked up in the timeline index so
+     * only the items in the window are visited. The selected view is kept
+     * until its item is removed.
+     */
+    private void updateWindow() {
+        if (mProject == null || !mWindow.moveToScrollPosition()) {
+            return;
+        }
+
+        updateScale();
+        mWindowMediaItemIds.clear();
+        mWindowTransitionIds.clear();
+        if (mViewWidth > 0 && mTotalDurationMs > 0) {
+            final List<MovieMediaItem> mediaItems = mProject.getMediaItems();
+            final int mediaItemsCount = mediaItems.size();
+            final long windowBeginMs = Math.max(0,
+                    ((long)(mWindow.getLeft() - mLeftViewWidth) * mTotalDurationMs) / mViewWidth);
+            // The end transition of the media item before the one which
+            // begins at the left edge of the window may overlap the window
+            int position = Math.max(0, mProject.findMediaItemPosition(windowBeginMs) - 1);
+            for (; position < mediaItemsCount; position++) {
+                final long beginMs = mProject.getMediaItemBeginTime(position);
+                if (timeToX(beginMs) > mWindow.getRight()) {
+                    break;
                 }
 
-                startMs += durationMs;
-                left = right;
-            } else if (view == mLeftHandle && mSelectedView != null) {
-                // We are in trimming mode, the left handle must be shown.
-                view.layout(mSelectedView.getLeft() - mHandleWidth,
-                        top + mSelectedView.getPaddingTop(),
-                        mSelectedView.getLeft(),
-                        bottom - mSelectedView.getPaddingBottom());
-            } else if (view == mRightHandle && mSelectedView != null) {
-                // We are in trimming mode, the right handle must be shown.
-                view.layout(mSelectedView.getRight(),
-                        top + mSelectedView.getPaddingTop(),
-                        mSelectedView.getRight() + mHandleWidth,
-                        bottom - mSelectedView.getPaddingBottom());
-            } else if (i == 0) {  // Begin view
-                view.layout(0, top, leftViewWidth, bottom);
-                left += leftViewWidth;
-            } else {  // End view
-                view.layout(left, top, getWidth(), bottom);
+                final MovieMediaItem mediaItem = mediaItems.get(position);
+                final MovieTransition beginTransition = mediaItem.getBeginTransition();
+                if (position == 0 && beginTransition != null) {
+                    bindWindowItem(beginTransition, beginTransition.getId(),
+                            timeToX(0), timeToX(beginTransition.getAppDuration()));
+                }
+
+                final long endMs = beginMs + mediaItem.getAppTimelineDuration();
+                final long bodyEndMs = endMs - getEndTransitionDuration(mediaItem);
+                bindWindowItem(mediaItem, mediaItem.getId(),
+                        timeToX(beginMs + getBeginTransitionDuration(mediaItem)),
+                        timeToX(bodyEndMs));
+
+                final MovieTransition endTransition = mediaItem.getEndTransition();
+                if (endTransition != null) {
+                    bindWindowItem(endTransition, endTransition.getId(),
+                            timeToX(bodyEndMs), timeToX(endMs));
+                }
             }
         }
-        mMoveLayoutPending = false;
+
+        final Iterator<Map.Entry<String, MediaItemView>> mediaItemViews =
+                mMediaItemViews.entrySet().iterator();
+        while (mediaItemViews.hasNext()) {
+            final Map.Entry<String, MediaItemView> entry = mediaItemViews.next();
+            if (!mWindowMediaItemIds.contains(entry.getKey())
+                    && !keepSelectedView(entry.getValue(), mProject.getMediaItem(entry.getKey()))) {
+                mediaItemViews.remove();
+                unbindView(entry.getValue());
+            }
+        }
+
+        final Iterator<Map.Entry<String, TransitionView>> transitionViews =
+                mTransitionViews.entrySet().iterator();
+        while (transitionViews.hasNext()) {
+            final Map.Entry<String, TransitionView> entry = transitionViews.next();
+            if (!mWindowTransitionIds.contains(entry.getKey())
+                    && !keepSelectedView(entry.getValue(), mProject.getTransition(entry.getKey()))) {
+                transitionViews.remove();
+                unbindView(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Binds a media item or a transition to a view if it overlaps the window
+     *
+     * @param item The media item or transition
+     * @param id The id of the item
+     * @param left The left edge of the item
+     * @param right The right edge of the item
+     */
+    private void bindWindowItem(Object item, String id, int left, int right) {
+        if (!mWindow.contains(left, right)) {
+            return;
+        }
+
+        final View view;
+        if (item instanceof MovieMediaItem) {
+            mWindowMediaItemIds.add(id);
+            view = mMediaItemViews.get(id);
+        } else {
+            mWindowTransitionIds.add(id);
+            view = mTransitionViews.get(id);
+        }
+
+        if (view == null) {
+            bindView(item);
+        } else if (view.getTag() != item) {
+            // The item is a new instance
+            view.setTag(item);
+        }
+    }
+
+    /**
+     * @param view A view outside of the window
+     * @param item The item of the view in the project, null if it was removed
+     *
+     * @return true if the view is selected and its item was not removed
+     */
+    private boolean keepSelectedView(View view, Object item) {
+        if (view != mSelectedView) {
+            return false;
+        }
+
+        if (item == null) {
+            unSelect(view);
+            return false;
+        }
+
+        if (view.getTag() != item) {
+            view.setTag(item);
+        }
+
+        return true;
     }
 
     /**
-     * Computes the duration of the specified view.
+     * Creates or reuses the view of a media item or a transition
      *
-     * @param view The specified view
+     * @param item The media item or transition
      *
-     * @return The duration in milliseconds, 0 if the specified view is not a media item view
-     *         or a transition view
+     * @return The view
      */
-    private long computeViewDuration(View view) {
-        long durationMs;
-        final Object tag = view.getTag();
-        if (tag != null) {
-            if (tag instanceof MovieMediaItem) {
-                final MovieMediaItem mediaItem = (MovieMediaItem) view.getTag();
-                durationMs = mediaItem.getAppTimelineDuration();
-                if (mediaItem.getBeginTransition() != null) {
-                    durationMs -= mediaItem.getBeginTransition().getAppDuration();
-                }
+    private View bindView(Object item) {
+        final View view;
+        if (item instanceof MovieMediaItem) {
+            final MovieMediaItem mediaItem = (MovieMediaItem) item;
+            final MediaItemView mediaItemView = mMediaItemViewPool.isEmpty() ?
+                    (MediaItemView) inflate(getContext(), R.layout.media_item, null) :
+                    mMediaItemViewPool.remove(mMediaItemViewPool.size() - 1);
+            mediaItemView.setGestureListener(mMediaItemGestureListener);
+            mediaItemView.setProjectPath(mProject.getPath());
+            mediaItemView.setPlaybackMode(mPlaybackInProgress);
+            mMediaItemViews.put(mediaItem.getId(), mediaItemView);
+            view = mediaItemView;
+        } else {
+            final MovieTransition transition = (MovieTransition) item;
+            final TransitionView transitionView = mTransitionViewPool.isEmpty() ?
+                    (TransitionView) inflate(getContext(), R.layout.transition_view, null) :
+                    mTransitionViewPool.remove(mTransitionViewPool.size() - 1);
+            transitionView.setGestureListener(mTransitionGestureListener);
+            transitionView.setProjectPath(mProject.getPath());
+            transitionView.setPlaybackMode(mPlaybackInProgress);
+            mTransitionViews.put(transition.getId(), transitionView);
+            view = transitionView;
+        }
+
+        view.setTag(item);
+        // Reset the bounds of a recycled view so the next layout pass
+        // recomputes its thumbnails
+        view.layout(0, 0, 0, 0);
+        final LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
+                LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.FILL_PARENT);
+        // Add the view after the begin view, below the trim handles
+        addView(view, 1, lp);
 
-                if (mediaItem.getEndTransition() != null) {
-                    durationMs -= mediaItem.getEndTransition().getAppDuration();
-                }
-            } else {  // Transition
-                final MovieTransition transition = (MovieTransition) tag;
-                durationMs = transition.getAppDuration();
+        // The progress is applied once the view is attached to its item
+        if (item instanceof MovieMediaItem) {
+            final String mediaItemId = ((MovieMediaItem) item).getId();
+            final Integer effectProgress = mGeneratingEffectProgress.get(mediaItemId);
+            if (effectProgress != null) {
+                ((MediaItemView) view).setGeneratingEffectProgress(effectProgress);
+            }
+            final Integer proxyProgress = mProxyProgress.get(mediaItemId);
+            if (proxyProgress != null) {
+                ((MediaItemView) view).setProxyProgress(proxyProgress);
             }
         } else {
-            durationMs = 0;
+            final Integer transitionProgress =
+                    mGeneratingTransitionProgress.get(((MovieTransition) item).getId());
+            if (transitionProgress != null) {
+                ((TransitionView) view).setGeneratingTransitionProgress(transitionProgress);
+            }
         }
 
-        return durationMs;
+        return view;
+    }
+
+    /**
+     * Removes a media item or a transition view and returns it to its pool.
+     * The caller removes the view from its map.
+     *
+     * @param view The view
+     */
+    private void unbindView(View view) {
+        removeView(view);
+
+        view.setTag(null);
+        if (view instanceof MediaItemView) {
+            ((MediaItemView) view).prepareForReuse();
+            mMediaItemViewPool.add((MediaItemView) view);
+        } else {
+            ((TransitionView) view).prepareForReuse();
+            mTransitionViewPool.add((TransitionView) view);
+        }
+    }
+
+    /**
+     * The media items or transitions of the project changed: updates the
+     * views in the window and lays them out again.
+     */
+    private void onTimelineChanged() {
+        updateWindow();
+        requestLayout();
+
+        if (mMediaItemActionMode != null) {
+            mMediaItemActionMode.invalidate();
+        }
+    }
+
+    /**
+     * @param mediaItem The media item
+     *
+     * @return The duration of the begin transition, 0 if none
+     */
+    private static long getBeginTransitionDuration(MovieMediaItem mediaItem) {
+        final MovieTransition beginTransition = mediaItem.getBeginTransition();
+        return beginTransition != null ? beginTransition.getAppDuration() : 0;
+    }
+
+    /**
+     * @param mediaItem The media item
+     *
+     * @return The duration of the end transition, 0 if none
+     */
+    private static long getEndTransitionDuration(MovieMediaItem mediaItem) {
+        final MovieTransition endTransition = mediaItem.getEndTransition();
+        return endTransition != null ? endTransition.getAppDuration() : 0;
     }
 
     /**
@@ -1744,54 +1924,23 @@ public class MediaLinearLayout extends LinearLayout {
 
     // Returns the begin time of a media item (exclude transition).
     private long getBeginTime(MovieMediaItem item) {
-        final List<MovieMediaItem> mediaItems = mProject.getMediaItems();
-        long beginMs = 0;
-        final int mediaItemsCount = mediaItems.size();
-        for (int i = 0; i < mediaItemsCount; i++) {
-            final MovieMediaItem mediaItem = mediaItems.get(i);
-            final MovieTransition beginTransition = mediaItem.getBeginTransition();
-            final MovieTransition endTransition = mediaItem.getEndTransition();
-
-            if (item.getId().equals(mediaItem.getId())) {
-                if (beginTransition != null) {
-                    beginMs += beginTransition.getAppDuration();
-                }
-                return beginMs;
-            }
-
-            beginMs += mediaItem.getAppTimelineDuration();
-
-            if (endTransition != null) {
-                beginMs -= endTransition.getAppDuration();
-            }
+        final int position = mProject.getMediaItemPosition(item.getId());
+        if (position < 0) {
+            return 0;
         }
 
-        return 0;
+        return mProject.getMediaItemBeginTime(position) + getBeginTransitionDuration(item);
     }
 
     // Returns the end time of a media item (exclude transition)
     private long getEndTime(MovieMediaItem item) {
-        final List<MovieMediaItem> mediaItems = mProject.getMediaItems();
-        long endMs = 0;
-        final int mediaItemsCount = mediaItems.size();
-        for (int i = 0; i < mediaItemsCount; i++) {
-            final MovieMediaItem mediaItem = mediaItems.get(i);
-            final MovieTransition beginTransition = mediaItem.getBeginTransition();
-            final MovieTransition endTransition = mediaItem.getEndTransition();
-
-            endMs += mediaItem.getAppTimelineDuration();
-
-            if (endTransition != null) {
-                endMs -= endTransition.getAppDuration();
-            }
-
-            if (item.getId().equals(mediaItem.getId())) {
-                return endMs;
-            }
-
+        final int position = mProject.getMediaItemPosition(item.getId());
+        if (position < 0) {
+            return 0;
         }
 
-        return 0;
+        return mProject.getMediaItemBeginTime(position) + item.getAppTimelineDuration()
+                - getEndTransitionDuration(item);
     }
 
     /**
@@ -1991,44 +2140,10 @@ public class MediaLinearLayout extends LinearLayout {
      * Finds the media item view with the specified id.
      *
      * @param mediaItemId The media item id
-     * @return The found media item view; null if not found
+     * @return The found media item view; null if not found or outside of the window
      */
     private View getMediaItemView(String mediaItemId) {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final Object tag = childView.getTag();
-            if (tag != null && tag instanceof MovieMediaItem) {
-                final MovieMediaItem mediaItem = (MovieMediaItem)tag;
-                if (mediaItemId.equals(mediaItem.getId())) {
-                    return childView;
-                }
-            }
-        }
-
-        return null;
-    }
-
-    /**
-     * Finds the media item view index with the specified id.
-     *
-     * @param mediaItemId The media item id
-     * @return The media item view index; -1 if not found
-     */
-    private int getMediaItemViewIndex(String mediaItemId) {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final Object tag = childView.getTag();
-            if (tag != null && tag instanceof MovieMediaItem) {
-                final MovieMediaItem mediaItem = (MovieMediaItem)tag;
-                if (mediaItemId.equals(mediaItem.getId())) {
-                    return i;
-                }
-            }
-        }
-
-        return -1;
+        return mMediaItemViews.get(mediaItemId);
     }
 
     /**
@@ -2036,22 +2151,10 @@ public class MediaLinearLayout extends LinearLayout {
      *
      * @param transitionId The transition id
      *
-     * @return The found transition view; null if not found
+     * @return The found transition view; null if not found or outside of the window
      */
     private View getTransitionView(String transitionId) {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final Object tag = childView.getTag();
-            if (tag != null && tag instanceof MovieTransition) {
-                final MovieTransition transition = (MovieTransition)tag;
-                if (transitionId.equals(transition.getId())) {
-                    return childView;
-                }
-            }
-        }
-
-        return null;
+        return mTransitionViews.get(transitionId);
     }
 
     /**
@@ -2060,44 +2163,26 @@ public class MediaLinearLayout extends LinearLayout {
      * @param transitionId The id of the transition to be removed
      */
     public void removeTransitionView(String transitionId) {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final Object tag = getChildAt(i).getTag();
-            if (tag != null && tag instanceof MovieTransition) {
-                final MovieTransition transition = (MovieTransition)tag;
-                if (transitionId.equals(transition.getId())) {
-                    // Remove the view
-                    removeViewAt(i);
-
-                    // Adjust the size of all the views
-                    requestLayout();
-
-                    // If this transition was removed by the user invalidate the menu item
-                    if (mMediaItemActionMode != null) {
-                        mMediaItemActionMode.invalidate();
-                    }
-                    return;
-                }
-            }
-        }
+        // Adjust the size of all the views. If this transition was removed by
+        // the user invalidate the menu item.
+        onTimelineChanged();
     }
 
     /**
      * Removes all media item and transition views but leave the beginning, end views, and handles.
      */
     private void removeAllMediaItemAndTransitionViews() {
-        int index = 0;
-        while (index < getChildCount()) {
-            final Object tag = getChildAt(index).getTag();
-            // Media item view or transition view is associated with a media item or transition
-            // attached as a tag. We can thus check the nullity of the tag to determine if it is
-            // media item view or transition view.
-            if (tag != null) {
-                removeViewAt(index);
-            } else {
-                index++;
-            }
+        for (MediaItemView view : mMediaItemViews.values()) {
+            unbindView(view);
+        }
+        mMediaItemViews.clear();
+
+        for (TransitionView view : mTransitionViews.values()) {
+            unbindView(view);
         }
+        mTransitionViews.clear();
+
+        mSelectedView = null;
         requestLayout();
 
         // We cannot add clips by tapping the beginning view.
@@ -2626,6 +2711,16 @@ public class MediaLinearLayout extends LinearLayout {
      * Indicates if any media item is being trimmed or no.
      */
     private void setIsTrimming(boolean isTrimming) {
+        if (isTrimming != mIsTrimming) {
+            final FrameTimeRecorder recorder = FrameTimeRecorder.getInstance(getContext());
+            if (isTrimming) {
+                recorder.begin(FrameTimeRecorder.INTERACTION_TRIM, mProject.getMediaItemCount(),
+                        mProject.getZoomLevel());
+            } else {
+                recorder.end(FrameTimeRecorder.INTERACTION_TRIM);
+            }
+        }
+
         mIsTrimming = isTrimming;
     }
 
@@ -2640,9 +2735,9 @@ public class MediaLinearLayout extends LinearLayout {
             final View childView = getChildAt(i);
             final Object tag = childView.getTag();
             if (tag != null) {
-                if (tag instanceof MovieMediaItem) {
+                if (childView instanceof MediaItemView) {
                     ((MediaItemView) childView).setPlaybackMode(playback);
-                } else if (tag instanceof MovieTransition) {
+                } else if (childView instanceof TransitionView) {
                     ((TransitionView) childView).setPlaybackMode(playback);
                 }
             }
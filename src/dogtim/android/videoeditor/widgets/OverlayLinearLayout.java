@@ -16,7 +16,12 @@
 
 package dogtim.android.videoeditor.widgets;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import android.app.Activity;
 import android.app.Dialog;
@@ -71,6 +76,13 @@ public class OverlayLinearLayout extends LinearLayout {
     private HandleView mLeftHandle, mRightHandle;
     private boolean mMoveLayoutPending;
     private View mResizingView;
+    // Only the media items in the window around the visible part of the
+    // timeline have an overlay view, recycled through a pool
+    private final View mBeginView, mEndView;
+    private final TimelineWindow mWindow;
+    private final Map<String, OverlayView> mOverlayViews = new HashMap<String, OverlayView>();
+    private final HashSet<String> mWindowMediaItemIds = new HashSet<String>();
+    private final ArrayList<OverlayView> mOverlayViewPool = new ArrayList<OverlayView>();
 
     /**
      * The overlay listener
@@ -295,24 +307,24 @@ public class OverlayLinearLayout extends LinearLayout {
         };
 
         // Add the beginning timeline item
-        final View beginView = inflate(getContext(), R.layout.empty_timeline_item, null);
-        beginView.setOnClickListener(new View.OnClickListener() {
+        mBeginView = inflate(getContext(), R.layout.empty_timeline_item, null);
+        mBeginView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
                 unselectAllViews();
             }
         });
-        addView(beginView);
+        addView(mBeginView);
 
         // Add the end timeline item
-        final View endView = inflate(getContext(), R.layout.empty_timeline_item, null);
-        endView.setOnClickListener(new View.OnClickListener() {
+        mEndView = inflate(getContext(), R.layout.empty_timeline_item, null);
+        mEndView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
                 unselectAllViews();
             }
         });
-        addView(endView);
+        addView(mEndView);
 
         mLeftHandle = (HandleView)inflate(getContext(), R.layout.left_handle_view, null);
         addView(mLeftHandle);
@@ -326,6 +338,13 @@ public class OverlayLinearLayout extends LinearLayout {
         final Display display = ((Activity)context).getWindowManager().getDefaultDisplay();
         mHalfParentWidth = display.getWidth() / 2;
 
+        mWindow = new TimelineWindow(this, 2 * mHalfParentWidth, new Runnable() {
+            @Override
+            public void run() {
+                updateWindow();
+            }
+        });
+
         mHandler = new Handler();
 
         setMotionEventSplittingEnabled(false);
@@ -386,40 +405,7 @@ public class OverlayLinearLayout extends LinearLayout {
 
         removeViews();
 
-        for (MovieMediaItem mediaItem : mediaItems) {
-            addMediaItem(mediaItem);
-        }
-    }
-
-    /**
-     * Add a new media item at the end of the timeline
-     *
-     * @param mediaItem The media item
-     * @return The view that was added
-     */
-    private View addMediaItem(MovieMediaItem mediaItem) {
-        final OverlayView overlayView = (OverlayView)inflate(getContext(),
-                R.layout.overlay_item, null);
-        if (mediaItem.getOverlay() != null) {
-            overlayView.setState(OverlayView.STATE_OVERLAY);
-        } else {
-            overlayView.setState(OverlayView.STATE_STUB);
-        }
-
-        overlayView.setTag(mediaItem);
-
-        overlayView.setGestureListener(mOverlayGestureListener);
-
-        final LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
-                LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.FILL_PARENT);
-        addView(overlayView, getChildCount() - 1, lp);
-
-        if (mOverlayActionMode != null) {
-            mOverlayActionMode.invalidate();
-        }
-
-        requestLayout();
-        return overlayView;
+        onTimelineChanged();
     }
 
     /**
@@ -429,39 +415,12 @@ public class OverlayLinearLayout extends LinearLayout {
      * @param afterMediaItemId The id of the media item preceding the media item
      */
     public void insertMediaItem(MovieMediaItem mediaItem, String afterMediaItemId) {
-        final OverlayView overlayView = (OverlayView)inflate(getContext(),
-                R.layout.overlay_item, null);
-        if (mediaItem.getOverlay() != null) {
-            overlayView.setState(OverlayView.STATE_OVERLAY);
-        } else {
-            overlayView.setState(OverlayView.STATE_STUB);
-        }
-
-        overlayView.setTag(mediaItem);
-
-        overlayView.setGestureListener(mOverlayGestureListener);
-
-        int insertViewIndex;
-        if (afterMediaItemId != null) {
-            if ((insertViewIndex = getMediaItemViewIndex(afterMediaItemId)) == -1) {
-                Log.e(TAG, "Media item not found: " + afterMediaItemId);
-                return;
-            }
-
-            insertViewIndex++;
-        } else { // Insert at the beginning
-            insertViewIndex = 1;
-        }
-
-        final LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
-                LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.FILL_PARENT);
-        addView(overlayView, insertViewIndex, lp);
-
-        if (mOverlayActionMode != null) {
-            mOverlayActionMode.invalidate();
+        if (afterMediaItemId != null && mProject.getMediaItem(afterMediaItemId) == null) {
+            Log.e(TAG, "Media item not found: " + afterMediaItemId);
+            return;
         }
 
-        requestLayout();
+        onTimelineChanged();
     }
 
     /**
@@ -470,19 +429,8 @@ public class OverlayLinearLayout extends LinearLayout {
      * @param mediaItem The media item
      */
     public void updateMediaItem(MovieMediaItem mediaItem) {
-        final String mediaItemId = mediaItem.getId();
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final MovieMediaItem mi = (MovieMediaItem)childView.getTag();
-            if (mi != null && mediaItemId.equals(mi.getId())) {
-                if (mediaItem != mi) {
-                    // The media item is a new instance
-                    childView.setTag(mediaItem);
-                }
-                break;
-            }
-        }
+        // The view of the media item is attached to the new instance
+        updateWindow();
 
         requestLayout();
         invalidate();
@@ -492,21 +440,11 @@ public class OverlayLinearLayout extends LinearLayout {
      * Remove a media item
      *
      * @param mediaItemId The media item id
-     * @return The view which was removed
      */
-    public View removeMediaItem(String mediaItemId) {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final MovieMediaItem mediaItem = (MovieMediaItem)childView.getTag();
-            if (mediaItem != null && mediaItem.getId().equals(mediaItemId)) {
-                removeViewAt(i);
-                requestLayout();
-                return childView;
-            }
-        }
+    public void removeMediaItem(String mediaItemId) {
+        updateWindow();
 
-        return null;
+        requestLayout();
     }
 
     /**
@@ -516,9 +454,12 @@ public class OverlayLinearLayout extends LinearLayout {
      * @param overlay The overlay which was added
      */
     public void addOverlay(String mediaItemId, MovieOverlay overlay) {
-        final OverlayView view = (OverlayView)getOverlayView(mediaItemId);
+        final OverlayView view = mOverlayViews.get(mediaItemId);
         if (view == null) {
-            Log.e(TAG, "addOverlay: Media item not found: " + mediaItemId);
+            // The state of a view is set when its media item enters the window
+            if (mProject.getMediaItem(mediaItemId) == null) {
+                Log.e(TAG, "addOverlay: Media item not found: " + mediaItemId);
+            }
             return;
         }
 
@@ -535,9 +476,12 @@ public class OverlayLinearLayout extends LinearLayout {
      * @param overlayId The overlay id
      */
     public void removeOverlay(String mediaItemId, String overlayId) {
-        final OverlayView view = (OverlayView)getOverlayView(mediaItemId);
+        final OverlayView view = mOverlayViews.get(mediaItemId);
         if (view == null) {
-            Log.e(TAG, "removeOverlay: Media item not found: " + mediaItemId);
+            // The state of a view is set when its media item enters the window
+            if (mProject.getMediaItem(mediaItemId) == null) {
+                Log.e(TAG, "removeOverlay: Media item not found: " + mediaItemId);
+            }
             return;
         }
 
@@ -567,9 +511,9 @@ public class OverlayLinearLayout extends LinearLayout {
             return;
         }
 
+        // The overlay of a media item outside of the window is not drawn
         final View overlayView = getOverlayView(mediaItemId);
         if (overlayView == null) {
-            Log.e(TAG, "updateOverlayAttributes: Overlay not found: " + overlayId);
             return;
         }
 
@@ -594,22 +538,36 @@ public class OverlayLinearLayout extends LinearLayout {
     }
 
     @Override
-    protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        final long totalDurationMs = mProject.computeDuration();
-        final int viewWidth = getWidth() - (2 * mHalfParentWidth);
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mWindow.setScrollView((View)getParent().getParent());
+    }
 
-        final int leftViewWidth = (Integer)((View)getParent().getParent()).getTag(
-                R.id.left_view_width);
-        long mediaItemStartTimeMs = 0;
-        int left = 0;
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View view = getChildAt(i);
-            final MovieMediaItem mediaItem = (MovieMediaItem)view.getTag();
-            if (mediaItem != null) { // Media item
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mWindow.setScrollView(null);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        final int leftViewWidth = getLeftViewWidth();
+        mBeginView.layout(0, 0, leftViewWidth, b - t);
+        mEndView.layout(getWidth() - mHalfParentWidth - (mHalfParentWidth - leftViewWidth), 0,
+                getWidth(), b - t);
+
+        // Only the media items in the window have a view, laid out from the
+        // begin times of the timeline index
+        if (!mOverlayViews.isEmpty()) {
+            final long totalDurationMs = mProject.computeDuration();
+            final int viewWidth = getWidth() - (2 * mHalfParentWidth);
+            for (OverlayView view : mOverlayViews.values()) {
+                final MovieMediaItem mediaItem = (MovieMediaItem)view.getTag();
+                final long mediaItemStartTimeMs =
+                        mProject.getMediaItemBeginTime(mediaItem.getId());
                 final MovieOverlay overlay = mediaItem.getOverlay();
 
-                final int right;
+                final int left, right;
                 if (overlay != null) {
                     // Note that this logic matches the one used in ApiService
                     // when handling the OP_MEDIA_ITEM_SET_BOUNDARIES command
@@ -647,35 +605,168 @@ public class OverlayLinearLayout extends LinearLayout {
                 }
 
                 view.layout(left, 0, right, b - t);
+            }
+        }
+
+        if (mResizingView != null) {
+            mLeftHandle.layout(mResizingView.getLeft() - mHandleWidth,
+                    mResizingView.getPaddingTop(),
+                    mResizingView.getLeft(), b - t - mResizingView.getPaddingBottom());
+            mRightHandle.layout(mResizingView.getRight(), mResizingView.getPaddingTop(),
+                    mResizingView.getRight() + mHandleWidth,
+                    b - t - mResizingView.getPaddingBottom());
+        }
 
-                mediaItemStartTimeMs += mediaItem.getAppTimelineDuration();
-                if (mediaItem.getEndTransition() != null) {
-                    mediaItemStartTimeMs -= mediaItem.getEndTransition().getAppDuration();
+        mMoveLayoutPending = false;
+
+        // The children cannot be replaced during the layout
+        mWindow.postUpdate();
+    }
+
+    /**
+     * @return The width of the begin view
+     */
+    private int getLeftViewWidth() {
+        return (Integer)((View)getParent().getParent()).getTag(R.id.left_view_width);
+    }
+
+    /**
+     * The media items of the project changed: updates the views in the window
+     * and lays them out again.
+     */
+    private void onTimelineChanged() {
+        updateWindow();
+
+        if (mOverlayActionMode != null) {
+            mOverlayActionMode.invalidate();
+        }
+
+        requestLayout();
+    }
+
+    /**
+     * Binds the media items in the window around the visible part of the
+     * timeline to overlay views and returns the views of the others to the
+     * pool. The media items are looked up in the timeline index so only the
+     * media items in the window are visited. The view being resized is kept
+     * until its media item is removed.
+     */
+    private void updateWindow() {
+        if (mProject == null || !mWindow.moveToScrollPosition()) {
+            return;
+        }
+
+        mWindowMediaItemIds.clear();
+        final long totalDurationMs = mProject.computeDuration();
+        final int viewWidth = getWidth() - (2 * mHalfParentWidth);
+        if (totalDurationMs > 0 && viewWidth > 0) {
+            final int leftViewWidth = getLeftViewWidth();
+            final List<MovieMediaItem> mediaItems = mProject.getMediaItems();
+            final int mediaItemsCount = mediaItems.size();
+            final long windowBeginMs = Math.max(0,
+                    ((long)(mWindow.getLeft() - leftViewWidth) * totalDurationMs) / viewWidth);
+            // The media item before the one which begins at the left edge of
+            // the window may overlap the window
+            int position = Math.max(0, mProject.findMediaItemPosition(windowBeginMs) - 1);
+            for (; position < mediaItemsCount; position++) {
+                final long beginMs = mProject.getMediaItemBeginTime(position);
+                final int left = leftViewWidth + (int)((beginMs * viewWidth) / totalDurationMs);
+                if (left > mWindow.getRight()) {
+                    break;
                 }
 
-                left = right;
-            } else if (view == mLeftHandle) {
-                if (mResizingView != null) {
-                    view.layout(mResizingView.getLeft() - mHandleWidth,
-                            mResizingView.getPaddingTop(),
-                            mResizingView.getLeft(), b - t - mResizingView.getPaddingBottom());
+                // The overlay is drawn within the span of its media item
+                final MovieMediaItem mediaItem = mediaItems.get(position);
+                final int right = leftViewWidth + (int)(((beginMs
+                        + mediaItem.getAppTimelineDuration()) * viewWidth) / totalDurationMs);
+                if (!mWindow.contains(left, right)) {
+                    continue;
                 }
-            } else if (view == mRightHandle) {
-                if (mResizingView != null) {
-                    view.layout(mResizingView.getRight(), mResizingView.getPaddingTop(),
-                            mResizingView.getRight() + mHandleWidth,
-                            b - t - mResizingView.getPaddingBottom());
+
+                mWindowMediaItemIds.add(mediaItem.getId());
+                final OverlayView view = mOverlayViews.get(mediaItem.getId());
+                if (view == null) {
+                    bindView(mediaItem);
+                } else if (view.getTag() != mediaItem) {
+                    // The media item is a new instance
+                    view.setTag(mediaItem);
                 }
-            } else if (i == 0) { // Begin view
-                view.layout(left, 0, left + leftViewWidth, b - t);
-                left += leftViewWidth;
-            } else { // End view
-                view.layout(getWidth() - mHalfParentWidth - (mHalfParentWidth - leftViewWidth), 0,
-                        getWidth(), b - t);
             }
         }
 
-        mMoveLayoutPending = false;
+        final Iterator<Map.Entry<String, OverlayView>> overlayViews =
+                mOverlayViews.entrySet().iterator();
+        while (overlayViews.hasNext()) {
+            final Map.Entry<String, OverlayView> entry = overlayViews.next();
+            if (mWindowMediaItemIds.contains(entry.getKey())) {
+                continue;
+            }
+
+            final OverlayView view = entry.getValue();
+            if (view == mResizingView) {
+                final MovieMediaItem mediaItem = mProject.getMediaItem(entry.getKey());
+                if (mediaItem != null) {
+                    view.setTag(mediaItem);
+                    continue;
+                }
+
+                clearResizingView();
+            }
+
+            overlayViews.remove();
+            unbindView(view);
+        }
+    }
+
+    /**
+     * Creates or reuses the overlay view of a media item
+     *
+     * @param mediaItem The media item
+     */
+    private void bindView(MovieMediaItem mediaItem) {
+        final OverlayView overlayView = mOverlayViewPool.isEmpty() ?
+                (OverlayView)inflate(getContext(), R.layout.overlay_item, null) :
+                mOverlayViewPool.remove(mOverlayViewPool.size() - 1);
+        if (mediaItem.getOverlay() != null) {
+            overlayView.setState(OverlayView.STATE_OVERLAY);
+        } else {
+            overlayView.setState(OverlayView.STATE_STUB);
+        }
+
+        overlayView.setTag(mediaItem);
+
+        overlayView.setGestureListener(mOverlayGestureListener);
+
+        final LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
+                LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.FILL_PARENT);
+        // Add the view after the begin view, below the handles
+        addView(overlayView, 1, lp);
+        mOverlayViews.put(mediaItem.getId(), overlayView);
+    }
+
+    /**
+     * Removes an overlay view and returns it to the pool. The caller removes
+     * the view from the map.
+     *
+     * @param view The view
+     */
+    private void unbindView(OverlayView view) {
+        removeView(view);
+
+        view.setSelected(false);
+        view.setTag(null);
+        mOverlayViewPool.add(view);
+    }
+
+    /**
+     * Hides the handles of the view being resized
+     */
+    private void clearResizingView() {
+        mLeftHandle.setVisibility(View.GONE);
+        mLeftHandle.setListener(null);
+        mRightHandle.setVisibility(View.GONE);
+        mRightHandle.setListener(null);
+        mResizingView = null;
     }
 
     /**
@@ -739,55 +830,23 @@ public class OverlayLinearLayout extends LinearLayout {
      * Find the overlay view with the specified id
      *
      * @param mediaItemId The media item id
-     * @return The overlay view
+     * @return The overlay view, null if outside of the window
      */
     private View getOverlayView(String mediaItemId) {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final MovieMediaItem mediaItem = (MovieMediaItem)childView.getTag();
-            if (mediaItem != null && mediaItemId.equals(mediaItem.getId())) {
-                return childView;
-            }
-        }
-
-        return null;
-    }
-
-    /**
-     * Find the media item view index with the specified id
-     *
-     * @param mediaItemId The media item id
-     * @return The media item view index
-     */
-    private int getMediaItemViewIndex(String mediaItemId) {
-        final int childrenCount = getChildCount();
-        for (int i = 0; i < childrenCount; i++) {
-            final View childView = getChildAt(i);
-            final Object tag = childView.getTag();
-            if (tag != null && tag instanceof MovieMediaItem) {
-                final MovieMediaItem mediaItem = (MovieMediaItem)tag;
-                if (mediaItemId.equals(mediaItem.getId())) {
-                    return i;
-                }
-            }
-        }
-
-        return -1;
+        return mOverlayViews.get(mediaItemId);
     }
 
     /**
      * Remove all overlay views (leave the beginning and end views)
      */
     private void removeViews() {
-        int index = 0;
-        while (index < getChildCount()) {
-            final MovieMediaItem mediaItem = (MovieMediaItem)getChildAt(index).getTag();
-            if (mediaItem != null) {
-                removeViewAt(index);
-            } else {
-                index++;
-            }
+        for (OverlayView view : mOverlayViews.values()) {
+            unbindView(view);
+        }
+        mOverlayViews.clear();
+
+        if (mResizingView != null) {
+            clearResizingView();
         }
 
         requestLayout();
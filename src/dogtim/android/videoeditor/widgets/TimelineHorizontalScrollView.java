@@ -17,6 +17,7 @@
 package dogtim.android.videoeditor.widgets;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import dogtim.android.videoeditor.R;
@@ -32,6 +33,7 @@ import android.util.AttributeSet;
 import android.view.Display;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
+import android.view.View;
 import android.widget.HorizontalScrollView;
 
 /**
@@ -44,6 +46,19 @@ public class TimelineHorizontalScrollView extends HorizontalScrollView {
 
     // Instance variables
     private final List<ScrollViewListener> mScrollListenerList;
+    // The listeners of views which only need the scroll progress while the
+    // view is near the viewport
+    private final List<ScrollViewListener> mViewScrollListenerList;
+    private final List<View> mListenerViewList;
+    // The view listeners sorted by the left position of their view in the
+    // scrolled content, with the maximum right position of the views up to
+    // each index, rebuilt after a layout
+    private ScrollViewListener[] mIndexListeners;
+    private int[] mIndexLefts;
+    private int[] mIndexRights;
+    private int[] mIndexMaxRights;
+    private int mIndexSize;
+    private boolean mIndexDirty;
     private final Handler mHandler;
     private final int mPlayheadMarginTop;
     private final int mPlayheadMarginTopOk;
@@ -65,9 +80,16 @@ public class TimelineHorizontalScrollView extends HorizontalScrollView {
         public void run() {
             mIsScrolling = false;
 
-            for (ScrollViewListener listener : mScrollListenerList) {
-                listener.onScrollEnd(TimelineHorizontalScrollView.this, getScrollX(),
-                        getScrollY(), mAppScroll);
+            final int scrollX = getScrollX();
+            final int scrollY = getScrollY();
+            for (int i = 0; i < mScrollListenerList.size(); i++) {
+                mScrollListenerList.get(i).onScrollEnd(TimelineHorizontalScrollView.this,
+                        scrollX, scrollY, mAppScroll);
+            }
+
+            for (int i = 0; i < mViewScrollListenerList.size(); i++) {
+                mViewScrollListenerList.get(i).onScrollEnd(TimelineHorizontalScrollView.this,
+                        scrollX, scrollY, mAppScroll);
             }
 
             mAppScroll = false;
@@ -79,6 +101,12 @@ public class TimelineHorizontalScrollView extends HorizontalScrollView {
 
         mEnableUserScrolling = true;
         mScrollListenerList = new ArrayList<ScrollViewListener>();
+        mViewScrollListenerList = new ArrayList<ScrollViewListener>();
+        mListenerViewList = new ArrayList<View>();
+        mIndexListeners = new ScrollViewListener[0];
+        mIndexLefts = new int[0];
+        mIndexRights = new int[0];
+        mIndexMaxRights = new int[0];
         mHandler = new Handler();
 
         // Compute half the width of the screen (and therefore the parent view)
@@ -151,17 +179,49 @@ public class TimelineHorizontalScrollView extends HorizontalScrollView {
     }
 
     /**
+     * Add a listener which receives all the scroll events
+     *
      * @param listener The listener
      */
     public void addScrollListener(ScrollViewListener listener) {
         mScrollListenerList.add(listener);
     }
 
+    /**
+     * Add the listener of a view in the scrolled content. The listener
+     * receives the scroll begin and end events, but the scroll progress
+     * events only while its view is within half a screen of the viewport.
+     *
+     * @param listener The listener
+     * @param view The view
+     */
+    public void addScrollListener(ScrollViewListener listener, View view) {
+        mViewScrollListenerList.add(listener);
+        mListenerViewList.add(view);
+        mIndexDirty = true;
+    }
+
     /**
      * @param listener The listener
      */
     public void removeScrollListener(ScrollViewListener listener) {
-        mScrollListenerList.remove(listener);
+        if (mScrollListenerList.remove(listener)) {
+            return;
+        }
+
+        final int index = mViewScrollListenerList.indexOf(listener);
+        if (index >= 0) {
+            mViewScrollListenerList.remove(index);
+            mListenerViewList.remove(index);
+            mIndexDirty = true;
+
+            // The listener may be removed while the progress is dispatched
+            for (int i = 0; i < mIndexSize; i++) {
+                if (mIndexListeners[i] == listener) {
+                    mIndexListeners[i] = null;
+                }
+            }
+        }
     }
 
     /**
@@ -223,19 +283,127 @@ public class TimelineHorizontalScrollView extends HorizontalScrollView {
 
             final int scrollY = getScrollY();
             if (mIsScrolling) {
-                for (ScrollViewListener listener : mScrollListenerList) {
-                    listener.onScrollProgress(this, scrollX, scrollY, mAppScroll);
+                for (int i = 0; i < mScrollListenerList.size(); i++) {
+                    mScrollListenerList.get(i).onScrollProgress(this, scrollX, scrollY,
+                            mAppScroll);
                 }
+
+                dispatchViewScrollProgress(scrollX, scrollY);
             } else {
                 mIsScrolling = true;
 
-                for (ScrollViewListener listener : mScrollListenerList) {
-                    listener.onScrollBegin(this, scrollX, scrollY, mAppScroll);
+                for (int i = 0; i < mScrollListenerList.size(); i++) {
+                    mScrollListenerList.get(i).onScrollBegin(this, scrollX, scrollY,
+                            mAppScroll);
                 }
+
+                for (int i = 0; i < mViewScrollListenerList.size(); i++) {
+                    mViewScrollListenerList.get(i).onScrollBegin(this, scrollX, scrollY,
+                            mAppScroll);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+
+        // The views may have moved
+        mIndexDirty = true;
+    }
+
+    /**
+     * Notify the view listeners whose view is within half a screen of the
+     * viewport of the scroll progress
+     *
+     * @param scrollX The horizontal scroll position
+     * @param scrollY The vertical scroll position
+     */
+    private void dispatchViewScrollProgress(int scrollX, int scrollY) {
+        if (mIndexDirty) {
+            rebuildIndex();
+        }
+
+        final int visibleLeft = scrollX - mHalfParentWidth;
+        final int visibleRight = scrollX + getWidth() + mHalfParentWidth;
+
+        // Find the last view which begins before the right of the viewport
+        int low = 0;
+        int high = mIndexSize;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (mIndexLefts[middle] <= visibleRight) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        // No view at or before an index ends after the viewport left when the
+        // maximum right position up to the index is before it
+        for (int i = low - 1; i >= 0 && mIndexMaxRights[i] >= visibleLeft; i--) {
+            final ScrollViewListener listener = mIndexListeners[i];
+            if (listener != null && mIndexRights[i] >= visibleLeft) {
+                listener.onScrollProgress(this, scrollX, scrollY, mAppScroll);
             }
         }
     }
 
+    /**
+     * Rebuild the interval index of the view listeners
+     */
+    private void rebuildIndex() {
+        final int size = mViewScrollListenerList.size();
+        if (mIndexListeners.length < size) {
+            final int capacity = Math.max(size, mIndexListeners.length * 2);
+            mIndexListeners = new ScrollViewListener[capacity];
+            mIndexLefts = new int[capacity];
+            mIndexRights = new int[capacity];
+            mIndexMaxRights = new int[capacity];
+        } else {
+            Arrays.fill(mIndexListeners, size, mIndexListeners.length, null);
+        }
+
+        for (int i = 0; i < size; i++) {
+            final View view = mListenerViewList.get(i);
+            int left = 0;
+            View ancestor = view;
+            while (ancestor != null && ancestor != this) {
+                left += ancestor.getLeft();
+                ancestor = ancestor.getParent() instanceof View
+                        ? (View)ancestor.getParent() : null;
+            }
+
+            int right = left + view.getWidth();
+            if (ancestor == null) {
+                // The view is not in the scrolled content, always notify it
+                left = Integer.MIN_VALUE;
+                right = Integer.MAX_VALUE;
+            }
+
+            // Insertion sort, the views are mostly registered from left to right
+            int j = i - 1;
+            while (j >= 0 && mIndexLefts[j] > left) {
+                mIndexListeners[j + 1] = mIndexListeners[j];
+                mIndexLefts[j + 1] = mIndexLefts[j];
+                mIndexRights[j + 1] = mIndexRights[j];
+                j--;
+            }
+            mIndexListeners[j + 1] = mViewScrollListenerList.get(i);
+            mIndexLefts[j + 1] = left;
+            mIndexRights[j + 1] = right;
+        }
+
+        for (int i = 0; i < size; i++) {
+            mIndexMaxRights[i] = i == 0 ? mIndexRights[0]
+                    : Math.max(mIndexMaxRights[i - 1], mIndexRights[i]);
+        }
+
+        mIndexSize = size;
+        mIndexDirty = false;
+    }
+
     @Override
     protected void dispatchDraw(Canvas canvas) {
         super.dispatchDraw(canvas);
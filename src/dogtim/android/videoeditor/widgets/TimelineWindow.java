@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.widgets;
+
+import android.view.View;
+
+/**
+ * The window around the visible part of the timeline in which a timeline
+ * layout creates the views of its items. The window extends one screen width
+ * on both sides of the screen and follows the scroll position of the timeline
+ * scroll view.
+ */
+class TimelineWindow {
+    // Instance variables
+    private final View mLayout;
+    private final int mScreenWidth;
+    private final Runnable mUpdateRunnable;
+    private final Runnable mPostedUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mUpdatePending = false;
+            mUpdateRunnable.run();
+        }
+    };
+    private final ScrollViewListener mScrollListener = new ScrollViewListener() {
+        @Override
+        public void onScrollBegin(View view, int scrollX, int scrollY, boolean appScroll) {
+        }
+
+        @Override
+        public void onScrollProgress(View view, int scrollX, int scrollY, boolean appScroll) {
+            // Move the window when half of the margin has been scrolled
+            if (Math.abs(scrollX - mScrollX) > mScreenWidth / 2) {
+                mUpdateRunnable.run();
+            }
+        }
+
+        @Override
+        public void onScrollEnd(View view, int scrollX, int scrollY, boolean appScroll) {
+            mUpdateRunnable.run();
+        }
+    };
+    private TimelineHorizontalScrollView mScrollView;
+    private int mScrollX;
+    private boolean mUpdatePending;
+
+    /**
+     * Constructor
+     *
+     * @param layout The timeline layout
+     * @param screenWidth The width of the screen
+     * @param updateRunnable Binds the items in the window to views
+     */
+    TimelineWindow(View layout, int screenWidth, Runnable updateRunnable) {
+        mLayout = layout;
+        mScreenWidth = screenWidth;
+        mUpdateRunnable = updateRunnable;
+    }
+
+    /**
+     * @param scrollView The timeline scroll view, null to detach the window
+     */
+    void setScrollView(View scrollView) {
+        if (mScrollView != null) {
+            mScrollView.removeScrollListener(mScrollListener);
+        }
+
+        if (scrollView instanceof TimelineHorizontalScrollView) {
+            mScrollView = (TimelineHorizontalScrollView) scrollView;
+            mScrollView.addScrollListener(mScrollListener);
+        } else {
+            mScrollView = null;
+        }
+    }
+
+    /**
+     * Moves the window to the current scroll position
+     *
+     * @return false if the window is not attached to a scroll view
+     */
+    boolean moveToScrollPosition() {
+        if (mScrollView == null) {
+            return false;
+        }
+
+        mScrollX = mScrollView.getScrollX();
+        return true;
+    }
+
+    /**
+     * Updates the window after the current layout pass. The views cannot be
+     * added or removed while the layout is laid out.
+     */
+    void postUpdate() {
+        if (!mUpdatePending) {
+            mUpdatePending = true;
+            mLayout.post(mPostedUpdateRunnable);
+        }
+    }
+
+    /**
+     * @return The left edge of the window in the coordinates of the layout
+     */
+    int getLeft() {
+        return mScrollX - mLayout.getLeft() - mScreenWidth;
+    }
+
+    /**
+     * @return The right edge of the window in the coordinates of the layout
+     */
+    int getRight() {
+        return mScrollX - mLayout.getLeft() + 2 * mScreenWidth;
+    }
+
+    /**
+     * @param left The left edge of an item
+     * @param right The right edge of an item
+     *
+     * @return true if the item overlaps the window
+     */
+    boolean contains(int left, int right) {
+        return right >= getLeft() && left <= getRight();
+    }
+}
@@ -18,6 +18,7 @@ package dogtim.android.videoeditor.widgets;
 
 import dogtim.android.videoeditor.service.ApiService;
 import dogtim.android.videoeditor.service.MovieTransition;
+import dogtim.android.videoeditor.util.BitmapMemoryManager;
 import dogtim.android.videoeditor.R;
 
 import android.content.Context;
@@ -41,7 +42,7 @@ import android.widget.ImageView;
  * Transition view. This class assumes transition is always put on a MediaLinearLayout and is
  * wrapped with a timeline scroll view.
  */
-public class TransitionView extends ImageView {
+public class TransitionView extends ImageView implements BitmapMemoryManager.Client {
     // Logging
     private static final String TAG = "TransitionView";
 
@@ -59,9 +60,13 @@ public class TransitionView extends ImageView {
     private int mScreenWidth;
     private String mProjectPath;
     private Bitmap[] mBitmaps;
+    // true if mBitmaps belong to the timeline thumbnail cache
+    private boolean mSharedBitmaps;
+    private final Rect mBitmapDestRect = new Rect();
     private ItemSimpleGestureListener mGestureListener;
     private int mGeneratingTransitionProgress;
     private boolean mIsPlaying;
+    private final BitmapMemoryManager mBitmapMemoryManager;
 
     public TransitionView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
@@ -133,6 +138,8 @@ public class TransitionView extends ImageView {
         mSeparatorPaint = new Paint();
         mSeparatorPaint.setColor(Color.BLACK);
         mSeparatorPaint.setStrokeWidth(2);
+
+        mBitmapMemoryManager = BitmapMemoryManager.getInstance(context);
     }
 
     public TransitionView(Context context, AttributeSet attrs) {
@@ -148,27 +155,24 @@ public class TransitionView extends ImageView {
         // Add the horizontal scroll view listener
         mScrollView = (TimelineHorizontalScrollView) getRootView().findViewById(
                 R.id.timeline_scroller);
-        mScrollView.addScrollListener(mScrollListener);
+        mScrollView.addScrollListener(mScrollListener, this);
         mScrollX = mScrollView.getScrollX();
+        // The scroll may have begun before this view was bound
+        mIsScrolling = mScrollView.isScrolling();
 
         mTimeline = (MediaLinearLayout) getRootView().findViewById(R.id.timeline_media);
+
+        mBitmapMemoryManager.register("Transition view", this, 2);
     }
 
     @Override
     protected void onDetachedFromWindow() {
         // Remove the horizontal scroll listener
         mScrollView.removeScrollListener(mScrollListener);
+        mBitmapMemoryManager.unregister(this);
 
         // Release the current set of bitmaps
-        if (mBitmaps != null) {
-            for (int i = 0; i < mBitmaps.length; i++) {
-                if (mBitmaps[i] != null) {
-                    mBitmaps[i].recycle();
-                }
-            }
-
-            mBitmaps = null;
-        }
+        releaseBitmaps();
     }
 
     /**
@@ -185,6 +189,15 @@ public class TransitionView extends ImageView {
         mGestureListener = listener;
     }
 
+    /**
+     * Resets the state of the view before it is reused for another transition
+     */
+    void prepareForReuse() {
+        mIsPlaying = false;
+        mGeneratingTransitionProgress = -1;
+        setSelected(false);
+    }
+
     /**
      * Resets the transition generation progress.
      */
@@ -234,7 +247,34 @@ public class TransitionView extends ImageView {
         }
 
         // Release the current set of bitmaps
-        if (mBitmaps != null) {
+        releaseBitmaps();
+
+        mBitmaps = bitmaps;
+        mSharedBitmaps = false;
+        mBitmapMemoryManager.onBitmapsAdded();
+        invalidate();
+
+        return true;
+    }
+
+    /**
+     * A frame of the media items around the transition was cached, the
+     * frames of the cache are fetched again on the next draw.
+     */
+    void onEdgeThumbnailCached() {
+        if (mSharedBitmaps) {
+            releaseBitmaps();
+        }
+
+        invalidate();
+    }
+
+    /**
+     * Release the current set of bitmaps. The bitmaps of the thumbnail cache
+     * are only dropped, the cache may still draw them.
+     */
+    private void releaseBitmaps() {
+        if (mBitmaps != null && !mSharedBitmaps) {
             for (int i = 0; i < mBitmaps.length; i++) {
                 if (mBitmaps[i] != null) {
                     mBitmaps[i].recycle();
@@ -242,10 +282,37 @@ public class TransitionView extends ImageView {
             }
         }
 
-        mBitmaps = bitmaps;
-        invalidate();
+        mBitmaps = null;
+        mSharedBitmaps = false;
+    }
 
-        return true;
+    @Override
+    public long getBitmapBytes() {
+        long bytes = 0;
+        // The shared bitmaps are accounted by the thumbnail cache
+        if (mBitmaps != null && !mSharedBitmaps) {
+            for (int i = 0; i < mBitmaps.length; i++) {
+                if (mBitmaps[i] != null) {
+                    bytes += mBitmaps[i].getByteCount();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public long trimBitmapBytes(long bytes) {
+        // The bitmaps of a visible transition would be requested again on the next draw
+        mScrollX = mScrollView.getScrollX();
+        final int start = getLeft() + getPaddingLeft() - mScrollX;
+        final int end = getRight() - getPaddingRight() - mScrollX;
+        if (start < mScreenWidth && end >= 0) {
+            return 0;
+        }
+
+        final long trimmed = getBitmapBytes();
+        releaseBitmaps();
+        return trimmed;
     }
 
     @Override
@@ -270,7 +337,7 @@ public class TransitionView extends ImageView {
                     getHeight() - getPaddingBottom());
 
             if (mBitmaps[0] != null) {
-                canvas.drawBitmap(mBitmaps[0], getPaddingLeft(), getPaddingTop(), null);
+                drawThumbnail(canvas, mBitmaps[0], getPaddingLeft(), false);
             } else {
                 canvas.drawColor(Color.BLACK);
             }
@@ -281,9 +348,7 @@ public class TransitionView extends ImageView {
             canvas.clipRect(halfWidth, getPaddingTop(),
                     getWidth() - getPaddingRight(), getHeight() - getPaddingBottom());
             if (mBitmaps[1] != null) {
-                canvas.drawBitmap(mBitmaps[1],
-                        getWidth() - getPaddingRight() - mBitmaps[1].getWidth(), getPaddingTop(),
-                        null);
+                drawThumbnail(canvas, mBitmaps[1], getWidth() - getPaddingRight(), true);
             } else {
                 canvas.drawColor(Color.BLACK);
             }
@@ -307,6 +372,28 @@ public class TransitionView extends ImageView {
         }
     }
 
+    /**
+     * Draws a thumbnail at the height of the view. The filmstrip thumbnails
+     * of the cache are taller than the view and are scaled down.
+     *
+     * @param canvas The canvas
+     * @param bitmap The thumbnail
+     * @param x The left position, or the right position if alignRight is true
+     * @param alignRight true to align the right of the thumbnail to x
+     */
+    private void drawThumbnail(Canvas canvas, Bitmap bitmap, int x, boolean alignRight) {
+        final int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        if (bitmap.getHeight() == height) {
+            canvas.drawBitmap(bitmap, alignRight ? x - bitmap.getWidth() : x, getPaddingTop(),
+                    null);
+        } else {
+            final int width = (bitmap.getWidth() * height) / bitmap.getHeight();
+            final int left = alignRight ? x - width : x;
+            mBitmapDestRect.set(left, getPaddingTop(), left + width, getPaddingTop() + height);
+            canvas.drawBitmap(bitmap, null, mBitmapDestRect, null);
+        }
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent ev) {
         // Let the gesture detector inspect all events.
@@ -336,6 +423,11 @@ public class TransitionView extends ImageView {
             return false;
         }
 
+        // This view does not receive the scroll progress when it is far from
+        // the screen
+        if (mScrollView != null) {
+            mScrollX = mScrollView.getScrollX();
+        }
         final int start = getLeft() + getPaddingLeft() - mScrollX;
         final int end = getRight() - getPaddingRight() - mScrollX;
 
@@ -346,16 +438,23 @@ public class TransitionView extends ImageView {
             }
 
             // Release the current set of bitmaps
-            if (mBitmaps != null) {
-                for (int i = 0; i < mBitmaps.length; i++) {
-                    if (mBitmaps[i] != null) {
-                        mBitmaps[i].recycle();
-                    }
-                }
+            releaseBitmaps();
 
-                mBitmaps = null;
-            }
+            return false;
+        }
+
+        // Use the filmstrip frames of the media items around the transition
+        final Bitmap[] bitmaps = mTimeline.getTransitionEdgeThumbnails(transition);
+        if (bitmaps != null) {
+            releaseBitmaps();
+            mBitmaps = bitmaps;
+            mSharedBitmaps = true;
+            invalidate();
+            return true;
+        }
 
+        // Wait for the media item views to load them
+        if (mTimeline.prefetchTransitionEdgeThumbnails(transition)) {
             return false;
         }
 
@@ -0,0 +1,22 @@
+LOCAL_PATH:= $(call my-dir)
+
+##################################################
+# The tests of the Android independent core, run on the host JVM:
+# java -cp $(HOST_OUT_JAVA_LIBRARIES)/videoeditor-core-tests.jar:$(HOST_OUT_JAVA_LIBRARIES)/junit.jar \
+#     junit.textui.TestRunner android.media.videoeditor.IdIndexedListTest
+include $(CLEAR_VARS)
+
+LOCAL_SRC_FILES := \
+    $(call all-java-files-under, src)
+
+LOCAL_JAVA_LIBRARIES := junit
+
+LOCAL_STATIC_JAVA_LIBRARIES := videoeditor-core
+
+LOCAL_MODULE := videoeditor-core-tests
+
+LOCAL_MODULE_TAGS := tests
+
+include $(BUILD_HOST_JAVA_LIBRARY)
+
+include $(call all-makefiles-under, $(LOCAL_PATH))
@@ -0,0 +1,20 @@
+LOCAL_PATH:= $(call my-dir)
+
+##################################################
+# The Caliper benchmarks of the Android independent core, run on the host JVM:
+# java -cp $(HOST_OUT_JAVA_LIBRARIES)/videoeditor-core-benchmarks.jar:$(HOST_OUT_JAVA_LIBRARIES)/caliper.jar \
+#     com.google.caliper.Runner dogtim.android.videoeditor.util.WaveformUtilsBenchmark
+include $(CLEAR_VARS)
+
+LOCAL_SRC_FILES := \
+    $(call all-java-files-under, src)
+
+LOCAL_JAVA_LIBRARIES := caliper
+
+LOCAL_STATIC_JAVA_LIBRARIES := videoeditor-core
+
+LOCAL_MODULE := videoeditor-core-benchmarks
+
+LOCAL_MODULE_TAGS := tests
+
+include $(BUILD_HOST_JAVA_LIBRARY)
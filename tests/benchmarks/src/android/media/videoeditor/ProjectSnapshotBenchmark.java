@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.media.videoeditor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+
+/**
+ * Writing and reading the snapshots of synthetic projects of several sizes.
+ * Opening a project reads the project section only, loading the storyboard
+ * reads all the sections.
+ */
+public class ProjectSnapshotBenchmark extends SimpleBenchmark {
+    // The number of media items of the project
+    @Param({"10", "100", "1000"}) private int mediaItems;
+
+    // The size of a media item record with an overlay and an effect
+    private static final int MEDIA_ITEM_RECORD_SIZE = 320;
+    // The size of a transition record
+    private static final int TRANSITION_RECORD_SIZE = 96;
+    // The size of an audio track record
+    private static final int AUDIO_TRACK_RECORD_SIZE = 160;
+
+    private File mProjectDir;
+    private List<List<byte[]>> mSections;
+
+    @Override
+    protected void setUp() throws Exception {
+        mProjectDir = File.createTempFile("project", "");
+        mProjectDir.delete();
+        mProjectDir.mkdir();
+
+        mSections = new ArrayList<List<byte[]>>();
+        for (int section = 0; section < ProjectSnapshot.SECTION_COUNT; section++) {
+            mSections.add(new ArrayList<byte[]>());
+        }
+
+        mSections.get(ProjectSnapshot.SECTION_PROJECT).add(new byte[16]);
+        for (int i = 0; i < mediaItems; i++) {
+            mSections.get(ProjectSnapshot.SECTION_MEDIA_ITEMS).add(
+                    new byte[MEDIA_ITEM_RECORD_SIZE]);
+            if (i < mediaItems - 1) {
+                mSections.get(ProjectSnapshot.SECTION_TRANSITIONS).add(
+                        new byte[TRANSITION_RECORD_SIZE]);
+            }
+        }
+        mSections.get(ProjectSnapshot.SECTION_MEDIA_ITEMS).add(new byte[mediaItems * 16]);
+        mSections.get(ProjectSnapshot.SECTION_AUDIO_TRACKS).add(
+                new byte[AUDIO_TRACK_RECORD_SIZE]);
+
+        ProjectSnapshot.write(mProjectDir.getPath(), 1, mSections, false);
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : mProjectDir.listFiles()) {
+            file.delete();
+        }
+        mProjectDir.delete();
+    }
+
+    public int timeWrite(int reps) throws Exception {
+        for (int i = 0; i < reps; i++) {
+            ProjectSnapshot.write(mProjectDir.getPath(), i + 1, mSections, false);
+        }
+        return reps;
+    }
+
+    public int timeReadProjectSection(int reps) throws Exception {
+        int count = 0;
+        for (int i = 0; i < reps; i++) {
+            final ProjectSnapshot snapshot = ProjectSnapshot.open(mProjectDir.getPath());
+            try {
+                count += snapshot.readSection(ProjectSnapshot.SECTION_PROJECT).size();
+            } finally {
+                snapshot.close();
+            }
+        }
+        return count;
+    }
+
+    public int timeReadAllSections(int reps) throws Exception {
+        int count = 0;
+        for (int i = 0; i < reps; i++) {
+            final ProjectSnapshot snapshot = ProjectSnapshot.open(mProjectDir.getPath());
+            try {
+                count += snapshot.readAllSections().size();
+            } finally {
+                snapshot.close();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.media.videoeditor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+
+/**
+ * Parsing of waveform files of audio tracks of several durations
+ */
+public class WaveformDataBenchmark extends SimpleBenchmark {
+    // The number of frames, 20 ms each: 10 seconds to 1 hour
+    @Param({"500", "30000", "180000"}) private int frames;
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        mFile = File.createTempFile("waveform", ".dat");
+        final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(mFile)));
+        try {
+            dos.writeInt(20);
+            dos.writeInt(frames);
+            for (int i = 0; i < frames; i++) {
+                dos.write((i * 31) & 0xff);
+            }
+        } finally {
+            dos.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        mFile.delete();
+    }
+
+    public int timeRead(int reps) throws Exception {
+        int count = 0;
+        for (int i = 0; i < reps; i++) {
+            count += new WaveformData(mFile.getPath()).getFramesCount();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+
+/**
+ * Time lookups and trims of timelines of increasing length, compared with the
+ * linear scan the index replaced
+ */
+public class TimelineIndexBenchmark extends SimpleBenchmark {
+    // The number of media items of the timeline
+    @Param({"10", "1000", "10000"}) private int mediaItems;
+
+    // The duration of each media item
+    private static final long DURATION_MS = 4000;
+    // The duration of the transition at the end of every other media item
+    private static final long TRANSITION_DURATION_MS = 1000;
+
+    /**
+     * A media item of the benchmark
+     */
+    private static class Item implements TimelineIndex.IndexedMediaItem {
+        private final String mId;
+        private final Transition mEndTransition;
+        private long mDurationMs;
+        private TimelineIndex mTimelineIndex;
+
+        private Item(String id, long durationMs, Transition endTransition) {
+            mId = id;
+            mDurationMs = durationMs;
+            mEndTransition = endTransition;
+        }
+
+        private void setDuration(long durationMs) {
+            mDurationMs = durationMs;
+            mTimelineIndex.onMediaItemChanged(this);
+        }
+
+        @Override
+        public String getId() {
+            return mId;
+        }
+
+        @Override
+        public long getAppTimelineDuration() {
+            return mDurationMs;
+        }
+
+        @Override
+        public Transition getEndTransition() {
+            return mEndTransition;
+        }
+
+        @Override
+        public void setTimelineIndex(TimelineIndex timelineIndex) {
+            mTimelineIndex = timelineIndex;
+        }
+    }
+
+    /**
+     * A transition of the benchmark
+     */
+    private static class Transition implements TimelineIndex.IndexedTransition {
+        private final String mId;
+
+        private Transition(String id) {
+            mId = id;
+        }
+
+        @Override
+        public String getId() {
+            return mId;
+        }
+
+        @Override
+        public long getAppDuration() {
+            return TRANSITION_DURATION_MS;
+        }
+
+        @Override
+        public void setTimelineIndex(TimelineIndex timelineIndex) {
+        }
+    }
+
+    private List<Item> mItems;
+    private TimelineIndex mIndex;
+    private long mDurationMs;
+
+    @Override
+    protected void setUp() {
+        mItems = new ArrayList<Item>(mediaItems);
+        for (int i = 0; i < mediaItems; i++) {
+            mItems.add(new Item("m" + i, DURATION_MS,
+                    i % 2 == 0 && i < mediaItems - 1 ? new Transition("t" + i) : null));
+        }
+
+        mIndex = new TimelineIndex();
+        mIndex.invalidate(mItems);
+        mDurationMs = mIndex.getDuration();
+    }
+
+    public long timeGetBeginTime(int reps) {
+        long sum = 0;
+        for (int i = 0; i < reps; i++) {
+            sum += mIndex.getBeginTime(i % mediaItems);
+        }
+        return sum;
+    }
+
+    public long timeLinearGetBeginTime(int reps) {
+        long sum = 0;
+        for (int i = 0; i < reps; i++) {
+            final int position = i % mediaItems;
+            long beginMs = 0;
+            for (int j = 0; j < position; j++) {
+                final Item item = mItems.get(j);
+                beginMs += item.getAppTimelineDuration();
+                if (item.getEndTransition() != null) {
+                    beginMs -= item.getEndTransition().getAppDuration();
+                }
+            }
+            sum += beginMs;
+        }
+        return sum;
+    }
+
+    public int timeGetPreviousPosition(int reps) {
+        int sum = 0;
+        for (int i = 0; i < reps; i++) {
+            sum += mIndex.getPreviousPosition((i * 7919L) % mDurationMs);
+        }
+        return sum;
+    }
+
+    public int timeGetInsertAfterPosition(int reps) {
+        int sum = 0;
+        for (int i = 0; i < reps; i++) {
+            sum += mIndex.getInsertAfterPosition((i * 7919L) % mDurationMs);
+        }
+        return sum;
+    }
+
+    public long timeTrim(int reps) {
+        for (int i = 0; i < reps; i++) {
+            mItems.get(i % mediaItems).setDuration(DURATION_MS - (i & 1) * 100);
+        }
+        return mIndex.getDuration();
+    }
+}
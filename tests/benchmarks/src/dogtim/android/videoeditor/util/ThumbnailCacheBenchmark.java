@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.util;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+
+/**
+ * Lookups of the thumbnails drawn by a media item view in caches holding the
+ * filmstrips of several media items
+ */
+public class ThumbnailCacheBenchmark extends SimpleBenchmark {
+    // The number of cached media items
+    @Param({"10", "100", "1000"}) private int mediaItems;
+
+    // The number of frames of each media item
+    private static final int FRAMES = 64;
+    // The number of frames drawn by a view
+    private static final int VISIBLE_FRAMES = 16;
+
+    /**
+     * A cache of thumbnails of one unit each
+     */
+    private static class Cache extends ThumbnailCache<Object> {
+        private Cache() {
+            super(Long.MAX_VALUE);
+        }
+
+        @Override
+        protected long sizeOf(Object thumbnail) {
+            return 1;
+        }
+    }
+
+    private Cache mCache;
+    private String[] mIds;
+    private final Object[] mThumbnails = new Object[VISIBLE_FRAMES];
+
+    @Override
+    protected void setUp() {
+        mCache = new Cache();
+        mIds = new String[mediaItems];
+        for (int i = 0; i < mediaItems; i++) {
+            mIds[i] = "m" + i;
+            for (int frame = 0; frame < FRAMES; frame++) {
+                mCache.put(mIds[i], 0, frame, new Object());
+            }
+        }
+    }
+
+    public int timeGetRange(int reps) {
+        int found = 0;
+        for (int i = 0; i < reps; i++) {
+            mCache.getRange(mIds[i % mediaItems], 0, i % (FRAMES - VISIBLE_FRAMES),
+                    VISIBLE_FRAMES, mThumbnails);
+            if (mThumbnails[0] != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    public int timeGet(int reps) {
+        int found = 0;
+        for (int i = 0; i < reps; i++) {
+            if (mCache.get(mIds[i % mediaItems], 0, i % FRAMES) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
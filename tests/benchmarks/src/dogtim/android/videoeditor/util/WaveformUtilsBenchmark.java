@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.util;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+
+/**
+ * Gain normalization of the waveforms drawn by the audio track views
+ */
+public class WaveformUtilsBenchmark extends SimpleBenchmark {
+    // The number of frames, 20 ms each: 10 seconds to 1 hour
+    @Param({"500", "30000", "180000"}) private int frames;
+
+    private short[] mGains;
+
+    @Override
+    protected void setUp() {
+        mGains = new short[frames];
+        for (int i = 0; i < frames; i++) {
+            mGains[i] = (short)((i * 31) & 0xff);
+        }
+    }
+
+    public int timeNormalizeGains(int reps) {
+        int length = 0;
+        for (int i = 0; i < reps; i++) {
+            length += WaveformUtils.normalizeGains(mGains, frames, 0, 50).length;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,20 @@
+LOCAL_PATH:= $(call my-dir)
+
+##################################################
+# The instrumentation benchmarks of the timeline, run on a device:
+# adb shell am instrument -w -e class dogtim.android.videoeditor.widgets.TimelineScrollBenchmark \
+#     dogtim.android.videoeditor.tests/android.test.InstrumentationTestRunner
+include $(CLEAR_VARS)
+
+LOCAL_SRC_FILES := \
+    $(call all-java-files-under, src)
+
+LOCAL_JAVA_LIBRARIES := android.test.runner
+
+LOCAL_PACKAGE_NAME := VideoEditorTests
+
+LOCAL_INSTRUMENTATION_FOR := VideoEditor
+
+LOCAL_MODULE_TAGS := tests
+
+include $(BUILD_PACKAGE)
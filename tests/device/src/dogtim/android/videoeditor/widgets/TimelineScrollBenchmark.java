@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.widgets;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.media.videoeditor.AudioTrack;
+import android.media.videoeditor.MediaItem;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.ViewGroup;
+import dogtim.android.videoeditor.ProjectsActivity;
+import dogtim.android.videoeditor.R;
+import dogtim.android.videoeditor.VideoEditorActivity;
+import dogtim.android.videoeditor.service.ApiService;
+import dogtim.android.videoeditor.service.ApiServiceListener;
+import dogtim.android.videoeditor.service.VideoEditorProject;
+import dogtim.android.videoeditor.util.FileUtils;
+import dogtim.android.videoeditor.util.FrameTimeRecorder;
+
+/**
+ * Records the frame times of flinging the timeline of a project with 1000
+ * photos. The frame times are reported in the status of the instrumentation
+ * and in the log.
+ */
+public class TimelineScrollBenchmark
+        extends ActivityInstrumentationTestCase2<VideoEditorActivity> {
+    // Logging
+    private static final String TAG = "TimelineScrollBenchmark";
+
+    // The number of media items of the project
+    private static final int MEDIA_ITEMS_COUNT = 1000;
+    // The number of flings
+    private static final int FLINGS_COUNT = 10;
+    // The fling velocity (pixels per second)
+    private static final int FLING_VELOCITY = 8000;
+    // The time to wait for the project to be created and laid out
+    private static final long PROJECT_TIMEOUT_MS = 5 * 60 * 1000;
+
+    // Instance variables
+    private String mProjectPath;
+    private File mPhotoFile;
+
+    public TimelineScrollBenchmark() {
+        super(VideoEditorActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        final Context context = getInstrumentation().getTargetContext();
+        mPhotoFile = createPhoto(context);
+        final String[] photos = new String[MEDIA_ITEMS_COUNT];
+        for (int i = 0; i < photos.length; i++) {
+            photos[i] = mPhotoFile.getAbsolutePath();
+        }
+
+        final CountDownLatch created = new CountDownLatch(1);
+        final ApiServiceListener listener = new ApiServiceListener() {
+            @Override
+            public void onVideoEditorCreated(String projectPath, VideoEditorProject project,
+                    List<MediaItem> mediaItems, List<AudioTrack> audioTracks,
+                    Exception exception) {
+                if (projectPath.equals(mProjectPath) && exception == null) {
+                    created.countDown();
+                }
+            }
+        };
+
+        mProjectPath = FileUtils.createNewProjectPath(context);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ApiService.registerListener(listener);
+            }
+        });
+        try {
+            ApiService.createVideoEditor(context, mProjectPath, TAG, new String[0], photos,
+                    null);
+            assertTrue("Project not created",
+                    created.await(PROJECT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        } finally {
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    ApiService.unregisterListener(listener);
+                }
+            });
+        }
+
+        final Intent intent = new Intent(Intent.ACTION_EDIT);
+        intent.putExtra(ProjectsActivity.PARAM_OPEN_PROJECT_PATH, mProjectPath);
+        setActivityIntent(intent);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // The activity is finished by the super class
+        if (mProjectPath != null) {
+            ApiService.deleteProject(getInstrumentation().getTargetContext(), mProjectPath);
+        }
+
+        if (mPhotoFile != null) {
+            mPhotoFile.delete();
+        }
+
+        super.tearDown();
+    }
+
+    /**
+     * Fling the timeline of 1000 photos back and forth
+     */
+    public void testFling() throws Exception {
+        final Activity activity = getActivity();
+        final TimelineHorizontalScrollView scrollView =
+                (TimelineHorizontalScrollView)activity.findViewById(R.id.timeline_scroller);
+        final ViewGroup mediaLayout = (ViewGroup)activity.findViewById(R.id.timeline_media);
+        final int screenWidth = activity.getWindowManager().getDefaultDisplay().getWidth();
+
+        // Wait for the media items to be laid out on the timeline
+        final long timeoutMs = SystemClock.uptimeMillis() + PROJECT_TIMEOUT_MS;
+        while (mediaLayout.getWidth() < 10 * screenWidth || mediaLayout.getChildCount() <= 2) {
+            assertTrue("Timeline not laid out", SystemClock.uptimeMillis() < timeoutMs);
+            SystemClock.sleep(100);
+        }
+        getInstrumentation().waitForIdleSync();
+
+        final FrameTimeRecorder recorder = FrameTimeRecorder.getInstance(activity);
+        recorder.reset();
+
+        int maxChildCount = 0;
+        for (int i = 0; i < FLINGS_COUNT; i++) {
+            final int velocity = (i % 2 == 0) ? FLING_VELOCITY : -FLING_VELOCITY;
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    scrollView.fling(velocity);
+                }
+            });
+
+            // The end of the scroll is reported after the scroll view stops
+            do {
+                SystemClock.sleep(100);
+                maxChildCount = Math.max(maxChildCount, mediaLayout.getChildCount());
+            } while (scrollView.isScrolling());
+        }
+
+        final StringWriter frameTimes = new StringWriter();
+        recorder.dump(new PrintWriter(frameTimes));
+        Log.i(TAG, frameTimes.toString());
+
+        final Bundle results = new Bundle();
+        results.putString(TAG, frameTimes.toString());
+        results.putInt("maxChildCount", maxChildCount);
+        getInstrumentation().sendStatus(0, results);
+
+        // Only the media items in the window around the screen have views
+        assertTrue("Too many views: " + maxChildCount, maxChildCount < MEDIA_ITEMS_COUNT / 4);
+    }
+
+    /**
+     * @param context The context
+     *
+     * @return The photo file
+     */
+    private static File createPhoto(Context context) throws IOException {
+        final Bitmap bitmap = Bitmap.createBitmap(640, 480, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.DKGRAY);
+        final File file = new File(context.getFilesDir(), "timeline_benchmark.jpg");
+        final FileOutputStream stream = new FileOutputStream(file);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, stream);
+        } finally {
+            stream.close();
+            bitmap.recycle();
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.media.videoeditor;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of the id index of {@link IdIndexedList}
+ */
+public class IdIndexedListTest extends TestCase {
+    private IdIndexedList<String> mList;
+    private int mModifications;
+
+    @Override
+    protected void setUp() {
+        // The id of an element is its text before the colon
+        mList = new IdIndexedList<String>() {
+            @Override
+            protected String getId(String element) {
+                return element.substring(0, element.indexOf(':'));
+            }
+
+            @Override
+            protected void onModified() {
+                mModifications++;
+            }
+        };
+        mModifications = 0;
+    }
+
+    public void testAddAndLookup() {
+        mList.add("a:1");
+        mList.add("b:2");
+        mList.add(0, "c:3");
+
+        assertEquals(3, mList.size());
+        assertEquals("b:2", mList.getById("b"));
+        assertEquals(0, mList.indexOfId("c"));
+        assertEquals(1, mList.indexOfId("a"));
+        assertEquals(2, mList.indexOfId("b"));
+        assertEquals(-1, mList.indexOfId("d"));
+        assertNull(mList.getById("d"));
+        assertEquals(3, mModifications);
+    }
+
+    public void testRemoveShiftsPositions() {
+        mList.add("a:1");
+        mList.add("b:2");
+        mList.add("c:3");
+        assertEquals(2, mList.indexOfId("c"));
+
+        assertTrue(mList.remove("a:1"));
+        assertNull(mList.getById("a"));
+        assertEquals(-1, mList.indexOfId("a"));
+        assertEquals(0, mList.indexOfId("b"));
+        assertEquals(1, mList.indexOfId("c"));
+
+        assertEquals("b:2", mList.remove(0));
+        assertEquals(0, mList.indexOfId("c"));
+        assertFalse(mList.remove("b:2"));
+    }
+
+    public void testSetReplacesIndex() {
+        mList.add("a:1");
+        mList.add("b:2");
+
+        assertEquals("a:1", mList.set(0, "c:3"));
+        assertNull(mList.getById("a"));
+        assertEquals("c:3", mList.getById("c"));
+        assertEquals(0, mList.indexOfId("c"));
+
+        // Same id, new element
+        mList.set(1, "b:4");
+        assertEquals("b:4", mList.getById("b"));
+        assertEquals(1, mList.indexOf("b:4"));
+        assertEquals(-1, mList.indexOf("b:2"));
+    }
+
+    public void testIndexOfMatchesElement() {
+        mList.add("a:1");
+
+        assertEquals(0, mList.indexOf("a:1"));
+        assertTrue(mList.contains("a:1"));
+        // Same id, different element
+        assertEquals(-1, mList.indexOf("a:2"));
+        assertEquals(-1, mList.indexOf(null));
+        assertEquals(-1, mList.indexOf(Integer.valueOf(1)));
+    }
+
+    public void testClear() {
+        mList.add("a:1");
+        mList.add("b:2");
+        mList.clear();
+
+        assertTrue(mList.isEmpty());
+        assertNull(mList.getById("a"));
+        assertEquals(-1, mList.indexOfId("b"));
+
+        mList.add("b:3");
+        assertEquals(0, mList.indexOfId("b"));
+    }
+
+    public void testManyElements() {
+        for (int i = 0; i < 1000; i++) {
+            mList.add(i + ":" + i);
+        }
+        mList.remove(0);
+        mList.add(500, "x:x");
+
+        for (int i = 0; i < mList.size(); i++) {
+            final String element = mList.get(i);
+            assertEquals(i, mList.indexOfId(element.substring(0, element.indexOf(':'))));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.media.videoeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of the sections and the recovery of {@link ProjectSnapshot}
+ */
+public class ProjectSnapshotTest extends TestCase {
+    private File mProjectDir;
+
+    @Override
+    protected void setUp() throws IOException {
+        mProjectDir = File.createTempFile("project", "");
+        mProjectDir.delete();
+        mProjectDir.mkdir();
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : mProjectDir.listFiles()) {
+            file.delete();
+        }
+        mProjectDir.delete();
+    }
+
+    /**
+     * @param recordsPerSection The number of records of each section
+     * @param tag The first byte of every record
+     *
+     * @return The records by section
+     */
+    private static List<List<byte[]>> createSections(int recordsPerSection, int tag) {
+        final List<List<byte[]>> sections = new ArrayList<List<byte[]>>();
+        for (int section = 0; section < ProjectSnapshot.SECTION_COUNT; section++) {
+            final List<byte[]> records = new ArrayList<byte[]>();
+            for (int i = 0; i < recordsPerSection; i++) {
+                records.add(new byte[] {(byte)tag, (byte)section, (byte)i});
+            }
+            sections.add(records);
+        }
+        return sections;
+    }
+
+    private static void assertRecords(List<byte[]> records, int count, int tag, int section) {
+        assertEquals(count, records.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(3, records.get(i).length);
+            assertEquals(tag, records.get(i)[0]);
+            assertEquals(section, records.get(i)[1]);
+            assertEquals(i, records.get(i)[2]);
+        }
+    }
+
+    public void testReadSections() throws IOException {
+        assertFalse(ProjectSnapshot.exists(mProjectDir.getPath()));
+        assertNull(ProjectSnapshot.open(mProjectDir.getPath()));
+
+        ProjectSnapshot.write(mProjectDir.getPath(), 7, createSections(5, 1), true);
+        assertTrue(ProjectSnapshot.exists(mProjectDir.getPath()));
+
+        final ProjectSnapshot snapshot = ProjectSnapshot.open(mProjectDir.getPath());
+        try {
+            assertEquals(7, snapshot.getGeneration());
+            // Sections are read in any order, on demand
+            assertRecords(snapshot.readSection(ProjectSnapshot.SECTION_AUDIO_TRACKS), 5, 1,
+                    ProjectSnapshot.SECTION_AUDIO_TRACKS);
+            assertRecords(snapshot.readSection(ProjectSnapshot.SECTION_PROJECT), 5, 1,
+                    ProjectSnapshot.SECTION_PROJECT);
+            assertEquals(5 * ProjectSnapshot.SECTION_COUNT, snapshot.readAllSections().size());
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    public void testCorruptSection() throws IOException {
+        ProjectSnapshot.write(mProjectDir.getPath(), 7, createSections(5, 1), true);
+
+        // Flip the last byte, which belongs to the last section
+        final File file = new File(mProjectDir, ProjectSnapshot.SNAPSHOT_FILENAME);
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(file.length() - 1);
+            final int value = randomAccessFile.read();
+            randomAccessFile.seek(file.length() - 1);
+            randomAccessFile.write(value ^ 0xff);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        final ProjectSnapshot snapshot = ProjectSnapshot.open(mProjectDir.getPath());
+        try {
+            assertRecords(snapshot.readSection(ProjectSnapshot.SECTION_PROJECT), 5, 1,
+                    ProjectSnapshot.SECTION_PROJECT);
+            try {
+                snapshot.readSection(ProjectSnapshot.SECTION_AUDIO_TRACKS);
+                fail("The corrupt section was read");
+            } catch (IOException ex) {
+                // Expected
+            }
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    public void testKeepPrevious() throws IOException {
+        assertNull(ProjectSnapshot.openPrevious(mProjectDir.getPath()));
+        ProjectSnapshot.write(mProjectDir.getPath(), 7, createSections(2, 1), true);
+        assertNull(ProjectSnapshot.openPrevious(mProjectDir.getPath()));
+        ProjectSnapshot.write(mProjectDir.getPath(), 8, createSections(3, 2), true);
+
+        ProjectSnapshot snapshot = ProjectSnapshot.openPrevious(mProjectDir.getPath());
+        try {
+            assertEquals(7, snapshot.getGeneration());
+            assertRecords(snapshot.readSection(ProjectSnapshot.SECTION_MEDIA_ITEMS), 2, 1,
+                    ProjectSnapshot.SECTION_MEDIA_ITEMS);
+        } finally {
+            snapshot.close();
+        }
+
+        // A corrupt snapshot is replaced without replacing the previous one
+        ProjectSnapshot.write(mProjectDir.getPath(), 9, createSections(4, 3), false);
+        snapshot = ProjectSnapshot.openPrevious(mProjectDir.getPath());
+        try {
+            assertEquals(7, snapshot.getGeneration());
+        } finally {
+            snapshot.close();
+        }
+
+        snapshot = ProjectSnapshot.open(mProjectDir.getPath());
+        try {
+            assertEquals(9, snapshot.getGeneration());
+            assertRecords(snapshot.readSection(ProjectSnapshot.SECTION_TRANSITIONS), 4, 3,
+                    ProjectSnapshot.SECTION_TRANSITIONS);
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    public void testExistsWithPreviousOnly() throws IOException {
+        ProjectSnapshot.write(mProjectDir.getPath(), 7, createSections(1, 1), true);
+        ProjectSnapshot.write(mProjectDir.getPath(), 8, createSections(1, 1), true);
+
+        // A crash between the replacement of the previous and the current
+        // snapshot leaves only the previous one
+        new File(mProjectDir, ProjectSnapshot.SNAPSHOT_FILENAME).delete();
+        assertTrue(ProjectSnapshot.exists(mProjectDir.getPath()));
+        assertNull(ProjectSnapshot.open(mProjectDir.getPath()));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.media.videoeditor;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of the waveform file reader {@link WaveformData}
+ */
+public class WaveformDataTest extends TestCase {
+    private File mFile;
+
+    @Override
+    protected void setUp() throws IOException {
+        mFile = File.createTempFile("waveform", ".dat");
+    }
+
+    @Override
+    protected void tearDown() {
+        mFile.delete();
+    }
+
+    public void testRead() throws IOException {
+        final DataOutputStream dos = new DataOutputStream(new FileOutputStream(mFile));
+        try {
+            dos.writeInt(40);
+            dos.writeInt(4);
+            dos.write(new byte[] {0, 1, (byte)128, (byte)255});
+        } finally {
+            dos.close();
+        }
+
+        final WaveformData waveformData = new WaveformData(mFile.getPath());
+        assertEquals(40, waveformData.getFrameDuration());
+        assertEquals(4, waveformData.getFramesCount());
+
+        final short[] gains = waveformData.getFrameGains();
+        assertEquals(4, gains.length);
+        assertEquals(0, gains[0]);
+        assertEquals(1, gains[1]);
+        assertEquals(128, gains[2]);
+        assertEquals(255, gains[3]);
+    }
+
+    public void testEmpty() throws IOException {
+        final DataOutputStream dos = new DataOutputStream(new FileOutputStream(mFile));
+        try {
+            dos.writeInt(20);
+            dos.writeInt(0);
+        } finally {
+            dos.close();
+        }
+
+        final WaveformData waveformData = new WaveformData(mFile.getPath());
+        assertEquals(20, waveformData.getFrameDuration());
+        assertEquals(0, waveformData.getFramesCount());
+        assertEquals(0, waveformData.getFrameGains().length);
+    }
+
+    public void testNullFilename() throws IOException {
+        try {
+            new WaveformData(null);
+            fail("A null file name must be rejected");
+        } catch (IllegalArgumentException ex) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of the begin times and time lookups of {@link TimelineIndex}
+ */
+public class TimelineIndexTest extends TestCase {
+    /**
+     * A media item of the tests
+     */
+    private static class Item implements TimelineIndex.IndexedMediaItem {
+        private final String mId;
+        private long mDurationMs;
+        private Transition mEndTransition;
+        private TimelineIndex mTimelineIndex;
+
+        private Item(String id, long durationMs) {
+            mId = id;
+            mDurationMs = durationMs;
+        }
+
+        private void setDuration(long durationMs) {
+            mDurationMs = durationMs;
+            if (mTimelineIndex != null) {
+                mTimelineIndex.onMediaItemChanged(this);
+            }
+        }
+
+        @Override
+        public String getId() {
+            return mId;
+        }
+
+        @Override
+        public long getAppTimelineDuration() {
+            return mDurationMs;
+        }
+
+        @Override
+        public Transition getEndTransition() {
+            return mEndTransition;
+        }
+
+        @Override
+        public void setTimelineIndex(TimelineIndex timelineIndex) {
+            mTimelineIndex = timelineIndex;
+        }
+    }
+
+    /**
+     * A transition of the tests
+     */
+    private static class Transition implements TimelineIndex.IndexedTransition {
+        private final String mId;
+        private long mDurationMs;
+        private TimelineIndex mTimelineIndex;
+
+        private Transition(String id, long durationMs) {
+            mId = id;
+            mDurationMs = durationMs;
+        }
+
+        private void setDuration(long durationMs) {
+            mDurationMs = durationMs;
+            if (mTimelineIndex != null) {
+                mTimelineIndex.onTransitionChanged(this);
+            }
+        }
+
+        @Override
+        public String getId() {
+            return mId;
+        }
+
+        @Override
+        public long getAppDuration() {
+            return mDurationMs;
+        }
+
+        @Override
+        public void setTimelineIndex(TimelineIndex timelineIndex) {
+            mTimelineIndex = timelineIndex;
+        }
+    }
+
+    private List<Item> mItems;
+    private TimelineIndex mIndex;
+
+    @Override
+    protected void setUp() {
+        mItems = new ArrayList<Item>();
+        mItems.add(new Item("a", 1000));
+        mItems.add(new Item("b", 2000));
+        mItems.add(new Item("c", 3000));
+        mIndex = new TimelineIndex();
+        mIndex.invalidate(mItems);
+    }
+
+    public void testBeginTimes() {
+        assertEquals(3, mIndex.size());
+        assertEquals(0, mIndex.getBeginTime(0));
+        assertEquals(1000, mIndex.getBeginTime(1));
+        assertEquals(3000, mIndex.getBeginTime(2));
+        assertEquals(6000, mIndex.getDuration());
+        assertEquals(1, mIndex.indexOf("b"));
+        assertEquals(-1, mIndex.indexOf("d"));
+    }
+
+    public void testFloor() {
+        assertEquals(-1, mIndex.floor(-1));
+        assertEquals(0, mIndex.floor(0));
+        assertEquals(0, mIndex.floor(999));
+        assertEquals(1, mIndex.floor(1000));
+        assertEquals(1, mIndex.floor(2999));
+        assertEquals(2, mIndex.floor(3000));
+        // Past the end of the timeline
+        assertEquals(2, mIndex.floor(10000));
+
+        mIndex.invalidate(new ArrayList<Item>());
+        assertEquals(-1, mIndex.floor(0));
+    }
+
+    public void testTransitionOverlap() {
+        final Transition transition = new Transition("t", 500);
+        mItems.get(0).mEndTransition = transition;
+        mIndex.invalidate(mItems);
+
+        assertEquals(0, mIndex.indexOfTransition("t"));
+        assertEquals(500, mIndex.getEffectiveDuration(0));
+        assertEquals(500, mIndex.getBeginTime(1));
+        assertEquals(5500, mIndex.getDuration());
+
+        transition.setDuration(200);
+        assertEquals(800, mIndex.getBeginTime(1));
+        assertEquals(5800, mIndex.getDuration());
+    }
+
+    public void testLastTransitionDoesNotOverlap() {
+        mItems.get(2).mEndTransition = new Transition("t", 500);
+        mIndex.invalidate(mItems);
+
+        assertEquals(6000, mIndex.getDuration());
+    }
+
+    public void testDurationChange() {
+        mIndex.size();
+        mItems.get(1).setDuration(500);
+
+        assertEquals(1500, mIndex.getBeginTime(2));
+        assertEquals(4500, mIndex.getDuration());
+        assertEquals(2, mIndex.floor(1500));
+    }
+
+    public void testInsertInvalidates() {
+        mItems.add(1, new Item("d", 4000));
+        mIndex.invalidate(mItems);
+
+        assertEquals(5000, mIndex.getBeginTime(2));
+        assertEquals(10000, mIndex.getDuration());
+        assertEquals(2, mIndex.indexOf("b"));
+    }
+
+    public void testMatchesLinearScan() {
+        final List<Item> items = new ArrayList<Item>();
+        for (int i = 0; i < 100; i++) {
+            final Item item = new Item("i" + i, 100 + (i * 7919) % 1000);
+            if (i % 3 == 0) {
+                item.mEndTransition = new Transition("t" + i, 50);
+            }
+            items.add(item);
+        }
+        mIndex.invalidate(items);
+        items.get(42).setDuration(333);
+
+        long beginMs = 0;
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(beginMs, mIndex.getBeginTime(i));
+            assertEquals(i, mIndex.floor(beginMs));
+            final Item item = items.get(i);
+            beginMs += item.getAppTimelineDuration();
+            if (item.getEndTransition() != null && i < items.size() - 1) {
+                beginMs -= item.getEndTransition().getAppDuration();
+            }
+        }
+        assertEquals(beginMs, mIndex.getDuration());
+    }
+
+    public void testLookupsMatchLinearScans() {
+        final Random random = new Random(0);
+        for (int timeline = 0; timeline < 200; timeline++) {
+            final List<Item> items = new ArrayList<Item>();
+            final int count = random.nextInt(12);
+            for (int i = 0; i < count; i++) {
+                items.add(new Item("i" + i, 1 + random.nextInt(8) * 100));
+            }
+
+            // Transitions last at most half of each media item they join
+            for (int i = 0; i < count - 1; i++) {
+                if (random.nextInt(3) == 0) {
+                    items.get(i).mEndTransition = new Transition("t" + i,
+                            random.nextInt((int)getMaximumDuration(items, i) + 1));
+                }
+            }
+            mIndex.invalidate(items);
+
+            // Trim some media items and transitions after the index was built
+            for (int i = 0; i < count; i++) {
+                if (random.nextInt(4) == 0) {
+                    items.get(i).setDuration(1 + random.nextInt(8) * 100);
+                    clampTransition(items, i - 1);
+                    clampTransition(items, i);
+                }
+
+                final Transition transition = items.get(i).mEndTransition;
+                if (transition != null && random.nextInt(4) == 0) {
+                    transition.setDuration(random.nextInt((int)getMaximumDuration(items, i) + 1));
+                }
+            }
+
+            final long durationMs = linearDuration(items);
+            assertEquals(durationMs, mIndex.getDuration());
+            for (int i = 0; i < count; i++) {
+                assertEquals(linearBeginTime(items, items.get(i).getId()),
+                        mIndex.getBeginTime(mIndex.indexOf(items.get(i).getId())));
+            }
+
+            for (long timeMs = -100; timeMs <= durationMs + 100; timeMs += 50) {
+                final String where = "timeline " + timeline + " at " + timeMs;
+                assertEquals(where, linearPrevious(items, timeMs),
+                        mIndex.getPreviousPosition(timeMs));
+                assertEquals(where, linearNext(items, timeMs), mIndex.getNextPosition(timeMs));
+                assertEquals(where, linearInsertAfter(items, timeMs),
+                        mIndex.getInsertAfterPosition(timeMs));
+            }
+        }
+    }
+
+    /**
+     * The linear scans replaced by the index, as they were implemented by
+     * VideoEditorProject, returning positions instead of media items
+     */
+    private static long getEndTransitionDuration(Item mediaItem) {
+        return mediaItem.mEndTransition != null ? mediaItem.mEndTransition.mDurationMs : 0;
+    }
+
+    /**
+     * @return The maximum duration of the transition at the end of a media item
+     */
+    private static long getMaximumDuration(List<Item> items, int position) {
+        return Math.min(items.get(position).mDurationMs, items.get(position + 1).mDurationMs) / 2;
+    }
+
+    /**
+     * Shorten the transition at the end of a media item if it became too long
+     */
+    private static void clampTransition(List<Item> items, int position) {
+        if (position < 0 || position >= items.size() - 1) {
+            return;
+        }
+
+        final Transition transition = items.get(position).mEndTransition;
+        if (transition != null) {
+            transition.setDuration(Math.min(transition.mDurationMs,
+                    getMaximumDuration(items, position)));
+        }
+    }
+
+    private static long linearBeginTime(List<Item> items, String mediaItemId) {
+        long beginMs = 0;
+        final int mediaItemsCount = items.size();
+        for (int i = 0; i < mediaItemsCount; i++) {
+            final Item mi = items.get(i);
+            if (mi.getId().equals(mediaItemId)) {
+                break;
+            }
+
+            beginMs += mi.getAppTimelineDuration();
+            if (i < mediaItemsCount - 1) {
+                beginMs -= getEndTransitionDuration(mi);
+            }
+        }
+
+        return beginMs;
+    }
+
+    private static long linearDuration(List<Item> items) {
+        long totalDurationMs = 0;
+        final int mediaItemsCount = items.size();
+        for (int i = 0; i < mediaItemsCount; i++) {
+            final Item mediaItem = items.get(i);
+            totalDurationMs += mediaItem.getAppTimelineDuration();
+            if (i < mediaItemsCount - 1) {
+                totalDurationMs -= getEndTransitionDuration(mediaItem);
+            }
+        }
+
+        return totalDurationMs;
+    }
+
+    private static int linearPrevious(List<Item> items, long positionMs) {
+        long startTimeMs = 0;
+        int prevPosition = -1;
+        for (int i = 0; i < items.size(); i++) {
+            final Item mediaItem = items.get(i);
+            if (positionMs == startTimeMs) {
+                break;
+            } else if (positionMs > startTimeMs
+                    && positionMs < startTimeMs + mediaItem.getAppTimelineDuration()) {
+                return i;
+            } else {
+                prevPosition = i;
+            }
+
+            startTimeMs += mediaItem.getAppTimelineDuration();
+            startTimeMs -= getEndTransitionDuration(mediaItem);
+        }
+
+        return prevPosition;
+    }
+
+    private static int linearNext(List<Item> items, long positionMs) {
+        long startTimeMs = 0;
+        final int count = items.size();
+        for (int i = 0; i < count; i++) {
+            final Item mediaItem = items.get(i);
+            if (positionMs >= startTimeMs
+                    && positionMs < startTimeMs + mediaItem.getAppTimelineDuration() -
+                    getEndTransitionDuration(mediaItem)) {
+                return i < count - 1 ? i + 1 : -1;
+            } else if (positionMs >= startTimeMs
+                    && positionMs < startTimeMs + mediaItem.getAppTimelineDuration()) {
+                return i < count - 2 ? i + 2 : -1;
+            } else {
+                startTimeMs += mediaItem.getAppTimelineDuration();
+                startTimeMs -= getEndTransitionDuration(mediaItem);
+            }
+        }
+
+        return -1;
+    }
+
+    private static int linearInsertAfter(List<Item> items, long timeMs) {
+        long beginMs = 0;
+        long endMs = 0;
+        int prevPosition = -1;
+        final int mediaItemsCount = items.size();
+        for (int i = 0; i < mediaItemsCount; i++) {
+            final Item mediaItem = items.get(i);
+            endMs = beginMs + mediaItem.getAppTimelineDuration();
+            if (i < mediaItemsCount - 1) {
+                endMs -= getEndTransitionDuration(mediaItem);
+            }
+
+            if (timeMs >= beginMs && timeMs <= endMs) {
+                if (timeMs - beginMs < endMs - timeMs) { // Closer to the beginning
+                    return prevPosition;
+                } else { // Closer to the end
+                    return i; // Insert after this item
+                }
+            }
+
+            beginMs = endMs;
+            prevPosition = i;
+        }
+
+        return -1;
+    }
+}
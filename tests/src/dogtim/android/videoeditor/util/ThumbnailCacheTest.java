@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of {@link ThumbnailCache}
+ */
+public class ThumbnailCacheTest extends TestCase {
+    /**
+     * A cache of strings whose size is their length
+     */
+    private static class StringCache extends ThumbnailCache<String> {
+        private StringCache(long maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected long sizeOf(String thumbnail) {
+            return thumbnail.length();
+        }
+    }
+
+    public void testPutAndGet() {
+        final StringCache cache = new StringCache(100);
+        cache.put("a", 0, 3, "a03");
+        cache.put("a", 1, 3, "a13");
+        cache.put("b", 0, 3, "b03");
+
+        assertEquals("a03", cache.get("a", 0, 3));
+        assertEquals("a13", cache.get("a", 1, 3));
+        assertEquals("b03", cache.get("b", 0, 3));
+        assertNull(cache.get("a", 0, 4));
+        assertNull(cache.get("c", 0, 3));
+        assertEquals(9, cache.getSize());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    public void testReplace() {
+        final StringCache cache = new StringCache(100);
+        cache.put("a", 0, 0, "x");
+        cache.put("a", 0, 0, "xyz");
+
+        assertEquals("xyz", cache.get("a", 0, 0));
+        assertEquals(3, cache.getSize());
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        final StringCache cache = new StringCache(3);
+        cache.put("a", 0, 0, "0");
+        cache.put("a", 0, 1, "1");
+        cache.put("a", 0, 2, "2");
+        // Frame 0 becomes the most recently used
+        cache.get("a", 0, 0);
+        cache.put("a", 0, 3, "3");
+
+        assertEquals("0", cache.get("a", 0, 0));
+        assertNull(cache.get("a", 0, 1));
+        assertEquals("2", cache.get("a", 0, 2));
+        assertEquals("3", cache.get("a", 0, 3));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3, cache.getSize());
+    }
+
+    public void testGetRange() {
+        final StringCache cache = new StringCache(1000);
+        for (int i = 0; i < 20; i += 2) {
+            cache.put("a", 1, i, "a" + i);
+        }
+        cache.put("a", 0, 5, "other level");
+        cache.put("a", 2, 5, "other level");
+        cache.put("b", 1, 5, "other item");
+
+        final String[] thumbnails = new String[8];
+        thumbnails[6] = "stale";
+        cache.getRange("a", 1, 3, 6, thumbnails);
+
+        assertNull(thumbnails[0]);
+        assertEquals("a4", thumbnails[1]);
+        assertNull(thumbnails[2]);
+        assertEquals("a6", thumbnails[3]);
+        assertNull(thumbnails[4]);
+        assertEquals("a8", thumbnails[5]);
+        // Past the requested count
+        assertEquals("stale", thumbnails[6]);
+        assertEquals(3, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    public void testClearForMediaItemId() {
+        final StringCache cache = new StringCache(100);
+        cache.put("a", 0, 0, "a0");
+        cache.put("a", 0, 1, "a1");
+        cache.put("b", 0, 0, "b0");
+        cache.clearForMediaItemId("a");
+
+        assertNull(cache.get("a", 0, 0));
+        assertNull(cache.get("a", 0, 1));
+        assertEquals("b0", cache.get("b", 0, 0));
+        assertEquals(2, cache.getSize());
+
+        // The cleared entries are no longer in the eviction order
+        assertEquals(2, cache.trim(100));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testTrim() {
+        final StringCache cache = new StringCache(100);
+        cache.put("a", 0, 0, "aa");
+        cache.put("a", 0, 1, "bb");
+        cache.put("a", 0, 2, "cc");
+
+        assertEquals(4, cache.trim(3));
+        assertNull(cache.get("a", 0, 0));
+        assertNull(cache.get("a", 0, 1));
+        assertEquals("cc", cache.get("a", 0, 2));
+        assertEquals(2, cache.getSize());
+    }
+
+    public void testManySlots() {
+        final StringCache cache = new StringCache(Long.MAX_VALUE);
+        // Insert out of order, the range is still read in frame order
+        for (int i = 0; i < 100; i++) {
+            final int index = (i * 37) % 100;
+            cache.put("a", 0, index, Integer.toString(index));
+        }
+
+        final String[] thumbnails = new String[100];
+        cache.getRange("a", 0, 0, 100, thumbnails);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.toString(i), thumbnails[i]);
+        }
+    }
+}
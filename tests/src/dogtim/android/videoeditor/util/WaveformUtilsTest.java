@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dogtim.android.videoeditor.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of {@link WaveformUtils#normalizeGains(short[], int, int, int)}
+ */
+public class WaveformUtilsTest extends TestCase {
+    private static final int HALF_HEIGHT = 50;
+
+    public void testCapacity() {
+        final short[] gains = ramp(10);
+
+        assertEquals(10, WaveformUtils.normalizeGains(gains, 10, 0, HALF_HEIGHT).length);
+        assertEquals(64, WaveformUtils.normalizeGains(gains, 10, 64, HALF_HEIGHT).length);
+    }
+
+    public void testRampIsMonotonicAndBounded() {
+        final short[] gains = ramp(256);
+        final float[] heights = WaveformUtils.normalizeGains(gains, gains.length, 0, HALF_HEIGHT);
+
+        for (int i = 0; i < heights.length; i++) {
+            assertTrue(heights[i] >= 0);
+            assertTrue(heights[i] <= HALF_HEIGHT);
+            if (i > 0) {
+                assertTrue(heights[i] >= heights[i - 1]);
+            }
+        }
+        assertEquals(0f, heights[0]);
+        assertEquals((float)HALF_HEIGHT, heights[heights.length - 1]);
+    }
+
+    public void testLargeGainsAreScaled() {
+        final short[] gains = new short[100];
+        for (int i = 0; i < gains.length; i++) {
+            gains[i] = (short)(i * 100);
+        }
+
+        final float[] heights = WaveformUtils.normalizeGains(gains, gains.length, 0, HALF_HEIGHT);
+        for (float height : heights) {
+            assertTrue(height >= 0);
+            assertTrue(height <= HALF_HEIGHT);
+        }
+    }
+
+    public void testUnusedCapacityIsZero() {
+        final float[] heights = WaveformUtils.normalizeGains(ramp(4), 4, 8, HALF_HEIGHT);
+        for (int i = 4; i < heights.length; i++) {
+            assertEquals(0f, heights[i]);
+        }
+    }
+
+    /**
+     * @param count The number of frames
+     *
+     * @return Gains increasing from 0 to 255
+     */
+    private static short[] ramp(int count) {
+        final short[] gains = new short[count];
+        for (int i = 0; i < count; i++) {
+            gains[i] = (short)(i * 255 / (count - 1));
+        }
+
+        return gains;
+    }
+}